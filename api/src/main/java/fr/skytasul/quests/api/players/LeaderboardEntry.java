@@ -0,0 +1,48 @@
+package fr.skytasul.quests.api.players;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A player account in a leaderboard of {@link QuestStatisticsService}.
+ */
+public final class LeaderboardEntry {
+
+	private final int rank;
+	private final @NotNull String identifier;
+	private final @Nullable String playerName;
+	private final long value;
+
+	public LeaderboardEntry(int rank, @NotNull String identifier, @Nullable String playerName, long value) {
+		this.rank = rank;
+		this.identifier = identifier;
+		this.playerName = playerName;
+		this.value = value;
+	}
+
+	/**
+	 * @return the rank of the account, starting at 1
+	 */
+	public int getRank() {
+		return rank;
+	}
+
+	/**
+	 * @return the identifier of the account
+	 */
+	public @NotNull String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * @return the last known name of the player, or <code>null</code> if it is not known
+	 */
+	public @Nullable String getPlayerName() {
+		return playerName;
+	}
+
+	public long getValue() {
+		return value;
+	}
+
+}
@@ -1,5 +1,6 @@
 package fr.skytasul.quests.api.players;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.stream.Stream;
 
@@ -66,6 +67,17 @@ public interface PlayerQuestEntryData {
 
 	Stream<StageController> getQuestFlowStages();
 
+	/**
+	 * Iterates over the stages completed by the player, in completion order. Implementations should
+	 * override it to avoid going through the textual form of the quest flow.
+	 *
+	 * @return an iterator over the completed stages
+	 */
+	@NotNull
+	default Iterator<@NotNull StageController> getQuestFlowIterator() {
+		return getQuestFlowStages().iterator();
+	}
+
 	QuestEntryRecord toRecord();
 
 }
@@ -17,6 +17,16 @@ public interface PlayersManager {
 
 	public @UnknownNullability PlayerAccount getAccount(@NotNull Player p);
 
+	/**
+	 * Gets the global statistics over the quest datas of all players. Players managers which do not
+	 * compute them return {@link QuestStatisticsService#EMPTY}.
+	 *
+	 * @return the statistics service of this players manager
+	 */
+	public default @NotNull QuestStatisticsService getStatistics() {
+		return QuestStatisticsService.EMPTY;
+	}
+
 	public static @UnknownNullability PlayerAccount getPlayerAccount(@NotNull Player p) {
 		return QuestsPlugin.getPlugin().getPlayersManager().getAccount(p);
 	}
@@ -0,0 +1,45 @@
+package fr.skytasul.quests.api.players;
+
+/**
+ * Statistics of a quest over all player accounts.
+ */
+public final class QuestStatistics {
+
+	private final int questID;
+	private final int inProgressPlayers;
+	private final int finishedPlayers;
+	private final long completions;
+
+	public QuestStatistics(int questID, int inProgressPlayers, int finishedPlayers, long completions) {
+		this.questID = questID;
+		this.inProgressPlayers = inProgressPlayers;
+		this.finishedPlayers = finishedPlayers;
+		this.completions = completions;
+	}
+
+	public int getQuestID() {
+		return questID;
+	}
+
+	/**
+	 * @return the amount of players currently doing the quest
+	 */
+	public int getInProgressPlayers() {
+		return inProgressPlayers;
+	}
+
+	/**
+	 * @return the amount of players who finished the quest at least once
+	 */
+	public int getFinishedPlayers() {
+		return finishedPlayers;
+	}
+
+	/**
+	 * @return the total amount of times the quest has been finished
+	 */
+	public long getCompletions() {
+		return completions;
+	}
+
+}
@@ -0,0 +1,83 @@
+package fr.skytasul.quests.api.players;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.jetbrains.annotations.NotNull;
+import fr.skytasul.quests.api.quests.Quest;
+import fr.skytasul.quests.api.quests.branches.QuestBranch;
+
+/**
+ * Global statistics over the quest datas of all players, online or not.
+ * <p>
+ * Statistics are computed without loading offline accounts and are cached for a short time: the
+ * same future is returned for identical requests until it expires. This allows synchronous callers
+ * such as placeholders to use {@link CompletableFuture#getNow(Object)} and get a value once the
+ * first request has completed.
+ */
+public interface QuestStatisticsService {
+
+	/**
+	 * Statistics which never contain any player, for players managers which cannot compute them.
+	 */
+	public static final @NotNull QuestStatisticsService EMPTY = new QuestStatisticsService() {
+
+		@Override
+		public @NotNull CompletableFuture<@NotNull QuestStatistics> getQuestStatistics(@NotNull Quest quest) {
+			return CompletableFuture.completedFuture(new QuestStatistics(quest.getId(), 0, 0, 0));
+		}
+
+		@Override
+		public @NotNull CompletableFuture<@NotNull List<@NotNull LeaderboardEntry>> getTopFinishers(int page,
+				int pageSize) {
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+
+		@Override
+		public @NotNull CompletableFuture<@NotNull Map<@NotNull Integer, @NotNull Integer>> getStageDistribution(
+				@NotNull QuestBranch branch) {
+			return CompletableFuture.completedFuture(Collections.emptyMap());
+		}
+
+		@Override
+		public void invalidate() {}
+
+	};
+
+	/**
+	 * Gets the amount of players who started and finished a quest.
+	 *
+	 * @param quest quest
+	 * @return a future completed with the statistics of the quest
+	 */
+	@NotNull
+	CompletableFuture<@NotNull QuestStatistics> getQuestStatistics(@NotNull Quest quest);
+
+	/**
+	 * Gets a page of the players who finished the most quests, counting every completion of
+	 * repeatable quests.
+	 *
+	 * @param page index of the page, starting at 0
+	 * @param pageSize amount of players per page
+	 * @return a future completed with the players of the page, in rank order
+	 */
+	@NotNull
+	CompletableFuture<@NotNull List<@NotNull LeaderboardEntry>> getTopFinishers(int page, int pageSize);
+
+	/**
+	 * Gets where players currently are in a branch, to find out where they drop off.
+	 *
+	 * @param branch branch of a quest
+	 * @return a future completed with the amount of players currently doing each regular stage of
+	 *         the branch, by stage ID
+	 */
+	@NotNull
+	CompletableFuture<@NotNull Map<@NotNull Integer, @NotNull Integer>> getStageDistribution(@NotNull QuestBranch branch);
+
+	/**
+	 * Discards all cached statistics.
+	 */
+	void invalidate();
+
+}
@@ -204,6 +204,15 @@ public abstract class AbstractStage implements HasPlaceholders {
 	 */
 	public void load() {}
 
+	/**
+	 * Called when the stage loads to declare the events it handles. Unlike the handlers of a stage
+	 * implementing {@link org.bukkit.event.Listener}, the handlers registered here are only called for
+	 * the players which have this stage launched, without going through the other stages.
+	 *
+	 * @param registry registry to which the event handlers must be added
+	 */
+	public void registerEvents(@NotNull StageEventRegistry registry) {}
+
 	protected void serialize(@NotNull ConfigurationSection section) {}
 
 	public final void save(@NotNull ConfigurationSection section) {
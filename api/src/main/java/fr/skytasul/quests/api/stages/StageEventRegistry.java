@@ -0,0 +1,63 @@
+package fr.skytasul.quests.api.stages;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.function.Function;
+
+/**
+ * Collects the event handlers of a stage, see {@link AbstractStage#registerEvents(StageEventRegistry)}.
+ * <p>
+ * A single Bukkit listener is registered for each event type, priority and cancellation policy. When
+ * an event is fired, it looks up the stages launched by the player concerned by the event and only
+ * calls the handlers of those stages.
+ */
+public interface StageEventRegistry {
+
+	/**
+	 * Registers a handler for an event.
+	 *
+	 * @param <E> type of the event
+	 * @param eventClass class of the event, which must declare a handler list
+	 * @param priority priority of the Bukkit listener
+	 * @param ignoreCancelled <code>true</code> if cancelled events must not be handled
+	 * @param playerFunction gives the player concerned by an event, or <code>null</code> if there is
+	 *        none. It should not capture any state: the players of an event are looked up once for all
+	 *        the stages sharing the same function.
+	 * @param handler called with the event and its player, only if the stage is launched for this
+	 *        player
+	 */
+	<E extends Event> void register(@NotNull Class<E> eventClass, @NotNull EventPriority priority,
+			boolean ignoreCancelled, @NotNull Function<? super E, @Nullable Player> playerFunction,
+			@NotNull Handler<? super E> handler);
+
+	/**
+	 * Registers a handler for an event concerning a player.
+	 *
+	 * @see #register(Class, EventPriority, boolean, Function, Handler)
+	 */
+	default <E extends PlayerEvent> void register(@NotNull Class<E> eventClass, @NotNull EventPriority priority,
+			boolean ignoreCancelled, @NotNull Handler<? super E> handler) {
+		register(eventClass, priority, ignoreCancelled, PlayerEvent::getPlayer, handler);
+	}
+
+	/**
+	 * Registers a handler for an event concerning a player, with the normal priority.
+	 *
+	 * @see #register(Class, EventPriority, boolean, Function, Handler)
+	 */
+	default <E extends PlayerEvent> void register(@NotNull Class<E> eventClass, @NotNull Handler<? super E> handler) {
+		register(eventClass, EventPriority.NORMAL, false, handler);
+	}
+
+	@FunctionalInterface
+	public interface Handler<E extends Event> {
+
+		void handle(@NotNull E event, @NotNull Player player);
+
+	}
+
+}
@@ -0,0 +1,235 @@
+package fr.skytasul.quests.api.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compact binary encoding of the additional datas of quest entries.
+ * <p>
+ * The decoded values are the same as the ones obtained through a JSON round trip with
+ * {@link CustomizedObjectTypeAdapter}: integral numbers are read back as integers when they fit and
+ * as longs otherwise, decimal numbers as doubles, map keys as integers when they are numeric and as
+ * strings otherwise. Values of other types are embedded as JSON.
+ * <p>
+ * The first byte of the encoded form is the format version.
+ */
+public final class CompactDataCodec {
+
+	public static final byte FORMAT_VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte FALSE = 1;
+	private static final byte TRUE = 2;
+	private static final byte INT = 3;
+	private static final byte LONG = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte STRING = 6;
+	private static final byte LIST = 7;
+	private static final byte MAP = 8;
+	private static final byte JSON = 9;
+
+	private CompactDataCodec() {}
+
+	public static byte @Nullable [] encodeNullable(@Nullable Map<String, Object> datas) {
+		return datas == null ? null : encode(datas);
+	}
+
+	public static byte @NotNull [] encode(@NotNull Map<String, Object> datas) {
+		Output out = new Output(32 + datas.size() * 16);
+		out.write(FORMAT_VERSION);
+		writeValue(out, datas);
+		return out.toByteArray();
+	}
+
+	public static @NotNull Map<String, Object> decode(byte @NotNull [] bytes) {
+		Input in = new Input(bytes);
+		byte version = in.readByte();
+		if (version != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported compact data format version " + version);
+		Object value = readValue(in);
+		if (!(value instanceof Map))
+			throw new IllegalArgumentException("Encoded datas are not a map");
+		return (Map<String, Object>) value;
+	}
+
+	private static void writeValue(Output out, Object value) {
+		if (value == null) {
+			out.write(NULL);
+		} else if (value instanceof Boolean) {
+			out.write(((Boolean) value).booleanValue() ? TRUE : FALSE);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.write(INT);
+			out.writeVarLong(((Number) value).intValue());
+		} else if (value instanceof Long) {
+			long longValue = (Long) value;
+			if (longValue == (int) longValue) {
+				out.write(INT); // JSON would also read it back as an integer
+			} else {
+				out.write(LONG);
+			}
+			out.writeVarLong(longValue);
+		} else if (value instanceof Double || value instanceof Float) {
+			out.write(DOUBLE);
+			out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+		} else if (value instanceof String || value instanceof Character) {
+			out.write(STRING);
+			out.writeString(value.toString());
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			out.write(LIST);
+			out.writeVarLong(list.size());
+			for (Object element : list) {
+				writeValue(out, element);
+			}
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			int size = 0;
+			for (Object entryValue : map.values()) {
+				if (entryValue != null)
+					size++;
+			}
+			out.write(MAP);
+			out.writeVarLong(size);
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				if (entry.getValue() == null)
+					continue; // like Gson, which does not serialize null map values
+				out.writeString(String.valueOf(entry.getKey()));
+				writeValue(out, entry.getValue());
+			}
+		} else {
+			out.write(JSON);
+			out.writeString(CustomizedObjectTypeAdapter.GSON.toJson(value));
+		}
+	}
+
+	private static Object readValue(Input in) {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case FALSE:
+				return Boolean.FALSE;
+			case TRUE:
+				return Boolean.TRUE;
+			case INT:
+				return (int) in.readVarLong();
+			case LONG:
+				return in.readVarLong();
+			case DOUBLE:
+				return Double.longBitsToDouble(in.readLong());
+			case STRING:
+				return in.readString();
+			case LIST:
+				int listSize = in.readSize();
+				List<Object> list = new ArrayList<>(listSize);
+				for (int i = 0; i < listSize; i++) {
+					list.add(readValue(in));
+				}
+				return list;
+			case MAP:
+				int mapSize = in.readSize();
+				Map<Object, Object> map = new LinkedHashMap<>(Math.max(4, mapSize * 4 / 3 + 1));
+				for (int i = 0; i < mapSize; i++) {
+					Object key = in.readString();
+					try {
+						key = Integer.parseInt((String) key);
+					} catch (NumberFormatException ex) {}
+					map.put(key, readValue(in));
+				}
+				return map;
+			case JSON:
+				try {
+					return CustomizedObjectTypeAdapter.CUSTOM_ADAPTER.fromJson(in.readString());
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			default:
+				throw new IllegalArgumentException("Unknown value type " + type + " at position " + (in.position - 1));
+		}
+	}
+
+	private static class Output extends ByteArrayOutputStream {
+
+		private Output(int size) {
+			super(size);
+		}
+
+		private void writeVarLong(long value) {
+			long zigzag = (value << 1) ^ (value >> 63);
+			while ((zigzag & ~0x7FL) != 0) {
+				write((int) ((zigzag & 0x7F) | 0x80));
+				zigzag >>>= 7;
+			}
+			write((int) zigzag);
+		}
+
+		private void writeLong(long value) {
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				write((int) (value >>> shift));
+			}
+		}
+
+		private void writeString(String string) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+	}
+
+	private static class Input {
+
+		private final byte[] bytes;
+		private int position;
+
+		private Input(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		private byte readByte() {
+			if (position >= bytes.length)
+				throw new IllegalArgumentException("Truncated compact datas");
+			return bytes[position++];
+		}
+
+		private long readVarLong() {
+			long zigzag = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = readByte();
+				zigzag |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+			throw new IllegalArgumentException("Malformed variable-length number");
+		}
+
+		private int readSize() {
+			long size = readVarLong();
+			if (size < 0 || size > bytes.length - position)
+				throw new IllegalArgumentException("Invalid size " + size);
+			return (int) size;
+		}
+
+		private long readLong() {
+			long value = 0;
+			for (int i = 0; i < 8; i++) {
+				value = (value << 8) | (readByte() & 0xFF);
+			}
+			return value;
+		}
+
+		private String readString() {
+			int length = readSize();
+			String string = new String(bytes, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return string;
+		}
+
+	}
+
+}
@@ -1,8 +1,11 @@
 package kr.reo.quest;
 
-import java.util.Map;
-import java.util.StringJoiner;
+import java.util.*;
 
+/**
+ * Immutable snapshot of a quest entry. The additional datas are deep-copied when the record is
+ * created, so the record can be serialized on another thread while the entry keeps being edited.
+ */
 public class QuestEntryRecord {
     public final int questID;
 
@@ -11,15 +14,46 @@ public class QuestEntryRecord {
     public final int branch;
     public final int stage;
     public final Map<String, Object> additionalDatas;
-    public final StringJoiner questFlow;
+    public final String questFlow;
 
-    public QuestEntryRecord(int questID, int finished, long timer, int branch, int stage, Map<String, Object> additionalDatas, StringJoiner questFlow) {
+    public QuestEntryRecord(int questID, int finished, long timer, int branch, int stage, Map<String, Object> additionalDatas, String questFlow) {
         this.questID = questID;
         this.finished = finished;
         this.timer = timer;
         this.branch = branch;
         this.stage = stage;
-        this.additionalDatas = additionalDatas;
+        this.additionalDatas = immutableCopy(additionalDatas);
         this.questFlow = questFlow;
     }
+
+    /**
+     * Copies maps and collections recursively into unmodifiable ones. Other objects (strings, numbers,
+     * booleans...) are expected to be immutable and are kept as they are.
+     *
+     * @param datas datas to copy, may be <code>null</code>
+     * @return an unmodifiable deep copy of the datas
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T immutableCopy(T datas) {
+        if (datas instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) datas;
+            if (map.isEmpty())
+                return (T) Collections.emptyMap();
+            Map<Object, Object> copy = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), immutableCopy(entry.getValue()));
+            }
+            return (T) Collections.unmodifiableMap(copy);
+        }
+        if (datas instanceof Collection) {
+            Collection<?> collection = (Collection<?>) datas;
+            List<Object> copy = new ArrayList<>(collection.size());
+            for (Object element : collection) {
+                copy.add(immutableCopy(element));
+            }
+            return (T) (datas instanceof Set ? Collections.unmodifiableSet(new LinkedHashSet<>(copy))
+                    : Collections.unmodifiableList(copy));
+        }
+        return datas;
+    }
 }
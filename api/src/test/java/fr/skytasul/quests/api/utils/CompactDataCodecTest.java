@@ -0,0 +1,51 @@
+package fr.skytasul.quests.api.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CompactDataCodecTest {
+
+	@Test
+	void sameValuesAsJson() {
+		Map<Object, Object> amounts = new LinkedHashMap<>();
+		amounts.put(3, 12);
+		amounts.put("7", 4L);
+
+		Map<String, Object> stage = new LinkedHashMap<>();
+		stage.put("remaining", amounts);
+		stage.put("items", Arrays.asList("stone", 'c', null, true));
+		stage.put("progress", 0.75F);
+
+		Map<String, Object> datas = new HashMap<>();
+		datas.put("starting_time", 1_700_000_000_000L);
+		datas.put("negative", -42);
+		datas.put("stage0", stage);
+		datas.put("empty", new HashMap<>());
+
+		Map<?, ?> expected = CustomizedObjectTypeAdapter
+				.deserializeNullable(CustomizedObjectTypeAdapter.serializeNullable(datas), Map.class);
+		assertEquals(expected, CompactDataCodec.decode(CompactDataCodec.encode(datas)));
+	}
+
+	@Test
+	void rejectsUnknownVersion() {
+		byte[] encoded = CompactDataCodec.encode(new HashMap<>());
+		encoded[0] = 42;
+		assertThrows(IllegalArgumentException.class, () -> CompactDataCodec.decode(encoded));
+	}
+
+	@Test
+	void rejectsTruncatedDatas() {
+		Map<String, Object> datas = new HashMap<>();
+		datas.put("key", "some value");
+		byte[] encoded = CompactDataCodec.encode(datas);
+		assertThrows(IllegalArgumentException.class,
+				() -> CompactDataCodec.decode(Arrays.copyOf(encoded, encoded.length - 3)));
+	}
+
+}
@@ -22,12 +22,18 @@ import fr.skytasul.quests.npcs.BqNpcManagerImplementation;
 import fr.skytasul.quests.options.OptionAutoQuest;
 import fr.skytasul.quests.players.AbstractPlayersManager;
 import fr.skytasul.quests.players.PlayersManagerDB;
+import fr.skytasul.quests.players.PlayersManagerLog;
 import fr.skytasul.quests.players.PlayersManagerYAML;
 import fr.skytasul.quests.scoreboards.ScoreboardManager;
+import fr.skytasul.quests.stages.StageLocationIndex;
 import fr.skytasul.quests.structure.QuestImplementation;
 import fr.skytasul.quests.structure.QuestsManagerImplementation;
+import fr.skytasul.quests.structure.StageEventDispatcher;
 import fr.skytasul.quests.structure.pools.QuestPoolsManagerImplementation;
+import fr.skytasul.quests.utils.EmbeddedSQLDatabase;
 import fr.skytasul.quests.utils.HikariDataSourceWrapper;
+import fr.skytasul.quests.utils.QuestUtils;
+import fr.skytasul.quests.utils.SQLDialect;
 import fr.skytasul.quests.utils.compatibility.InternalIntegrations;
 import fr.skytasul.quests.utils.compatibility.Post1_16;
 import fr.skytasul.quests.utils.logger.LoggerHandler;
@@ -81,6 +87,9 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 
 	private YamlConfiguration data;
 	private File dataFile;
+	private final Object dataFileLock = new Object();
+	private long dataFileVersion = 0;
+	private long writtenDataFileVersion = 0;
 	private File saveFolder;
 
 	private Path backupDir = null;
@@ -88,6 +97,8 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 	/* --------- Datas --------- */
 
 	private final @NotNull BqNpcManagerImplementation npcManager = new BqNpcManagerImplementation();
+	private final @NotNull StageEventDispatcher stageEvents = new StageEventDispatcher();
+	private final @NotNull StageLocationIndex stageLocations = new StageLocationIndex();
 	private @Nullable ScoreboardManager scoreboards;
 	private @Nullable QuestsManagerImplementation quests;
 	private @Nullable QuestPoolsManagerImplementation pools;
@@ -177,6 +188,7 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 								+ (((double) System.currentTimeMillis() - lastMillis) / 1000D) + "s)!");
 
 						getServer().getPluginManager().registerEvents(new QuestsListener(), BeautyQuests.this);
+						getServer().getPluginManager().registerEvents(stageLocations, BeautyQuests.this);
 						if (MinecraftVersion.MAJOR >= 16)
 							getServer().getPluginManager().registerEvents(new Post1_16(), BeautyQuests.this);
 
@@ -239,6 +251,11 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 			}catch (Exception e) {
 				logger.severe("An error occurred while saving config.", e);
 			}
+			try {
+				ReoQuestModule.onDisable();
+			}catch (Exception e) {
+				logger.severe("An error occurred while flushing the quest log.", e);
+			}
 			try {
 				integrations.disableCompatibilities();
 			}catch (Exception e) {
@@ -291,7 +308,8 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 					}
 				}
 			};
-			logger.info("Periodic saves task started (" + cycle + " ticks). Task ID: " + saveTask.runTaskTimerAsynchronously(this, cycle, cycle).getTaskId());
+			// the snapshot of the datas is taken on the main thread, only the writes are asynchronous
+			logger.info("Periodic saves task started (" + cycle + " ticks). Task ID: " + saveTask.runTaskTimer(this, cycle, cycle).getTaskId());
 		}
 	}
 
@@ -401,8 +419,21 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 			//}
 
 			ReoQuestModule.onEnable(this);
-			MySQLDB palmLibrary = ReoQuestModule.inst().provideQuestDatabase();
-			players = new PlayersManagerDB(dbConfig, palmLibrary);
+			String storage = dbConfig.getString("storage", "mysql");
+			if (storage.equalsIgnoreCase("log")) {
+				players = new PlayersManagerLog();
+			} else if (storage.equalsIgnoreCase("yaml")) {
+				players = new PlayersManagerYAML();
+			} else if (storage.equalsIgnoreCase("sqlite")) {
+				players = new PlayersManagerDB(dbConfig,
+						new EmbeddedSQLDatabase(SQLDialect.SQLite, new File(getDataFolder(), "players")));
+			} else if (storage.equalsIgnoreCase("h2")) {
+				players = new PlayersManagerDB(dbConfig,
+						new EmbeddedSQLDatabase(SQLDialect.H2, new File(getDataFolder(), "players")));
+			} else {
+				MySQLDB palmLibrary = ReoQuestModule.inst().provideQuestDatabase();
+				players = new PlayersManagerDB(dbConfig, palmLibrary);
+			}
 
 			/*				static initialization				*/
 			if (init) {
@@ -572,12 +603,38 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 			data.set("lastID", quests.getLastID());
 			data.set("version", getDescription().getVersion());
 
+			Runnable playersWrite = () -> {};
 			try {
-				players.save();
+				playersWrite = players.prepareSave();
 			}catch (Exception ex) {
 				logger.severe("Error when saving player datas.", ex);
 			}
-			data.save(dataFile);
+			long version = ++dataFileVersion;
+			if (unload) {
+				try {
+					playersWrite.run();
+					players.unload();
+				}catch (Exception ex) {
+					logger.severe("Error when saving player datas.", ex);
+				}
+				writeDataFile(data, version);
+			}else {
+				// only the capture of the datas is done on the main thread, they are serialized and written later
+				YamlConfiguration snapshot = copyDatas(data, new YamlConfiguration());
+				Runnable write = playersWrite;
+				QuestUtils.runAsync(() -> {
+					try {
+						write.run();
+					}catch (Exception ex) {
+						logger.severe("Error when writing player datas.", ex);
+					}
+					try {
+						writeDataFile(snapshot, version);
+					}catch (Exception ex) {
+						logger.severe("Error when writing the data file.", ex);
+					}
+				});
+			}
 			logger.debug("Saved datas (" + (((double) System.currentTimeMillis() - time) / 1000D) + "s)!");
 		}
 
@@ -587,6 +644,28 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 		}
 	}
 
+	private <T extends ConfigurationSection> T copyDatas(ConfigurationSection from, T to) {
+		for (String key : from.getKeys(false)) {
+			Object value = from.get(key);
+			if (value instanceof ConfigurationSection) {
+				copyDatas((ConfigurationSection) value, to.createSection(key));
+			}else to.set(key, value);
+		}
+		return to;
+	}
+
+	/**
+	 * Writes the data file, unless a more recent save has already written it.
+	 */
+	private void writeDataFile(YamlConfiguration datas, long version) throws IOException {
+		synchronized (dataFileLock) {
+			if (version < writtenDataFileVersion)
+				return;
+			datas.save(dataFile);
+			writtenDataFileVersion = version;
+		}
+	}
+
 	private void resetDatas(){
 		quests = null;
 		pools = null;
@@ -810,6 +889,14 @@ public class BeautyQuests extends JavaPlugin implements QuestsPlugin {
 		return npcManager;
 	}
 
+	public @NotNull StageEventDispatcher getStageEventDispatcher() {
+		return stageEvents;
+	}
+
+	public @NotNull StageLocationIndex getStageLocationIndex() {
+		return stageLocations;
+	}
+
 	@Override
 	public @NotNull IntegrationManager getIntegrationManager() {
 		return integrations;
@@ -1,10 +1,9 @@
 package fr.skytasul.quests;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import fr.skytasul.quests.players.AbstractPlayersManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
@@ -16,6 +15,7 @@ import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.inventory.CraftItemEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.event.player.PlayerItemConsumeEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
@@ -41,7 +41,9 @@ import fr.skytasul.quests.npcs.BQNPCClickEvent;
 import fr.skytasul.quests.options.OptionAutoQuest;
 import fr.skytasul.quests.players.PlayerAccountImplementation;
 import fr.skytasul.quests.structure.QuestImplementation;
+import fr.skytasul.quests.structure.StageControllerImplementation;
 import fr.skytasul.quests.utils.compatibility.Paper;
+import fr.skytasul.quests.utils.types.DialogRunnerImplementation;
 
 public class QuestsListener implements Listener{
 
@@ -129,10 +131,12 @@ public class QuestsListener implements Listener{
 		}
 	}
 
-	private static final Map<UUID, AbstractPlayersManager.AccountFetchRequest> map = new ConcurrentHashMap<>();
-
-	public static void addAccountRequest(AbstractPlayersManager.AccountFetchRequest request) {
-		map.put(request.getUniqueId(), request);
+	@EventHandler (priority = EventPriority.MONITOR)
+	public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+		if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+			return;
+		// starts loading datas while the client is still logging in
+		BeautyQuests.getInstance().getPlayersManager().prefetch(e.getUniqueId());
 	}
 
 	@EventHandler (priority = EventPriority.LOWEST)
@@ -141,13 +145,7 @@ public class QuestsListener implements Listener{
 
 		QuestsPlugin.getPlugin().getLoggerExpanded().debug(player.getName() + " (" + player.getUniqueId().toString() + ") joined the server");
 		// for timing purpose
-		if(map.containsKey(e.getPlayer().getUniqueId())) {
-			AbstractPlayersManager.AccountFetchRequest request = map.remove(e.getPlayer().getUniqueId());
-			if(request != null) {
-				Bukkit.getPluginManager()
-						.callEvent(new PlayerAccountJoinEvent(request.getAccount(), request.isAccountCreated()));
-			}
-		}
+		BeautyQuests.getInstance().getPlayersManager().playerJoined(player);
 		//if (BeautyQuests.getInstance().loaded && !QuestsConfigurationImplementation.getConfiguration().hookAccounts()) {
 		//	BeautyQuests.getInstance().getPlayersManager().loadPlayer(player);
 		//}
@@ -157,6 +155,7 @@ public class QuestsListener implements Listener{
 	public void onQuit(PlayerQuitEvent e) {
 		Player player = e.getPlayer();
 		QuestsPlugin.getPlugin().getLoggerExpanded().debug(player.getName() + " left the server"); // for timing purpose
+		BeautyQuests.getInstance().getPlayersManager().playerLeft(player.getUniqueId());
 		//if (!QuestsConfigurationImplementation.getConfiguration().hookAccounts()) {
 		//	BeautyQuests.getInstance().getPlayersManager().unloadPlayer(player);
 		//}
@@ -166,12 +165,29 @@ public class QuestsListener implements Listener{
 	public void onAccountJoin(PlayerAccountJoinEvent e) {
 		if (e.isFirstJoin()) {
 			QuestsAPI.getAPI().getQuestsManager().getQuests().stream().filter(qu -> qu.getOptionValueOrDef(OptionAutoQuest.class)).forEach(qu -> qu.start(e.getPlayer()));
+		}else {
+			forEachLaunchedStage((PlayerAccountImplementation) e.getPlayerAccount(), stage -> stage.joins(e.getPlayer()));
 		}
 	}
 
 	@EventHandler
 	public void onAccountLeave(PlayerAccountLeaveEvent e) {
-		BeautyQuests.getInstance().getQuestsManager().getQuestsRaw().forEach(x -> x.leave(e.getPlayer()));
+		Player p = e.getPlayer();
+		forEachLaunchedStage((PlayerAccountImplementation) e.getPlayerAccount(), stage -> stage.leaves(p));
+		// the player is only removed from the dialogs they are in, rather than going through all quests
+		DialogRunnerImplementation.getPlayerRunners(p).forEach(runner -> runner.removePlayer(p));
+	}
+
+	private void forEachLaunchedStage(PlayerAccountImplementation acc, Consumer<StageControllerImplementation<?>> action) {
+		for (StageControllerImplementation<?> stage : acc.getActiveStages()) {
+			if (!stage.hasStarted(acc))
+				continue;
+			try {
+				action.accept(stage);
+			}catch (Exception ex) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while updating " + stage.toString() + " for " + acc.debugName(), ex);
+			}
+		}
 	}
 
 	@EventHandler (priority = EventPriority.HIGH)
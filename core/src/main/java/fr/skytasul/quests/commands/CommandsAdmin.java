@@ -33,6 +33,7 @@ import fr.skytasul.quests.api.utils.messaging.PlaceholderRegistry;
 import fr.skytasul.quests.gui.creation.QuestCreationSession;
 import fr.skytasul.quests.gui.misc.ListBook;
 import fr.skytasul.quests.npcs.BqNpcImplementation;
+import fr.skytasul.quests.players.AbstractPlayersManager;
 import fr.skytasul.quests.players.AdminMode;
 import fr.skytasul.quests.players.PlayersManagerDB;
 import fr.skytasul.quests.players.PlayersManagerYAML;
@@ -40,6 +41,8 @@ import fr.skytasul.quests.structure.QuestImplementation;
 import fr.skytasul.quests.utils.HikariDataSourceWrapper;
 import fr.skytasul.quests.utils.QuestUtils;
 import fr.skytasul.quests.utils.nms.NMS;
+import kr.reo.quest.QuestLogDatabase;
+import kr.reo.quest.ReoQuestModule;
 
 public class CommandsAdmin implements OrphanCommand {
 
@@ -138,6 +141,32 @@ public class CommandsAdmin implements OrphanCommand {
 		}
 	}
 
+	@Subcommand ("debug")
+	@CommandPermission ("beautyquests.command.manage")
+	public void debug(BukkitCommandActor actor) {
+		AbstractPlayersManager players = BeautyQuests.getInstance().getPlayersManager();
+		actor.reply("§eBeautyQuests performance metrics (" + players.getClass().getSimpleName() + ")");
+		actor.reply("§7" + players.getJoinTimings());
+		actor.reply("§7Account joins: " + players.getJoinTimeouts() + " timeouts, " + players.getJoinFailures()
+				+ " failures, " + players.getPendingPrefetches() + " pending prefetches");
+		actor.reply("§7" + players.getSnapshotTimings());
+		if (players instanceof PlayersManagerDB) {
+			PlayersManagerDB db = (PlayersManagerDB) players;
+			actor.reply("§7" + db.getHydrationTimings());
+			actor.reply("§7Quest entries saves: last cycle " + db.getLastCycleWrittenEntries() + " written, "
+					+ db.getLastCycleSkippedEntries() + " skipped; total " + db.getTotalWrittenEntries() + " written, "
+					+ db.getTotalSkippedEntries() + " skipped");
+			actor.reply("§7Pool datas: " + db.getRejectedPoolDatas() + " changes rejected by the full write queue");
+		}
+		ReoQuestModule module = ReoQuestModule.inst();
+		if (module != null) {
+			QuestLogDatabase logs = module.getLogDatabase();
+			actor.reply("§7Quest logs: queue " + logs.getQueueSize() + " (high water " + logs.getQueueHighWater()
+					+ "), " + logs.getQueuedRows() + " rows queued, " + logs.getWrittenRows() + " written in "
+					+ logs.getWrittenBatches() + " batches, " + logs.getDroppedRows() + " dropped");
+		}
+	}
+
 	@Subcommand ("backup")
 	@CommandPermission ("beautyquests.command.manage")
 	public void backup(BukkitCommandActor actor, @Switch boolean force) {
@@ -283,7 +283,7 @@ public class CommandsPlayerManagement implements OrphanCommand {
 						return false;
 					}).count();
 
-			BeautyQuests.getInstance().getPlayersManager().removeQuestDatas(quest)
+			BeautyQuests.getInstance().getPlayersManager().removeQuestDatas(quest, actor.getSender())
 					.whenComplete(QuestsPlugin.getPlugin().getLoggerExpanded().logError(removedAmount -> {
 						Lang.QUEST_PLAYERS_REMOVED.quickSend(actor.getSender(), "player_amount",
 								removedAmount + resetAmount);
@@ -319,7 +319,7 @@ public class CommandsPlayerManagement implements OrphanCommand {
 						return false;
 					}).count();
 
-			BeautyQuests.getInstance().getPlayersManager().removePoolDatas(pool)
+			BeautyQuests.getInstance().getPlayersManager().removePoolDatas(pool, actor.getSender())
 					.whenComplete(QuestsPlugin.getPlugin().getLoggerExpanded().logError(removedAmount -> {
 						Lang.POOL_COMPLETELY_RESET.quickSend(actor.getSender(), "player_amount",
 								removedAmount + resetAmount);
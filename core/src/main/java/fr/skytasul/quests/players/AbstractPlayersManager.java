@@ -4,9 +4,9 @@ import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import fr.skytasul.quests.BeautyQuests;
-import fr.skytasul.quests.QuestsListener;
 import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.data.SavableData;
+import fr.skytasul.quests.api.events.accounts.PlayerAccountJoinEvent;
 import fr.skytasul.quests.api.events.accounts.PlayerAccountLeaveEvent;
 import fr.skytasul.quests.api.players.PlayerAccount;
 import fr.skytasul.quests.api.players.PlayersManager;
@@ -15,10 +15,14 @@ import fr.skytasul.quests.api.quests.Quest;
 import fr.skytasul.quests.players.accounts.AbstractAccount;
 import fr.skytasul.quests.players.accounts.UUIDAccount;
 import fr.skytasul.quests.utils.DebugUtils;
+import fr.skytasul.quests.utils.QuestUtils;
+import fr.skytasul.quests.utils.TimingStatistics;
 import kr.reo.quest.ReoQuestModule;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnknownNullability;
@@ -28,11 +32,30 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class AbstractPlayersManager implements PlayersManager {
 
+	private static final long JOIN_TIMEOUT_TICKS = 10 * 20L;
+	private static final long PREFETCH_EXPIRATION_TICKS = 60 * 20L;
+
 	protected final @NotNull Map<UUID, PlayerAccountImplementation> cachedAccounts = new HashMap<>();
 	protected final @NotNull Set<@NotNull SavableData<?>> accountDatas = new HashSet<>();
+	private final @NotNull Map<UUID, CompletableFuture<Void>> pendingUnloads = new ConcurrentHashMap<>();
+
+	private final @NotNull Map<UUID, CompletableFuture<AccountFetchRequest>> prefetches = new ConcurrentHashMap<>();
+	/*
+	 * Completed once the last load of a player is over, including the unload of its account if the
+	 * player left before its end, so that the next load of this player does not overlap with it.
+	 */
+	private final @NotNull Map<UUID, CompletableFuture<Void>> settledLoads = new ConcurrentHashMap<>();
+	private final @NotNull Map<UUID, AccountFetchRequest> readyRequests = new HashMap<>();
+	private final @NotNull Map<UUID, Long> joinTimes = new HashMap<>();
+	private final @NotNull TimingStatistics joinTimings = new TimingStatistics("account join");
+	private final @NotNull LongAdder joinTimeouts = new LongAdder();
+	private final @NotNull LongAdder joinFailures = new LongAdder();
+	private final @NotNull TimingStatistics snapshotTimings = new TimingStatistics("save snapshot per account");
 	private boolean loaded = false;
 
 	public abstract CompletableFuture<PlayerAccount> load(@NotNull AccountFetchRequest request);
@@ -45,6 +68,22 @@ public abstract class AbstractPlayersManager implements PlayersManager {
 
 	public abstract @NotNull CompletableFuture<Integer> removePoolDatas(@NotNull QuestPool pool);
 
+	/**
+	 * Removes the datas of a quest from all accounts, reporting the progress of the operation to a
+	 * command sender if the implementation supports it.
+	 */
+	public @NotNull CompletableFuture<Integer> removeQuestDatas(@NotNull Quest quest, @Nullable CommandSender sender) {
+		return removeQuestDatas(quest);
+	}
+
+	/**
+	 * Removes the datas of a pool from all accounts, reporting the progress of the operation to a
+	 * command sender if the implementation supports it.
+	 */
+	public @NotNull CompletableFuture<Integer> removePoolDatas(@NotNull QuestPool pool, @Nullable CommandSender sender) {
+		return removePoolDatas(pool);
+	}
+
 	public abstract @NotNull PlayerQuestEntryDataImplementation createPlayerQuestDatas(@NotNull PlayerAccountImplementation acc,
 																					   @NotNull Quest quest);
 
@@ -68,9 +107,52 @@ public abstract class AbstractPlayersManager implements PlayersManager {
 		return loaded;
 	}
 
+	/**
+	 * Called when a quest of an account has been started, finished, cancelled or reset.
+	 *
+	 * @param acc account whose quest datas have changed
+	 */
+	public void questDatasChanged(@NotNull PlayerAccount acc) {}
+
+	/**
+	 * Called once the plugin is disabled or reloaded, after the last {@link #save()}. Pending writes
+	 * must be flushed synchronously.
+	 */
+	public void unload() {}
+
 	@Override
 	public abstract void save();
 
+	/**
+	 * Copies the datas to save. Called on the main thread, where the datas are edited: implementations
+	 * must only copy them here and return the task that serializes and writes the copy, which can run
+	 * on any thread.
+	 * <p>
+	 * The default implementation does not copy anything and returns {@link #save()}.
+	 *
+	 * @return the task writing the snapshot
+	 */
+	protected @NotNull Runnable snapshot() {
+		return this::save;
+	}
+
+	/**
+	 * Takes a snapshot of the datas to save on the main thread, measuring its cost.
+	 *
+	 * @return the task writing the snapshot, which can run asynchronously
+	 * @see #snapshot()
+	 */
+	public final @NotNull Runnable prepareSave() {
+		int accounts = Math.max(1, cachedAccounts.size());
+		long start = System.nanoTime();
+		Runnable write = snapshot();
+		long time = System.nanoTime() - start;
+		snapshotTimings.record(time / accounts);
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Took a save snapshot of " + cachedAccounts.size()
+				+ " accounts in " + (time / 1000) + " µs (" + (time / accounts / 1000) + " µs per account)");
+		return write;
+	}
+
 	@Override
 	public void addAccountData(@NotNull SavableData<?> data) {
 		if (loaded)
@@ -113,127 +195,245 @@ public abstract class AbstractPlayersManager implements PlayersManager {
 		return null;
 	}
 
-	public void reorpgLoad(UUID uuid) {
-		long time = System.currentTimeMillis();
-		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Loading player " + uuid.toString() + "...");
-		cachedAccounts.remove(uuid);
-		tryLoad(uuid, time);
+	/**
+	 * Loads the account of a player who is about to join this server, for instance when the proxy
+	 * announces the player, and waits at most 5 seconds for it to be cached.
+	 * <p>
+	 * Accounts are cached on the server thread: when called from it, this method only starts the load.
+	 *
+	 * @param uuid UUID of the player
+	 * @see #reorpgLoadAsync(UUID)
+	 */
+	public void reorpgLoad(@NotNull UUID uuid) {
+		CompletableFuture<PlayerAccount> future = reorpgLoadAsync(uuid);
+		if (Bukkit.isPrimaryThread())
+			return;
+		try {
+			future.get(5000L, java.util.concurrent.TimeUnit.MILLISECONDS);
+		} catch (Exception e) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while loading datas of " + uuid + ".", e);
+		}
+	}
+
+	/**
+	 * Starts loading the account of a player who is about to join this server, for instance when the
+	 * proxy announces the player. This method does not block.
+	 *
+	 * @param uuid UUID of the player
+	 * @return a future completed with the account once it is loaded and cached
+	 */
+	public @NotNull CompletableFuture<PlayerAccount> reorpgLoadAsync(@NotNull UUID uuid) {
+		return prefetch(uuid).thenApply(AccountFetchRequest::getAccount);
 	}
 
 	public void loadPlayer(@NotNull Player p) {
 		cachedPlayerNames.put(p.getUniqueId(), p.getName());
-
-		long time = System.currentTimeMillis();
-		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Loading player " + p.getName() + "...");
-		cachedAccounts.remove(p.getUniqueId());
-		for (int i = 1; i >= 0; i--) {
-			try {
-				if (!tryLoad(p, time))
-					return;
-			} catch (Exception ex) {
-				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while trying to load datas of " + p.getName() + ".", ex);
-			}
-			if (i > 0)
-				QuestsPlugin.getPlugin().getLoggerExpanded().severe("Doing " + i + " more attempt.");
-		}
-		QuestsPlugin.getPlugin().getLoggerExpanded().severe("Datas of " + p.getName() + " have failed to load. This may cause MANY issues.");
-
+		prefetch(p.getUniqueId());
 	}
 
-	private void tryLoad(@NotNull UUID uuid, long time) {
+	/**
+	 * Starts loading the account of a player, typically from the {@link AsyncPlayerPreLoginEvent}. All
+	 * calls for the same player made before the {@link PlayerAccountJoinEvent} has been called share
+	 * the same load.
+	 * <p>
+	 * The load starts once the previous datas of the player have been saved, if they have just left
+	 * this server, and once a previous load is over, if they left and joined again during it. When it completes, the account is cached on the server thread and the
+	 * {@link PlayerAccountJoinEvent} is called as soon as the player is online.
+	 *
+	 * @param uuid UUID of the player
+	 * @return a future completed once the request has been fulfilled
+	 */
+	public @NotNull CompletableFuture<AccountFetchRequest> prefetch(@NotNull UUID uuid) {
+		CompletableFuture<AccountFetchRequest> future = prefetches.get(uuid);
+		if (future != null)
+			return future;
+
+		CompletableFuture<AccountFetchRequest> created = new CompletableFuture<>();
+		future = prefetches.putIfAbsent(uuid, created);
+		if (future != null)
+			return future; // another thread started the load in the meantime
 
+		long time = System.currentTimeMillis();
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Loading player " + uuid + "...");
 		AccountFetchRequest request = new AccountFetchRequest(uuid, time, true, true);
-		try {
-			PlayerAccount account = load(request).get(5000L, java.util.concurrent.TimeUnit.MILLISECONDS);
-			ReoQuestModule.inst().logJoin(uuid, account);
-		} catch (Exception e) {
-			e.printStackTrace();
-			QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while loading datas of " + uuid + ".", e);
+		CompletableFuture<Void> settled = new CompletableFuture<>();
+		CompletableFuture<Void> previousLoad = settledLoads.put(uuid, settled);
+		settled.whenComplete((__, ___) -> settledLoads.remove(uuid, settled));
+		CompletableFuture.allOf(previousLoad == null ? CompletableFuture.completedFuture(null) : previousLoad,
+				pendingUnloads.getOrDefault(uuid, CompletableFuture.completedFuture(null)))
+				.handle((__, ex) -> {
+					if (ex != null)
+						QuestsPlugin.getPlugin().getLoggerExpanded()
+								.warning("The previous datas of " + uuid + " have not been saved before loading them again.");
+					return null;
+				})
+				.thenCompose(__ -> load(request))
+				.whenComplete((__, ex) -> QuestUtils.runSync(() -> fetchCompleted(request, created, settled, ex)));
+		return created;
+	}
+
+	private void fetchCompleted(@NotNull AccountFetchRequest request, @NotNull CompletableFuture<AccountFetchRequest> future,
+			@NotNull CompletableFuture<Void> settled, @Nullable Throwable ex) {
+		UUID uuid = request.getUniqueId();
+		if (ex != null || request.getAccount() == null) {
+			settled.complete(null);
+			prefetches.remove(uuid, future);
+			joinFailures.increment();
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe("Datas of " + request.getDebugPlayerName()
+					+ " have failed to load. This may cause MANY issues.", ex);
+			future.completeExceptionally(ex == null ? new IllegalStateException("Account not loaded") : ex);
 			return;
 		}
 
+		PlayerAccountImplementation account = request.getAccount();
 		if (request.isAccountCreated())
 			QuestsPlugin.getPlugin().getLoggerExpanded().debug(
-					"New account registered for " + uuid + " (" + request.getAccount().abstractAcc.getIdentifier()
-							+ "), index " + request.getAccount().index + " via " + DebugUtils.stackTraces(2, 4));
-
-		cachedAccounts.put(uuid, request.getAccount());
-		QuestsListener.addAccountRequest(request);
+					"New account registered for " + request.getDebugPlayerName() + " ("
+							+ account.abstractAcc.getIdentifier() + "), index " + account.index);
+
+		if (prefetches.get(uuid) != future) {
+			// the player has left before the end of the load
+			QuestsPlugin.getPlugin().getLoggerExpanded()
+					.debug("Player " + request.getDebugPlayerName() + " has left before their datas were loaded.");
+			CompletableFuture<Void> cleanup;
+			if (request.isAccountCreated()) {
+				cleanup = removeAccount(account);
+				cleanup.whenComplete(QuestsPlugin.getPlugin().getLoggerExpanded()
+						.logError("An error occurred while removing newly created account"));
+			} else {
+				cleanup = unloadAccount(account);
+				trackUnload(uuid, cleanup);
+			}
+			// a load started since the player joined again waits for this one to be cleaned up
+			cleanup.whenComplete((__, cleanupEx) -> {
+				if (cleanupEx == null) {
+					settled.complete(null);
+				} else
+					settled.completeExceptionally(cleanupEx);
+			});
+			future.completeExceptionally(new IllegalStateException("Player left before the end of the load"));
+			return;
+		}
 
-		String loadMessage =
-				"Completed load of " + uuid + " (" + request.getAccount().debugName() + ") datas within "
-						+ (System.currentTimeMillis() - time) + " ms (" + request.getAccount().getQuestEntries().size()
-						+ " quests, " + request.getAccount().getPoolDatas().size() + " pools)";
+		settled.complete(null);
+		cachedAccounts.put(uuid, account);
+		readyRequests.put(uuid, request);
+		ReoQuestModule.inst().logJoin(uuid, account);
 
+		String loadMessage = "Completed load of " + request.getDebugPlayerName() + " (" + account.debugName()
+				+ ") datas within " + (System.currentTimeMillis() - request.getJoinTimestamp()) + " ms ("
+				+ account.getQuestEntries().size() + " quests, " + account.getPoolDatas().size() + " pools)";
 		if (request.getLoadedFrom() != null)
 			loadMessage += " | Loaded from " + request.getLoadedFrom();
-
 		QuestsPlugin.getPlugin().getLoggerExpanded().debug(loadMessage);
 
+		future.complete(request);
+		fireAccountJoin(uuid);
+
+		Bukkit.getScheduler().runTaskLater(BeautyQuests.getInstance(), () -> {
+			if (readyRequests.get(uuid) == request && prefetches.get(uuid) == future) {
+				// the player has not joined this server after the prefetch
+				QuestsPlugin.getPlugin().getLoggerExpanded()
+						.debug("Discarding prefetched datas of " + request.getDebugPlayerName());
+				discardPrefetch(uuid);
+				PlayerAccountImplementation cached = cachedAccounts.remove(uuid);
+				if (cached != null)
+					trackUnload(uuid, unloadAccount(cached));
+			}
+		}, PREFETCH_EXPIRATION_TICKS);
 	}
 
-	private boolean tryLoad(@NotNull Player p, long time) {
-
-		AccountFetchRequest request = new AccountFetchRequest(p.getUniqueId(), time, true, true);
-		load(request);
-
-		if (!request.isFinished() || request.getAccount() == null) {
-			QuestsPlugin.getPlugin().getLoggerExpanded().severe("The account of " + p.getName() + " has not been properly loaded.");
-			return true;
+	/**
+	 * Must be called on the server thread when a player joins. The {@link PlayerAccountJoinEvent} is
+	 * called immediately if their datas are already loaded, or as soon as they are.
+	 *
+	 * @param p player who has joined
+	 */
+	public void playerJoined(@NotNull Player p) {
+		UUID uuid = p.getUniqueId();
+		cachedPlayerNames.put(uuid, p.getName());
+		joinTimes.put(uuid, System.nanoTime());
+		CompletableFuture<AccountFetchRequest> future = prefetch(uuid); // already started in most cases
+		if (!future.isDone()) {
+			Bukkit.getScheduler().runTaskLater(BeautyQuests.getInstance(), () -> {
+				if (!future.isDone() && p.isOnline()) {
+					joinTimeouts.increment();
+					QuestsPlugin.getPlugin().getLoggerExpanded().warning("Datas of " + p.getName()
+							+ " are still not loaded " + JOIN_TIMEOUT_TICKS / 20 + " seconds after they joined.");
+				}
+			}, JOIN_TIMEOUT_TICKS);
 		}
+		fireAccountJoin(uuid);
+	}
 
-		if (!p.isOnline()) {
-			if (request.isAccountCreated()) {
-				QuestsPlugin.getPlugin().getLoggerExpanded().debug(
-						"New account registered for " + p.getName() + "... but deleted as player left before loading.");
-				removeAccount(request.getAccount()).whenComplete(
-						QuestsPlugin.getPlugin().getLoggerExpanded().logError("An error occurred while removing newly created account"));
-			}
-			return false;
-		}
+	/**
+	 * Must be called on the server thread when a player leaves, so that a load still running for them
+	 * does not cache their account.
+	 *
+	 * @param uuid UUID of the player who has left
+	 */
+	public void playerLeft(@NotNull UUID uuid) {
+		joinTimes.remove(uuid);
+		CompletableFuture<AccountFetchRequest> future = prefetches.get(uuid);
+		if (future != null && !future.isDone())
+			prefetches.remove(uuid, future);
+		// if the account was loaded but the join event not called yet, the account is in the cache and
+		// will be unloaded as usual
+		readyRequests.remove(uuid);
+	}
 
-		if (request.isAccountCreated())
-			QuestsPlugin.getPlugin().getLoggerExpanded().debug(
-					"New account registered for " + p.getName() + " (" + request.getAccount().abstractAcc.getIdentifier()
-							+ "), index " + request.getAccount().index + " via " + DebugUtils.stackTraces(2, 4));
-
-		if (!request.getAccount().getOfflinePlayer().equals(p)) {
-			QuestsPlugin.getPlugin().getLogger()
-					.severe("UUID mismatch between player " + p.getName() + " (" + p.getUniqueId() + ") and loaded account "
-							+ request.getAccount().debugName());
-			return false;
-		}
+	private void fireAccountJoin(@NotNull UUID uuid) {
+		Player player = Bukkit.getPlayer(uuid);
+		if (player == null || !readyRequests.containsKey(uuid))
+			return;
+		AccountFetchRequest request = readyRequests.remove(uuid);
+		prefetches.remove(uuid);
+		Long joinTime = joinTimes.remove(uuid);
+		if (joinTime != null)
+			joinTimings.recordSince(joinTime);
+		Bukkit.getPluginManager().callEvent(new PlayerAccountJoinEvent(request.getAccount(), request.isAccountCreated()));
+	}
 
-		cachedAccounts.put(p.getUniqueId(), request.getAccount());
-		QuestsListener.addAccountRequest(request);
+	private void discardPrefetch(@NotNull UUID uuid) {
+		prefetches.remove(uuid);
+		readyRequests.remove(uuid);
+	}
 
-		String loadMessage =
-				"Completed load of " + p.getName() + " (" + request.getAccount().debugName() + ") datas within "
-						+ (System.currentTimeMillis() - time) + " ms (" + request.getAccount().getQuestEntries().size()
-						+ " quests, " + request.getAccount().getPoolDatas().size() + " pools)";
+	private void trackUnload(@NotNull UUID uuid, @NotNull CompletableFuture<Void> unload) {
+		pendingUnloads.put(uuid, unload);
+		unload.whenComplete((__, ___) -> pendingUnloads.remove(uuid, unload));
+	}
 
-		if (request.getLoadedFrom() != null)
-			loadMessage += " | Loaded from " + request.getLoadedFrom();
+	/**
+	 * @return time spent on the main thread to copy the datas of an account before a save
+	 */
+	public @NotNull TimingStatistics getSnapshotTimings() {
+		return snapshotTimings;
+	}
 
-		QuestsPlugin.getPlugin().getLoggerExpanded().debug(loadMessage);
+	/**
+	 * @return time spent by players between their join and the moment their account was ready
+	 */
+	public @NotNull TimingStatistics getJoinTimings() {
+		return joinTimings;
+	}
 
-		/*
-		Bukkit.getScheduler().runTask(BeautyQuests.getInstance(), () -> {
+	/**
+	 * @return amount of joins for which the account was not loaded within the join timeout
+	 */
+	public long getJoinTimeouts() {
+		return joinTimeouts.sum();
+	}
 
-			if (p.isOnline()) {
-				Bukkit.getPluginManager()
-						.callEvent(new PlayerAccountJoinEvent(request.getAccount(), request.isAccountCreated()));
-			} else {
-				QuestsPlugin.getPlugin().getLoggerExpanded().warning(
-						"Player " + p.getName() + " has quit the server while loading its datas. This may be a bug.");
+	/**
+	 * @return amount of account loads which have failed
+	 */
+	public long getJoinFailures() {
+		return joinFailures.sum();
+	}
 
-				if (request.isAccountCreated())
-					removeAccount(request.getAccount()).whenComplete(
-							QuestsPlugin.getPlugin().getLoggerExpanded().logError("An error occurred while removing newly created account"));
-			}
-		});
-		 */
-		return false;
+	public int getPendingPrefetches() {
+		return prefetches.size();
 	}
 
 	public synchronized void unloadPlayer(@NotNull Player p) {
@@ -241,25 +441,50 @@ public abstract class AbstractPlayersManager implements PlayersManager {
 		if (acc == null) return;
 		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Unloading player " + p.getName() + "... (" + acc.getQuestEntries().size() + " quests, " + acc.getPoolDatas().size() + " pools)");
 		Bukkit.getPluginManager().callEvent(new PlayerAccountLeaveEvent(acc));
-		unloadAccount(acc);
+		trackUnload(p.getUniqueId(), unloadAccount(acc));
 		cachedAccounts.remove(p.getUniqueId());
 	}
 
 
-	public synchronized void reorpgUnload(@NotNull UUID uuid) {
-		PlayerAccountImplementation acc = cachedAccounts.get(uuid);
-		if (acc == null) return;
-		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Unloading player " + uuid + "... (" + acc.getQuestEntries().size() + " quests, " + acc.getPoolDatas().size() + " pools)");
-		Bukkit.getScheduler().runTask(BeautyQuests.getInstance(), () -> {
-			Bukkit.getPluginManager().callEvent(new PlayerAccountLeaveEvent(acc));
+	/**
+	 * Unloads the account of a player who has left, for instance when the proxy announces it. The
+	 * account is removed from the cache and its snapshot taken on the server thread, like any other
+	 * edition of the accounts; when called from another thread, this method then waits at most 5
+	 * seconds for the account to be written.
+	 *
+	 * @param uuid UUID of the player
+	 */
+	public void reorpgUnload(@NotNull UUID uuid) {
+		CompletableFuture<CompletableFuture<Void>> unloadStarted = new CompletableFuture<>();
+		QuestUtils.runOrSync(() -> {
+			try {
+				unloadStarted.complete(reorpgUnloadSync(uuid));
+			} catch (Throwable ex) {
+				unloadStarted.completeExceptionally(ex);
+			}
 		});
+		if (Bukkit.isPrimaryThread())
+			return;
 		try {
-			unloadAccount(acc).get(5000L, java.util.concurrent.TimeUnit.MILLISECONDS);
-			ReoQuestModule.inst().logQuit(uuid, acc);
+			long deadline = System.currentTimeMillis() + 5000L;
+			CompletableFuture<Void> unload = unloadStarted.get(5000L, java.util.concurrent.TimeUnit.MILLISECONDS);
+			if (unload != null)
+				unload.get(Math.max(0, deadline - System.currentTimeMillis()), java.util.concurrent.TimeUnit.MILLISECONDS);
 		} catch (Exception e) {
 			QuestsPlugin.getPlugin().getLoggerExpanded().severe("[레오퀘스트] An error occurred while unloading datas of " + uuid + ".", e);
 		}
+	}
+
+	private @Nullable CompletableFuture<Void> reorpgUnloadSync(@NotNull UUID uuid) {
+		PlayerAccountImplementation acc = cachedAccounts.get(uuid);
+		if (acc == null) return null;
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Unloading player " + uuid + "... (" + acc.getQuestEntries().size() + " quests, " + acc.getPoolDatas().size() + " pools)");
+		Bukkit.getPluginManager().callEvent(new PlayerAccountLeaveEvent(acc));
+		CompletableFuture<Void> unload = unloadAccount(acc);
+		trackUnload(uuid, unload);
 		cachedAccounts.remove(uuid);
+		ReoQuestModule.inst().logQuit(uuid, acc);
+		return unload;
 	}
 
 	@Override
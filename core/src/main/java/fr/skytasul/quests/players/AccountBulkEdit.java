@@ -0,0 +1,129 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.BeautyQuests;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+
+/**
+ * Applies a mutation to every account of a players manager which stores its accounts locally.
+ * <p>
+ * The accounts which are not in memory are read from the storage, edited and written back by an
+ * {@link AccountFilesBulkOperation}, with the lock of the account held for the whole operation so that
+ * a player joining in the meantime cannot load the previous datas. The accounts in memory are only
+ * edited by the main thread, like the rest of the player datas: they are handed to it once the
+ * workers are done. Those which have been unloaded in between are visited again from the storage.
+ */
+class AccountBulkEdit {
+
+	private final @NotNull String name;
+	private final int parallelism;
+	private final @Nullable CommandSender sender;
+	private final @NotNull AccountStorage storage;
+
+	AccountBulkEdit(@NotNull String name, int parallelism, @Nullable CommandSender sender,
+			@NotNull AccountStorage storage) {
+		this.name = name;
+		this.parallelism = parallelism;
+		this.sender = sender;
+		this.storage = storage;
+	}
+
+	/**
+	 * Runs the operation and blocks until all accounts have been edited. Must not be called from the
+	 * main thread.
+	 *
+	 * @param indexes indexes of all the accounts
+	 * @param mutation edits an account and returns <code>true</code> if it has been changed
+	 * @return amount of changed accounts
+	 */
+	public int run(@NotNull Collection<Integer> indexes, @NotNull Predicate<PlayerAccountImplementation> mutation) {
+		int amount = 0;
+		Collection<Integer> remaining = indexes;
+		while (!remaining.isEmpty()) {
+			Queue<Integer> inMemory = new ConcurrentLinkedQueue<>();
+			amount += new AccountFilesBulkOperation(name, remaining, parallelism, sender).run(index -> {
+				Lock lock = storage.getLock(index);
+				lock.lock();
+				try {
+					if (storage.getAccountInMemory(index) != null) {
+						inMemory.add(index);
+						return false;
+					}
+					return storage.editStoredAccount(index, mutation);
+				} finally {
+					lock.unlock();
+				}
+			});
+			if (inMemory.isEmpty())
+				break;
+
+			List<Integer> unloaded = new ArrayList<>();
+			amount += callSync(() -> {
+				int edited = 0;
+				for (int index : inMemory) {
+					PlayerAccountImplementation acc = storage.getAccountInMemory(index);
+					if (acc == null) {
+						unloaded.add(index);
+					} else if (mutation.test(acc)) {
+						storage.accountEdited(acc);
+						edited++;
+					}
+				}
+				return edited;
+			});
+			remaining = unloaded;
+		}
+		return amount;
+	}
+
+	private static int callSync(Callable<Integer> task) {
+		try {
+			return Bukkit.getScheduler().callSyncMethod(BeautyQuests.getInstance(), task).get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(ex);
+		} catch (ExecutionException ex) {
+			throw new CompletionException(ex.getCause());
+		}
+	}
+
+	interface AccountStorage {
+
+		/**
+		 * @return the lock held while the account is loaded from the storage or edited there
+		 */
+		@NotNull
+		Lock getLock(int index);
+
+		/**
+		 * @return the instance of the account which is loaded, pending unload or being saved, if any
+		 */
+		@Nullable
+		PlayerAccountImplementation getAccountInMemory(int index);
+
+		/**
+		 * Reads an account from the storage, applies the mutation and writes it back if it has been
+		 * changed. Called with the lock of the account held.
+		 *
+		 * @return <code>true</code> if the account has been changed
+		 */
+		boolean editStoredAccount(int index, @NotNull Predicate<PlayerAccountImplementation> mutation) throws Exception;
+
+		/**
+		 * Called on the main thread when an account in memory has been changed, so that it can be saved
+		 * if it is not loaded anymore.
+		 */
+		void accountEdited(@NotNull PlayerAccountImplementation acc);
+
+	}
+
+}
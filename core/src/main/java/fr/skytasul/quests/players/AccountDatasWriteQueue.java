@@ -0,0 +1,187 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.BeautyQuests;
+import fr.skytasul.quests.api.QuestsPlugin;
+import fr.skytasul.quests.api.data.SQLDataSaver;
+import fr.skytasul.quests.utils.SQLDatabase;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Coalescing writer for the custom account data columns of the database players manager.
+ * <p>
+ * Only the latest value of each (account, column) pair is kept. On flush, all pending columns of an
+ * account are written with a single <code>UPDATE</code>, and accounts sharing the same set of
+ * columns are sent in the same JDBC batch. Account resets go through the same pipeline: they
+ * replace every pending value of the account by the column defaults, so a reset can never be
+ * reordered with a write made before or after it.
+ * <p>
+ * Only one flush is in flight at a time. The values of a failed flush are queued again under the
+ * values set since, which are necessarily newer as no other flush could have written them.
+ */
+class AccountDatasWriteQueue {
+
+	private static final int FLUSH_PERIOD_TICKS = 20;
+
+	private final @NotNull SQLDatabase database;
+	private final @NotNull String table;
+	private final @NotNull Collection<SQLDataSaver<?>> columns;
+
+	private final Map<Integer, Map<SQLDataSaver<?>, Object>> pending = new ConcurrentHashMap<>();
+
+	private @Nullable BukkitTask task;
+	private @Nullable CompletableFuture<Void> inFlight;
+
+	AccountDatasWriteQueue(@NotNull SQLDatabase database, @NotNull String table,
+			@NotNull Collection<SQLDataSaver<?>> columns) {
+		this.database = database;
+		this.table = table;
+		this.columns = columns;
+	}
+
+	public void start() {
+		if (task != null)
+			throw new IllegalStateException("Account datas write queue already started");
+		task = Bukkit.getScheduler().runTaskTimerAsynchronously(BeautyQuests.getInstance(), this::flush,
+				FLUSH_PERIOD_TICKS, FLUSH_PERIOD_TICKS);
+	}
+
+	/**
+	 * Stops the flush timer and synchronously writes everything still pending.
+	 */
+	public void close() {
+		if (task != null) {
+			task.cancel();
+			task = null;
+		}
+		awaitInFlight();
+		Map<Integer, Map<SQLDataSaver<?>, Object>> accounts = drain();
+		if (accounts.isEmpty())
+			return;
+		QuestsPlugin.getPlugin().getLoggerExpanded()
+				.debug("Flushing pending account datas of " + accounts.size() + " accounts on shutdown");
+		database.run(connection -> write(connection, accounts));
+	}
+
+	public void set(int accountID, @NotNull SQLDataSaver<?> column, @Nullable Object value) {
+		pending.compute(accountID, (__, values) -> {
+			if (values == null)
+				values = new HashMap<>();
+			values.put(column, value);
+			return values;
+		});
+	}
+
+	public void reset(int accountID) {
+		if (columns.isEmpty())
+			return;
+		pending.compute(accountID, (__, values) -> {
+			if (values == null)
+				values = new HashMap<>();
+			for (SQLDataSaver<?> column : columns) {
+				values.put(column, column.getWrappedData().getDefaultValue());
+			}
+			return values;
+		});
+	}
+
+	public int getPendingAmount() {
+		return pending.size();
+	}
+
+	/**
+	 * Writes the pending values, unless a flush is already in flight: they are then left for the next
+	 * flush.
+	 *
+	 * @return a future completed once the flush in flight is done
+	 */
+	public synchronized @NotNull CompletableFuture<Void> flush() {
+		if (inFlight != null && !inFlight.isDone())
+			return inFlight;
+
+		Map<Integer, Map<SQLDataSaver<?>, Object>> accounts = drain();
+		if (accounts.isEmpty())
+			return CompletableFuture.completedFuture(null);
+
+		return inFlight = database.runAsync(connection -> write(connection, accounts)).whenComplete((__, ex) -> {
+			if (ex != null) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while saving account datas of "
+						+ accounts.size() + " accounts. They will be retried.", ex);
+				accounts.forEach((accountID, values) -> pending.merge(accountID, values, (newer, failed) -> {
+					failed.putAll(newer); // values set after the failed flush win
+					return failed;
+				}));
+			}
+		});
+	}
+
+	private void awaitInFlight() {
+		CompletableFuture<Void> flush;
+		synchronized (this) {
+			flush = inFlight;
+		}
+		if (flush == null)
+			return;
+		try {
+			flush.join();
+		} catch (Exception ex) {
+			// already logged, and its values are pending again
+		}
+	}
+
+	private Map<Integer, Map<SQLDataSaver<?>, Object>> drain() {
+		Map<Integer, Map<SQLDataSaver<?>, Object>> accounts = new HashMap<>();
+		for (Integer accountID : pending.keySet()) {
+			Map<SQLDataSaver<?>, Object> values = pending.remove(accountID);
+			if (values != null)
+				accounts.put(accountID, values);
+		}
+		return accounts;
+	}
+
+	private void write(Connection connection, Map<Integer, Map<SQLDataSaver<?>, Object>> accounts)
+			throws SQLException {
+		// groups accounts by updated columns so that each distinct UPDATE statement is prepared once
+		Map<List<SQLDataSaver<?>>, List<Integer>> groups = new HashMap<>();
+		for (Map.Entry<Integer, Map<SQLDataSaver<?>, Object>> entry : accounts.entrySet()) {
+			List<SQLDataSaver<?>> updated = entry.getValue().keySet().stream()
+					.sorted(Comparator.comparing(column -> column.getWrappedData().getColumnName()))
+					.collect(Collectors.toList());
+			groups.computeIfAbsent(updated, __ -> new ArrayList<>()).add(entry.getKey());
+		}
+
+		for (Map.Entry<List<SQLDataSaver<?>>, List<Integer>> group : groups.entrySet()) {
+			List<SQLDataSaver<?>> updated = group.getKey();
+			String sql = updated.stream()
+					.map(column -> column.getWrappedData().getColumnName() + " = ?")
+					.collect(Collectors.joining(", ", "UPDATE " + table + " SET ", " WHERE id = ?"));
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				for (int accountID : group.getValue()) {
+					Map<SQLDataSaver<?>, Object> values = accounts.get(accountID);
+					int i = 1;
+					for (SQLDataSaver<?> column : updated) {
+						setInStatement(column, statement, i++, values.get(column));
+					}
+					statement.setInt(i, accountID);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+		}
+	}
+
+	private static <T> void setInStatement(SQLDataSaver<T> column, PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		column.setInStatement(statement, index, (T) value);
+	}
+
+}
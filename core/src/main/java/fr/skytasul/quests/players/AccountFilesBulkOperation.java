@@ -0,0 +1,116 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.api.QuestsPlugin;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Visits a set of player accounts with a bounded amount of worker threads. Each worker handles one
+ * account at a time, so no more than {@link #parallelism} accounts are held in memory by the
+ * operation. Progress and throughput are periodically sent to the command sender, if any.
+ */
+class AccountFilesBulkOperation {
+
+	private static final long PROGRESS_INTERVAL = 2000;
+
+	private final @NotNull String name;
+	private final int @NotNull [] indexes;
+	private final int parallelism;
+	private final @Nullable CommandSender sender;
+
+	private final AtomicInteger cursor = new AtomicInteger();
+	private final AtomicInteger visited = new AtomicInteger();
+	private final AtomicInteger edited = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicLong lastReport = new AtomicLong();
+	private long start;
+
+	AccountFilesBulkOperation(@NotNull String name, @NotNull Collection<Integer> indexes, int parallelism,
+			@Nullable CommandSender sender) {
+		this.name = name;
+		this.indexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+		this.parallelism = Math.max(1, Math.min(parallelism, this.indexes.length));
+		this.sender = sender;
+	}
+
+	/**
+	 * Runs the operation and blocks until all accounts have been visited.
+	 *
+	 * @param visitor edits one account and returns <code>true</code> if it has been changed
+	 * @return amount of changed accounts
+	 */
+	public int run(@NotNull AccountVisitor visitor) {
+		start = System.currentTimeMillis();
+		lastReport.set(start);
+		report("§7Starting " + name + " on " + indexes.length + " accounts with " + parallelism + " workers...");
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<?>> workers = new ArrayList<>(parallelism);
+			for (int i = 0; i < parallelism; i++) {
+				workers.add(executor.submit(() -> work(visitor)));
+			}
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(ex);
+		} catch (ExecutionException ex) {
+			throw new CompletionException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		long time = System.currentTimeMillis() - start;
+		report("§aFinished " + name + ": " + visited.get() + " accounts visited, " + edited.get() + " edited, "
+				+ failed.get() + " failed in " + time + " ms (" + throughput(visited.get(), time) + " accounts/s).");
+		return edited.get();
+	}
+
+	private void work(AccountVisitor visitor) {
+		int i;
+		while ((i = cursor.getAndIncrement()) < indexes.length) {
+			int index = indexes[i];
+			try {
+				if (visitor.visit(index))
+					edited.incrementAndGet();
+			} catch (Exception ex) {
+				failed.incrementAndGet();
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred during " + name + " on account " + index, ex);
+			}
+			int done = visited.incrementAndGet();
+
+			long now = System.currentTimeMillis();
+			long last = lastReport.get();
+			if (now - last >= PROGRESS_INTERVAL && lastReport.compareAndSet(last, now))
+				report("§7" + name + ": " + done + "/" + indexes.length + " accounts ("
+						+ throughput(done, now - start) + " accounts/s)");
+		}
+	}
+
+	private void report(String message) {
+		if (sender != null)
+			sender.sendMessage(message);
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug(message.substring(2));
+	}
+
+	private static long throughput(int amount, long time) {
+		return time == 0 ? amount : amount * 1000L / time;
+	}
+
+	@FunctionalInterface
+	interface AccountVisitor {
+
+		boolean visit(int index) throws Exception;
+
+	}
+
+}
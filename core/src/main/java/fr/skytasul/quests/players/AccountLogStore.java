@@ -0,0 +1,492 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.api.QuestsPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured storage of player accounts in a few segment files.
+ * <p>
+ * Each save of an account appends a record to the last segment, and an in-memory index keeps the
+ * location of the latest record of every account: a load is a single positioned read. Deletions
+ * append a tombstone record. Segments are sealed once they reach their maximum size, and
+ * sealed segments mostly made of outdated records are compacted by {@link #compact()}: their live
+ * records are copied to a new file which then replaces the segment. A tombstone is only kept as long
+ * as an older segment holds a record of its account.
+ * <p>
+ * Record layout: payload length, CRC32 of the payload, then the payload: record type, account index,
+ * identifier and account datas. On opening, the index is rebuilt by scanning the segments, and a
+ * record partially written during a crash at the end of the last segment is truncated.
+ */
+class AccountLogStore {
+
+	private static final long SEGMENT_MAX_SIZE = 16L * 1024 * 1024;
+	private static final double COMPACTION_GARBAGE_RATIO = 0.5;
+	private static final int HEADER_SIZE = 8;
+	/** Length of the tombstones written by compactions, which do not keep the identifier */
+	private static final int COMPACTED_TOMBSTONE_LENGTH = HEADER_SIZE + 1 + 4 + 2;
+
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_DELETE = 2;
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("accounts-(\\d+)\\.log");
+	private static final String COMPACTION_SUFFIX = ".compact";
+
+	private final @NotNull Path directory;
+	private final long segmentMaxSize;
+
+	private final List<Segment> segments = new ArrayList<>();
+	private final Map<Integer, Location> locations = new HashMap<>();
+	private final Map<Integer, String> identifiers = new HashMap<>();
+	/**
+	 * Tombstones of deleted accounts which still hide a record of an older segment. Other tombstones are
+	 * counted as garbage.
+	 */
+	private final Map<Integer, Location> tombstones = new HashMap<>();
+
+	private final Object compactionLock = new Object();
+
+	AccountLogStore(@NotNull Path directory) {
+		this(directory, SEGMENT_MAX_SIZE);
+	}
+
+	AccountLogStore(@NotNull Path directory, long segmentMaxSize) {
+		this.directory = directory;
+		this.segmentMaxSize = segmentMaxSize;
+	}
+
+	/**
+	 * Opens all segments and rebuilds the index.
+	 *
+	 * @return the identifiers of all the stored accounts, by account index
+	 */
+	public synchronized @NotNull Map<Integer, String> open() throws IOException {
+		Files.createDirectories(directory);
+		List<Path> files;
+		try (Stream<Path> stream = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) stream::iterator) {
+				if (file.getFileName().toString().endsWith(COMPACTION_SUFFIX))
+					Files.delete(file); // unfinished compaction, the segment is still intact
+			}
+		}
+		try (Stream<Path> stream = Files.list(directory)) {
+			files = stream.filter(file -> SEGMENT_NAME.matcher(file.getFileName().toString()).matches())
+					.sorted(Comparator.comparingLong(AccountLogStore::segmentID))
+					.collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			Segment segment = new Segment(segmentID(file), file);
+			segments.add(segment);
+			scan(segment);
+		}
+		if (segments.isEmpty())
+			segments.add(new Segment(0, directory.resolve("accounts-0.log")));
+		QuestsPlugin.getPlugin().getLoggerExpanded()
+				.debug("Opened " + segments.size() + " account segments containing " + locations.size() + " accounts");
+		return new HashMap<>(identifiers);
+	}
+
+	private void scan(Segment segment) throws IOException {
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (position < segment.size) {
+			header.clear();
+			if (readFully(segment.channel, header, position) < HEADER_SIZE) {
+				truncate(segment, position, "incomplete record header");
+				return;
+			}
+			header.flip();
+			int length = header.getInt();
+			long checksum = header.getInt() & 0xFFFFFFFFL;
+			if (length < 7 || position + HEADER_SIZE + length > segment.size) {
+				truncate(segment, position, "incomplete record");
+				return;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(segment.channel, payload, position + HEADER_SIZE);
+			if (crc(payload.array()) != checksum) {
+				truncate(segment, position, "corrupted record");
+				return;
+			}
+			payload.flip();
+			byte type = payload.get();
+			int index = payload.getInt();
+			String identifier = readString(payload);
+
+			Location location = new Location(segment, position, HEADER_SIZE + length);
+			forget(index);
+			if (type == RECORD_PUT) {
+				locations.put(index, location);
+				identifiers.put(index, identifier);
+				segment.keys.add(index);
+			} else {
+				addTombstone(index, location);
+			}
+			position += location.length;
+		}
+	}
+
+	private void truncate(Segment segment, long position, String reason) throws IOException {
+		QuestsPlugin.getPlugin().getLoggerExpanded().warning("Truncating account segment " + segment.file.getFileName()
+				+ " at position " + position + " (" + reason + "). The last save before a crash may have been lost.");
+		segment.channel.truncate(position);
+		segment.size = position;
+	}
+
+	public synchronized @NotNull Map<Integer, String> getIdentifiers() {
+		return new HashMap<>(identifiers);
+	}
+
+	public synchronized boolean contains(int index) {
+		return locations.containsKey(index);
+	}
+
+	public synchronized @NotNull Set<Integer> getIndexes() {
+		return new HashSet<>(locations.keySet());
+	}
+
+	/**
+	 * Reads the latest datas of an account with a single positioned read.
+	 *
+	 * @param index account index
+	 * @return the datas of the account, or <code>null</code> if it is not stored
+	 */
+	public synchronized byte @Nullable [] read(int index) throws IOException {
+		Location location = locations.get(index);
+		if (location == null)
+			return null;
+		ByteBuffer record = ByteBuffer.allocate(location.length);
+		if (readFully(location.segment.channel, record, location.position) < location.length)
+			throw new IOException("Truncated record for account " + index);
+		record.flip();
+		record.position(HEADER_SIZE + 1 + 4);
+		readString(record);
+		byte[] datas = new byte[record.remaining()];
+		record.get(datas);
+		return datas;
+	}
+
+	/**
+	 * Appends the datas of an account. The previous record of this account becomes garbage.
+	 */
+	public synchronized void write(int index, @NotNull String identifier, byte @NotNull [] datas) throws IOException {
+		Location location = append(RECORD_PUT, index, identifier, datas);
+		forget(index);
+		locations.put(index, location);
+		identifiers.put(index, identifier);
+		location.segment.keys.add(index);
+	}
+
+	public synchronized void delete(int index) throws IOException {
+		String identifier = identifiers.get(index);
+		if (identifier == null)
+			return;
+		Location location = append(RECORD_DELETE, index, identifier, new byte[0]);
+		forget(index);
+		addTombstone(index, location);
+	}
+
+	private void forget(int index) {
+		Location previous = locations.remove(index);
+		if (previous != null)
+			previous.segment.garbage += previous.length;
+		identifiers.remove(index);
+		Location tombstone = tombstones.remove(index);
+		if (tombstone != null)
+			tombstone.segment.garbage += tombstone.length; // the newer record hides the older ones
+	}
+
+	private void addTombstone(int index, Location location) {
+		if (hasOlderRecord(index, location.segment)) {
+			tombstones.put(index, location);
+		} else
+			location.segment.garbage += location.length; // a tombstone is never read
+	}
+
+	/**
+	 * @return <code>true</code> if a segment older than the given one holds a record of the account,
+	 *         outdated or not
+	 */
+	private boolean hasOlderRecord(int index, Segment segment) {
+		for (Segment older : segments) {
+			if (older == segment)
+				return false;
+			if (older.keys.contains(index))
+				return true;
+		}
+		return false;
+	}
+
+	private Location append(byte type, int index, String identifier, byte[] datas) throws IOException {
+		ByteBuffer record = encode(type, index, identifier, datas);
+		Segment segment = getActiveSegment();
+		long position = segment.size;
+		while (record.hasRemaining()) {
+			position += segment.channel.write(record, position);
+		}
+		Location location = new Location(segment, segment.size, record.capacity());
+		segment.size = position;
+		return location;
+	}
+
+	private Segment getActiveSegment() throws IOException {
+		if (segments.isEmpty())
+			throw new IOException("The account store is closed");
+		Segment active = segments.get(segments.size() - 1);
+		if (active.size >= segmentMaxSize) {
+			active.channel.force(true);
+			active = new Segment(active.id + 1, directory.resolve("accounts-" + (active.id + 1) + ".log"));
+			segments.add(active);
+		}
+		return active;
+	}
+
+	/**
+	 * Flushes the written records to the disk.
+	 */
+	public synchronized void sync() throws IOException {
+		segments.get(segments.size() - 1).channel.force(false);
+	}
+
+	/**
+	 * Rewrites the sealed segments which mostly contain outdated records, keeping only their live
+	 * records.
+	 * <p>
+	 * The records are copied to a new file without holding the lock of the store, so that saves and
+	 * loads go on during the copy. Only the swap of the files is done under the lock: a record replaced
+	 * in the meantime is then counted as garbage of the new file.
+	 *
+	 * @return the amount of compacted segments
+	 */
+	public int compact() throws IOException {
+		synchronized (compactionLock) {
+			Set<Long> compacted = new HashSet<>();
+			Compaction compaction;
+			while ((compaction = prepareCompaction(compacted)) != null) {
+				compacted.add(compaction.segment.id);
+				Path temporary = directory.resolve(compaction.segment.file.getFileName() + COMPACTION_SUFFIX);
+				try {
+					copyRecords(compaction, temporary);
+					swap(compaction, temporary);
+				} finally {
+					Files.deleteIfExists(temporary);
+				}
+			}
+			return compacted.size();
+		}
+	}
+
+	private synchronized @Nullable Compaction prepareCompaction(Set<Long> compacted) {
+		for (int i = 0; i < segments.size() - 1; i++) {
+			Segment segment = segments.get(i);
+			if (compacted.contains(segment.id) || segment.garbage < segment.size * COMPACTION_GARBAGE_RATIO)
+				continue;
+
+			Compaction compaction = new Compaction(segment);
+			locations.forEach((index, location) -> {
+				if (location.segment == segment)
+					compaction.live.put(index, location);
+			});
+			tombstones.forEach((index, tombstone) -> {
+				if (tombstone.segment == segment)
+					compaction.tombstones.put(index, tombstone);
+			});
+			return compaction;
+		}
+		return null;
+	}
+
+	/**
+	 * Copies the live records of a sealed segment, which is not written anymore, to a new file.
+	 */
+	private void copyRecords(Compaction compaction, Path temporary) throws IOException {
+		try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (Map.Entry<Integer, Location> entry : compaction.live.entrySet()) {
+				Location location = entry.getValue();
+				ByteBuffer record = ByteBuffer.allocate(location.length);
+				if (readFully(compaction.segment.channel, record, location.position) < location.length)
+					throw new IOException("Truncated record for account " + entry.getKey());
+				record.flip();
+				compaction.copied.put(entry.getKey(), compaction.size);
+				compaction.size += writeFully(output, record, compaction.size);
+			}
+			// only the tombstones still hiding records of older segments are kept
+			for (int index : compaction.tombstones.keySet()) {
+				compaction.copiedTombstones.put(index, compaction.size);
+				compaction.size += writeFully(output, encode(RECORD_DELETE, index, "", new byte[0]), compaction.size);
+			}
+			output.force(true);
+		}
+	}
+
+	private synchronized void swap(Compaction compaction, Path temporary) throws IOException {
+		Segment segment = compaction.segment;
+		int position = segments.indexOf(segment);
+		if (position == -1)
+			return; // the store has been closed
+
+		segment.channel.close();
+		Segment rewritten = null;
+		if (compaction.size == 0) {
+			Files.delete(segment.file);
+			segments.remove(position);
+		} else {
+			Files.move(temporary, segment.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			rewritten = new Segment(segment.id, segment.file);
+			segments.set(position, rewritten);
+			for (Map.Entry<Integer, Long> copied : compaction.copied.entrySet()) {
+				Location previous = compaction.live.get(copied.getKey());
+				rewritten.keys.add(copied.getKey());
+				if (locations.get(copied.getKey()) == previous) {
+					locations.put(copied.getKey(), new Location(rewritten, copied.getValue(), previous.length));
+				} else {
+					rewritten.garbage += previous.length; // saved or deleted during the copy
+				}
+			}
+			for (Map.Entry<Integer, Long> copied : compaction.copiedTombstones.entrySet()) {
+				if (tombstones.get(copied.getKey()) == compaction.tombstones.get(copied.getKey())) {
+					tombstones.put(copied.getKey(),
+							new Location(rewritten, copied.getValue(), COMPACTED_TOMBSTONE_LENGTH));
+				} else {
+					rewritten.garbage += COMPACTED_TOMBSTONE_LENGTH; // saved again during the copy
+				}
+			}
+		}
+		// the outdated records of the segment are gone: the tombstones which only hid them are dropped
+		// on the next compaction of their segment
+		for (int index : segment.keys) {
+			if (rewritten != null && rewritten.keys.contains(index))
+				continue;
+			Location tombstone = tombstones.get(index);
+			if (tombstone != null && !hasOlderRecord(index, tombstone.segment)) {
+				tombstones.remove(index);
+				tombstone.segment.garbage += tombstone.length;
+			}
+		}
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Compacted account segment " + segment.file.getFileName()
+				+ " (" + compaction.live.size() + " live accounts)");
+	}
+
+	public synchronized void close() {
+		for (Segment segment : segments) {
+			try {
+				segment.channel.force(true);
+				segment.channel.close();
+			} catch (IOException ex) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("Cannot close account segment " + segment.file, ex);
+			}
+		}
+		segments.clear();
+		locations.clear();
+		identifiers.clear();
+		tombstones.clear();
+	}
+
+	private static ByteBuffer encode(byte type, int index, String identifier, byte[] datas) {
+		byte[] identifierBytes = identifier.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 2 + identifierBytes.length + datas.length);
+		payload.put(type).putInt(index).putShort((short) identifierBytes.length).put(identifierBytes).put(datas);
+
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.capacity());
+		record.putInt(payload.capacity()).putInt((int) crc(payload.array())).put(payload.array()).flip();
+		return record;
+	}
+
+	private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			total += channel.write(buffer, position + total);
+		}
+		return total;
+	}
+
+	private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + total);
+			if (read < 0)
+				break;
+			total += read;
+		}
+		return total;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static long crc(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		return crc.getValue();
+	}
+
+	private static long segmentID(Path file) {
+		Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+		if (!matcher.matches())
+			throw new IllegalArgumentException(file.toString());
+		return Long.parseLong(matcher.group(1));
+	}
+
+	private static class Segment {
+		private final long id;
+		private final Path file;
+		private final FileChannel channel;
+		/** Indexes of the accounts having a record in this segment, outdated or not */
+		private final Set<Integer> keys = new HashSet<>();
+		private long size;
+		private long garbage;
+
+		private Segment(long id, Path file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			this.size = channel.size();
+		}
+	}
+
+	private static class Compaction {
+		private final Segment segment;
+		private final Map<Integer, Location> live = new HashMap<>();
+		private final Map<Integer, Location> tombstones = new HashMap<>();
+		/** Position of the copied records in the new file */
+		private final Map<Integer, Long> copied = new HashMap<>();
+		private final Map<Integer, Long> copiedTombstones = new HashMap<>();
+		private long size;
+
+		private Compaction(Segment segment) {
+			this.segment = segment;
+		}
+	}
+
+	private static class Location {
+		private final Segment segment;
+		private final long position;
+		private final int length;
+
+		private Location(Segment segment, long position, int length) {
+			this.segment = segment;
+			this.position = position;
+			this.length = length;
+		}
+	}
+
+}
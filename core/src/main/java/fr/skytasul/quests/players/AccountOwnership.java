@@ -0,0 +1,166 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.api.QuestsPlugin;
+import fr.skytasul.quests.utils.SQLDialect;
+import org.jetbrains.annotations.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Fencing of player accounts shared by several servers through the same database.
+ * <p>
+ * A server loading an account claims it: the <code>owner_node</code> column is set to its node name
+ * and the <code>version</code> column is incremented, its new value being saved in
+ * <code>owner_version</code>. This value is the fencing token of the server for the account: a save
+ * is only accepted if the account is still owned by the node with the same token, and it increments
+ * <code>version</code> again. Once a server has written the last datas of an account, it releases
+ * it by clearing <code>owner_node</code>.
+ * <p>
+ * Before claiming an account owned by another node, the loading server waits a bit for the owner to
+ * release it. If it does not in time, the account is claimed anyway and all pending saves of the
+ * previous owner will be rejected.
+ */
+class AccountOwnership {
+
+	private static final long HANDOFF_POLL_INTERVAL = 100;
+
+	private final @NotNull String node;
+	private final long handoffTimeout;
+
+	private final String getOwners;
+	private final String claim;
+	private final String fence;
+	private final String release;
+	private final String releaseAll;
+
+	AccountOwnership(@NotNull String table, @NotNull String node, long handoffTimeout, @NotNull SQLDialect dialect) {
+		this.node = node;
+		this.handoffTimeout = handoffTimeout;
+
+		getOwners = "SELECT owner_node FROM " + table + " WHERE player_uuid = ?";
+		// MySQL evaluates the assignments from left to right, other engines use the values before the
+		// update: in both cases, owner_version gets the incremented version
+		claim = "UPDATE " + table + " SET version = version + 1, owner_version = "
+				+ (dialect.hasSequentialAssignments() ? "version" : "version + 1") + ", owner_node = ?"
+				+ " WHERE player_uuid = ?";
+		fence = "UPDATE " + table + " SET version = version + 1"
+				+ " WHERE id = ? AND owner_node = ? AND owner_version = ?";
+		release = "UPDATE " + table + " SET owner_node = NULL WHERE id = ? AND owner_node = ? AND owner_version = ?";
+		releaseAll = "UPDATE " + table + " SET owner_node = NULL WHERE owner_node = ?";
+	}
+
+	public @NotNull String getNode() {
+		return node;
+	}
+
+	/**
+	 * Reads the name of this node from a file, or generates a random one and saves it there the first
+	 * time. The name must stay the same across restarts, so that the accounts left owned by this node
+	 * after a crash are released on the next startup.
+	 *
+	 * @param file file in which the node name is stored
+	 * @return the node name
+	 */
+	static @NotNull String loadNodeID(@NotNull File file) throws IOException {
+		if (file.exists()) {
+			String node = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+			if (!node.isEmpty())
+				return node;
+		}
+		String node = UUID.randomUUID().toString();
+		Files.write(file.toPath(), node.getBytes(StandardCharsets.UTF_8));
+		return node;
+	}
+
+	/**
+	 * Claims all accounts of a player, after having waited for another node to release them.
+	 *
+	 * @param connection connection to the database
+	 * @param uuid UUID of the player
+	 * @return <code>true</code> if the accounts were released in time or not owned at all,
+	 *         <code>false</code> if they have been taken from another node
+	 */
+	public boolean claim(@NotNull Connection connection, @NotNull UUID uuid) throws SQLException {
+		String uuidString = uuid.toString();
+		long deadline = System.currentTimeMillis() + handoffTimeout;
+		String owner;
+		while ((owner = getForeignOwner(connection, uuidString)) != null && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(HANDOFF_POLL_INTERVAL);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for " + owner + " to release account of " + uuid);
+			}
+		}
+
+		if (owner != null)
+			QuestsPlugin.getPlugin().getLoggerExpanded().warning("The account of " + uuid + " has not been released by "
+					+ owner + " within " + handoffTimeout + " ms. Its pending saves will be rejected.");
+
+		try (PreparedStatement statement = connection.prepareStatement(claim)) {
+			statement.setString(1, node);
+			statement.setString(2, uuidString);
+			statement.executeUpdate();
+		}
+		return owner == null;
+	}
+
+	private String getForeignOwner(Connection connection, String uuid) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(getOwners)) {
+			statement.setString(1, uuid);
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					String owner = result.getString(1);
+					if (owner != null && !owner.equals(node))
+						return owner;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks that this node still owns the account with the given token and increments its version.
+	 * This locks the account row until the end of the transaction.
+	 *
+	 * @return <code>true</code> if the save is allowed
+	 */
+	public boolean fence(@NotNull Connection connection, int accountID, long ownerVersion) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(fence)) {
+			statement.setInt(1, accountID);
+			statement.setString(2, node);
+			statement.setLong(3, ownerVersion);
+			return statement.executeUpdate() != 0;
+		}
+	}
+
+	public void release(@NotNull Connection connection, int accountID, long ownerVersion) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(release)) {
+			statement.setInt(1, accountID);
+			statement.setString(2, node);
+			statement.setLong(3, ownerVersion);
+			statement.executeUpdate();
+		}
+	}
+
+	/**
+	 * Releases all accounts still owned by this node, used on startup once the journal has been
+	 * replayed: the node cannot own any account at this moment.
+	 *
+	 * @return amount of released accounts
+	 */
+	public int releaseAll(@NotNull Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(releaseAll)) {
+			statement.setString(1, node);
+			return statement.executeUpdate();
+		}
+	}
+
+}
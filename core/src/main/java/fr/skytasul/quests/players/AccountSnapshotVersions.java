@@ -0,0 +1,55 @@
+package fr.skytasul.quests.players;
+
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orders the asynchronous writes of account snapshots.
+ * <p>
+ * Each snapshot gets a version when it is taken. Writes of the same account are serialized, and a
+ * write is dropped if a more recent snapshot of this account has already been written, so that a
+ * periodic save finishing after the save of a player leaving the server cannot overwrite it.
+ */
+class AccountSnapshotVersions {
+
+	private final AtomicLong lastVersion = new AtomicLong();
+	private final Map<Integer, AtomicLong> writtenVersions = new ConcurrentHashMap<>();
+
+	/**
+	 * @return the version of a snapshot taken now
+	 */
+	public long next() {
+		return lastVersion.incrementAndGet();
+	}
+
+	/**
+	 * Writes a snapshot of an account, unless a more recent one has already been written.
+	 *
+	 * @param index index of the account
+	 * @param version version of the snapshot, obtained with {@link #next()} when it was taken
+	 * @param write writes the snapshot
+	 * @return <code>false</code> if the snapshot was stale and has not been written
+	 * @throws IOException if the write fails
+	 */
+	public boolean write(int index, long version, @NotNull SnapshotWrite write) throws IOException {
+		AtomicLong written = writtenVersions.computeIfAbsent(index, __ -> new AtomicLong());
+		synchronized (written) {
+			if (written.get() > version)
+				return false;
+			write.run();
+			written.set(version);
+			return true;
+		}
+	}
+
+	@FunctionalInterface
+	public interface SnapshotWrite {
+
+		public void run() throws IOException;
+
+	}
+
+}
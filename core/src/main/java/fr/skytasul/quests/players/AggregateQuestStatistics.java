@@ -0,0 +1,249 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.api.QuestsPlugin;
+import fr.skytasul.quests.api.players.LeaderboardEntry;
+import fr.skytasul.quests.api.players.QuestStatistics;
+import fr.skytasul.quests.players.accounts.GhostAccount;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Statistics of the file-based players managers, kept as in-memory aggregates.
+ * <p>
+ * Every time an account is written, and when one of its quests is started, finished or reset, its
+ * contribution (finished count and current stage of each of its quests) replaces the previous one
+ * and the aggregates are updated incrementally.
+ * <p>
+ * The contributions are written to a file when the players manager is unloaded, and read back on
+ * the next startup. If this file is missing, for instance after a crash, the aggregates are built
+ * again by a background pass over all the stored accounts, see
+ * {@link #contributeIfAbsent(PlayerAccountImplementation)}.
+ */
+class AggregateQuestStatistics extends CachedQuestStatistics {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private final Map<Integer, Contribution> contributions = new HashMap<>();
+	private final Map<Integer, QuestTotals> questTotals = new HashMap<>();
+	private final Map<Long, Map<Integer, Integer>> stageCounts = new HashMap<>();
+
+	/**
+	 * Replaces the contribution of an account by its current datas.
+	 */
+	public synchronized void contribute(@NotNull PlayerAccountImplementation acc) {
+		Contribution previous = contributions.put(acc.index, new Contribution(acc));
+		if (previous != null)
+			apply(previous, -1);
+		apply(contributions.get(acc.index), 1);
+	}
+
+	/**
+	 * Adds the contribution of an account read during the initial pass, unless the account has been
+	 * written in the meantime: its datas are then already newer.
+	 */
+	public synchronized void contributeIfAbsent(@NotNull PlayerAccountImplementation acc) {
+		if (!contributions.containsKey(acc.index))
+			contribute(acc);
+	}
+
+	public synchronized void remove(int index) {
+		Contribution previous = contributions.remove(index);
+		if (previous != null)
+			apply(previous, -1);
+	}
+
+	/**
+	 * Writes the contributions of all accounts. Must be called once all accounts have been written.
+	 */
+	public void save(@NotNull File file) throws IOException {
+		List<Contribution> copy;
+		synchronized (this) {
+			copy = new ArrayList<>(contributions.values());
+		}
+		Path temporary = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			output.writeInt(FORMAT_VERSION);
+			output.writeInt(copy.size());
+			for (Contribution contribution : copy) {
+				output.writeInt(contribution.index);
+				output.writeUTF(contribution.identifier);
+				output.writeBoolean(contribution.playerName != null);
+				if (contribution.playerName != null)
+					output.writeUTF(contribution.playerName);
+				output.writeInt(contribution.quests.length);
+				for (int i = 0; i < contribution.quests.length; i++) {
+					output.writeInt(contribution.quests[i]);
+					output.writeInt(contribution.finished[i]);
+					output.writeInt(contribution.branches[i]);
+					output.writeInt(contribution.stages[i]);
+				}
+			}
+		}
+		Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the contributions written by {@link #save(File)}, then deletes the file: as accounts are
+	 * written without updating it, it must not be read again if the server does not stop properly.
+	 *
+	 * @return <code>false</code> if the file does not exist or cannot be read, in which case the
+	 *         aggregates must be built from the stored accounts
+	 */
+	public boolean load(@NotNull File file) {
+		if (!file.exists())
+			return false;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+			if (input.readInt() != FORMAT_VERSION)
+				return false;
+			int size = input.readInt();
+			List<Contribution> read = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				int index = input.readInt();
+				String identifier = input.readUTF();
+				String playerName = input.readBoolean() ? input.readUTF() : null;
+				int[][] quests = new int[4][input.readInt()];
+				for (int j = 0; j < quests[0].length; j++) {
+					for (int k = 0; k < quests.length; k++)
+						quests[k][j] = input.readInt();
+				}
+				read.add(new Contribution(index, identifier, playerName, quests[0], quests[1], quests[2], quests[3]));
+			}
+			synchronized (this) {
+				for (Contribution contribution : read) {
+					if (!contributions.containsKey(contribution.index)) {
+						contributions.put(contribution.index, contribution);
+						apply(contribution, 1);
+					}
+				}
+			}
+			return true;
+		} catch (IOException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().warning("Cannot read the quest statistics from " + file.getName()
+					+ ", they will be computed again from the player accounts.", ex);
+			return false;
+		} finally {
+			file.delete();
+		}
+	}
+
+	private void apply(Contribution contribution, int sign) {
+		for (int i = 0; i < contribution.quests.length; i++) {
+			int questID = contribution.quests[i];
+			QuestTotals totals = questTotals.computeIfAbsent(questID, __ -> new QuestTotals());
+			int finished = contribution.finished[i];
+			if (finished > 0)
+				totals.finishedPlayers += sign;
+			totals.completions += (long) sign * finished;
+
+			int branch = contribution.branches[i];
+			if (branch >= 0) {
+				totals.inProgressPlayers += sign;
+				int stage = contribution.stages[i];
+				if (stage >= 0) {
+					Map<Integer, Integer> counts = stageCounts.computeIfAbsent(stageKey(questID, branch), __ -> new TreeMap<>());
+					if (counts.merge(stage, sign, Integer::sum) == 0)
+						counts.remove(stage);
+				}
+			}
+		}
+	}
+
+	private static long stageKey(int questID, int branchID) {
+		return ((long) questID << 32) | (branchID & 0xFFFFFFFFL);
+	}
+
+	@Override
+	protected synchronized @NotNull CompletableFuture<QuestStatistics> computeQuestStatistics(int questID) {
+		QuestTotals totals = questTotals.get(questID);
+		return CompletableFuture.completedFuture(totals == null ? new QuestStatistics(questID, 0, 0, 0)
+				: new QuestStatistics(questID, totals.inProgressPlayers, totals.finishedPlayers, totals.completions));
+	}
+
+	@Override
+	protected @NotNull CompletableFuture<List<LeaderboardEntry>> computeTopFinishers(int offset, int limit) {
+		List<Contribution> finishers;
+		synchronized (this) {
+			finishers = new ArrayList<>(contributions.size());
+			for (Contribution contribution : contributions.values()) {
+				if (contribution.totalFinished > 0)
+					finishers.add(contribution);
+			}
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			finishers.sort(Comparator.comparingLong((Contribution contribution) -> contribution.totalFinished).reversed()
+					.thenComparingInt(contribution -> contribution.index));
+			List<LeaderboardEntry> entries = new ArrayList<>(limit);
+			for (int i = offset; i < finishers.size() && entries.size() < limit; i++) {
+				Contribution contribution = finishers.get(i);
+				entries.add(new LeaderboardEntry(i + 1, contribution.identifier, contribution.playerName,
+						contribution.totalFinished));
+			}
+			return entries;
+		});
+	}
+
+	@Override
+	protected synchronized @NotNull CompletableFuture<Map<Integer, Integer>> computeStageDistribution(int questID,
+			int branchID) {
+		Map<Integer, Integer> counts = stageCounts.get(stageKey(questID, branchID));
+		return CompletableFuture.completedFuture(counts == null ? Collections.emptyMap() : new TreeMap<>(counts));
+	}
+
+	private static class QuestTotals {
+		private int inProgressPlayers;
+		private int finishedPlayers;
+		private long completions;
+	}
+
+	private static class Contribution {
+		private final int index;
+		private final @NotNull String identifier;
+		private final @Nullable String playerName;
+		private final int[] quests;
+		private final int[] finished;
+		private final int[] branches;
+		private final int[] stages;
+		private final long totalFinished;
+
+		private Contribution(PlayerAccountImplementation acc) {
+			this.index = acc.index;
+			this.identifier = acc.abstractAcc.getIdentifier();
+			this.playerName = acc.abstractAcc instanceof GhostAccount ? null : acc.abstractAcc.getOfflinePlayer().getName();
+
+			List<PlayerQuestEntryDataImplementation> entries = new ArrayList<>(acc.currentQuests.values());
+			quests = new int[entries.size()];
+			finished = new int[entries.size()];
+			branches = new int[entries.size()];
+			stages = new int[entries.size()];
+			long total = 0;
+			for (int i = 0; i < entries.size(); i++) {
+				PlayerQuestEntryDataImplementation entry = entries.get(i);
+				quests[i] = entry.getQuestID();
+				finished[i] = entry.getTimesFinished();
+				branches[i] = entry.getBranch();
+				stages[i] = entry.getStage();
+				total += finished[i];
+			}
+			this.totalFinished = total;
+		}
+
+		private Contribution(int index, @NotNull String identifier, @Nullable String playerName, int[] quests,
+				int[] finished, int[] branches, int[] stages) {
+			this.index = index;
+			this.identifier = identifier;
+			this.playerName = playerName;
+			this.quests = quests;
+			this.finished = finished;
+			this.branches = branches;
+			this.stages = stages;
+			this.totalFinished = Arrays.stream(finished).asLongStream().sum();
+		}
+	}
+
+}
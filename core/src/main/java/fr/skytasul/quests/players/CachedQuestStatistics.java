@@ -0,0 +1,82 @@
+package fr.skytasul.quests.players;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import fr.skytasul.quests.api.players.LeaderboardEntry;
+import fr.skytasul.quests.api.players.QuestStatistics;
+import fr.skytasul.quests.api.players.QuestStatisticsService;
+import fr.skytasul.quests.api.quests.Quest;
+import fr.skytasul.quests.api.quests.branches.QuestBranch;
+import org.jetbrains.annotations.NotNull;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Base of the {@link QuestStatisticsService} implementations, caching the computed futures for
+ * {@link #CACHE_DURATION} seconds. A future completed exceptionally is evicted so that the next
+ * request computes it again.
+ */
+abstract class CachedQuestStatistics implements QuestStatisticsService {
+
+	private static final long CACHE_DURATION = 60;
+
+	private final Cache<List<Object>, CompletableFuture<?>> cache =
+			CacheBuilder.newBuilder().expireAfterWrite(CACHE_DURATION, TimeUnit.SECONDS).build();
+
+	protected abstract @NotNull CompletableFuture<QuestStatistics> computeQuestStatistics(int questID);
+
+	protected abstract @NotNull CompletableFuture<List<LeaderboardEntry>> computeTopFinishers(int offset, int limit);
+
+	protected abstract @NotNull CompletableFuture<Map<Integer, Integer>> computeStageDistribution(int questID,
+			int branchID);
+
+	@Override
+	public @NotNull CompletableFuture<@NotNull QuestStatistics> getQuestStatistics(@NotNull Quest quest) {
+		int questID = quest.getId();
+		return cached(() -> computeQuestStatistics(questID), "quest", questID);
+	}
+
+	@Override
+	public @NotNull CompletableFuture<@NotNull List<@NotNull LeaderboardEntry>> getTopFinishers(int page, int pageSize) {
+		if (page < 0 || pageSize <= 0)
+			throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
+		return cached(() -> computeTopFinishers(page * pageSize, pageSize), "top", page, pageSize);
+	}
+
+	@Override
+	public @NotNull CompletableFuture<@NotNull Map<@NotNull Integer, @NotNull Integer>> getStageDistribution(
+			@NotNull QuestBranch branch) {
+		int questID = branch.getQuest().getId();
+		int branchID = branch.getId();
+		return cached(() -> computeStageDistribution(questID, branchID), "stages", questID, branchID);
+	}
+
+	@Override
+	public void invalidate() {
+		cache.invalidateAll();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> cached(Supplier<CompletableFuture<T>> computer, Object... key) {
+		List<Object> cacheKey = Arrays.asList(key);
+		try {
+			CompletableFuture<T> future = (CompletableFuture<T>) cache.get(cacheKey, () -> computer.get().whenComplete((__, ex) -> {
+				if (ex != null)
+					cache.invalidate(cacheKey);
+			}));
+			if (future.isCompletedExceptionally())
+				cache.invalidate(cacheKey); // failed before being put in the cache
+			return future;
+		} catch (ExecutionException ex) {
+			CompletableFuture<T> future = new CompletableFuture<>();
+			future.completeExceptionally(ex.getCause());
+			return future;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.api.players.LeaderboardEntry;
+import fr.skytasul.quests.api.players.QuestStatistics;
+import fr.skytasul.quests.utils.SQLDatabase;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Statistics computed by aggregate queries on the tables of {@link PlayersManagerDB}, served by
+ * the <code>idx_quest_progress</code> and <code>idx_account_finished</code> indexes.
+ */
+class DatabaseQuestStatistics extends CachedQuestStatistics {
+
+	private final @NotNull SQLDatabase database;
+
+	private final String questStatistics;
+	private final String topFinishers;
+	private final String stageDistribution;
+
+	DatabaseQuestStatistics(@NotNull SQLDatabase database, @NotNull String accountsTable,
+			@NotNull String questsTable) {
+		this.database = database;
+
+		questStatistics = "SELECT COUNT(CASE WHEN current_branch >= 0 THEN 1 END),"
+				+ " COUNT(CASE WHEN finished > 0 THEN 1 END), COALESCE(SUM(finished), 0)"
+				+ " FROM " + questsTable + " WHERE quest_id = ?";
+		topFinishers = "SELECT a.identifier, a.player_uuid, t.total FROM"
+				+ " (SELECT account_id, SUM(finished) AS total FROM " + questsTable
+				+ " GROUP BY account_id HAVING SUM(finished) > 0 ORDER BY total DESC, account_id LIMIT ? OFFSET ?) t"
+				+ " INNER JOIN " + accountsTable + " a ON a.id = t.account_id"
+				+ " ORDER BY t.total DESC, t.account_id";
+		stageDistribution = "SELECT current_stage, COUNT(*) FROM " + questsTable
+				+ " WHERE quest_id = ? AND current_branch = ? AND current_stage >= 0 GROUP BY current_stage";
+	}
+
+	@Override
+	protected @NotNull CompletableFuture<QuestStatistics> computeQuestStatistics(int questID) {
+		return database.executeAsync(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(questStatistics)) {
+				statement.setInt(1, questID);
+				try (ResultSet result = statement.executeQuery()) {
+					result.next();
+					return new QuestStatistics(questID, result.getInt(1), result.getInt(2), result.getLong(3));
+				}
+			}
+		});
+	}
+
+	@Override
+	protected @NotNull CompletableFuture<List<LeaderboardEntry>> computeTopFinishers(int offset, int limit) {
+		return database.executeAsync(connection -> {
+			List<LeaderboardEntry> entries = new ArrayList<>(limit);
+			try (PreparedStatement statement = connection.prepareStatement(topFinishers)) {
+				statement.setInt(1, limit);
+				statement.setInt(2, offset);
+				try (ResultSet result = statement.executeQuery()) {
+					while (result.next()) {
+						entries.add(new LeaderboardEntry(offset + entries.size() + 1, result.getString("identifier"),
+								getPlayerName(result.getString("player_uuid")), result.getLong("total")));
+					}
+				}
+			}
+			return entries;
+		});
+	}
+
+	/**
+	 * @param uuid UUID column of an account, which is <code>NULL</code> for legacy accounts
+	 * @return the name of the player, or <code>null</code> if unknown
+	 */
+	private static @Nullable String getPlayerName(@Nullable String uuid) {
+		if (uuid == null)
+			return null;
+		try {
+			return Bukkit.getOfflinePlayer(UUID.fromString(uuid)).getName();
+		} catch (IllegalArgumentException ex) {
+			return null;
+		}
+	}
+
+	@Override
+	protected @NotNull CompletableFuture<Map<Integer, Integer>> computeStageDistribution(int questID, int branchID) {
+		return database.executeAsync(connection -> {
+			Map<Integer, Integer> distribution = new TreeMap<>();
+			try (PreparedStatement statement = connection.prepareStatement(stageDistribution)) {
+				statement.setInt(1, questID);
+				statement.setInt(2, branchID);
+				try (ResultSet result = statement.executeQuery()) {
+					while (result.next()) {
+						distribution.put(result.getInt(1), result.getInt(2));
+					}
+				}
+			}
+			return distribution;
+		});
+	}
+
+}
@@ -7,9 +7,13 @@ import fr.skytasul.quests.api.players.PlayerPoolDatas;
 import fr.skytasul.quests.api.players.PlayerQuestEntryData;
 import fr.skytasul.quests.api.pools.QuestPool;
 import fr.skytasul.quests.api.quests.Quest;
+import fr.skytasul.quests.api.quests.branches.EndingStage;
 import fr.skytasul.quests.api.utils.Utils;
 import fr.skytasul.quests.api.utils.messaging.PlaceholderRegistry;
 import fr.skytasul.quests.players.accounts.AbstractAccount;
+import fr.skytasul.quests.structure.QuestBranchImplementation;
+import fr.skytasul.quests.structure.QuestImplementation;
+import fr.skytasul.quests.structure.StageControllerImplementation;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
@@ -18,17 +22,41 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PlayerAccountImplementation implements PlayerAccount {
 
 	public static final List<String> FORBIDDEN_DATA_ID = Arrays.asList("identifier", "quests", "pools");
 
 	public final AbstractAccount abstractAcc;
-	protected final Map<Integer, PlayerQuestEntryDataImplementation> currentQuests = new HashMap<>();
+	/**
+	 * Concurrent as the active stages are also computed from the threads of asynchronous events, such
+	 * as the chat.
+	 */
+	protected final Map<Integer, PlayerQuestEntryDataImplementation> currentQuests = new ConcurrentHashMap<>();
 	protected final Map<Integer, PlayerPoolDatasImplementation> poolDatas = new HashMap<>();
 	protected final Map<SavableData<?>, Object> additionalDatas = new HashMap<>();
 	protected final int index;
 
+	/*
+	 * IDs of the quests by state, kept up to date by the quest entries so that the quests manager can
+	 * answer "which quests are started/finished" without going through all quests. Quests with a
+	 * negative ID are not indexed.
+	 */
+	private final BitSet startedQuests = new BitSet();
+	private final BitSet startingQuests = new BitSet();
+	private final BitSet finishedQuests = new BitSet();
+	private final BitSet cooldownQuests = new BitSet();
+
+	/*
+	 * Stages launched by this account, derived from the branch and stage of the quest entries. The
+	 * version is incremented by every change of the entries and the cached list is rebuilt on the next
+	 * access, which may happen asynchronously.
+	 */
+	private final AtomicInteger activeStagesVersion = new AtomicInteger();
+	private volatile @Nullable ActiveStages activeStages;
+
 	private @Nullable PlaceholderRegistry placeholders;
 
 	protected PlayerAccountImplementation(@NotNull AbstractAccount account, int index) {
@@ -66,11 +94,21 @@ public class PlayerAccountImplementation implements PlayerAccount {
 		PlayerQuestEntryDataImplementation entry = currentQuests.get(quest.getId());
 		if (entry == null) {
 			entry = BeautyQuests.getInstance().getPlayersManager().createPlayerQuestDatas(this, quest);
-			currentQuests.put(quest.getId(), entry);
+			addQuestEntry(entry);
 		}
 		return entry;
 	}
 
+	/**
+	 * Adds a quest entry created or loaded by the players manager.
+	 */
+	protected void addQuestEntry(@NotNull PlayerQuestEntryDataImplementation entry) {
+		PlayerQuestEntryDataImplementation previous = currentQuests.put(entry.questID, entry);
+		if (previous != null)
+			clearQuestState(previous.questID);
+		updateQuestState(entry);
+	}
+
 	@Override
 	public @NotNull CompletableFuture<PlayerQuestEntryData> removeQuestEntry(@NotNull Quest quest) {
 		return removeQuestEntry(quest.getId());
@@ -81,12 +119,112 @@ public class PlayerAccountImplementation implements PlayerAccount {
 		PlayerQuestEntryDataImplementation removed = currentQuests.remove(id);
 		if (removed == null)
 			return CompletableFuture.completedFuture(null);
+		clearQuestState(id);
 
 		return BeautyQuests.getInstance().getPlayersManager().playerQuestDataRemoved(removed).thenApply(__ -> removed);
 	}
 
 	protected @Nullable PlayerQuestEntryDataImplementation removeQuestDatasSilently(int id) {
-		return currentQuests.remove(id);
+		PlayerQuestEntryDataImplementation removed = currentQuests.remove(id);
+		if (removed != null)
+			clearQuestState(id);
+		return removed;
+	}
+
+	/**
+	 * Updates the quest state sets after a change of an entry. Entries which are not part of this
+	 * account anymore are ignored.
+	 */
+	protected void updateQuestState(@NotNull PlayerQuestEntryDataImplementation entry) {
+		activeStagesVersion.incrementAndGet();
+		int id = entry.questID;
+		if (id < 0 || currentQuests.get(id) != entry)
+			return;
+		startedQuests.set(id, entry.hasStarted());
+		finishedQuests.set(id, entry.isFinished());
+		cooldownQuests.set(id, entry.getTimer() != 0);
+	}
+
+	private void clearQuestState(int id) {
+		activeStagesVersion.incrementAndGet();
+		if (id < 0)
+			return;
+		startedQuests.clear(id);
+		finishedQuests.clear(id);
+		cooldownQuests.clear(id);
+	}
+
+	/**
+	 * Marks a quest as being started: its starting rewards are given asynchronously and the entry is
+	 * not started yet.
+	 */
+	public void setQuestStarting(int questID, boolean starting) {
+		if (questID >= 0)
+			startingQuests.set(questID, starting);
+	}
+
+	/**
+	 * @return IDs of the quests with a started entry. Must not be modified.
+	 */
+	public @NotNull BitSet getStartedQuests() {
+		return startedQuests;
+	}
+
+	/**
+	 * @return IDs of the quests being started asynchronously. Must not be modified.
+	 */
+	public @NotNull BitSet getStartingQuests() {
+		return startingQuests;
+	}
+
+	/**
+	 * @return IDs of the quests finished at least once. Must not be modified.
+	 */
+	public @NotNull BitSet getFinishedQuests() {
+		return finishedQuests;
+	}
+
+	/**
+	 * @return IDs of the quests with a cooldown timer, which may have expired. Must not be modified.
+	 */
+	public @NotNull BitSet getCooldownQuests() {
+		return cooldownQuests;
+	}
+
+	/**
+	 * @return the stages launched by this account, as an immutable list. Stages whose rewards are
+	 *         being given asynchronously may be included.
+	 */
+	public @NotNull List<StageControllerImplementation<?>> getActiveStages() {
+		int version = activeStagesVersion.get();
+		int generation = BeautyQuests.getInstance().getStageEventDispatcher().getGeneration();
+		ActiveStages cached = activeStages;
+		if (cached != null && cached.version == version && cached.generation == generation)
+			return cached.stages;
+
+		List<StageControllerImplementation<?>> stages = new ArrayList<>(4);
+		for (PlayerQuestEntryDataImplementation entry : currentQuests.values()) {
+			if (!entry.hasStarted())
+				continue;
+			Quest quest = entry.getQuest();
+			if (!(quest instanceof QuestImplementation))
+				continue;
+			QuestBranchImplementation branch =
+					((QuestImplementation) quest).getBranchesManager().getBranch(entry.getBranch());
+			if (branch == null)
+				continue;
+
+			if (entry.isInEndingStages()) {
+				for (EndingStage endingStage : branch.getEndingStages())
+					stages.add((StageControllerImplementation<?>) endingStage.getStage());
+			} else if (entry.getStage() >= 0 && entry.getStage() < branch.getStageSize()) {
+				stages.add(branch.getRegularStage(entry.getStage()));
+			}
+		}
+
+		stages = Collections.unmodifiableList(stages);
+		activeStages = new ActiveStages(version, generation, stages);
+		return stages;
 	}
 
 	@Override
@@ -210,4 +348,16 @@ public class PlayerAccountImplementation implements PlayerAccount {
 		});
 	}
 
+	private static class ActiveStages {
+		private final int version;
+		private final int generation;
+		private final List<StageControllerImplementation<?>> stages;
+
+		private ActiveStages(int version, int generation, List<StageControllerImplementation<?>> stages) {
+			this.version = version;
+			this.generation = generation;
+			this.stages = stages;
+		}
+	}
+
 }
@@ -71,7 +71,7 @@ public class PlayerPoolDatasImplementation implements PlayerPoolDatas {
 		
 		map.put("poolID", poolID);
 		map.put("lastGive", lastGive);
-		map.put("completedQuests", completedQuests);
+		map.put("completedQuests", new HashSet<>(completedQuests));
 		
 		return map;
 	}
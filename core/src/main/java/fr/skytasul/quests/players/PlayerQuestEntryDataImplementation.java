@@ -1,19 +1,24 @@
 package fr.skytasul.quests.players;
 
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.StringJoiner;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import fr.skytasul.quests.api.QuestsAPI;
 import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.players.PlayerQuestEntryData;
 import fr.skytasul.quests.api.quests.Quest;
-import fr.skytasul.quests.api.quests.branches.QuestBranch;
+import fr.skytasul.quests.api.quests.QuestsManager;
 import fr.skytasul.quests.api.stages.StageController;
+import fr.skytasul.quests.api.stages.types.Dialogable;
+import fr.skytasul.quests.api.utils.CompactDataCodec;
 import fr.skytasul.quests.api.utils.Utils;
-import fr.skytasul.quests.gui.quests.DialogHistoryGUI;
 import fr.skytasul.quests.options.OptionStartDialog;
+import fr.skytasul.quests.structure.StageControllerImplementation;
 import kr.reo.quest.QuestEntryRecord;
 
 public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData {
@@ -25,10 +30,16 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 	protected long timer;
 	protected int branch;
 	protected int stage;
-	protected Map<String, Object> additionalDatas;
-	protected StringJoiner questFlow = new StringJoiner(";");
+	/**
+	 * Decoded additional datas, <code>null</code> as long as {@link #encodedDatas} has not been
+	 * decoded. Always access them through {@link #getDatas()}.
+	 */
+	protected volatile Map<String, Object> additionalDatas;
+	private volatile byte[] encodedDatas;
+	protected QuestFlow questFlow = new QuestFlow();
 
 	private Boolean hasDialogsCached = null;
+	private volatile CachedQuest cachedQuest;
 
 	public PlayerQuestEntryDataImplementation(PlayerAccountImplementation acc, int questID) {
 		this.acc = acc;
@@ -48,14 +59,21 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 		this.branch = branch;
 		this.stage = stage;
 		this.additionalDatas = additionalDatas == null ? new HashMap<>() : additionalDatas;
-		if (questFlow != null) this.questFlow.add(questFlow);
+		if (questFlow != null) this.questFlow = parseQuestFlow(questFlow);
 		if (branch != -1 && stage == -1)
 			QuestsPlugin.getPlugin().getLoggerExpanded().warning("Incorrect quest " + questID + " datas for " + acc.debugName());
 	}
 
 	@Override
 	public Quest getQuest() {
-		return QuestsAPI.getAPI().getQuestsManager().getQuest(questID);
+		QuestsManager manager = QuestsAPI.getAPI().getQuestsManager();
+		CachedQuest cached = cachedQuest;
+		if (cached != null && cached.manager == manager && cached.quest.isValid())
+			return cached.quest;
+		// edited quests are deleted then recreated, and a reload creates a new quests manager
+		Quest quest = manager.getQuest(questID);
+		cachedQuest = quest == null ? null : new CachedQuest(manager, quest);
+		return quest;
 	}
 
 	@Override
@@ -71,6 +89,7 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 	@Override
 	public void incrementFinished() {
 		finished++;
+		acc.updateQuestState(this);
 	}
 
 	@Override
@@ -86,6 +105,7 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 	@Override
 	public void setTimer(long timer) {
 		this.timer = timer;
+		acc.updateQuestState(this);
 	}
 
 	@Override
@@ -96,6 +116,7 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 	@Override
 	public void setBranch(int branch) {
 		this.branch = branch;
+		acc.updateQuestState(this);
 	}
 
 	@Override
@@ -106,6 +127,7 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 	@Override
 	public void setStage(int stage) {
 		this.stage = stage;
+		acc.updateQuestState(this);
 	}
 
 	@Override
@@ -133,18 +155,80 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 		setStage(-2);
 	}
 
+	/**
+	 * Sets the additional datas in their {@link CompactDataCodec} form. They will only be decoded the
+	 * first time they are accessed: most loaded entries belong to finished quests whose datas are
+	 * never read.
+	 *
+	 * @param encoded encoded datas
+	 */
+	protected void setEncodedDatas(byte[] encoded) {
+		this.encodedDatas = encoded;
+		this.additionalDatas = null;
+	}
+
+	/**
+	 * @return the additional datas in their {@link CompactDataCodec} form if they have not been
+	 *         accessed since they were loaded, otherwise <code>null</code>. The array must not be
+	 *         modified.
+	 */
+	protected byte[] getUndecodedDatas() {
+		return encodedDatas;
+	}
+
+	protected Map<String, Object> getDatas() {
+		Map<String, Object> datas = additionalDatas;
+		if (datas == null) {
+			synchronized (this) {
+				datas = additionalDatas;
+				if (datas == null) {
+					datas = decodeDatas(encodedDatas);
+					additionalDatas = datas;
+					encodedDatas = null;
+				}
+			}
+		}
+		return datas;
+	}
+
+	/**
+	 * Gets the additional datas to copy them, without keeping them decoded in this entry if they have
+	 * not been accessed yet.
+	 */
+	private Map<String, Object> peekDatas() {
+		Map<String, Object> datas = additionalDatas;
+		if (datas == null) {
+			byte[] encoded = encodedDatas;
+			if (encoded != null)
+				return decodeDatas(encoded);
+			return getDatas(); // decoded in the meantime
+		}
+		return datas;
+	}
+
+	private Map<String, Object> decodeDatas(byte[] encoded) {
+		try {
+			return CompactDataCodec.decode(encoded);
+		} catch (IllegalArgumentException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded()
+					.severe("Cannot decode quest " + questID + " datas for " + acc.debugName(), ex);
+			return new HashMap<>();
+		}
+	}
+
 	public Map<String, Object> getRawAdditionalDatas() {
-		return additionalDatas;
+		return getDatas();
 	}
 
 	@Override
 	public <T> T getAdditionalData(String key) {
-		return (T) additionalDatas.get(key);
+		return (T) getDatas().get(key);
 	}
 
 	@Override
 	public <T> T setAdditionalData(String key, T value) {
-		return (T) (value == null ? additionalDatas.remove(key) : additionalDatas.put(key, value));
+		Map<String, Object> datas = getDatas();
+		return (T) (value == null ? datas.remove(key) : datas.put(key, value));
 	}
 
 	@Override
@@ -172,40 +256,70 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 		return questFlow.toString();
 	}
 
+	@Override
+	public Iterator<StageController> getQuestFlowIterator() {
+		Quest quest = getQuest();
+		return quest == null ? Collections.emptyIterator() : questFlow.iterator(quest);
+	}
+
 	@Override
 	public Stream<StageController> getQuestFlowStages() {
-		return Arrays.stream(getQuestFlow().split(";"))
-				.filter(x -> !x.isEmpty())
-				.map(arg -> {
-					String[] args = arg.split(":");
-					int branchID = Integer.parseInt(args[0]);
-					QuestBranch branch = getQuest().getBranchesManager().getBranch(branchID);
-					if (branch == null)
-						return null;
-					if (args[1].startsWith("E")) {
-						return branch.getEndingStage(Integer.parseInt(args[1].substring(1)));
-					} else {
-						return branch.getRegularStage(Integer.parseInt(args[1]));
-					}
-				});
+		return StreamSupport.stream(Spliterators.spliterator(getQuestFlowIterator(), questFlow.size(),
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
 	}
 
 	@Override
 	public void addQuestFlow(StageController finished) {
-		questFlow.add(finished.getBranch().getId() + ":" + finished.getFlowId());
+		StageControllerImplementation<?> controller = (StageControllerImplementation<?>) finished;
+		questFlow.add(finished.getBranch().getId(), controller.getStorageId(),
+				controller.getBranch().isEndingStage(controller));
 		hasDialogsCached = null;
 	}
 
 	@Override
 	public void resetQuestFlow() {
-		questFlow = new StringJoiner(";");
+		questFlow.clear();
 		hasDialogsCached = null;
 	}
 
+	public byte[] getEncodedQuestFlow() {
+		return questFlow.isEmpty() ? null : questFlow.toBytes();
+	}
+
+	protected void setEncodedQuestFlow(byte[] encoded) {
+		try {
+			this.questFlow = QuestFlow.fromBytes(encoded);
+		} catch (IllegalArgumentException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded()
+					.severe("Cannot decode quest " + questID + " flow for " + acc.debugName(), ex);
+			this.questFlow = new QuestFlow();
+		}
+	}
+
+	/**
+	 * Parses a flow in its legacy textual form. A malformed flow is replaced by an empty one instead of
+	 * failing the load of the whole account.
+	 */
+	protected QuestFlow parseQuestFlow(String questFlow) {
+		try {
+			return QuestFlow.parse(questFlow);
+		} catch (IllegalArgumentException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded()
+					.severe("Cannot parse quest " + questID + " flow for " + acc.debugName(), ex);
+			return new QuestFlow();
+		}
+	}
+
 	public boolean hasFlowDialogs() {
 		if (hasDialogsCached == null) {
 			Quest quest = getQuest();
-			hasDialogsCached = quest.hasOption(OptionStartDialog.class) || DialogHistoryGUI.getDialogableStream(this, quest).findAny().isPresent();
+			boolean hasDialogs = quest.hasOption(OptionStartDialog.class);
+			for (Iterator<StageController> iterator = questFlow.iterator(quest); !hasDialogs && iterator.hasNext();) {
+				StageController controller = iterator.next();
+				hasDialogs = controller.getStage() instanceof Dialogable
+						&& ((Dialogable) controller.getStage()).hasDialog();
+			}
+			hasDialogsCached = hasDialogs;
 		}
 		return hasDialogsCached.booleanValue();
 	}
@@ -216,7 +330,7 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 
 	@Override
 	public QuestEntryRecord toRecord() {
-		return new QuestEntryRecord(questID, finished, timer, branch, stage, additionalDatas, questFlow);
+		return new QuestEntryRecord(questID, finished, timer, branch, stage, peekDatas(), questFlow.toString());
 	}
 
 	public Map<String, Object> serialize() {
@@ -227,8 +341,9 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 		if (timer != 0) map.put("timer", timer);
 		if (branch != -1) map.put("currentBranch", branch);
 		if (stage != -1) map.put("currentStage", stage);
-		if (!additionalDatas.isEmpty()) map.put("datas", additionalDatas);
-		if (questFlow.length() > 0) map.put("questFlow", questFlow.toString());
+		Map<String, Object> datas = peekDatas();
+		if (!datas.isEmpty()) map.put("datas", QuestEntryRecord.immutableCopy(datas));
+		if (!questFlow.isEmpty()) map.put("questFlow", questFlow.toString());
 
 		return map;
 	}
@@ -241,7 +356,7 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 		if (map.containsKey("currentBranch")) datas.branch = (int) map.get("currentBranch");
 		if (map.containsKey("currentStage")) datas.stage = (int) map.get("currentStage");
 		if (map.containsKey("datas")) datas.additionalDatas = (Map<String, Object>) map.get("datas");
-		if (map.containsKey("questFlow")) datas.questFlow.add((String) map.get("questFlow"));
+		if (map.containsKey("questFlow")) datas.questFlow = datas.parseQuestFlow((String) map.get("questFlow"));
 
 		for (int i = 0; i < 5; i++) { // TODO migration 0.20
 			if (map.containsKey("stage" + i + "datas")) {
@@ -252,4 +367,14 @@ public class PlayerQuestEntryDataImplementation implements PlayerQuestEntryData
 		return datas;
 	}
 
+	private static class CachedQuest {
+		private final QuestsManager manager;
+		private final Quest quest;
+
+		private CachedQuest(QuestsManager manager, Quest quest) {
+			this.manager = manager;
+			this.quest = quest;
+		}
+	}
+
 }
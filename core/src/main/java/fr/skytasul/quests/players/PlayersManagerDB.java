@@ -1,29 +1,42 @@
 package fr.skytasul.quests.players;
 
-import com.minepalm.library.database.JavaDatabase;
 import com.minepalm.library.database.impl.internal.MySQLDB;
+import fr.skytasul.quests.BeautyQuests;
 import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.data.SQLDataSaver;
 import fr.skytasul.quests.api.data.SavableData;
 import fr.skytasul.quests.api.players.PlayerAccount;
 import fr.skytasul.quests.api.players.PlayerQuestEntryData;
+import fr.skytasul.quests.api.players.QuestStatisticsService;
 import fr.skytasul.quests.api.pools.QuestPool;
 import fr.skytasul.quests.api.quests.Quest;
 import fr.skytasul.quests.api.stages.StageController;
+import fr.skytasul.quests.api.utils.CompactDataCodec;
 import fr.skytasul.quests.api.utils.CustomizedObjectTypeAdapter;
 import fr.skytasul.quests.players.accounts.AbstractAccount;
 import fr.skytasul.quests.utils.HikariDataSourceWrapper;
+import fr.skytasul.quests.utils.PalmSQLDatabase;
 import fr.skytasul.quests.utils.QuestUtils;
+import fr.skytasul.quests.utils.SQLDatabase;
+import fr.skytasul.quests.utils.SQLDialect;
+import fr.skytasul.quests.utils.SchemaMigrator;
 import fr.skytasul.quests.utils.ThrowingConsumer;
+import fr.skytasul.quests.utils.TimingStatistics;
+import kr.reo.quest.QuestEntryRecord;
 import org.apache.commons.lang.StringUtils;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class PlayersManagerDB extends AbstractPlayersManager {
@@ -40,49 +53,88 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 	 * 테이블 명: player_pools (안씀)
 	 */
 	public final String POOLS_DATAS_TABLE;
+	/**
+	 * 테이블 명: beautyquests_schema (스키마 버전)
+	 */
+	public final String SCHEMA_VERSIONS_TABLE;
 
 	//private final HikariDataSourceWrapper db;
-	private final JavaDatabase<Connection> palmLibrary;
+	private final SQLDatabase database;
+	private final SQLDialect dialect;
+	private final AccountOwnership ownership;
+	private final DatabaseQuestStatistics statistics;
+	private final PoolDatasWriteQueue poolDatasQueue;
+	private final AccountDatasWriteQueue accountDatasQueue;
 
 	private final Map<SavableData<?>, SQLDataSaver<?>> accountDatas = new HashMap<>();
-	private String getAccountDatas;
-	private String resetAccountDatas;
 
 	/* Accounts statements */
 	private String getAccountsIDs;
+	private String hydrateAccount;
+	private volatile boolean multiStatements;
+	private final TimingStatistics hydrationTimings = new TimingStatistics("account hydration");
 	private String insertAccount;
 	private String deleteAccount;
 
 	/* Quest datas statements */
-	private String insertQuestData;
 	private String removeQuestData;
 	private String getQuestsData;
 
 	private String removeExistingQuestDatas;
-	private String removeExistingPoolDatas;
 
-	private String updateFinished;
-	private String updateTimer;
-	private String updateBranch;
-	private String updateStage;
-	private String updateDatas;
-	private String updateFlow;
+	private String upsertQuestData;
+	private QuestEntriesJournal journal;
+
+	/* Write-behind statistics */
+	private volatile int lastCycleWritten;
+	private volatile int lastCycleSkipped;
+	private final AtomicLong totalWrittenEntries = new AtomicLong();
+	private final AtomicLong totalSkippedEntries = new AtomicLong();
 
 	/* Pool datas statements */
-	private String insertPoolData;
-	private String removePoolData;
 	private String getPoolData;
-	private String getPoolAccountData;
-
-	private String updatePoolLastGive;
-	private String updatePoolCompletedQuests;
 
 	public PlayersManagerDB(ConfigurationSection tableSection, MySQLDB palmLibraryDatabase) {
+		this(tableSection, new PalmSQLDatabase(palmLibraryDatabase.java()));
+	}
+
+	public PlayersManagerDB(ConfigurationSection tableSection, SQLDatabase database) {
 		//this.db = db;
-		this.palmLibrary = palmLibraryDatabase.java();
+		this.database = database;
+		this.dialect = database.getDialect();
+		this.multiStatements = dialect.supportsMultiStatements();
 		ACCOUNTS_TABLE = tableSection.getString("tables.playerAccounts");
 		QUESTS_ENTRIES_TABLE = tableSection.getString("tables.playerQuests");
 		POOLS_DATAS_TABLE = tableSection.getString("tables.playerPools");
+		SCHEMA_VERSIONS_TABLE = tableSection.getString("tables.schemaVersions", "beautyquests_schema");
+		String node = tableSection.getString("nodeName", "");
+		if (node.isEmpty()) {
+			// the address of the server is not unique, as most servers bind all interfaces on the same port
+			File nodeFile = new File(BeautyQuests.getInstance().getDataFolder(), "node-id");
+			try {
+				node = AccountOwnership.loadNodeID(nodeFile);
+			} catch (IOException ex) {
+				throw new UncheckedIOException("Cannot read or create the node ID file " + nodeFile, ex);
+			}
+		}
+		ownership = new AccountOwnership(ACCOUNTS_TABLE, node, tableSection.getLong("handoffTimeout", 3000), dialect);
+		poolDatasQueue = new PoolDatasWriteQueue(database, POOLS_DATAS_TABLE);
+		accountDatasQueue = new AccountDatasWriteQueue(database, ACCOUNTS_TABLE, accountDatas.values());
+		statistics = new DatabaseQuestStatistics(database, ACCOUNTS_TABLE, QUESTS_ENTRIES_TABLE);
+
+		// statements of the quest entries journal, which only depend on the table names
+		removeQuestData = "DELETE FROM " + QUESTS_ENTRIES_TABLE + " WHERE account_id = ? AND quest_id = ?";
+		removeExistingQuestDatas = "DELETE FROM " + QUESTS_ENTRIES_TABLE + " WHERE quest_id = ?";
+		// the legacy textual columns are cleared, the binary ones replace them
+		upsertQuestData = dialect.upsert(QUESTS_ENTRIES_TABLE, Arrays.asList("account_id", "quest_id"),
+				Arrays.asList("finished", "timer", "current_branch", "current_stage", "additional_datas",
+						"additional_datas_bin", "quest_flow", "quest_flow_bin"),
+				"(?, ?, ?, ?, ?, ?, NULL, ?, NULL, ?)", 1);
+	}
+
+	@Override
+	public @NotNull QuestStatisticsService getStatistics() {
+		return statistics;
 	}
 
 	//public HikariDataSourceWrapper getDatabase() {
@@ -94,99 +146,159 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 		super.addAccountData(data);
 		accountDatas.put(data,
 				new SQLDataSaver<>(data, "UPDATE " + ACCOUNTS_TABLE + " SET " + data.getColumnName() + " = ? WHERE id = ?"));
-		getAccountDatas = accountDatas.keySet()
-				.stream()
-				.map(SavableData::getColumnName)
-				.collect(Collectors.joining(", ", "SELECT ", " FROM " + ACCOUNTS_TABLE + " WHERE id = ?"));
-		resetAccountDatas = accountDatas.values()
-				.stream()
-				.map(x -> x.getWrappedData().getColumnName() + " = " + x.getDefaultValueString())
-				.collect(Collectors.joining(", ", "UPDATE " + ACCOUNTS_TABLE + " SET ", " WHERE id = ?"));
-	}
-
-	private void retrievePlayerQuestEntries(Connection con, PlayerAccountImplementation acc) throws SQLException {
-
-		try (PreparedStatement statement = con.prepareStatement(getQuestsData)) {
-			statement.setInt(1, acc.index);
-			ResultSet result = statement.executeQuery();
-			while (result.next()) {
-				int questID = result.getInt("quest_id");
-
-				//TODO: 플레이어 퀘스트 데이터를 입력하는 부분인데, 로컬에서 저장하지 않고 매번 데이터베이스로부터 불러옴.
-				// 해당 부분 퀘스트 수정할때 로컬에서 저장하고, 데이터 갱신 부랑 로컬 캐싱 부분을 나누어야함.
-				acc.currentQuests.put(questID, new MySQLPlayerQuestDataEntry(acc, questID, result));
-			}
-			result.close();
-		}
-
-		try (PreparedStatement statement = con.prepareStatement(getPoolData)) {
-			statement.setInt(1, acc.index);
-			ResultSet result = statement.executeQuery();
-			while (result.next()) {
-				int poolID = result.getInt("pool_id");
-				String completedQuests = result.getString("completed_quests");
-				if (StringUtils.isEmpty(completedQuests)) completedQuests = null;
-				acc.poolDatas.put(poolID, new PlayerPoolDatasDB(acc, poolID, result.getLong("last_give"), completedQuests == null ? new HashSet<>() : Arrays.stream(completedQuests.split(";")).map(Integer::parseInt).collect(Collectors.toSet())));
-			}
-			result.close();
-		}
-
-		if (getAccountDatas != null) {
-			try (PreparedStatement statement = con.prepareStatement(getAccountDatas)) {
-				statement.setInt(1, acc.index);
-				ResultSet result = statement.executeQuery();
-				result.next();
-				for (SQLDataSaver<?> data : accountDatas.values()) {
-					acc.additionalDatas.put(data.getWrappedData(), data.getFromResultSet(result));
-				}
-				result.close();
-			}
-		}
-
 	}
 
 	@Override
 	public CompletableFuture<PlayerAccount> load(AccountFetchRequest request) {
-		return palmLibrary.executeAsync(connection -> {
-			String uuid = request.getUniqueId().toString();
-			try (PreparedStatement statement = connection.prepareStatement(getAccountsIDs)) {
-				statement.setString(1, uuid);
-				ResultSet result = statement.executeQuery();
-				while (result.next()) {
-					AbstractAccount abs = createAccountFromIdentifier(result.getString("identifier"));
-					if (abs.isCurrent()) {
-						PlayerAccountImplementation account = new PlayerAccountDB(abs, result.getInt("id"));
-						result.close();
-						retrievePlayerQuestEntries(connection, account);
-						request.loaded(account, "database");
-						return account;
-					}
-				}
-			}
-
-			if (request.mustCreateMissing()) {
+		return database.executeAsync(connection -> {
+			long start = System.nanoTime();
+			if (request.shouldCache())
+				ownership.claim(connection, request.getUniqueId()); // before reading, to get the last saved datas
+			PlayerAccountImplementation account = hydrateAccount(connection, request.getUniqueId());
+			if (account != null) {
+				request.loaded(account, "database");
+			} else if (request.mustCreateMissing()) {
 				try (PreparedStatement statement =
 							 connection.prepareStatement(insertAccount, Statement.RETURN_GENERATED_KEYS)) {
 					AbstractAccount absacc = super.createAbstractAccount(request.getUniqueId());
 					statement.setString(1, absacc.getIdentifier());
-					statement.setString(2, uuid);
+					statement.setString(2, request.getUniqueId().toString());
+					statement.setString(3, request.shouldCache() ? ownership.getNode() : null);
 					statement.executeUpdate();
 					ResultSet result = statement.getGeneratedKeys();
 					if (!result.next())
 						throw new SQLException("The plugin has not been able to create a player account.");
 					int index = result.getInt(1); // some drivers don't return a ResultSet with correct column names
-					request.created(new PlayerAccountDB(absacc, index));
+					request.created(new PlayerAccountDB(absacc, index, 1));
 				}
 			} else {
 				request.notLoaded();
 			}
+			hydrationTimings.recordSince(start);
 			return request.getAccount();
 		});
 	}
 
+	private @Nullable PlayerAccountImplementation hydrateAccount(Connection connection, UUID uuid) throws SQLException {
+		if (multiStatements) {
+			try {
+				return hydrateAccountSingleTrip(connection, uuid);
+			} catch (SQLSyntaxErrorException ex) {
+				multiStatements = false;
+				QuestsPlugin.getPlugin().getLoggerExpanded().warning("The database connection does not accept multiple"
+						+ " statements at once (allowMultiQueries). Player accounts will be loaded with several queries.",
+						ex);
+			}
+		}
+		return hydrateAccountSequential(connection, uuid);
+	}
+
+	/**
+	 * Fetches the account row, its quest entries and its pool datas in a single multi-statement round
+	 * trip.
+	 */
+	private @Nullable PlayerAccountImplementation hydrateAccountSingleTrip(Connection connection, UUID uuid)
+			throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(hydrateAccount)) {
+			String uuidString = uuid.toString();
+			statement.setString(1, uuidString);
+			statement.setString(2, uuidString);
+			statement.setString(3, uuidString);
+			statement.execute();
+
+			PlayerAccountImplementation account;
+			try (ResultSet result = statement.getResultSet()) {
+				account = readAccount(result);
+			}
+			if (account == null)
+				return null;
+
+			statement.getMoreResults();
+			try (ResultSet result = statement.getResultSet()) {
+				readQuestEntries(result, account);
+			}
+
+			statement.getMoreResults();
+			try (ResultSet result = statement.getResultSet()) {
+				readPoolDatas(result, account);
+			}
+			return account;
+		}
+	}
+
+	private @Nullable PlayerAccountImplementation hydrateAccountSequential(Connection connection, UUID uuid)
+			throws SQLException {
+		PlayerAccountImplementation account;
+		try (PreparedStatement statement = connection.prepareStatement(getAccountsIDs)) {
+			statement.setString(1, uuid.toString());
+			try (ResultSet result = statement.executeQuery()) {
+				account = readAccount(result);
+			}
+		}
+		if (account == null)
+			return null;
+
+		try (PreparedStatement statement = connection.prepareStatement(getQuestsData)) {
+			statement.setInt(1, account.index);
+			try (ResultSet result = statement.executeQuery()) {
+				readQuestEntries(result, account);
+			}
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement(getPoolData)) {
+			statement.setInt(1, account.index);
+			try (ResultSet result = statement.executeQuery()) {
+				readPoolDatas(result, account);
+			}
+		}
+		return account;
+	}
+
+	private @Nullable PlayerAccountImplementation readAccount(ResultSet result) throws SQLException {
+		while (result.next()) {
+			AbstractAccount abs = createAccountFromIdentifier(result.getString("identifier"));
+			if (abs != null && abs.isCurrent()) {
+				PlayerAccountImplementation account =
+						new PlayerAccountDB(abs, result.getInt("id"), result.getLong("owner_version"));
+				for (SQLDataSaver<?> data : accountDatas.values()) {
+					account.additionalDatas.put(data.getWrappedData(), data.getFromResultSet(result));
+				}
+				return account;
+			}
+		}
+		return null;
+	}
+
+	private void readQuestEntries(ResultSet result, PlayerAccountImplementation acc) throws SQLException {
+		while (result.next()) {
+			if (result.getInt("account_id") != acc.index)
+				continue; // another account of the same player
+			int questID = result.getInt("quest_id");
+			acc.addQuestEntry(new MySQLPlayerQuestDataEntry(acc, questID, result));
+		}
+	}
+
+	private void readPoolDatas(ResultSet result, PlayerAccountImplementation acc) throws SQLException {
+		while (result.next()) {
+			if (result.getInt("account_id") != acc.index)
+				continue;
+			int poolID = result.getInt("pool_id");
+			String completedQuests = result.getString("completed_quests");
+			if (StringUtils.isEmpty(completedQuests)) completedQuests = null;
+			acc.poolDatas.put(poolID, new PlayerPoolDatasDB(acc, poolID, result.getLong("last_give"), completedQuests == null ? new HashSet<>() : Arrays.stream(completedQuests.split(";")).map(Integer::parseInt).collect(Collectors.toSet())));
+		}
+	}
+
+	/**
+	 * @return latency of account loads, from the first query to the account being fully hydrated
+	 */
+	public TimingStatistics getHydrationTimings() {
+		return hydrationTimings;
+	}
+
 	@Override
 	protected CompletableFuture<Void> removeAccount(PlayerAccountImplementation acc) {
-		return palmLibrary.runAsync(connection -> {
+		return database.runAsync(connection -> {
 			try (PreparedStatement statement = connection.prepareStatement(deleteAccount)) {
 				statement.setInt(1, acc.index);
 				statement.executeUpdate();
@@ -201,14 +313,11 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 
 	@Override
 	public CompletableFuture<Void> playerQuestDataRemoved(PlayerQuestEntryDataImplementation datas) {
-		return palmLibrary.runAsync(connection -> {
-			try (PreparedStatement statement = connection.prepareStatement(removeQuestData)) {
-				((MySQLPlayerQuestDataEntry) datas).stop();
-				statement.setInt(1, datas.acc.index);
-				statement.setInt(2, datas.questID);
-				statement.executeUpdate();
-			}
-		});
+		((MySQLPlayerQuestDataEntry) datas).stop();
+		// through the journal, to be written after the snapshots of the entry which are still pending
+		QuestEntriesJournal.Row tombstone = QuestEntriesJournal.Row.entryRemoval(datas.acc.index,
+				((PlayerAccountDB) datas.acc).ownerVersion, datas.questID);
+		return journal.submit(Collections.singletonList(tombstone), Collections.emptyList()).thenApply(__ -> null);
 	}
 
 	@Override
@@ -218,40 +327,31 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 
 	@Override
 	public CompletableFuture<Void> playerPoolDataRemoved(PlayerPoolDatasImplementation datas) {
-		return palmLibrary.runAsync(connection -> {
-			try (PreparedStatement statement = connection.prepareStatement(removePoolData)) {
-				statement.setInt(1, datas.acc.index);
-				statement.setInt(2, datas.poolID);
-				statement.executeUpdate();
-			}
-		});
+		// through the queue, to be written after the pending writes of this pool data
+		return poolDatasQueue.remove(datas);
 	}
 
 	@Override
 	public CompletableFuture<Integer> removeQuestDatas(Quest quest) {
-		return palmLibrary.executeAsync(connection -> {
-			try (PreparedStatement statement = connection.prepareStatement(removeExistingQuestDatas)) {
-				for (PlayerAccountImplementation acc : cachedAccounts.values()) {
-					MySQLPlayerQuestDataEntry datas = (MySQLPlayerQuestDataEntry) acc.removeQuestDatasSilently(quest.getId());
-					if (datas != null) datas.stop();
-				}
-				statement.setInt(1, quest.getId());
-				int amount = statement.executeUpdate();
-				QuestsPlugin.getPlugin().getLoggerExpanded().debug("Removed " + amount + " in-database quest datas for quest " + quest.getId());
-				return amount;
-			}
+		for (PlayerAccountImplementation acc : cachedAccounts.values()) {
+			MySQLPlayerQuestDataEntry datas = (MySQLPlayerQuestDataEntry) acc.removeQuestDatasSilently(quest.getId());
+			if (datas != null) datas.stop();
+		}
+		QuestEntriesJournal.Row tombstone = QuestEntriesJournal.Row.questRemoval(quest.getId());
+		return journal.submit(Collections.singletonList(tombstone), Collections.emptyList()).thenApply(amount -> {
+			QuestsPlugin.getPlugin().getLoggerExpanded().debug("Removed " + amount + " in-database quest datas for quest " + quest.getId());
+			return amount;
 		});
 	}
 
 	@Override
 	public CompletableFuture<Integer> removePoolDatas(QuestPool pool) {
-		return palmLibrary.executeAsync(connection -> {
-			PreparedStatement statement = connection.prepareStatement(removeExistingPoolDatas);
+		QuestUtils.runOrSync(() -> {
 			for (PlayerAccountImplementation acc : cachedAccounts.values()) {
 				acc.removePoolDatasSilently(pool.getId());
 			}
-			statement.setInt(1, pool.getId());
-			int amount = statement.executeUpdate();
+		});
+		return poolDatasQueue.removePool(pool.getId()).thenApply(amount -> {
 			QuestsPlugin.getPlugin().getLoggerExpanded()
 					.debug("Removed " + amount + " in-database pool datas for pool " + pool.getId());
 			return amount;
@@ -259,7 +359,7 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 	}
 
 	public CompletableFuture<Boolean> hasAccounts(Player p) {
-		return palmLibrary.executeAsync(connection -> {
+		return database.executeAsync(connection -> {
 			try (PreparedStatement statement = connection.prepareStatement(getAccountsIDs)) {
 				statement.setString(1, p.getUniqueId().toString());
 				ResultSet result = statement.executeQuery();
@@ -276,129 +376,208 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 		try {
 			createTables();
 
-			getAccountsIDs = "SELECT id, identifier FROM " + ACCOUNTS_TABLE + " WHERE player_uuid = ?";
-			insertAccount = "INSERT INTO " + ACCOUNTS_TABLE + " (identifier, player_uuid) VALUES (?, ?)";
+			String accountColumns = accountDatas.keySet()
+					.stream()
+					.map(data -> ", " + data.getColumnName())
+					.collect(Collectors.joining());
+			getAccountsIDs = "SELECT id, identifier, owner_version" + accountColumns + " FROM " + ACCOUNTS_TABLE + " WHERE player_uuid = ?";
+			insertAccount = "INSERT INTO " + ACCOUNTS_TABLE
+					+ " (identifier, player_uuid, owner_node, version, owner_version) VALUES (?, ?, ?, 1, 1)";
 			deleteAccount = "DELETE FROM " + ACCOUNTS_TABLE + " WHERE id = ?";
 
-			insertQuestData = "INSERT INTO " + QUESTS_ENTRIES_TABLE + " (account_id, quest_id) VALUES (?, ?)";
-			removeQuestData = "DELETE FROM " + QUESTS_ENTRIES_TABLE + " WHERE account_id = ? AND quest_id = ?";
 			getQuestsData = "SELECT * FROM " + QUESTS_ENTRIES_TABLE + " WHERE account_id = ?";
 
-			removeExistingQuestDatas = "DELETE FROM " + QUESTS_ENTRIES_TABLE + " WHERE quest_id = ?";
-			removeExistingPoolDatas = "DELETE FROM " + POOLS_DATAS_TABLE + " WHERE pool_id = ?";
-
-			updateFinished = prepareDatasStatement("finished");
-			updateTimer = prepareDatasStatement("timer");
-			updateBranch = prepareDatasStatement("current_branch");
-			updateStage = prepareDatasStatement("current_stage");
-			updateDatas = prepareDatasStatement("additional_datas");
-			updateFlow = prepareDatasStatement("quest_flow");
-
-			insertPoolData = "INSERT INTO " + POOLS_DATAS_TABLE + " (account_id, pool_id) VALUES (?, ?)";
-			removePoolData = "DELETE FROM " + POOLS_DATAS_TABLE + " WHERE account_id = ? AND pool_id = ?";
 			getPoolData = "SELECT * FROM " + POOLS_DATAS_TABLE + " WHERE account_id = ?";
-			getPoolAccountData = "SELECT 1 FROM " + POOLS_DATAS_TABLE + " WHERE account_id = ? AND pool_id = ?";
 
-			updatePoolLastGive = "UPDATE " + POOLS_DATAS_TABLE + " SET last_give = ? WHERE account_id = ? AND pool_id = ?";
-			updatePoolCompletedQuests =
-					"UPDATE " + POOLS_DATAS_TABLE + " SET completed_quests = ? WHERE account_id = ? AND pool_id = ?";
+			hydrateAccount = getAccountsIDs + ";"
+					+ " SELECT q.* FROM " + QUESTS_ENTRIES_TABLE + " q INNER JOIN " + ACCOUNTS_TABLE
+					+ " a ON a.id = q.account_id WHERE a.player_uuid = ?;"
+					+ " SELECT p.* FROM " + POOLS_DATAS_TABLE + " p INNER JOIN " + ACCOUNTS_TABLE
+					+ " a ON a.id = p.account_id WHERE a.player_uuid = ?";
+
+			// rows left unsaved by the previous run must be in the database before accounts are loaded
+			journal = createJournal(new File(BeautyQuests.getInstance().getDataFolder(), "journal"));
+			database.run(connection -> {
+				try {
+					journal.replay(connection);
+				} catch (IOException ex) {
+					throw new SQLException("Cannot read the quest entries journal", ex);
+				}
+				int released = ownership.releaseAll(connection);
+				if (released != 0)
+					QuestsPlugin.getPlugin().getLoggerExpanded()
+							.info("Released " + released + " player accounts left owned by " + ownership.getNode());
+			});
 		}catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
+		journal.start();
+		poolDatasQueue.start();
+		accountDatasQueue.start();
 	}
 
-	private String prepareDatasStatement(String column) throws SQLException {
-		return "UPDATE " + QUESTS_ENTRIES_TABLE + " SET " + column + " = ? WHERE id = ?";
+	@Override
+	public void unload() {
+		super.unload();
+		poolDatasQueue.close();
+		accountDatasQueue.close();
+		if (journal != null)
+			journal.close();
+		database.close();
 	}
 
 	@Override
 	public void save() {
-		cachedAccounts.values().forEach(x -> saveAccount(x, false));
+		snapshot().run();
 	}
 
-	private void createTables() throws SQLException {
-		palmLibrary.run( connection -> {
+	@Override
+	protected @NotNull Runnable snapshot() {
+		List<MySQLPlayerQuestDataEntry> dirtyEntries = new ArrayList<>();
+		int skipped = 0;
+		for (PlayerAccountImplementation acc : cachedAccounts.values()) {
+			skipped += collectDirtyEntries(acc, dirtyEntries, false);
+		}
+		List<EntrySnapshot> snapshots = takeSnapshots(dirtyEntries);
+
+		int written = dirtyEntries.size();
+		int skippedFinal = skipped;
+		return () -> flushSnapshots(snapshots, skippedFinal, Collections.emptyList()).whenComplete((__, ex) -> {
+			if (ex == null) {
+				lastCycleWritten = written;
+				lastCycleSkipped = skippedFinal;
+				QuestsPlugin.getPlugin().getLoggerExpanded()
+						.debug("Flushed " + written + " quest entries (" + skippedFinal + " unchanged entries skipped)");
+			} else {
+				QuestsPlugin.getPlugin().getLoggerExpanded()
+						.severe("An error occurred while flushing " + written + " quest entries. They will be retried.", ex);
+			}
+		});
+	}
+
+	void createTables() throws SQLException {
+		database.run(connection -> {
 			try (Statement statement = connection.createStatement()) {
 				statement.execute("CREATE TABLE IF NOT EXISTS " + ACCOUNTS_TABLE + " ("
-						+ " id " + HikariDataSourceWrapper.DataType.MySQL.getSerialType() + " ,"
+						+ " id " + dialect.getSerialType() + " ,"
 						+ " identifier TEXT NOT NULL ,"
 						+ " player_uuid CHAR(36) NOT NULL ,"
+						+ " version BIGINT NOT NULL DEFAULT 0 ,"
+						+ " owner_node VARCHAR(64) DEFAULT NULL ,"
+						+ " owner_version BIGINT NOT NULL DEFAULT 0 ,"
 						+ accountDatas.values().stream().map(data -> " " + data.getColumnDefinition() + " ,").collect(Collectors.joining())
 						+ " PRIMARY KEY (id)"
 						+ " )");
 				statement.execute("CREATE TABLE IF NOT EXISTS " + QUESTS_ENTRIES_TABLE + " (" +
-						" id " + HikariDataSourceWrapper.DataType.MySQL.getSerialType() + " ," +
+						" id " + dialect.getSerialType() + " ," +
 						" account_id INT NOT NULL," +
 						" quest_id INT NOT NULL," +
 						" finished INT DEFAULT NULL," +
 						" timer BIGINT DEFAULT NULL," +
 						" current_branch SMALLINT DEFAULT NULL," +
 						" current_stage SMALLINT DEFAULT NULL," +
-						" additional_datas " + HikariDataSourceWrapper.DataType.MySQL.getLongTextType() + " DEFAULT NULL," +
+						" additional_datas " + dialect.getLongTextType() + " DEFAULT NULL," +
+						" additional_datas_bin " + dialect.getMediumBlobType() + " DEFAULT NULL," +
 						" quest_flow VARCHAR(8000) DEFAULT NULL," +
+						" quest_flow_bin " + dialect.getBlobType() + " DEFAULT NULL," +
 						" PRIMARY KEY (id)" +
 						")");
 				statement.execute("CREATE TABLE IF NOT EXISTS " + POOLS_DATAS_TABLE + " ("
-						+ " id " + HikariDataSourceWrapper.DataType.MySQL.getSerialType() + " ,"
+						+ " id " + dialect.getSerialType() + " ,"
 						+ "account_id INT NOT NULL, "
 						+ "pool_id INT NOT NULL, "
 						+ "last_give BIGINT DEFAULT NULL, "
 						+ "completed_quests VARCHAR(1000) DEFAULT NULL, "
 						+ "PRIMARY KEY (id)"
 						+ ")");
+			}
 
-				/*
-				upgradeTable(connection, QUESTS_ENTRIES_TABLE, columns -> {
-					if (!columns.contains("quest_flow")) { // 0.19
-						statement.execute("ALTER TABLE " + QUESTS_ENTRIES_TABLE
-								+ " ADD COLUMN quest_flow VARCHAR(8000) DEFAULT NULL");
-						QuestsPlugin.getPlugin().getLoggerExpanded().info("Updated database with quest_flow column.");
-					}
-
-					if (!columns.contains("additional_datas") || columns.contains("stage_0_datas")) { // 0.20
-						// tests for stage_0_datas: it's in the case the server crashed/stopped during the migration process.
-						if (!columns.contains("additional_datas")) {
-							statement.execute("ALTER TABLE " + QUESTS_ENTRIES_TABLE
-									+ " ADD COLUMN additional_datas " + HikariDataSourceWrapper.DataType.MySQL.getLongTextType()
-									+ " DEFAULT NULL AFTER current_stage");
-							QuestsPlugin.getPlugin().getLoggerExpanded().info("Updated table " + QUESTS_ENTRIES_TABLE + " with additional_datas column.");
+			upgradeTable(connection, ACCOUNTS_TABLE, columns -> {
+				for (SQLDataSaver<?> data : accountDatas.values()) {
+					if (!columns.contains(data.getWrappedData().getColumnName().toLowerCase())) {
+						try (Statement statement = connection.createStatement()) {
+							statement.execute("ALTER TABLE " + ACCOUNTS_TABLE + " ADD COLUMN " + data.getColumnDefinition());
 						}
-
-						QuestUtils.runAsync(this::migrateOldQuestDatas);
+						QuestsPlugin.getPlugin().getLoggerExpanded().info("Updated database by adding the missing "
+								+ data.getWrappedData().getColumnName() + " column in the player accounts table.");
 					}
-				});
+				}
+			});
 
-				upgradeTable(connection, ACCOUNTS_TABLE, columns -> {
-					for (SQLDataSaver<?> data : accountDatas.values()) {
-						if (!columns.contains(data.getWrappedData().getColumnName().toLowerCase())) {
-							statement.execute("ALTER TABLE " + ACCOUNTS_TABLE
-									+ " ADD COLUMN " + data.getColumnDefinition());
-							QuestsPlugin.getPlugin().getLoggerExpanded().info("Updated database by adding the missing " + data.getWrappedData().getColumnName() + " column in the player accounts table.");
-						}
-					}
-				});
-				*/
-			}
+			createSchemaMigrator().migrate(connection);
 		});
 
 	}
 
-	private void upgradeTable(Connection connection, String tableName, ThrowingConsumer<List<String>, SQLException> columnsConsumer) throws SQLException {
-		//List<String> columns = new ArrayList<>(14);
-		//try (ResultSet set = connection.getMetaData().getColumns(db.getDatabase(), null, tableName, null)) {
-		//	while (set.next()) {
-		//		columns.add(set.getString("COLUMN_NAME").toLowerCase());
-		//	}
-		//}
-		//if (columns.isEmpty()) {
-		//	QuestsPlugin.getPlugin().getLoggerExpanded().severe("Cannot check integrity of SQL table " + tableName);
-		//}else {
-		//	columnsConsumer.accept(columns);
-		//}
+	QuestEntriesJournal createJournal(@NotNull File directory) {
+		return new QuestEntriesJournal(directory, database, ownership, upsertQuestData, removeQuestData,
+				removeExistingQuestDatas);
 	}
 
-	private void migrateOldQuestDatas() {
+	private SchemaMigrator createSchemaMigrator() {
+		return new SchemaMigrator(SCHEMA_VERSIONS_TABLE, "players", dialect)
+				.step(1, "unique quest entry per account", connection -> {
+					// as the ON DUPLICATE KEY UPDATE clause never matched before this key existed, every save
+					// inserted a new row: the most recent one is the one with the highest id
+					try (Statement statement = connection.createStatement()) {
+						int removed = statement.executeUpdate(dialect.deleteDuplicates(QUESTS_ENTRIES_TABLE, "account_id, quest_id"));
+						QuestsPlugin.getPlugin().getLoggerExpanded()
+								.info("Removed " + removed + " duplicated rows from " + QUESTS_ENTRIES_TABLE);
+					}
+					SchemaMigrator.createIndex(connection, QUESTS_ENTRIES_TABLE, "uk_account_quest", true,
+							"account_id, quest_id");
+				})
+				.step(2, "unique pool data per account", connection -> {
+					try (Statement statement = connection.createStatement()) {
+						int removed = statement.executeUpdate(dialect.deleteDuplicates(POOLS_DATAS_TABLE, "account_id, pool_id"));
+						QuestsPlugin.getPlugin().getLoggerExpanded()
+								.info("Removed " + removed + " duplicated rows from " + POOLS_DATAS_TABLE);
+					}
+					SchemaMigrator.createIndex(connection, POOLS_DATAS_TABLE, "uk_account_pool", true,
+							"account_id, pool_id");
+				})
+				.step(3, "lookup indexes", connection -> {
+					// account_id lookups are served by the unique keys above, as it is their first column
+					SchemaMigrator.createIndex(connection, ACCOUNTS_TABLE, "idx_player_uuid", false, "player_uuid");
+					SchemaMigrator.createIndex(connection, QUESTS_ENTRIES_TABLE, "idx_quest_id", false, "quest_id");
+					SchemaMigrator.createIndex(connection, POOLS_DATAS_TABLE, "idx_pool_id", false, "pool_id");
+				})
+				.step(4, "binary quest entry datas", connection -> {
+					// existing JSON datas are kept and read as a fallback, they are converted on the next save
+					SchemaMigrator.addColumn(connection, QUESTS_ENTRIES_TABLE, "additional_datas_bin",
+							dialect.getMediumBlobType() + " DEFAULT NULL");
+				})
+				.step(5, "binary quest flow", connection -> {
+					// same as for datas: textual flows are still read, and converted when the entry is saved
+					SchemaMigrator.addColumn(connection, QUESTS_ENTRIES_TABLE, "quest_flow_bin",
+							dialect.getBlobType() + " DEFAULT NULL");
+				})
+				.step(6, "account ownership fencing", connection -> {
+					SchemaMigrator.addColumn(connection, ACCOUNTS_TABLE, "version", "BIGINT NOT NULL DEFAULT 0");
+					SchemaMigrator.addColumn(connection, ACCOUNTS_TABLE, "owner_node", "VARCHAR(64) DEFAULT NULL");
+					SchemaMigrator.addColumn(connection, ACCOUNTS_TABLE, "owner_version", "BIGINT NOT NULL DEFAULT 0");
+				})
+				.step(7, "statistics indexes", connection -> {
+					// covering indexes for the aggregate queries of DatabaseQuestStatistics
+					SchemaMigrator.createIndex(connection, QUESTS_ENTRIES_TABLE, "idx_quest_progress", false,
+							"quest_id, current_branch, current_stage");
+					SchemaMigrator.createIndex(connection, QUESTS_ENTRIES_TABLE, "idx_account_finished", false,
+							"account_id, finished");
+				});
+	}
 
+	private void upgradeTable(Connection connection, String tableName, ThrowingConsumer<List<String>, SQLException> columnsConsumer) throws SQLException {
+		List<String> columns = new ArrayList<>(14);
+		try (ResultSet set = connection.getMetaData().getColumns(connection.getCatalog(), null, tableName, null)) {
+			while (set.next()) {
+				columns.add(set.getString("COLUMN_NAME").toLowerCase());
+			}
+		}
+		if (columns.isEmpty()) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe("Cannot check integrity of SQL table " + tableName);
+		}else {
+			columnsConsumer.accept(columns);
+		}
 	}
 
 	public static synchronized String migrate(HikariDataSourceWrapper db, PlayersManagerYAML yaml) throws SQLException {
@@ -410,47 +589,143 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 		return saveAccount(acc, true);
 	}
 
+	/**
+	 * Saves the changed quest entries of an account.
+	 *
+	 * @param acc account to save
+	 * @param stop if <code>true</code>, the account is being unloaded: its entries will not be tracked
+	 *        anymore and the account is released once they are written, so that another server can
+	 *        claim it
+	 * @return a future completed once the entries have been written
+	 */
 	public CompletableFuture<Void> saveAccount(PlayerAccountImplementation acc, boolean stop) {
-		// batch 활용해서 한번에 insert.
-			String insertQuestData = "INSERT INTO " + QUESTS_ENTRIES_TABLE
-							+ " (account_id, quest_id, finished, timer, current_branch, current_stage, additional_datas, quest_flow) " +
-							"VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
-							"ON DUPLICATE KEY UPDATE finished = VALUES(finished), timer = VALUES(timer), current_branch = VALUES(current_branch), current_stage = VALUES(current_stage), additional_datas = VALUES(additional_datas), quest_flow = VALUES(quest_flow)";
-		//			try (PreparedStatement insertStatement = connection.prepareStatement(insertQuestData)) {
-		//				insertStatement.setInt(1, acc.index);
-		//				insertStatement.setInt(2, questID);
-		//				insertStatement.setInt(3, finished);
-		//				insertStatement.setLong(4, timer);
-		//				insertStatement.setInt(5, branch);
-		//				insertStatement.setInt(6, stage);
-		//				insertStatement.setString(7, CustomizedObjectTypeAdapter.serializeNullable(additionalDatas));
-		//				insertStatement.setString(8, questFlow.toString());
-		//				insertStatement.execute();
-		//					QuestsPlugin.getPlugin().getLoggerExpanded().debug("Created row " + handlingRowId + " for quest " + questID + ", account " + acc.index);
-		//				} catch (SQLException ex) {
-		//				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while inserting a player's quest datas.", ex);
-		//			}
-		return palmLibrary.runAsync(connection -> {
-			PreparedStatement ps = connection.prepareStatement(insertQuestData);
-			for (@NotNull PlayerQuestEntryData entry : acc.getQuestEntries()) {
-				MySQLPlayerQuestDataEntry data = (MySQLPlayerQuestDataEntry) entry;
-				ps.setInt(1, acc.index);
-				ps.setInt(2, data.questID);
-				ps.setInt(3, data.finished);
-				ps.setLong(4, data.timer);
-				ps.setInt(5, data.branch);
-				ps.setInt(6, data.stage);
-				ps.setString(7, CustomizedObjectTypeAdapter.serializeNullable(data.additionalDatas));
-				ps.setString(8, data.questFlow.toString());
-				ps.addBatch();
+		List<MySQLPlayerQuestDataEntry> dirtyEntries = new ArrayList<>();
+		int skipped = collectDirtyEntries(acc, dirtyEntries, stop);
+		List<QuestEntriesJournal.Release> releases = stop
+				? Collections.singletonList(new QuestEntriesJournal.Release(acc.index, ((PlayerAccountDB) acc).ownerVersion))
+				: Collections.emptyList();
+		return flushSnapshots(takeSnapshots(dirtyEntries), skipped, releases);
+	}
+
+	private List<EntrySnapshot> takeSnapshots(List<MySQLPlayerQuestDataEntry> entries) {
+		List<EntrySnapshot> snapshots = new ArrayList<>(entries.size());
+		for (MySQLPlayerQuestDataEntry entry : entries) {
+			snapshots.add(entry.snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Polls the dirty flag of every quest entry of the account.
+	 *
+	 * @param acc account to collect entries from
+	 * @param dirtyEntries list in which changed entries are added
+	 * @param stop if <code>true</code>, the entries will not be tracked anymore (account unloading)
+	 * @return the amount of entries which have not changed since the last flush
+	 */
+	private int collectDirtyEntries(PlayerAccountImplementation acc, List<MySQLPlayerQuestDataEntry> dirtyEntries,
+			boolean stop) {
+		int skipped = 0;
+		for (@NotNull PlayerQuestEntryData entry : acc.getQuestEntries()) {
+			MySQLPlayerQuestDataEntry data = (MySQLPlayerQuestDataEntry) entry;
+			if (data.pollDirty())
+				dirtyEntries.add(data);
+			else
+				skipped++;
+			if (stop)
+				data.stop();
+		}
+		return skipped;
+	}
+
+	/**
+	 * Encodes the snapshots and hands them to the journal as a single batch. This can run on any
+	 * thread. Entries that cannot be written are flagged dirty again so that the next flush retries
+	 * them.
+	 */
+	private CompletableFuture<Void> flushSnapshots(List<EntrySnapshot> snapshots, int skipped,
+			List<QuestEntriesJournal.Release> releases) {
+		totalSkippedEntries.addAndGet(skipped);
+		if (snapshots.isEmpty() && releases.isEmpty())
+			return CompletableFuture.completedFuture(null);
+
+		List<QuestEntriesJournal.Row> rows = new ArrayList<>(snapshots.size());
+		for (EntrySnapshot snapshot : snapshots) {
+			rows.add(snapshot.toRow());
+		}
+		return journal.submit(rows, releases).whenComplete((__, ex) -> {
+			if (ex == null) {
+				totalWrittenEntries.addAndGet(snapshots.size());
+			} else {
+				snapshots.forEach(snapshot -> snapshot.entry.restoreDirty());
 			}
-			ps.executeBatch();
-		});
-		//acc.getQuestEntries()
-		//	.stream()
-		//	.map(MySQLPlayerQuestDataEntry.class::cast)
-		//		.forEach(x -> x.flushAll(stop));
-//
+		}).thenApply(__ -> null);
+	}
+
+	/**
+	 * Immutable copy of a changed quest entry, taken on the main thread and encoded later. Datas which
+	 * have not been decoded since the entry was loaded are kept in their encoded form.
+	 */
+	private static class EntrySnapshot {
+		private final MySQLPlayerQuestDataEntry entry;
+		private final int accountID;
+		private final long ownerVersion;
+		private final int questID;
+		private final int finished;
+		private final long timer;
+		private final int branch;
+		private final int stage;
+		private final @Nullable Map<String, Object> datas;
+		private final byte @Nullable [] encodedDatas;
+		private final byte[] questFlow;
+
+		private EntrySnapshot(MySQLPlayerQuestDataEntry entry, int accountID, long ownerVersion) {
+			this.entry = entry;
+			this.accountID = accountID;
+			this.ownerVersion = ownerVersion;
+			this.questID = entry.questID;
+			this.finished = entry.finished;
+			this.timer = entry.timer;
+			this.branch = entry.branch;
+			this.stage = entry.stage;
+			this.encodedDatas = entry.getUndecodedDatas();
+			this.datas = encodedDatas == null ? QuestEntryRecord.immutableCopy(entry.getDatas()) : null;
+			this.questFlow = entry.getEncodedQuestFlow();
+		}
+
+		private QuestEntriesJournal.Row toRow() {
+			return new QuestEntriesJournal.Row(accountID, ownerVersion, questID, finished, timer, branch, stage,
+					encodedDatas == null ? CompactDataCodec.encode(datas) : encodedDatas, questFlow);
+		}
+	}
+
+	/**
+	 * @return amount of quest entries written to the database during the last periodic save
+	 */
+	public int getLastCycleWrittenEntries() {
+		return lastCycleWritten;
+	}
+
+	/**
+	 * @return amount of unchanged quest entries skipped during the last periodic save
+	 */
+	public int getLastCycleSkippedEntries() {
+		return lastCycleSkipped;
+	}
+
+	public long getTotalWrittenEntries() {
+		return totalWrittenEntries.get();
+	}
+
+	/**
+	 * @return amount of pool data changes which have not been saved because the write queue was full
+	 */
+	public long getRejectedPoolDatas() {
+		return poolDatasQueue.getRejectedAmount();
+	}
+
+	public long getTotalSkippedEntries() {
+		return totalSkippedEntries.get();
 	}
 
 	protected static String getCompletedQuestsString(Set<Integer> completedQuests) {
@@ -462,15 +737,17 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 	 */
 	public class MySQLPlayerQuestDataEntry extends PlayerQuestEntryDataImplementation {
 
-		private static final int DATA_QUERY_TIMEOUT = 15;
-		private static final int DATA_FLUSHING_TIME = 10;
+		private volatile boolean disabled = false;
 
-		//private Map<String, Entry<BukkitRunnable, Object>> cachedDatas = new HashMap<>(5);
-		private boolean disabled = false;
-		private int handlingRowId = -1;
+		/**
+		 * Set by every mutation, cleared when the entry is handed to the write-behind flusher. Multiple
+		 * changes between two flushes therefore result in a single row write.
+		 */
+		private final AtomicBoolean dirty = new AtomicBoolean();
 
 		public MySQLPlayerQuestDataEntry(PlayerAccountImplementation acc, int questID) {
 			super(acc, questID);
+			dirty.set(true); // newly created entry: has never been written
 		}
 
 		public MySQLPlayerQuestDataEntry(PlayerAccountImplementation acc, int questID, ResultSet result) throws SQLException {
@@ -481,117 +758,95 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 					result.getInt("finished"),
 					result.getInt("current_branch"),
 					result.getInt("current_stage"),
-					CustomizedObjectTypeAdapter.deserializeNullable(result.getString("additional_datas"), Map.class),
-					result.getString("quest_flow"));
-			this.handlingRowId = result.getInt("id");
+					null,
+					null);
+
+			// rows written before the binary columns existed are rewritten in the new format on next save
+			byte[] encodedDatas = result.getBytes("additional_datas_bin");
+			if (encodedDatas != null) {
+				setEncodedDatas(encodedDatas);
+			} else {
+				String jsonDatas = result.getString("additional_datas");
+				if (jsonDatas != null) {
+					additionalDatas = CustomizedObjectTypeAdapter.deserializeNullable(jsonDatas, Map.class);
+					dirty.set(true);
+				}
+			}
+
+			byte[] encodedFlow = result.getBytes("quest_flow_bin");
+			if (encodedFlow != null) {
+				setEncodedQuestFlow(encodedFlow);
+			} else {
+				String textFlow = result.getString("quest_flow");
+				if (textFlow != null && !textFlow.isEmpty()) {
+					questFlow = parseQuestFlow(textFlow);
+					dirty.set(true);
+				}
+			}
 		}
 
 		@Override
 		public void incrementFinished() {
 			super.incrementFinished();
-			//setDataStatement(updateFinished, getTimesFinished(), false);
+			markDirty();
 		}
 
 		@Override
 		public void setTimer(long timer) {
 			super.setTimer(timer);
-			//setDataStatement(updateTimer, timer, false);
+			markDirty();
 		}
 
 		@Override
 		public void setBranch(int branch) {
 			super.setBranch(branch);
-			//setDataStatement(updateBranch, branch, false);
+			markDirty();
 		}
 
 		@Override
 		public void setStage(int stage) {
 			super.setStage(stage);
-			//setDataStatement(updateStage, stage, false);
+			markDirty();
 		}
 
 		@Override
 		public <T> T setAdditionalData(String key, T value) {
 			T additionalData = super.setAdditionalData(key, value);
-			//setDataStatement(updateDatas, super.additionalDatas.isEmpty() ? null : CustomizedObjectTypeAdapter.serializeNullable(super.additionalDatas), true);
+			markDirty();
 			return additionalData;
 		}
 
 		@Override
 		public void addQuestFlow(StageController finished) {
 			super.addQuestFlow(finished);
-			//setDataStatement(updateFlow, getQuestFlow(), true);
+			markDirty();
 		}
 
 		@Override
 		public void resetQuestFlow() {
 			super.resetQuestFlow();
-			//setDataStatement(updateFlow, null, true);
-		}
-
-		//private void setDataStatement(String dataStatement, Object data, boolean allowNull) {
-		//	if (disabled) return;
-		//	try (Connection connection = db.getConnection()) {
-		//		if (handlingRowId == -1) createDataRow(connection);
-		//		try (PreparedStatement statement = connection.prepareStatement(dataStatement)) {
-		//			statement.setObject(1, data);
-		//			statement.setInt(2, handlingRowId);
-		//			//statement.setQueryTimeout(DATA_QUERY_TIMEOUT);
-		//			statement.executeUpdate();
-		//			if (data == null && !allowNull) {
-		//				QuestsPlugin.getPlugin().getLoggerExpanded().warning("Setting an illegal NULL value in statement \"" + dataStatement + "\" for account " + acc.index + " and quest " + questID);
-		//			}
-		//		}
-		//	} catch (Exception ex) {
-		//		QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while updating a player's quest datas.", ex);
-		//	}
-		//}
-
-		protected void flushAll(Connection con, boolean stop) {
-			if (stop) disabled = true;
-			// TODO: 플레이어 퀘스트 데이터를 일괄 Insert 해야하는 부분.
-			insertAll(con);
+			markDirty();
 		}
 
-		protected void stop() {
-			disabled = true;
+		protected void markDirty() {
+			if (!disabled)
+				dirty.set(true);
 		}
 
-		private void insertAll(Connection connection) {
-			String insertQuestData = "INSERT INTO " + QUESTS_ENTRIES_TABLE
-					+ " (account_id, quest_id, finished, timer, current_branch, current_stage, additional_datas, quest_flow) " +
-					"VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
-					"ON DUPLICATE KEY UPDATE finished = VALUES(finished), timer = VALUES(timer), current_branch = VALUES(current_branch), current_stage = VALUES(current_stage), additional_datas = VALUES(additional_datas), quest_flow = VALUES(quest_flow)";
-			try (PreparedStatement insertStatement = connection.prepareStatement(insertQuestData)) {
-				insertStatement.setInt(1, acc.index);
-				insertStatement.setInt(2, questID);
-				insertStatement.setInt(3, finished);
-				insertStatement.setLong(4, timer);
-				insertStatement.setInt(5, branch);
-				insertStatement.setInt(6, stage);
-				insertStatement.setString(7, CustomizedObjectTypeAdapter.serializeNullable(additionalDatas));
-				insertStatement.setString(8, questFlow.toString());
-				insertStatement.execute();
-					QuestsPlugin.getPlugin().getLoggerExpanded().debug("Created row " + handlingRowId + " for quest " + questID + ", account " + acc.index);
-				} catch (SQLException ex) {
-				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while inserting a player's quest datas.", ex);
-			}
+		protected boolean pollDirty() {
+			return dirty.getAndSet(false);
 		}
 
-		private void createDataRow(Connection connection) throws SQLException {
-			QuestsPlugin.getPlugin().getLoggerExpanded().debug("Inserting DB row of quest " + questID + " for account " + acc.index);
-			try (PreparedStatement insertStatement = connection.prepareStatement(insertQuestData, new String[] {"id"})) {
-				insertStatement.setInt(1, acc.index);
-				insertStatement.setInt(2, questID);
-				int affectedLines = insertStatement.executeUpdate();
-				if (affectedLines != 1)
-					throw new DataException("No row inserted");
-				ResultSet generatedKeys = insertStatement.getGeneratedKeys();
-				if (!generatedKeys.next())
-					throw new DataException("Generated keys ResultSet is empty");
-				handlingRowId = generatedKeys.getInt(1);
-				QuestsPlugin.getPlugin().getLoggerExpanded().debug("Created row " + handlingRowId + " for quest " + questID + ", account " + acc.index);
-			}
+		protected void restoreDirty() {
+			dirty.set(true);
+		}
+
+		protected void stop() {
+			disabled = true;
+		}
+
+		protected EntrySnapshot snapshot() {
+			return new EntrySnapshot(this, acc.index, ((PlayerAccountDB) acc).ownerVersion);
 		}
 
 	}
@@ -609,70 +864,45 @@ public class PlayersManagerDB extends AbstractPlayersManager {
 		@Override
 		public void setLastGive(long lastGive) {
 			super.setLastGive(lastGive);
-			updateData(updatePoolLastGive, lastGive);
+			poolDatasQueue.enqueue(this);
 		}
 
 		@Override
 		public void updatedCompletedQuests() {
-			updateData(updatePoolCompletedQuests, getCompletedQuestsString(getCompletedQuests()));
-		}
-
-		private void updateData(String dataStatement, Object data) {
-			palmLibrary.runAsync(connection -> {
-				try (PreparedStatement statement = connection.prepareStatement(getPoolAccountData)) {
-					statement.setInt(1, acc.index);
-					statement.setInt(2, poolID);
-					if (!statement.executeQuery().next()) { // if result set empty => need to insert data then update
-						try (PreparedStatement insertStatement = connection.prepareStatement(insertPoolData)) {
-							insertStatement.setInt(1, acc.index);
-							insertStatement.setInt(2, poolID);
-							insertStatement.executeUpdate();
-						}
-					}
-				}
-				try (PreparedStatement statement = connection.prepareStatement(dataStatement)) {
-					statement.setObject(1, data);
-					statement.setInt(2, acc.index);
-					statement.setInt(3, poolID);
-					statement.executeUpdate();
-				}
-			});
+			poolDatasQueue.enqueue(this);
 		}
 
 	}
 
 	public class PlayerAccountDB extends PlayerAccountImplementation {
 
-		public PlayerAccountDB(AbstractAccount account, int index) {
+		/**
+		 * Fencing token of this server for the account, see {@link AccountOwnership}.
+		 */
+		private final long ownerVersion;
+
+		public PlayerAccountDB(AbstractAccount account, int index, long ownerVersion) {
 			super(account, index);
+			this.ownerVersion = ownerVersion;
+		}
+
+		public long getOwnerVersion() {
+			return ownerVersion;
 		}
 
 		@Override
 		public <T> void setData(SavableData<T> data, T value) {
+			SQLDataSaver<?> dataSaver = accountDatas.get(data);
+			if (dataSaver == null)
+				throw new IllegalArgumentException("The " + data.getId() + " account data has not been registered.");
 			super.setData(data, value);
-
-			SQLDataSaver<T> dataSaver = (SQLDataSaver<T>) accountDatas.get(data);
-			palmLibrary.runAsync(connection -> {
-				try (PreparedStatement statement = connection.prepareStatement(dataSaver.getUpdateStatement())) {
-					dataSaver.setInStatement(statement, 1, value);
-					statement.setInt(2, index);
-					statement.executeUpdate();
-				}
-			});
+			accountDatasQueue.set(index, dataSaver, value);
 		}
 
 		@Override
 		public void resetEntries() {
 			super.resetEntries();
-
-			if (resetAccountDatas != null) {
-				palmLibrary.runAsync(connection -> {
-					try (PreparedStatement statement = connection.prepareStatement(resetAccountDatas)) {
-						statement.setInt(1, index);
-						statement.executeUpdate();
-					}
-				});
-			}
+			accountDatasQueue.reset(index);
 		}
 
 	}
@@ -0,0 +1,506 @@
+package fr.skytasul.quests.players;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import fr.skytasul.quests.BeautyQuests;
+import fr.skytasul.quests.api.QuestsPlugin;
+import fr.skytasul.quests.api.data.SavableData;
+import fr.skytasul.quests.api.players.PlayerAccount;
+import fr.skytasul.quests.api.players.QuestStatisticsService;
+import fr.skytasul.quests.api.pools.QuestPool;
+import fr.skytasul.quests.api.quests.Quest;
+import fr.skytasul.quests.players.accounts.AbstractAccount;
+import fr.skytasul.quests.players.accounts.GhostAccount;
+import fr.skytasul.quests.utils.QuestUtils;
+import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+
+/**
+ * Players manager storing all accounts in an {@link AccountLogStore}, for servers without database.
+ * <p>
+ * Accounts are saved in the same YAML format as {@link PlayersManagerYAML} files, but a load is a
+ * single positioned read and a save a single append instead of a file lookup, parse and rewrite. On
+ * the first startup, the accounts of the <code>players</code> directory are imported into the store.
+ */
+public class PlayersManagerLog extends AbstractPlayersManager {
+
+	private static final long COMPACTION_PERIOD_TICKS = 20L * 60 * 5;
+
+	private final Cache<Integer, PlayerAccountImplementation> unloadedAccounts = CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.MINUTES).build();
+	private final Map<Integer, PlayerAccountImplementation> pendingSaveAccounts = new ConcurrentHashMap<>();
+
+	private final Map<Integer, PlayerAccountImplementation> loadedAccounts = new ConcurrentHashMap<>();
+	private final Map<String, Integer> accountIndexes = new ConcurrentHashMap<>();
+
+	private final File directory = new File(BeautyQuests.getInstance().getDataFolder(), "players-log");
+	private final AccountLogStore store = new AccountLogStore(directory.toPath());
+	private final File importMarker = new File(directory, "import.pending");
+	private final File statisticsFile = new File(directory, "statistics.dat");
+	private final AggregateQuestStatistics statistics = new AggregateQuestStatistics();
+	private final AccountSnapshotVersions snapshotVersions = new AccountSnapshotVersions();
+	/**
+	 * Held while an account is read from the store to be loaded, or edited in the store by an
+	 * {@link AccountBulkEdit}.
+	 */
+	private final Striped<Lock> accountLocks = Striped.lock(64);
+
+	private int lastAccountID = 0;
+	private BukkitTask compactionTask;
+
+	@Override
+	public QuestStatisticsService getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public void questDatasChanged(@NotNull PlayerAccount acc) {
+		statistics.contribute((PlayerAccountImplementation) acc);
+	}
+
+	@Override
+	public CompletableFuture<PlayerAccount> load(AccountFetchRequest request) {
+		String identifier = super.getIdentifier(request.getOfflinePlayer());
+		Integer id = accountIndexes.get(identifier);
+		if (id != null) {
+			PlayerAccountImplementation acc;
+
+			acc = loadedAccounts.get(id);
+			if (acc != null) {
+				request.loaded(acc, "cached accounts");
+			} else {
+				acc = request.shouldCache() ? unloadedAccounts.asMap().remove(id) : unloadedAccounts.getIfPresent(id);
+				if (acc != null) {
+					if (request.shouldCache())
+						loadedAccounts.put(id, acc);
+					request.loaded(acc, "cached accounts pending unload");
+				} else {
+					Lock lock = accountLocks.get(id);
+					lock.lock();
+					try {
+						acc = loadFromStore(id);
+						if (acc != null) {
+							if (request.shouldCache()) {
+								PlayerAccountImplementation concurrent = loadedAccounts.putIfAbsent(id, acc);
+								if (concurrent != null)
+									acc = concurrent;
+							}
+							request.loaded(acc, "account store");
+						} else if (request.mustCreateMissing()) {
+							acc = createPlayerAccount(identifier, id);
+							if (request.shouldCache())
+								addAccount(acc);
+							request.created(acc);
+						} else {
+							request.notLoaded();
+						}
+					} finally {
+						lock.unlock();
+					}
+				}
+			}
+		} else if (request.mustCreateMissing()) {
+			request.created(createNewAccount(request));
+		} else {
+			request.notLoaded();
+		}
+		return CompletableFuture.completedFuture(request.getAccount());
+	}
+
+	@Override
+	protected CompletableFuture<Void> removeAccount(PlayerAccountImplementation acc) {
+		// the removal is ordered with the writes of the snapshots taken before,
+		// and the bulk edits starting after it will not find the account anymore
+		long version;
+		Lock lock = accountLocks.get(acc.index);
+		lock.lock();
+		try {
+			loadedAccounts.remove(acc.index);
+			accountIndexes.remove(acc.abstractAcc.getIdentifier(), acc.index);
+			statistics.remove(acc.index);
+			version = snapshotVersions.next();
+		} finally {
+			lock.unlock();
+		}
+		return CompletableFuture.runAsync(() -> {
+			try {
+				snapshotVersions.write(acc.index, version, () -> store.delete(acc.index));
+			} catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		});
+	}
+
+	@Override
+	public PlayerQuestEntryDataImplementation createPlayerQuestDatas(PlayerAccountImplementation acc, Quest quest) {
+		return new PlayerQuestEntryDataImplementation(acc, quest.getId());
+	}
+
+	@Override
+	public PlayerPoolDatasImplementation createPlayerPoolDatas(PlayerAccountImplementation acc, QuestPool pool) {
+		return new PlayerPoolDatasImplementation(acc, pool.getId());
+	}
+
+	@Override
+	public CompletableFuture<Integer> removeQuestDatas(Quest quest) {
+		return removeQuestDatas(quest, null);
+	}
+
+	@Override
+	public CompletableFuture<Integer> removeQuestDatas(Quest quest, CommandSender sender) {
+		return CompletableFuture.supplyAsync(() -> editAllAccounts("removal of quest " + quest.getId() + " datas",
+				acc -> acc.removeQuestEntry(quest).join() != null, sender));
+	}
+
+	@Override
+	public CompletableFuture<Integer> removePoolDatas(QuestPool pool) {
+		return removePoolDatas(pool, null);
+	}
+
+	@Override
+	public CompletableFuture<Integer> removePoolDatas(QuestPool pool, CommandSender sender) {
+		return CompletableFuture.supplyAsync(() -> editAllAccounts("removal of pool " + pool.getId() + " datas",
+				acc -> acc.removePoolDatas(pool).join() != null, sender));
+	}
+
+	/**
+	 * Applies a mutation to every account through an {@link AccountBulkEdit}: accounts which are not in
+	 * memory are read from the store, edited and appended back. A single worker is used as the store
+	 * serializes reads and writes anyway.
+	 */
+	private int editAllAccounts(String name, Predicate<PlayerAccountImplementation> mutation, CommandSender sender) {
+		return new AccountBulkEdit(name, 1, sender, new AccountBulkEdit.AccountStorage() {
+			@Override
+			public Lock getLock(int index) {
+				return accountLocks.get(index);
+			}
+
+			@Override
+			public PlayerAccountImplementation getAccountInMemory(int index) {
+				return PlayersManagerLog.this.getAccountInMemory(index);
+			}
+
+			@Override
+			public boolean editStoredAccount(int index, Predicate<PlayerAccountImplementation> mutation) throws IOException {
+				PlayerAccountImplementation acc = loadFromStore(index);
+				if (acc == null || !accountIndexes.containsKey(acc.abstractAcc.getIdentifier()) || !mutation.test(acc))
+					return false;
+				writeAccount(acc);
+				return true;
+			}
+
+			@Override
+			public void accountEdited(PlayerAccountImplementation acc) {
+				if (loadedAccounts.get(acc.index) != acc)
+					saveUnloadedAccount(acc);
+			}
+		}).run(store.getIndexes(), mutation);
+	}
+
+	private PlayerAccountImplementation getAccountInMemory(int index) {
+		PlayerAccountImplementation acc = loadedAccounts.get(index);
+		if (acc == null)
+			acc = pendingSaveAccounts.get(index);
+		if (acc == null)
+			acc = unloadedAccounts.getIfPresent(index);
+		return acc;
+	}
+
+	public boolean hasAccounts(Player p) {
+		return accountIndexes.containsKey(getIdentifier(p));
+	}
+
+	private PlayerAccountImplementation createPlayerAccount(String identifier, int index) {
+		Validate.notNull(identifier, "Identifier cannot be null (index: " + index + ")");
+		AbstractAccount abs = super.createAccountFromIdentifier(identifier);
+		if (abs == null) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().info("Player account with identifier " + identifier + " is not enabled, but will be kept in the account store.");
+			return new PlayerAccountImplementation(new GhostAccount(identifier), index);
+		}
+		return new PlayerAccountImplementation(abs, index);
+	}
+
+	/**
+	 * Creates the account of a player which has no index yet. Accounts can be fetched from the login
+	 * threads, so the index allocation and the registration of the account are done under the same
+	 * lock.
+	 */
+	private synchronized PlayerAccountImplementation createNewAccount(AccountFetchRequest request) {
+		AbstractAccount absacc = super.createAbstractAccount(request.getUniqueId());
+		PlayerAccountImplementation acc = new PlayerAccountImplementation(absacc, ++lastAccountID);
+		if (request.shouldCache())
+			addAccount(acc);
+		return acc;
+	}
+
+	private synchronized void addAccount(PlayerAccountImplementation acc) {
+		Validate.notNull(acc);
+		loadedAccounts.put(acc.index, acc);
+		accountIndexes.put(acc.abstractAcc.getIdentifier(), acc.index);
+		if (acc.index >= lastAccountID) lastAccountID = acc.index;
+	}
+
+	private PlayerAccountImplementation loadFromStore(int index) {
+		try {
+			byte[] datas = store.read(index);
+			if (datas == null)
+				return null;
+			YamlConfiguration config = new YamlConfiguration();
+			config.loadFromString(new String(datas, StandardCharsets.UTF_8));
+			return loadFromConfig(index, config);
+		} catch (IOException | InvalidConfigurationException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe("Cannot read player account " + index + " from the store", ex);
+			return null;
+		}
+	}
+
+	private PlayerAccountImplementation loadFromConfig(int index, ConfigurationSection datas) {
+		PlayerAccountImplementation acc = createPlayerAccount(datas.getString("identifier"), index);
+		for (Map<?, ?> questConfig : datas.getMapList("quests")) {
+			PlayerQuestEntryDataImplementation questDatas = PlayerQuestEntryDataImplementation.deserialize(acc, (Map<String, Object>) questConfig);
+			acc.addQuestEntry(questDatas);
+		}
+		for (Map<?, ?> poolConfig : datas.getMapList("pools")) {
+			PlayerPoolDatasImplementation poolDatas = PlayerPoolDatasImplementation.deserialize(acc, (Map<String, Object>) poolConfig);
+			acc.poolDatas.put(poolDatas.getPoolID(), poolDatas);
+		}
+		for (SavableData<?> data : accountDatas) {
+			if (datas.contains(data.getId())) {
+				acc.additionalDatas.put(data, datas.getObject(data.getId(), data.getDataType()));
+			}
+		}
+		return acc;
+	}
+
+	private void writeAccount(PlayerAccountImplementation acc) throws IOException {
+		snapshotAccount(acc).write(store);
+	}
+
+	/**
+	 * Serializes an account into a detached configuration which can be dumped and appended to the store
+	 * from any thread.
+	 */
+	private AccountSnapshot snapshotAccount(PlayerAccountImplementation acc) {
+		YamlConfiguration config = new YamlConfiguration();
+		acc.serialize(config);
+		statistics.contribute(acc);
+		return new AccountSnapshot(acc.index, snapshotVersions.next(), acc.abstractAcc.getIdentifier(), config);
+	}
+
+	/**
+	 * Imports the accounts of the legacy <code>players</code> directory, then renames it so that the
+	 * import is only done once.
+	 * <p>
+	 * A marker file is kept in the store directory while the import is not complete. If some files
+	 * cannot be imported, or if the server stops in the middle of the import, it is resumed on the next
+	 * startup: the accounts already in the store, which have been imported or saved since, are skipped.
+	 */
+	static void importYamlAccounts(@NotNull AccountLogStore store, @NotNull File yamlDirectory,
+			@NotNull File importMarker) throws IOException {
+		File[] files = yamlDirectory.listFiles((__, name) -> name.endsWith(".yml"));
+		if (files == null || files.length == 0) {
+			Files.deleteIfExists(importMarker.toPath());
+			return;
+		}
+
+		boolean resumed = importMarker.exists();
+		if (!resumed)
+			Files.createFile(importMarker.toPath());
+		QuestsPlugin.getPlugin().getLoggerExpanded().info((resumed ? "Resuming the import of " : "Importing ")
+				+ files.length + " player account files into the account store...");
+		long start = System.currentTimeMillis();
+		int imported = 0;
+		int failed = 0;
+		for (File file : files) {
+			try {
+				int index = Integer.parseInt(file.getName().substring(0, file.getName().length() - 4));
+				if (store.contains(index))
+					continue;
+				byte[] datas = Files.readAllBytes(file.toPath());
+				YamlConfiguration config = new YamlConfiguration();
+				config.loadFromString(new String(datas, StandardCharsets.UTF_8));
+				String identifier = config.getString("identifier");
+				if (identifier == null)
+					identifier = BeautyQuests.getInstance().getDataFile().getString("players." + index);
+				if (identifier == null) {
+					QuestsPlugin.getPlugin().getLoggerExpanded().warning("No identifier found for account file " + file.getName() + ", skipping it.");
+					continue;
+				}
+				// the file is already in the store format: no need to deserialize the account
+				store.write(index, identifier, datas);
+				imported++;
+			} catch (NumberFormatException | InvalidConfigurationException | IOException ex) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("Cannot import player account file " + file.getName(), ex);
+				failed++;
+			}
+		}
+		store.sync();
+
+		if (failed != 0) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe(failed + " player account files could not be imported."
+					+ " The import will be resumed on the next startup.");
+			return;
+		}
+		File importedDirectory = new File(yamlDirectory.getParentFile(), "players-imported");
+		if (!yamlDirectory.renameTo(importedDirectory))
+			throw new IOException("Cannot rename " + yamlDirectory + " to " + importedDirectory);
+		Files.delete(importMarker.toPath());
+		QuestsPlugin.getPlugin().getLoggerExpanded().info("Imported " + imported + " player accounts in "
+				+ (System.currentTimeMillis() - start) + " ms. The old files have been moved to " + importedDirectory.getName() + ".");
+	}
+
+	@Override
+	public void load() {
+		super.load();
+		try {
+			Map<Integer, String> identifiers = store.open();
+			if (identifiers.isEmpty() || importMarker.exists()) {
+				importYamlAccounts(store, new File(BeautyQuests.getInstance().getDataFolder(), "players"), importMarker);
+				identifiers = store.getIdentifiers();
+			}
+			for (Map.Entry<Integer, String> entry : identifiers.entrySet()) {
+				accountIndexes.put(entry.getValue(), entry.getKey());
+				if (entry.getKey() >= lastAccountID) lastAccountID = entry.getKey();
+			}
+		} catch (IOException ex) {
+			throw new IllegalStateException("Cannot open the player account store", ex);
+		}
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug(accountIndexes.size() + " accounts found in the account store.");
+
+		if (!statistics.load(statisticsFile)) {
+			QuestUtils.runAsync(() -> new AccountFilesBulkOperation("statistics aggregation", store.getIndexes(), 1, null)
+					.run(index -> {
+						PlayerAccountImplementation acc = loadFromStore(index);
+						if (acc != null)
+							statistics.contributeIfAbsent(acc);
+						return false;
+					}));
+		}
+
+		compactionTask = Bukkit.getScheduler().runTaskTimerAsynchronously(BeautyQuests.getInstance(), () -> {
+			try {
+				store.compact();
+			} catch (IOException ex) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while compacting the account store", ex);
+			}
+		}, COMPACTION_PERIOD_TICKS, COMPACTION_PERIOD_TICKS);
+	}
+
+	@Override
+	public void unload() {
+		super.unload();
+		if (compactionTask != null) {
+			compactionTask.cancel();
+			compactionTask = null;
+		}
+		store.close();
+		try {
+			statistics.save(statisticsFile);
+		} catch (IOException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while saving the quest statistics", ex);
+		}
+	}
+
+	@Override
+	public void save() {
+		snapshot().run();
+	}
+
+	@Override
+	protected synchronized @NotNull Runnable snapshot() {
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Saving " + loadedAccounts.size() + " loaded accounts.");
+
+		Set<PlayerAccountImplementation> accountsToSave = new HashSet<>(loadedAccounts.values());
+		accountsToSave.addAll(pendingSaveAccounts.values());
+		List<AccountSnapshot> snapshots = new ArrayList<>(accountsToSave.size());
+		for (PlayerAccountImplementation acc : accountsToSave) {
+			try {
+				snapshots.add(snapshotAccount(acc));
+			} catch (Exception e) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while trying to save " + acc.debugName() + " account", e);
+			}
+		}
+
+		return () -> {
+			for (AccountSnapshot snapshot : snapshots) {
+				try {
+					snapshot.write(store);
+				} catch (Exception e) {
+					QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while trying to save account " + snapshot.identifier, e);
+				}
+			}
+			try {
+				store.sync();
+			} catch (IOException e) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while flushing the account store", e);
+			}
+		};
+	}
+
+	@Override
+	public CompletableFuture<Void> unloadAccount(PlayerAccountImplementation acc) {
+		// the account must stay visible in memory until it is written
+		pendingSaveAccounts.put(acc.index, acc);
+		unloadedAccounts.put(acc.index, acc);
+		loadedAccounts.remove(acc.index);
+		saveUnloadedAccount(acc);
+		return CompletableFuture.completedFuture(null);
+	}
+
+	private void saveUnloadedAccount(PlayerAccountImplementation acc) {
+		pendingSaveAccounts.put(acc.index, acc);
+		AccountSnapshot snapshot = snapshotAccount(acc);
+		QuestUtils.runAsync(() -> {
+			try {
+				snapshot.write(store);
+			} catch (IOException e) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().warning("An error ocurred while saving player account " + acc.debugName(), e);
+			} finally {
+				pendingSaveAccounts.remove(acc.index, acc);
+			}
+		});
+	}
+
+	private class AccountSnapshot {
+		private final int index;
+		private final long version;
+		private final String identifier;
+		private final YamlConfiguration datas;
+
+		private AccountSnapshot(int index, long version, String identifier, YamlConfiguration datas) {
+			this.index = index;
+			this.version = version;
+			this.identifier = identifier;
+			this.datas = datas;
+		}
+
+		/**
+		 * Appends the snapshot to the store, unless a more recent snapshot of the account has already
+		 * been appended.
+		 */
+		private void write(AccountLogStore store) throws IOException {
+			if (!snapshotVersions.write(index, version,
+					() -> store.write(index, identifier, datas.saveToString().getBytes(StandardCharsets.UTF_8))))
+				QuestsPlugin.getPlugin().getLoggerExpanded().debug("Dropped a stale snapshot of account " + identifier);
+		}
+	}
+
+}
@@ -2,39 +2,67 @@ package fr.skytasul.quests.players;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
 import fr.skytasul.quests.BeautyQuests;
 import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.data.SavableData;
 import fr.skytasul.quests.api.players.PlayerAccount;
+import fr.skytasul.quests.api.players.QuestStatisticsService;
 import fr.skytasul.quests.api.pools.QuestPool;
 import fr.skytasul.quests.api.quests.Quest;
-import fr.skytasul.quests.api.utils.Utils;
 import fr.skytasul.quests.players.accounts.AbstractAccount;
 import fr.skytasul.quests.players.accounts.GhostAccount;
 import fr.skytasul.quests.utils.QuestUtils;
 import org.apache.commons.lang.Validate;
+import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
 
 public class PlayersManagerYAML extends AbstractPlayersManager {
 
 	private static final int ACCOUNTS_THRESHOLD = 1000;
+	private static final int BULK_OPERATION_WORKERS =
+			Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
 
 	private final Cache<Integer, PlayerAccountImplementation> unloadedAccounts = CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.MINUTES).build();
 	private final Map<Integer, PlayerAccountImplementation> pendingSaveAccounts = new ConcurrentHashMap<>();
 
-	protected final Map<Integer, PlayerAccountImplementation> loadedAccounts = new HashMap<>();
+	protected final Map<Integer, PlayerAccountImplementation> loadedAccounts = new ConcurrentHashMap<>();
+	/**
+	 * Identifiers of all registered accounts by index, and the other way around. Both maps are only
+	 * edited through {@link #indexIdentifier(int, String)} and {@link #unindexIdentifier(int)}.
+	 */
 	private final Map<Integer, String> identifiersIndex = new ConcurrentHashMap<>();
+	private final Map<String, Integer> indexesByIdentifier = new ConcurrentHashMap<>();
+
+	/**
+	 * Keys of the player files which are not handled by the plugin, such as datas of disabled
+	 * integrations. They are kept so that they can be written back with the account.
+	 */
+	private final Map<Integer, Map<String, Object>> foreignDatas = new ConcurrentHashMap<>();
+	private final AccountSnapshotVersions snapshotVersions = new AccountSnapshotVersions();
+	/**
+	 * Held while an account is read from its file to be loaded, or edited in its file by an
+	 * {@link AccountBulkEdit}.
+	 */
+	private final Striped<Lock> accountLocks = Striped.lock(64);
 
 	private final File directory = new File(BeautyQuests.getInstance().getDataFolder(), "players");
+	private final AggregateQuestStatistics statistics = new AggregateQuestStatistics();
 
 	private int lastAccountID = 0;
 
@@ -42,11 +70,21 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 		return directory;
 	}
 
+	@Override
+	public QuestStatisticsService getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public void questDatasChanged(@NotNull PlayerAccount acc) {
+		statistics.contribute((PlayerAccountImplementation) acc);
+	}
+
 	@Override
 	public CompletableFuture<PlayerAccount> load(AccountFetchRequest request) {
 		String identifier = super.getIdentifier(request.getOfflinePlayer());
-		if (identifiersIndex.containsValue(identifier)) {
-			int id = Utils.getKeyByValue(identifiersIndex, identifier);
+		Integer id = indexesByIdentifier.get(identifier);
+		if (id != null) {
 			PlayerAccountImplementation acc;
 
 			// 1. get the account if it's already loaded
@@ -62,35 +100,39 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 						loadedAccounts.put(id, acc);
 					request.loaded(acc, "cached accounts pending unload");
 				} else {
-
-					// 3. load the account from the corresponding file
-					acc = loadFromFile(id, true);
-					if (acc != null) {
-						if (request.shouldCache())
-							loadedAccounts.put(id, acc);
-						request.loaded(acc, "file from index");
-					} else {
-
-						// 4. that's pretty bizarre: the account's identifier
-						// has an associated index, but no saved datas can be found.
-						if (request.mustCreateMissing()) {
-							acc = createPlayerAccount(identifier, id);
-							if (request.shouldCache())
-								addAccount(acc);
-							request.created(acc);
+					Lock lock = accountLocks.get(id);
+					lock.lock();
+					try {
+
+						// 3. load the account from the corresponding file
+						acc = loadFromFile(id, true);
+						if (acc != null) {
+							if (request.shouldCache()) {
+								PlayerAccountImplementation concurrent = loadedAccounts.putIfAbsent(id, acc);
+								if (concurrent != null)
+									acc = concurrent;
+							}
+							request.loaded(acc, "file from index");
 						} else {
-							request.notLoaded();
+
+							// 4. that's pretty bizarre: the account's identifier
+							// has an associated index, but no saved datas can be found.
+							if (request.mustCreateMissing()) {
+								acc = createPlayerAccount(identifier, id);
+								if (request.shouldCache())
+									addAccount(acc);
+								request.created(acc);
+							} else {
+								request.notLoaded();
+							}
 						}
+					} finally {
+						lock.unlock();
 					}
 				}
 			}
 		} else if (request.mustCreateMissing()) {
-			AbstractAccount absacc = super.createAbstractAccount(request.getUniqueId());
-			PlayerAccountImplementation acc = new PlayerAccountImplementation(absacc, lastAccountID + 1);
-			if (request.shouldCache())
-				addAccount(acc);
-
-			request.created(acc);
+			request.created(createNewAccount(request));
 		} else {
 			request.notLoaded();
 		}
@@ -99,9 +141,27 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 
 	@Override
 	protected CompletableFuture<Void> removeAccount(PlayerAccountImplementation acc) {
-		loadedAccounts.remove(acc.index);
-		identifiersIndex.remove(acc.index);
-		return CompletableFuture.runAsync(() -> removePlayerFile(acc.index));
+		// the removal is ordered with the writes of the snapshots taken before,
+		// and the bulk edits starting after it will not find the account anymore
+		long version;
+		Lock lock = accountLocks.get(acc.index);
+		lock.lock();
+		try {
+			loadedAccounts.remove(acc.index);
+			unindexIdentifier(acc.index);
+			statistics.remove(acc.index);
+			foreignDatas.remove(acc.index);
+			version = snapshotVersions.next();
+		} finally {
+			lock.unlock();
+		}
+		return CompletableFuture.runAsync(() -> {
+			try {
+				snapshotVersions.write(acc.index, version, () -> removePlayerFile(acc.index));
+			}catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		});
 	}
 
 	@Override
@@ -116,56 +176,92 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 
 	@Override
 	public CompletableFuture<Integer> removeQuestDatas(Quest quest) {
-		return CompletableFuture.supplyAsync(() -> {
-			loadAllAccounts();
-			int amount = 0;
-
-			for (PlayerAccountImplementation account : loadedAccounts.values()) {
-				try {
-					if (account.removeQuestEntry(quest).get() != null) {
-						// we can use the .get() method as the CompletableFuture created by the YAML players manager is
-						// already completed
-						amount++;
-					}
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					throw new CompletionException(e);
-				} catch (ExecutionException e) {
-					throw new CompletionException(e);
-				}
-			}
+		return removeQuestDatas(quest, null);
+	}
 
-			return amount;
-		});
+	@Override
+	public CompletableFuture<Integer> removeQuestDatas(Quest quest, CommandSender sender) {
+		// we can use the .join() method as the CompletableFuture created by the YAML players manager is
+		// already completed
+		return CompletableFuture.supplyAsync(() -> editAllAccounts("removal of quest " + quest.getId() + " datas",
+				account -> account.removeQuestEntry(quest).join() != null, sender));
 	}
 
 	@Override
 	public CompletableFuture<Integer> removePoolDatas(QuestPool pool) {
-		return CompletableFuture.supplyAsync(() -> {
-			loadAllAccounts();
-			int amount = 0;
+		return removePoolDatas(pool, null);
+	}
 
-			for (PlayerAccountImplementation account : loadedAccounts.values()) {
-				try {
-					if (account.removePoolDatas(pool).get() != null) {
-						// we can use the .get() method as the CompletableFuture created by the YAML players manager is
-						// already completed
-						amount++;
-					}
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					throw new CompletionException(e);
-				} catch (ExecutionException e) {
-					throw new CompletionException(e);
-				}
+	@Override
+	public CompletableFuture<Integer> removePoolDatas(QuestPool pool, CommandSender sender) {
+		return CompletableFuture.supplyAsync(() -> editAllAccounts("removal of pool " + pool.getId() + " datas",
+				account -> account.removePoolDatas(pool).join() != null, sender));
+	}
+
+	/**
+	 * Applies a mutation to every account through an {@link AccountBulkEdit}. Files of the accounts
+	 * which are not in memory are written back atomically if they have been changed.
+	 *
+	 * @param name name of the operation, displayed in progress messages
+	 * @param mutation edits an account and returns <code>true</code> if it has been changed
+	 * @param sender receiver of the progress messages, may be <code>null</code>
+	 * @return amount of changed accounts
+	 */
+	private int editAllAccounts(String name, Predicate<PlayerAccountImplementation> mutation, CommandSender sender) {
+		return new AccountBulkEdit(name, BULK_OPERATION_WORKERS, sender, new AccountBulkEdit.AccountStorage() {
+			@Override
+			public Lock getLock(int index) {
+				return accountLocks.get(index);
 			}
 
-			return amount;
-		});
+			@Override
+			public PlayerAccountImplementation getAccountInMemory(int index) {
+				return PlayersManagerYAML.this.getAccountInMemory(index);
+			}
+
+			@Override
+			public boolean editStoredAccount(int index, Predicate<PlayerAccountImplementation> mutation) throws IOException {
+				if (!identifiersIndex.containsKey(index))
+					return false; // removed in the meantime
+				PlayerAccountImplementation acc = loadFromFile(index, false);
+				if (acc == null || !mutation.test(acc))
+					return false;
+				savePlayerFile(acc);
+				return true;
+			}
+
+			@Override
+			public void accountEdited(PlayerAccountImplementation acc) {
+				if (loadedAccounts.get(acc.index) != acc)
+					saveUnloadedAccount(acc);
+			}
+		}).run(new ArrayList<>(identifiersIndex.keySet()), mutation);
+	}
+
+	private PlayerAccountImplementation getAccountInMemory(int index) {
+		PlayerAccountImplementation acc = loadedAccounts.get(index);
+		if (acc == null)
+			acc = pendingSaveAccounts.get(index);
+		if (acc == null)
+			acc = unloadedAccounts.getIfPresent(index);
+		return acc;
 	}
 
 	public boolean hasAccounts(Player p) {
-		return identifiersIndex.containsValue(getIdentifier(p));
+		return indexesByIdentifier.containsKey(getIdentifier(p));
+	}
+
+	private synchronized void indexIdentifier(int index, String identifier) {
+		String previous = identifiersIndex.put(index, identifier);
+		if (previous != null && !previous.equals(identifier))
+			indexesByIdentifier.remove(previous, index);
+		indexesByIdentifier.put(identifier, index);
+	}
+
+	private synchronized void unindexIdentifier(int index) {
+		String identifier = identifiersIndex.remove(index);
+		if (identifier != null)
+			indexesByIdentifier.remove(identifier, index);
 	}
 
 	private synchronized PlayerAccountImplementation createPlayerAccount(String identifier, int index) {
@@ -194,10 +290,23 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 		QuestsPlugin.getPlugin().getLoggerExpanded().info("Total loaded accounts: " + loadedAccounts.size());
 	}
 
+	/**
+	 * Creates the account of a player which has no index yet. Accounts can be fetched from the login
+	 * threads, so the index allocation and the registration of the account are done under the same
+	 * lock.
+	 */
+	private synchronized PlayerAccountImplementation createNewAccount(AccountFetchRequest request) {
+		AbstractAccount absacc = super.createAbstractAccount(request.getUniqueId());
+		PlayerAccountImplementation acc = new PlayerAccountImplementation(absacc, lastAccountID + 1);
+		if (request.shouldCache())
+			addAccount(acc);
+		return acc;
+	}
+
 	private synchronized void addAccount(PlayerAccountImplementation acc) {
 		Validate.notNull(acc);
 		loadedAccounts.put(acc.index, acc);
-		identifiersIndex.put(acc.index, acc.abstractAcc.getIdentifier());
+		indexIdentifier(acc.index, acc.abstractAcc.getIdentifier());
 		if (acc.index >= lastAccountID) lastAccountID = acc.index;
 	}
 
@@ -216,9 +325,18 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 			identifier = identifiersIndex.get(index);
 		}
 		PlayerAccountImplementation acc = createPlayerAccount(identifier, index);
+		Map<String, Object> foreign = new HashMap<>();
+		for (String key : datas.getKeys(false)) {
+			if (!PlayerAccountImplementation.FORBIDDEN_DATA_ID.contains(key)
+					&& accountDatas.stream().noneMatch(data -> data.getId().equals(key)))
+				foreign.put(key, datas.get(key));
+		}
+		if (foreign.isEmpty()) {
+			foreignDatas.remove(index);
+		}else foreignDatas.put(index, foreign);
 		for (Map<?, ?> questConfig : datas.getMapList("quests")) {
 			PlayerQuestEntryDataImplementation questDatas = PlayerQuestEntryDataImplementation.deserialize(acc, (Map<String, Object>) questConfig);
-			acc.currentQuests.put(questDatas.questID, questDatas);
+			acc.addQuestEntry(questDatas);
 		}
 		for (Map<?, ?> poolConfig : datas.getMapList("pools")) {
 			PlayerPoolDatasImplementation questDatas = PlayerPoolDatasImplementation.deserialize(acc, (Map<String, Object>) poolConfig);
@@ -233,11 +351,21 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 	}
 
 	public void savePlayerFile(PlayerAccountImplementation acc) throws IOException {
-		File file = new File(directory, acc.index + ".yml");
-		file.createNewFile();
-		YamlConfiguration playerConfig = YamlConfiguration.loadConfiguration(file);
-		acc.serialize(playerConfig);
-		playerConfig.save(file);
+		snapshotAccount(acc).write();
+	}
+
+	/**
+	 * Serializes an account into a detached configuration which holds the whole content of the player
+	 * file, and can be written from any thread.
+	 */
+	private AccountSnapshot snapshotAccount(PlayerAccountImplementation acc) {
+		YamlConfiguration snapshot = new YamlConfiguration();
+		Map<String, Object> foreign = foreignDatas.get(acc.index);
+		if (foreign != null)
+			foreign.forEach(snapshot::set);
+		acc.serialize(snapshot);
+		statistics.contribute(acc);
+		return new AccountSnapshot(acc.index, snapshotVersions.next(), snapshot);
 	}
 
 	public void removePlayerFile(int index) {
@@ -263,7 +391,7 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 				try {
 					String path = "players." + key;
 					int index = Integer.parseInt(key);
-					identifiersIndex.put(index, config.getString(path));
+					indexIdentifier(index, config.getString(path));
 					if (index >= lastAccountID) lastAccountID = index;
 				}catch (Exception ex) {
 					QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occured while loading player account. Data: " + config.get(key), ex);
@@ -272,6 +400,17 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 		}
 		QuestsPlugin.getPlugin().getLoggerExpanded().debug(loadedAccounts.size() + " accounts loaded and " + identifiersIndex.size() + " identifiers.");
 
+		if (!statistics.load(getStatisticsFile())) {
+			List<Integer> indexes = new ArrayList<>(identifiersIndex.keySet());
+			QuestUtils.runAsync(() -> new AccountFilesBulkOperation("statistics aggregation", indexes, BULK_OPERATION_WORKERS, null)
+					.run(index -> {
+						PlayerAccountImplementation acc = loadFromFile(index, false);
+						if (acc != null)
+							statistics.contributeIfAbsent(acc);
+						return false;
+					}));
+		}
+
 		if (identifiersIndex.size() >= ACCOUNTS_THRESHOLD) {
 			QuestsPlugin.getPlugin().getLoggerExpanded().warning(
 					"⚠ WARNING - " + identifiersIndex.size() + " players are registered on this server."
@@ -282,39 +421,103 @@ public class PlayersManagerYAML extends AbstractPlayersManager {
 	}
 
 	@Override
-	public synchronized void save() {
+	public void unload() {
+		super.unload();
+		try {
+			statistics.save(getStatisticsFile());
+		}catch (IOException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while saving the quest statistics", ex);
+		}
+	}
+
+	private File getStatisticsFile() {
+		return new File(directory, "statistics.dat");
+	}
+
+	@Override
+	public void save() {
+		snapshot().run();
+	}
+
+	@Override
+	protected synchronized @NotNull Runnable snapshot() {
 		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Saving " + loadedAccounts.size() + " loaded accounts and " + identifiersIndex.size() + " identifiers.");
 
-		BeautyQuests.getInstance().getDataFile().set("players", identifiersIndex);
+		BeautyQuests.getInstance().getDataFile().set("players", new HashMap<>(identifiersIndex));
 
-		// as the save can take a few seconds and MAY be done asynchronously,
-		// it is possible that the "loadedAccounts" map is being edited concurrently.
-		// therefore, we create a new list to avoid this issue.
+		// accounts are serialized now, on the thread which edits them,
+		// and only the resulting detached configurations are written later.
 		Set<PlayerAccountImplementation> accountsToSave = new HashSet<>(loadedAccounts.values());
 		accountsToSave.addAll(pendingSaveAccounts.values());
+		List<AccountSnapshot> snapshots = new ArrayList<>(accountsToSave.size());
 		for (PlayerAccountImplementation acc : accountsToSave) {
 			try {
-				savePlayerFile(acc);
+				snapshots.add(snapshotAccount(acc));
 			}catch (Exception e) {
 				QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while trying to save " + acc.debugName() + " account file", e);
 			}
 		}
+
+		return () -> {
+			for (AccountSnapshot snapshot : snapshots) {
+				try {
+					snapshot.write();
+				}catch (Exception e) {
+					QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error ocurred while trying to save account file " + snapshot.index + ".yml", e);
+				}
+			}
+		};
 	}
 
 	@Override
 	public CompletableFuture<Void> unloadAccount(PlayerAccountImplementation acc) {
-		loadedAccounts.remove(acc.index);
+		// the account must stay visible in memory until its file is written
+		pendingSaveAccounts.put(acc.index, acc);
 		unloadedAccounts.put(acc.index, acc);
+		loadedAccounts.remove(acc.index);
+		saveUnloadedAccount(acc);
+		return CompletableFuture.completedFuture(null);
+	}
+
+	private void saveUnloadedAccount(PlayerAccountImplementation acc) {
 		pendingSaveAccounts.put(acc.index, acc);
+		AccountSnapshot snapshot = snapshotAccount(acc);
 		QuestUtils.runAsync(() -> {
-			pendingSaveAccounts.remove(acc.index);
 			try {
-				savePlayerFile(acc);
+				snapshot.write();
 			}catch (IOException e) {
 				QuestsPlugin.getPlugin().getLoggerExpanded().warning("An error ocurred while saving player file " + acc.debugName(), e);
+			}finally {
+				pendingSaveAccounts.remove(acc.index, acc);
 			}
 		});
-		return CompletableFuture.completedFuture(null);
+	}
+
+	private class AccountSnapshot {
+		private final int index;
+		private final long version;
+		private final YamlConfiguration datas;
+
+		private AccountSnapshot(int index, long version, YamlConfiguration datas) {
+			this.index = index;
+			this.version = version;
+			this.datas = datas;
+		}
+
+		/**
+		 * Replaces the player file by the snapshot, unless a more recent snapshot of the account has
+		 * already been written.
+		 */
+		private void write() throws IOException {
+			boolean written = snapshotVersions.write(index, version, () -> {
+				Path temporary = new File(directory, index + ".yml.tmp").toPath();
+				Files.write(temporary, datas.saveToString().getBytes(StandardCharsets.UTF_8));
+				Files.move(temporary, new File(directory, index + ".yml").toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			});
+			if (!written)
+				QuestsPlugin.getPlugin().getLoggerExpanded().debug("Dropped a stale snapshot of account file " + index + ".yml");
+		}
 	}
 
 }
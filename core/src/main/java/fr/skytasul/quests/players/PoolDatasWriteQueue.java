@@ -0,0 +1,328 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.BeautyQuests;
+import fr.skytasul.quests.api.QuestsPlugin;
+import fr.skytasul.quests.utils.SQLDatabase;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write queue for pool datas of the database players manager.
+ * <p>
+ * Every change of a pool data only marks the (account, pool) pair as pending. All pending pairs are
+ * written every {@link #FLUSH_PERIOD_TICKS} ticks in multi-row
+ * <code>INSERT ... ON DUPLICATE KEY UPDATE</code> statements, reading the latest values at flush
+ * time. Several changes of the same pool data between two flushes therefore cost a single row.
+ * <p>
+ * Removals go through the queue as well, so that a single writer orders them with the upserts: the
+ * deletions of a flush are executed before its upserts, and flushes are executed one after the
+ * other. A pool data removed and then changed again is thus kept, and a removed pool data cannot be
+ * written back by a flush which was already in flight.
+ * <p>
+ * Values are read on the server thread when the queue is drained, the rows are then written off-thread.
+ * If a flush fails, its removals and pool datas are queued again, except the pool datas which have
+ * been removed meanwhile.
+ * <p>
+ * At most {@link #MAX_PENDING} pool datas can be pending, which only happens if the database is
+ * unreachable for a long time. Changes of other pool datas are then rejected: they are counted by
+ * {@link #getRejectedAmount()} and will only be saved on their next change. Removals are never
+ * rejected.
+ */
+class PoolDatasWriteQueue {
+
+	static final int MAX_PENDING = 5000;
+
+	private static final int FLUSH_PERIOD_TICKS = 2;
+	private static final int ROWS_PER_STATEMENT = 200;
+	private static final List<String> KEY_COLUMNS = Arrays.asList("account_id", "pool_id");
+	private static final List<String> VALUE_COLUMNS = Arrays.asList("last_give", "completed_quests");
+
+	private final @NotNull SQLDatabase database;
+	private final @NotNull String table;
+	private final @NotNull String removePoolData;
+	private final @NotNull String removePool;
+
+	private final Map<Long, PlayerPoolDatasImplementation> pending = new HashMap<>();
+	private final Set<Long> removedKeys = new HashSet<>();
+	private final Map<Integer, CompletableFuture<Integer>> removedPools = new HashMap<>();
+	/* completed once the removals queued since the last drain are written */
+	private CompletableFuture<Void> removalsWritten = new CompletableFuture<>();
+
+	/*
+	 * Pool datas removed while a flush is in flight, which must not be queued again if this flush
+	 * fails.
+	 */
+	private final Set<Long> discardedKeys = new HashSet<>();
+	private final Set<Integer> discardedPools = new HashSet<>();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private @Nullable BukkitTask task;
+	private @Nullable CompletableFuture<Void> inFlight;
+
+	PoolDatasWriteQueue(@NotNull SQLDatabase database, @NotNull String table) {
+		this.database = database;
+		this.table = table;
+		this.removePoolData = "DELETE FROM " + table + " WHERE account_id = ? AND pool_id = ?";
+		this.removePool = "DELETE FROM " + table + " WHERE pool_id = ?";
+	}
+
+	public void start() {
+		if (task != null)
+			throw new IllegalStateException("Pool datas write queue already started");
+		task = Bukkit.getScheduler().runTaskTimer(BeautyQuests.getInstance(), this::flush, FLUSH_PERIOD_TICKS,
+				FLUSH_PERIOD_TICKS);
+	}
+
+	/**
+	 * Stops the flush timer and synchronously writes everything still pending.
+	 */
+	public void close() {
+		if (task != null) {
+			task.cancel();
+			task = null;
+		}
+		awaitInFlight();
+		Batch batch;
+		synchronized (this) {
+			batch = drain();
+		}
+		if (batch.isEmpty())
+			return;
+		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Flushing " + batch.rows.size() + " pending pool datas on shutdown");
+		try {
+			database.run(connection -> write(connection, batch));
+			batch.completed(null);
+		} catch (RuntimeException ex) {
+			batch.completed(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Marks a pool data as changed. It is rejected if too many pool datas are already pending.
+	 *
+	 * @return <code>false</code> if the pool data has been rejected
+	 */
+	public synchronized boolean enqueue(@NotNull PlayerPoolDatasImplementation datas) {
+		long key = key(datas.acc.index, datas.poolID);
+		if (pending.size() >= MAX_PENDING && !pending.containsKey(key)) {
+			rejected.increment();
+			QuestsPlugin.getPlugin().getLoggerExpanded().warning(
+					"More than " + MAX_PENDING + " pool datas are waiting to be saved: is the database reachable?"
+							+ " Changes of other pool datas are not saved until then.", this, 30);
+			return false;
+		}
+		pending.put(key, datas);
+		return true;
+	}
+
+	/**
+	 * Removes a pool data from the database, after all the writes of this pool data queued before.
+	 *
+	 * @return a future completed once the removal is written
+	 */
+	public synchronized @NotNull CompletableFuture<Void> remove(@NotNull PlayerPoolDatasImplementation datas) {
+		long key = key(datas.acc.index, datas.poolID);
+		discardedKeys.add(key);
+		pending.remove(key);
+		removedKeys.add(key);
+		return removalsWritten;
+	}
+
+	/**
+	 * Removes the datas of a pool for all accounts from the database, after all the writes of this pool
+	 * queued before.
+	 *
+	 * @return a future completed with the amount of removed rows once the removal is written
+	 */
+	public synchronized @NotNull CompletableFuture<Integer> removePool(int poolID) {
+		discardedPools.add(poolID);
+		pending.values().removeIf(datas -> datas.poolID == poolID);
+		removedKeys.removeIf(key -> (int) key.longValue() == poolID);
+		return removedPools.computeIfAbsent(poolID, __ -> new CompletableFuture<>());
+	}
+
+	public synchronized int getPendingAmount() {
+		return pending.size();
+	}
+
+	/**
+	 * @return amount of pool data changes rejected because too many pool datas were pending
+	 */
+	public long getRejectedAmount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Writes the pending removals and pool datas, unless a flush is already in flight: they are then
+	 * left for the next flush.
+	 *
+	 * @return a future completed once the flush in flight is done
+	 */
+	public synchronized @NotNull CompletableFuture<Void> flush() {
+		if (inFlight != null && !inFlight.isDone())
+			return inFlight;
+
+		discardedKeys.clear();
+		discardedPools.clear();
+		Batch batch = drain();
+		if (batch.isEmpty()) {
+			batch.completed(null);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		return inFlight = database.runAsync(connection -> write(connection, batch)).whenComplete((__, ex) -> {
+			if (ex == null) {
+				batch.completed(null);
+				return;
+			}
+			QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while saving " + batch.rows.size()
+					+ " pool datas and " + (batch.removedKeys.size() + batch.removedPools.size())
+					+ " removals. They will be retried.", ex);
+			requeue(batch);
+		});
+	}
+
+	private synchronized void requeue(Batch batch) {
+		// removals are kept as they are still needed, even if the pool data has been changed since
+		removedKeys.addAll(batch.removedKeys);
+		CompletableFuture<Void> retry = removalsWritten;
+		retry.whenComplete((__, ex) -> complete(batch.removalsWritten, null, ex));
+		batch.removedPools.forEach((pool, future) -> {
+			CompletableFuture<Integer> newer = removedPools.putIfAbsent(pool, future);
+			if (newer != null)
+				newer.whenComplete((amount, ex) -> complete(future, amount, ex));
+		});
+
+		for (Row row : batch.rows) {
+			long key = key(row.datas.acc.index, row.datas.poolID);
+			// a pool data still pending has been changed since, its latest values will be read on next flush
+			if (discardedKeys.contains(key) || discardedPools.contains(row.datas.poolID) || pending.containsKey(key))
+				continue;
+			if (pending.size() >= MAX_PENDING) {
+				rejected.increment();
+				continue;
+			}
+			pending.put(key, row.datas);
+		}
+	}
+
+	private void awaitInFlight() {
+		CompletableFuture<Void> flush;
+		synchronized (this) {
+			flush = inFlight;
+		}
+		if (flush == null)
+			return;
+		try {
+			flush.join();
+		} catch (Exception ex) {
+			// already logged, and its pool datas are pending again
+		}
+	}
+
+	private Batch drain() {
+		Batch batch = new Batch(removalsWritten);
+		removalsWritten = new CompletableFuture<>();
+		batch.removedPools.putAll(removedPools);
+		removedPools.clear();
+		batch.removedKeys.addAll(removedKeys);
+		removedKeys.clear();
+		for (PlayerPoolDatasImplementation datas : pending.values())
+			batch.rows.add(new Row(datas));
+		pending.clear();
+		return batch;
+	}
+
+	private void write(Connection connection, Batch batch) throws SQLException {
+		for (int pool : batch.removedPools.keySet()) {
+			try (PreparedStatement statement = connection.prepareStatement(removePool)) {
+				statement.setInt(1, pool);
+				batch.removedAmounts.put(pool, statement.executeUpdate());
+			}
+		}
+		if (!batch.removedKeys.isEmpty()) {
+			try (PreparedStatement statement = connection.prepareStatement(removePoolData)) {
+				for (long key : batch.removedKeys) {
+					statement.setInt(1, (int) (key >>> 32));
+					statement.setInt(2, (int) key);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+		}
+
+		for (int from = 0; from < batch.rows.size(); from += ROWS_PER_STATEMENT) {
+			List<Row> chunk = batch.rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, batch.rows.size()));
+			try (PreparedStatement statement = connection.prepareStatement(upsertStatement(chunk.size()))) {
+				int i = 1;
+				for (Row row : chunk) {
+					statement.setInt(i++, row.datas.acc.index);
+					statement.setInt(i++, row.datas.poolID);
+					statement.setLong(i++, row.lastGive);
+					statement.setString(i++, row.completedQuests);
+				}
+				statement.executeUpdate();
+			}
+		}
+	}
+
+	private String upsertStatement(int rows) {
+		return database.getDialect().upsert(table, KEY_COLUMNS, VALUE_COLUMNS, "(?, ?, ?, ?)", rows);
+	}
+
+	private static long key(int accountID, int poolID) {
+		return ((long) accountID << 32) | (poolID & 0xFFFFFFFFL);
+	}
+
+	private static <T> void complete(CompletableFuture<T> future, T value, Throwable ex) {
+		if (ex == null) {
+			future.complete(value);
+		} else
+			future.completeExceptionally(ex);
+	}
+
+	private static class Batch {
+		private final List<Row> rows = new ArrayList<>();
+		private final List<Long> removedKeys = new ArrayList<>();
+		private final Map<Integer, CompletableFuture<Integer>> removedPools = new HashMap<>();
+		private final Map<Integer, Integer> removedAmounts = new HashMap<>();
+		private final CompletableFuture<Void> removalsWritten;
+
+		private Batch(CompletableFuture<Void> removalsWritten) {
+			this.removalsWritten = removalsWritten;
+		}
+
+		private boolean isEmpty() {
+			return rows.isEmpty() && removedKeys.isEmpty() && removedPools.isEmpty();
+		}
+
+		private void completed(@Nullable Throwable ex) {
+			complete(removalsWritten, null, ex);
+			removedPools.forEach((pool, future) -> complete(future, removedAmounts.getOrDefault(pool, 0), ex));
+		}
+	}
+
+	private static class Row {
+		private final PlayerPoolDatasImplementation datas;
+		private final long lastGive;
+		private final String completedQuests;
+
+		private Row(PlayerPoolDatasImplementation datas) {
+			this.datas = datas;
+			this.lastGive = datas.getLastGive();
+			this.completedQuests = PlayersManagerDB.getCompletedQuestsString(datas.getCompletedQuests());
+		}
+	}
+
+}
@@ -0,0 +1,611 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.api.QuestsPlugin;
+import fr.skytasul.quests.utils.SQLDatabase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local journal of the quest entry rows sent to the database.
+ * <p>
+ * Besides row snapshots, the journal carries the deletions of quest entries as tombstone records,
+ * so that a deletion is written after the snapshots of the same entry submitted before it, and
+ * never undone by a retry or a replay of those snapshots.
+ * <p>
+ * Every batch of rows is first appended to the current segment file by the journal writer thread,
+ * which fsyncs once for all the batches it has gathered since its last pass. Synced batches are
+ * then written to the database by the journal applier thread, strictly in journal order: if the
+ * database cannot be reached, the applier retries the oldest batch until it succeeds and newer
+ * batches wait behind it, so an older snapshot of an entry can never overwrite a newer one.
+ * <p>
+ * Rows are only written if the server still owns their account (see {@link AccountOwnership}),
+ * rows of accounts claimed by another server in the meantime are dropped.
+ * <p>
+ * A segment file is deleted once it has been rolled over and all its batches have been written to
+ * the database. Segments still present at startup contain batches which may not have been written,
+ * they are replayed by {@link #replay(Connection)} before any account is loaded.
+ */
+class QuestEntriesJournal {
+
+	static final long SEGMENT_MAX_SIZE = 4L * 1024 * 1024;
+
+	private static final long RETRY_MIN_DELAY = 500;
+	private static final long RETRY_MAX_DELAY = 30_000;
+	private static final long CLOSE_TIMEOUT = 10_000;
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.journal");
+
+	private static final Batch CLOSE_MARKER = new Batch(Collections.emptyList(), Collections.emptyList());
+
+	private final @NotNull Path directory;
+	private final @NotNull SQLDatabase database;
+	private final @NotNull AccountOwnership ownership;
+	private final @NotNull String upsertStatement;
+	private final @NotNull String removeEntryStatement;
+	private final @NotNull String removeQuestStatement;
+
+	private final BlockingQueue<Batch> toSync = new LinkedBlockingQueue<>();
+	private final BlockingQueue<Batch> toApply = new LinkedBlockingQueue<>();
+
+	private @Nullable Thread writerThread;
+	private @Nullable Thread applierThread;
+	private volatile boolean closing = false;
+	private final AtomicLong syncs = new AtomicLong();
+
+	private long nextSegmentID;
+	private @Nullable Segment currentSegment;
+
+	QuestEntriesJournal(@NotNull File directory, @NotNull SQLDatabase database,
+			@NotNull AccountOwnership ownership, @NotNull String upsertStatement, @NotNull String removeEntryStatement,
+			@NotNull String removeQuestStatement) {
+		this.directory = directory.toPath();
+		this.database = database;
+		this.ownership = ownership;
+		this.upsertStatement = upsertStatement;
+		this.removeEntryStatement = removeEntryStatement;
+		this.removeQuestStatement = removeQuestStatement;
+	}
+
+	/**
+	 * Writes to the database the rows of all the segments left by a previous run, then deletes them.
+	 * Records that have only been partially written (crash in the middle of an append) are ignored.
+	 *
+	 * @param connection connection to the database
+	 * @return the amount of replayed rows
+	 */
+	public int replay(@NotNull Connection connection) throws SQLException, IOException {
+		Files.createDirectories(directory);
+		List<Path> segments = listSegments();
+		int replayed = 0;
+		for (Path segment : segments) {
+			List<Row> rows = new ArrayList<>();
+			try (DataInputStream input =
+					new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+				while (true) {
+					List<Row> batch = readBatch(input);
+					if (batch == null)
+						break;
+					rows.addAll(batch);
+				}
+			}
+			if (!rows.isEmpty())
+				writeRows(connection, rows, Collections.emptyList());
+			Files.delete(segment);
+			replayed += rows.size();
+			QuestsPlugin.getPlugin().getLoggerExpanded()
+					.debug("Replayed " + rows.size() + " quest entry rows from journal " + segment.getFileName());
+		}
+		if (!segments.isEmpty())
+			nextSegmentID = segmentID(segments.get(segments.size() - 1)) + 1;
+		if (replayed != 0)
+			QuestsPlugin.getPlugin().getLoggerExpanded().info("Replayed " + replayed
+					+ " quest entry rows which had not been saved in the database before the last shutdown.");
+		return replayed;
+	}
+
+	public void start() {
+		if (writerThread != null)
+			throw new IllegalStateException("Journal already started");
+		writerThread = new Thread(this::writerLoop, "BeautyQuests journal writer");
+		applierThread = new Thread(this::applierLoop, "BeautyQuests journal applier");
+		writerThread.setDaemon(true);
+		applierThread.setDaemon(true);
+		writerThread.start();
+		applierThread.start();
+	}
+
+	/**
+	 * Journals the rows and queues them to be written to the database. This method never blocks.
+	 *
+	 * @param rows rows to write, which may contain deletions
+	 * @param releases accounts to release once the rows have been written
+	 * @return a future completed with the amount of rows removed by the deletions, once the batch has
+	 *         been written to the database
+	 */
+	public @NotNull CompletableFuture<Integer> submit(@NotNull List<Row> rows, @NotNull List<Release> releases) {
+		if (closing) {
+			CompletableFuture<Integer> future = new CompletableFuture<>();
+			future.completeExceptionally(new IllegalStateException("Journal is closed"));
+			return future;
+		}
+		Batch batch = new Batch(rows, releases);
+		toSync.add(batch);
+		return batch.applied;
+	}
+
+	public int getPendingBatches() {
+		return toSync.size() + toApply.size();
+	}
+
+	/**
+	 * @return amount of times the journal has been synced to the disk, each time for all the batches
+	 *         submitted since the previous sync
+	 */
+	public long getSyncAmount() {
+		return syncs.get();
+	}
+
+	/**
+	 * Syncs all submitted batches and gives the applier a few seconds to write them. Batches which
+	 * could not be written stay in the journal and will be replayed on next startup.
+	 */
+	public void close() {
+		if (writerThread == null)
+			return;
+		closing = true;
+		try {
+			// not interrupted: an interrupt during a file operation would close the segment channel
+			toSync.add(CLOSE_MARKER);
+			writerThread.join(CLOSE_TIMEOUT);
+
+			long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+			while (!toApply.isEmpty() && applierThread.isAlive() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			applierThread.interrupt();
+			applierThread.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		toSync.drainTo(toApply); // submitted while closing
+		toApply.remove(CLOSE_MARKER);
+		int remaining = toApply.size();
+		Batch batch;
+		while ((batch = toApply.poll()) != null) {
+			batch.applied.completeExceptionally(new IllegalStateException("Journal closed before write"));
+		}
+		if (remaining != 0)
+			QuestsPlugin.getPlugin().getLoggerExpanded().warning(remaining
+					+ " batches of quest entries could not be saved in the database. They will be replayed on next startup.");
+
+		if (currentSegment != null) {
+			currentSegment.close();
+			currentSegment.sealed = true;
+			currentSegment.deleteIfDone();
+		}
+		writerThread = null;
+		applierThread = null;
+	}
+
+	private void writerLoop() {
+		List<Batch> batches = new ArrayList<>();
+		boolean stop = false;
+		while (!stop) {
+			try {
+				batches.add(toSync.take());
+				toSync.drainTo(batches);
+			} catch (InterruptedException ex) {
+				return;
+			}
+			stop = batches.remove(CLOSE_MARKER);
+			if (batches.isEmpty())
+				continue;
+
+			try {
+				Segment segment = getWritableSegment();
+				for (Batch batch : batches) {
+					segment.append(batch);
+				}
+				segment.channel.force(false);
+				syncs.incrementAndGet();
+			} catch (IOException ex) {
+				// the rows are still written to the database, without the crash guarantee
+				QuestsPlugin.getPlugin().getLoggerExpanded()
+						.severe("Cannot write " + batches.size() + " quest entry batches in the journal", ex);
+			}
+			toApply.addAll(batches);
+			batches.clear();
+		}
+	}
+
+	private Segment getWritableSegment() throws IOException {
+		if (currentSegment != null && currentSegment.size >= SEGMENT_MAX_SIZE) {
+			Segment full = currentSegment;
+			currentSegment = null;
+			full.close();
+			full.sealed = true;
+			full.deleteIfDone();
+		}
+		if (currentSegment == null)
+			currentSegment = new Segment(directory.resolve("segment-" + nextSegmentID++ + ".journal"));
+		return currentSegment;
+	}
+
+	private void applierLoop() {
+		long retryDelay = RETRY_MIN_DELAY;
+		while (true) {
+			Batch batch;
+			try {
+				batch = toApply.take();
+			} catch (InterruptedException ex) {
+				return;
+			}
+
+			int[] removed = new int[1];
+			while (true) {
+				try {
+					database.run(connection -> removed[0] = writeRows(connection, batch.rows, batch.releases));
+					break;
+				} catch (Exception ex) {
+					if (closing) {
+						toApply.add(batch); // left for the next startup
+						return;
+					}
+					QuestsPlugin.getPlugin().getLoggerExpanded().warning("Cannot write " + batch.rows.size()
+							+ " quest entries in the database, retrying in " + retryDelay + " ms. "
+							+ getPendingBatches() + " batches are waiting in the journal.", "journal", 30);
+					QuestsPlugin.getPlugin().getLoggerExpanded().debug("Journal write failure: " + ex);
+					try {
+						Thread.sleep(retryDelay);
+					} catch (InterruptedException ex2) {
+						toApply.add(batch);
+						return;
+					}
+					retryDelay = Math.min(retryDelay * 2, RETRY_MAX_DELAY);
+				}
+			}
+			retryDelay = RETRY_MIN_DELAY;
+
+			if (batch.segment != null)
+				batch.segment.acknowledge();
+			batch.applied.complete(removed[0]);
+		}
+	}
+
+	/**
+	 * Writes the records in order: snapshots are batched together, and the batch is sent before each
+	 * deletion so that a deletion always comes after the snapshots which precede it.
+	 *
+	 * @return the amount of rows removed by the deletions
+	 */
+	private int writeRows(Connection connection, List<Row> rows, List<Release> releases) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			// fencing locks the account rows: no other server can claim them before the commit
+			Map<Integer, Boolean> owned = new HashMap<>();
+			for (Row row : rows) {
+				if (row.type != Row.REMOVE_QUEST && !owned.containsKey(row.accountID))
+					owned.put(row.accountID, ownership.fence(connection, row.accountID, row.ownerVersion));
+			}
+
+			int rejected = 0;
+			int removed = 0;
+			try (PreparedStatement upsert = connection.prepareStatement(upsertStatement)) {
+				boolean pendingUpserts = false;
+				for (Row row : rows) {
+					if (row.type != Row.REMOVE_QUEST && !owned.get(row.accountID)) {
+						rejected++;
+						continue;
+					}
+					if (row.type == Row.UPSERT) {
+						row.setInStatement(upsert);
+						upsert.addBatch();
+						pendingUpserts = true;
+						continue;
+					}
+
+					if (pendingUpserts) {
+						upsert.executeBatch();
+						pendingUpserts = false;
+					}
+					if (row.type == Row.REMOVE_ENTRY) {
+						try (PreparedStatement statement = connection.prepareStatement(removeEntryStatement)) {
+							statement.setInt(1, row.accountID);
+							statement.setInt(2, row.questID);
+							removed += statement.executeUpdate();
+						}
+					} else {
+						try (PreparedStatement statement = connection.prepareStatement(removeQuestStatement)) {
+							statement.setInt(1, row.questID);
+							removed += statement.executeUpdate();
+						}
+					}
+				}
+				if (pendingUpserts)
+					upsert.executeBatch();
+			}
+			for (Release release : releases) {
+				ownership.release(connection, release.accountID, release.ownerVersion);
+			}
+			connection.commit();
+
+			if (rejected != 0)
+				QuestsPlugin.getPlugin().getLoggerExpanded().warning("Rejected " + rejected + " quest entries of "
+						+ owned.values().stream().filter(x -> !x).count() + " accounts now owned by another server.");
+			return removed;
+		} catch (SQLException ex) {
+			connection.rollback();
+			throw ex;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private List<Path> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> SEGMENT_NAME.matcher(file.getFileName().toString()).matches())
+					.sorted(Comparator.comparingLong(QuestEntriesJournal::segmentID))
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static long segmentID(Path segment) {
+		Matcher matcher = SEGMENT_NAME.matcher(segment.getFileName().toString());
+		if (!matcher.matches())
+			throw new IllegalArgumentException(segment.toString());
+		return Long.parseLong(matcher.group(1));
+	}
+
+	private static byte[] encodeBatch(List<Row> rows) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + rows.size() * 64);
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(rows.size());
+		for (Row row : rows) {
+			output.writeByte(row.type);
+			if (row.type == Row.REMOVE_QUEST) {
+				output.writeInt(row.questID);
+				continue;
+			}
+			output.writeInt(row.accountID);
+			output.writeLong(row.ownerVersion);
+			output.writeInt(row.questID);
+			if (row.type == Row.REMOVE_ENTRY)
+				continue;
+			output.writeInt(row.finished);
+			output.writeLong(row.timer);
+			output.writeInt(row.branch);
+			output.writeInt(row.stage);
+			writeBytes(output, row.datas);
+			writeBytes(output, row.flow);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			output.writeInt(-1);
+		} else {
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads a batch record, made of its payload length, the CRC32 of its payload and the payload.
+	 *
+	 * @return the rows of the batch, or <code>null</code> at the end of the segment or at the first
+	 *         incomplete or corrupted record
+	 */
+	private static @Nullable List<Row> readBatch(DataInputStream input) throws IOException {
+		byte[] payload;
+		long checksum;
+		try {
+			int length = input.readInt();
+			checksum = input.readInt() & 0xFFFFFFFFL;
+			if (length < 4)
+				return null;
+			payload = new byte[length];
+			input.readFully(payload);
+		} catch (EOFException ex) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		if (crc.getValue() != checksum) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().warning("Found a corrupted record in the quest entries journal");
+			return null;
+		}
+
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+		int size = data.readInt();
+		List<Row> rows = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			byte type = data.readByte();
+			if (type == Row.REMOVE_QUEST) {
+				rows.add(Row.questRemoval(data.readInt()));
+			} else if (type == Row.REMOVE_ENTRY) {
+				rows.add(Row.entryRemoval(data.readInt(), data.readLong(), data.readInt()));
+			} else {
+				rows.add(new Row(data.readInt(), data.readLong(), data.readInt(), data.readInt(), data.readLong(),
+						data.readInt(), data.readInt(), readBytes(data), readBytes(data)));
+			}
+		}
+		return rows;
+	}
+
+	private static byte[] readBytes(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Snapshot of the columns of a quest entry row, or tombstone of removed quest entries.
+	 */
+	static class Row {
+		private static final byte UPSERT = 0;
+		private static final byte REMOVE_ENTRY = 1;
+		private static final byte REMOVE_QUEST = 2;
+
+		private final byte type;
+		private final int accountID;
+		private final long ownerVersion;
+		private final int questID;
+		private final int finished;
+		private final long timer;
+		private final int branch;
+		private final int stage;
+		private final byte[] datas;
+		private final byte[] flow;
+
+		Row(int accountID, long ownerVersion, int questID, int finished, long timer, int branch, int stage,
+				byte[] datas, byte[] flow) {
+			this(UPSERT, accountID, ownerVersion, questID, finished, timer, branch, stage, datas, flow);
+		}
+
+		private Row(byte type, int accountID, long ownerVersion, int questID, int finished, long timer, int branch,
+				int stage, byte[] datas, byte[] flow) {
+			this.type = type;
+			this.accountID = accountID;
+			this.ownerVersion = ownerVersion;
+			this.questID = questID;
+			this.finished = finished;
+			this.timer = timer;
+			this.branch = branch;
+			this.stage = stage;
+			this.datas = datas;
+			this.flow = flow;
+		}
+
+		/**
+		 * Creates the tombstone of the quest entry of an account. Like snapshots, it is only written if
+		 * the server still owns the account.
+		 */
+		static Row entryRemoval(int accountID, long ownerVersion, int questID) {
+			return new Row(REMOVE_ENTRY, accountID, ownerVersion, questID, 0, 0, 0, 0, null, null);
+		}
+
+		/**
+		 * Creates the tombstone of the entries of a quest for all accounts.
+		 */
+		static Row questRemoval(int questID) {
+			return new Row(REMOVE_QUEST, -1, 0, questID, 0, 0, 0, 0, null, null);
+		}
+
+		private void setInStatement(PreparedStatement statement) throws SQLException {
+			statement.setInt(1, accountID);
+			statement.setInt(2, questID);
+			statement.setInt(3, finished);
+			statement.setLong(4, timer);
+			statement.setInt(5, branch);
+			statement.setInt(6, stage);
+			statement.setBytes(7, datas);
+			statement.setBytes(8, flow);
+		}
+	}
+
+	/**
+	 * Account to release once its last rows have been written. Releases are not journaled, as all
+	 * accounts owned by the server are released on startup.
+	 */
+	static class Release {
+		private final int accountID;
+		private final long ownerVersion;
+
+		Release(int accountID, long ownerVersion) {
+			this.accountID = accountID;
+			this.ownerVersion = ownerVersion;
+		}
+	}
+
+	private static class Batch {
+		private final List<Row> rows;
+		private final List<Release> releases;
+		private final CompletableFuture<Integer> applied = new CompletableFuture<>();
+		private @Nullable Segment segment;
+
+		private Batch(List<Row> rows, List<Release> releases) {
+			this.rows = rows;
+			this.releases = releases;
+		}
+	}
+
+	private static class Segment {
+		private final Path file;
+		private final FileChannel channel;
+		private final AtomicInteger pending = new AtomicInteger();
+		private long size;
+		private volatile boolean sealed = false;
+		private boolean deleted = false;
+
+		private Segment(Path file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+			this.size = channel.size();
+		}
+
+		private void append(Batch batch) throws IOException {
+			byte[] payload = encodeBatch(batch.rows);
+			CRC32 crc = new CRC32();
+			crc.update(payload, 0, payload.length);
+			ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+			buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+			while (buffer.hasRemaining()) {
+				size += channel.write(buffer);
+			}
+			pending.incrementAndGet();
+			batch.segment = this;
+		}
+
+		private void acknowledge() {
+			if (pending.decrementAndGet() == 0 && sealed)
+				deleteIfDone();
+		}
+
+		private synchronized void deleteIfDone() {
+			if (deleted || pending.get() != 0)
+				return;
+			try {
+				Files.deleteIfExists(file);
+				deleted = true;
+			} catch (IOException ex) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().warning("Cannot delete journal segment " + file, ex);
+			}
+		}
+
+		private void close() {
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				QuestsPlugin.getPlugin().getLoggerExpanded().warning("Cannot close journal segment " + file, ex);
+			}
+		}
+	}
+
+}
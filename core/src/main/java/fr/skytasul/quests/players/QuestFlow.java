@@ -0,0 +1,190 @@
+package fr.skytasul.quests.players;
+
+import fr.skytasul.quests.api.quests.Quest;
+import fr.skytasul.quests.api.quests.branches.QuestBranch;
+import fr.skytasul.quests.api.stages.StageController;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Ordered list of the stages completed by a player in a quest, stored as a packed int array.
+ * <p>
+ * Each element holds the branch ID in its 16 upper bits, an "ending stage" flag in bit 15 and the
+ * stage ID (regular or ending) in its 15 lower bits. The legacy textual form
+ * (<code>branch:stage;branch:Eending</code>) is still used for YAML files and old database rows.
+ */
+public final class QuestFlow {
+
+	public static final byte FORMAT_VERSION = 1;
+
+	private static final int ENDING_FLAG = 0x8000;
+	private static final int MAX_BRANCH = 0xFFFF;
+	private static final int MAX_STAGE = 0x7FFF;
+
+	private int[] elements;
+	private int size;
+
+	public QuestFlow() {
+		this.elements = new int[4];
+	}
+
+	private QuestFlow(int[] elements, int size) {
+		this.elements = elements;
+		this.size = size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void add(int branch, int stage, boolean ending) {
+		if (branch < 0 || branch > MAX_BRANCH || stage < 0 || stage > MAX_STAGE)
+			throw new IllegalArgumentException("Cannot store stage " + stage + " of branch " + branch + " in a quest flow");
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, size * 2);
+		elements[size++] = (branch << 16) | (ending ? ENDING_FLAG : 0) | stage;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int getBranch(int index) {
+		return elements[checkIndex(index)] >>> 16;
+	}
+
+	public int getStage(int index) {
+		return elements[checkIndex(index)] & MAX_STAGE;
+	}
+
+	public boolean isEnding(int index) {
+		return (elements[checkIndex(index)] & ENDING_FLAG) != 0;
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		return index;
+	}
+
+	/**
+	 * Iterates over the stages of this flow. Elements whose branch no longer exists in the quest are
+	 * skipped.
+	 *
+	 * @param quest quest this flow belongs to
+	 * @return an iterator over the stage controllers of the flow
+	 */
+	public @NotNull Iterator<StageController> iterator(@NotNull Quest quest) {
+		return new Iterator<StageController>() {
+			private int index = 0;
+			private @Nullable StageController next = advance();
+
+			private StageController advance() {
+				while (index < size) {
+					int element = elements[index++];
+					QuestBranch branch = quest.getBranchesManager().getBranch(element >>> 16);
+					if (branch == null)
+						continue;
+					int stage = element & MAX_STAGE;
+					return (element & ENDING_FLAG) != 0 ? branch.getEndingStage(stage) : branch.getRegularStage(stage);
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public StageController next() {
+				if (next == null)
+					throw new NoSuchElementException();
+				StageController current = next;
+				next = advance();
+				return current;
+			}
+		};
+	}
+
+	public byte @NotNull [] toBytes() {
+		byte[] bytes = new byte[1 + size * 4];
+		bytes[0] = FORMAT_VERSION;
+		for (int i = 0; i < size; i++) {
+			int element = elements[i];
+			int offset = 1 + i * 4;
+			bytes[offset] = (byte) (element >>> 24);
+			bytes[offset + 1] = (byte) (element >>> 16);
+			bytes[offset + 2] = (byte) (element >>> 8);
+			bytes[offset + 3] = (byte) element;
+		}
+		return bytes;
+	}
+
+	public static @NotNull QuestFlow fromBytes(byte @NotNull [] bytes) {
+		if (bytes.length == 0 || bytes[0] != FORMAT_VERSION)
+			throw new IllegalArgumentException("Unsupported quest flow format");
+		if ((bytes.length - 1) % 4 != 0)
+			throw new IllegalArgumentException("Truncated quest flow");
+		int size = (bytes.length - 1) / 4;
+		int[] elements = new int[Math.max(4, size)];
+		for (int i = 0; i < size; i++) {
+			int offset = 1 + i * 4;
+			elements[i] = (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+					| (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+		}
+		return new QuestFlow(elements, size);
+	}
+
+	/**
+	 * Parses the legacy textual form of a quest flow.
+	 *
+	 * @param string flow in the <code>branch:stage;branch:Eending</code> format, may be
+	 *        <code>null</code> or empty
+	 * @return the parsed flow
+	 * @throws IllegalArgumentException if the flow is malformed
+	 */
+	public static @NotNull QuestFlow parse(@Nullable String string) {
+		QuestFlow flow = new QuestFlow();
+		if (string == null || string.isEmpty())
+			return flow;
+		for (String element : string.split(";")) {
+			if (element.isEmpty())
+				continue;
+			int separator = element.indexOf(':');
+			if (separator == -1 || separator == element.length() - 1)
+				throw new IllegalArgumentException("Malformed quest flow element " + element);
+			int branch = Integer.parseInt(element.substring(0, separator));
+			boolean ending = element.charAt(separator + 1) == 'E';
+			int stage = Integer.parseInt(element.substring(separator + (ending ? 2 : 1)));
+			flow.add(branch, stage, ending);
+		}
+		return flow;
+	}
+
+	/**
+	 * @return the flow in its legacy textual form
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(size * 5);
+		for (int i = 0; i < size; i++) {
+			if (i != 0)
+				builder.append(';');
+			int element = elements[i];
+			builder.append(element >>> 16).append(':');
+			if ((element & ENDING_FLAG) != 0)
+				builder.append('E');
+			builder.append(element & MAX_STAGE);
+		}
+		return builder.toString();
+	}
+
+}
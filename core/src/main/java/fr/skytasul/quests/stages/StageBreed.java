@@ -10,19 +10,20 @@ import org.bukkit.entity.Animals;
 import org.bukkit.entity.Breedable;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.entity.EntityBreedEvent;
 import org.bukkit.event.entity.EntityChangeBlockEvent;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.types.AbstractEntityStage;
 import com.cryptomorin.xseries.XMaterial;
 
-public class StageBreed extends AbstractEntityStage implements Listener {
+public class StageBreed extends AbstractEntityStage {
 
 	private static final List<Material> EGG_MATERIALS =
 			Arrays.asList(XMaterial.TURTLE_EGG, XMaterial.FROGSPAWN)
@@ -35,24 +36,22 @@ public class StageBreed extends AbstractEntityStage implements Listener {
 		super(controller, entity, amount);
 	}
 
-	@EventHandler
-	public void onBreed(EntityBreedEvent e) {
-		if (e.getBreeder() instanceof Player) {
-			Player p = (Player) e.getBreeder();
-			event(p, e.getEntityType());
-		}
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(EntityBreedEvent.class, EventPriority.NORMAL, false,
+				e -> e.getBreeder() instanceof Player ? (Player) e.getBreeder() : null,
+				(e, p) -> event(p, e.getEntityType()));
+		registry.register(EntityChangeBlockEvent.class, EventPriority.NORMAL, false, StageBreed::getEggBreeder,
+				(e, p) -> event(p, e.getEntityType()));
 	}
 
-	@EventHandler
-	public void onEntityChangeBlock(EntityChangeBlockEvent e) {
+	private static @Nullable Player getEggBreeder(@NotNull EntityChangeBlockEvent e) {
 		if (!EGG_MATERIALS.contains(e.getTo()))
-			return;
+			return null;
 		if (!(e.getEntity() instanceof Animals))
-			return;
+			return null;
 		Animals entity = (Animals) e.getEntity();
-		Player breeder = Bukkit.getPlayer(entity.getBreedCause());
-		if (breeder != null)
-			event(breeder, e.getEntityType());
+		return Bukkit.getPlayer(entity.getBreedCause());
 	}
 
 	@Override
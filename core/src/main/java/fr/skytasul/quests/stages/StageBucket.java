@@ -11,6 +11,7 @@ import fr.skytasul.quests.api.players.PlayersManager;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -23,15 +24,13 @@ import fr.skytasul.quests.api.utils.progress.itemdescription.ItemsDescriptionCon
 import fr.skytasul.quests.gui.misc.BucketTypeGUI;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerBucketFillEvent;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
 import java.util.Map;
 
-public class StageBucket extends AbstractStage implements HasSingleObject, Listener {
+public class StageBucket extends AbstractStage implements HasSingleObject {
 
 	private BucketType bucket;
 	private int amount;
@@ -65,10 +64,13 @@ public class StageBucket extends AbstractStage implements HasSingleObject, Liste
 		return QuestsConfiguration.getConfig().getStageDescriptionConfig();
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR)
-	public void onBucketFill(PlayerBucketFillEvent e) {
-		Player p = e.getPlayer();
-		if (hasStarted(p) && canUpdate(p)) {
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(PlayerBucketFillEvent.class, EventPriority.MONITOR, false, this::onBucketFill);
+	}
+
+	private void onBucketFill(PlayerBucketFillEvent e, Player p) {
+		if (canUpdate(p)) {
 			if (BucketType.fromMaterial(XMaterial.matchXMaterial(e.getItemStack())) == bucket) {
 				long amount = getPlayerAmount(PlayersManager.getPlayerAccount(p));
 				if (amount <= 1) {
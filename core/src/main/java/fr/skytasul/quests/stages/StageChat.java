@@ -3,8 +3,7 @@ package fr.skytasul.quests.stages;
 import org.apache.commons.lang.Validate;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
+import org.bukkit.event.Cancellable;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.jetbrains.annotations.NotNull;
@@ -15,6 +14,7 @@ import fr.skytasul.quests.api.options.QuestOption;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -23,7 +23,7 @@ import fr.skytasul.quests.api.utils.messaging.MessageUtils;
 import fr.skytasul.quests.api.utils.messaging.PlaceholderRegistry;
 import fr.skytasul.quests.api.utils.messaging.PlaceholdersContext;
 
-public class StageChat extends AbstractStage implements Listener {
+public class StageChat extends AbstractStage {
 
 	private final String text;
 	private final boolean cancel;
@@ -66,23 +66,22 @@ public class StageChat extends AbstractStage implements Listener {
 		return ignoreCase;
 	}
 
-	@EventHandler
-	public void onTchat(AsyncPlayerChatEvent e) {
-		if (command) return;
-		if (check(e.getMessage(), e.getPlayer()) && cancel) e.setCancelled(true);
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		if (command)
+			registry.register(PlayerCommandPreprocessEvent.class, (e, p) -> check(e.getMessage(), p, e));
+		else
+			registry.register(AsyncPlayerChatEvent.class, (e, p) -> check(e.getMessage(), p, e));
 	}
 
-	@EventHandler
-	public void onCommand(PlayerCommandPreprocessEvent e) {
-		if (!command) return;
-		if (check(e.getMessage(), e.getPlayer()) && cancel) e.setCancelled(true);
+	private void check(String message, Player p, Cancellable event) {
+		if (check(message, p) && cancel) event.setCancelled(true);
 	}
 
 	private boolean check(String message, Player p) {
 		if (placeholders)
 			message = MessageUtils.finalFormat(message, null, PlaceholdersContext.of(p, true, null));
 		if (!(ignoreCase ? message.equalsIgnoreCase(text) : message.equals(text))) return false;
-		if (!hasStarted(p)) return false;
 		if (canUpdate(p)) finishStage(p);
 		return true;
 	}
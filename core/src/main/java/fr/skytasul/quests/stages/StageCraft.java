@@ -11,6 +11,7 @@ import fr.skytasul.quests.api.players.PlayersManager;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -23,9 +24,7 @@ import fr.skytasul.quests.gui.items.ItemComparisonGUI;
 import org.bukkit.Material;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.FurnaceExtractEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
@@ -35,7 +34,7 @@ import java.util.Map;
 /**
  * @author SkytAsul, ezeiger92, TheBusyBiscuit
  */
-public class StageCraft extends AbstractStage implements HasSingleObject, Listener {
+public class StageCraft extends AbstractStage implements HasSingleObject {
 
 	private final ItemStack result;
 	private final ItemComparisonMap comparisons;
@@ -51,10 +50,15 @@ public class StageCraft extends AbstractStage implements HasSingleObject, Listen
 		return result;
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR, ignoreCancelled = true)
-	public void onFurnaceExtract(FurnaceExtractEvent event) {
-		Player p = event.getPlayer();
-		if (comparisons.isSimilar(result, new ItemStack(event.getItemType())) && hasStarted(p) && canUpdate(p, true)) {
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(FurnaceExtractEvent.class, EventPriority.MONITOR, true, FurnaceExtractEvent::getPlayer,
+				this::onFurnaceExtract);
+		registry.register(BQCraftEvent.class, this::onCraft);
+	}
+
+	private void onFurnaceExtract(FurnaceExtractEvent event, Player p) {
+		if (comparisons.isSimilar(result, new ItemStack(event.getItemType())) && canUpdate(p, true)) {
 			long amount = getPlayerAmount(PlayersManager.getPlayerAccount(p)) - event.getItemAmount();
 			if (amount <= 0) {
 				finishStage(p);
@@ -64,10 +68,8 @@ public class StageCraft extends AbstractStage implements HasSingleObject, Listen
 		}
 	}
 
-	@EventHandler
-	public void onCraft(BQCraftEvent event) {
-		Player p = event.getPlayer();
-		if (hasStarted(p) && canUpdate(p)) {
+	private void onCraft(BQCraftEvent event, Player p) {
+		if (canUpdate(p)) {
 			ItemStack item = event.getResult();
 			if (comparisons.isSimilar(result, item)) {
 
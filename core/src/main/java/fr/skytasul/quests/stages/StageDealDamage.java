@@ -12,6 +12,7 @@ import fr.skytasul.quests.api.players.PlayersManager;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -24,13 +25,12 @@ import org.bukkit.DyeColor;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.Projectile;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.projectiles.ProjectileSource;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -38,7 +38,7 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @SuppressWarnings ("rawtypes")
-public class StageDealDamage extends AbstractStage implements HasProgress, Listener {
+public class StageDealDamage extends AbstractStage implements HasProgress {
 
 	private final double damage;
 	private final List<Mob> targetMobs;
@@ -55,25 +55,29 @@ public class StageDealDamage extends AbstractStage implements HasProgress, Liste
 		datas.put("amount", damage);
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR)
-	public void onDamage(EntityDamageByEntityEvent event) {
-		Player player;
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(EntityDamageByEntityEvent.class, EventPriority.MONITOR, false, StageDealDamage::getDamager,
+				this::onDamage);
+	}
+
+	private static @Nullable Player getDamager(@NotNull EntityDamageByEntityEvent event) {
 		if (event.getDamager() instanceof Projectile) {
 			ProjectileSource projectileShooter = ((Projectile) event.getDamager()).getShooter();
-			if (!(projectileShooter instanceof Player)) return;
-			player = (Player) projectileShooter;
-		}else if (event.getDamager() instanceof Player) {
-			player = (Player) event.getDamager();
-		}else return;
+			return projectileShooter instanceof Player ? (Player) projectileShooter : null;
+		}
+		return event.getDamager() instanceof Player ? (Player) event.getDamager() : null;
+	}
 
+	private void onDamage(EntityDamageByEntityEvent event, Player player) {
 		if (targetMobs != null && !targetMobs.isEmpty()
 				&& targetMobs.stream().noneMatch(mob -> mob.appliesEntity(event.getEntity()))) return;
 
-		PlayerAccount account = PlayersManager.getPlayerAccount(player);
-
-		if (!hasStarted(player) || !canUpdate(player))
+		if (!canUpdate(player))
 			return;
 
+		PlayerAccount account = PlayersManager.getPlayerAccount(player);
+
 		double amount = getData(account, "amount");
 		amount -= event.getFinalDamage();
 		if (amount <= 0) {
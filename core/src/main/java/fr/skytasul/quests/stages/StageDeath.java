@@ -5,8 +5,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
 import org.bukkit.event.entity.PlayerDeathEvent;
@@ -16,13 +15,14 @@ import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
 import com.cryptomorin.xseries.XMaterial;
 import fr.skytasul.quests.gui.misc.DamageCausesGUI;
 
-public class StageDeath extends AbstractStage implements Listener {
+public class StageDeath extends AbstractStage {
 
 	private List<DamageCause> causes;
 
@@ -31,11 +31,13 @@ public class StageDeath extends AbstractStage implements Listener {
 		this.causes = causes;
 	}
 
-	@EventHandler
-	public void onPlayerDeath(PlayerDeathEvent event) {
-		Player p = event.getEntity();
-		if (!hasStarted(p)) return;
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(PlayerDeathEvent.class, EventPriority.NORMAL, false, PlayerDeathEvent::getEntity,
+				this::onPlayerDeath);
+	}
 
+	private void onPlayerDeath(PlayerDeathEvent event, Player p) {
 		if (!causes.isEmpty()) {
 			EntityDamageEvent lastDamage = p.getLastDamageCause();
 			if (lastDamage == null) return;
@@ -2,8 +2,6 @@ package fr.skytasul.quests.stages;
 
 import java.util.List;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerItemConsumeEvent;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
@@ -12,12 +10,13 @@ import fr.skytasul.quests.api.gui.ItemUtils;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.types.AbstractItemStage;
 import fr.skytasul.quests.api.utils.CountableObject;
 import com.cryptomorin.xseries.XMaterial;
 
-public class StageEatDrink extends AbstractItemStage implements Listener {
+public class StageEatDrink extends AbstractItemStage {
 
 	public StageEatDrink(StageController controller, List<CountableObject<ItemStack>> objects, ItemComparisonMap comparisons) {
 		super(controller, objects, comparisons);
@@ -32,9 +31,9 @@ public class StageEatDrink extends AbstractItemStage implements Listener {
 		return Lang.SCOREBOARD_EAT_DRINK.toString();
 	}
 
-	@EventHandler
-	public void onItemConsume(PlayerItemConsumeEvent event) {
-		event(event.getPlayer(), event.getItem(), 1);
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(PlayerItemConsumeEvent.class, (event, p) -> event(p, event.getItem(), 1));
 	}
 
 	public static class Creator extends AbstractItemStage.Creator<StageEatDrink> {
@@ -2,9 +2,8 @@ package fr.skytasul.quests.stages;
 
 import java.util.List;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.event.EventHandler;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.enchantment.EnchantItemEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
@@ -14,12 +13,13 @@ import fr.skytasul.quests.api.gui.ItemUtils;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.types.AbstractItemStage;
 import fr.skytasul.quests.api.utils.CountableObject;
 import com.cryptomorin.xseries.XMaterial;
 
-public class StageEnchant extends AbstractItemStage implements Listener {
+public class StageEnchant extends AbstractItemStage {
 
 	public StageEnchant(StageController controller, List<CountableObject<ItemStack>> fishes, ItemComparisonMap comparisons) {
 		super(controller, fishes, comparisons);
@@ -29,14 +29,19 @@ public class StageEnchant extends AbstractItemStage implements Listener {
 		super(controller, section);
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR, ignoreCancelled = true)
-	public void onEnchant(EnchantItemEvent e) {
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(EnchantItemEvent.class, EventPriority.MONITOR, true, EnchantItemEvent::getEnchanter,
+				this::onEnchant);
+	}
+
+	private void onEnchant(EnchantItemEvent e, Player p) {
 		ItemStack finalItem = e.getItem().clone();
 		ItemMeta meta = finalItem.getItemMeta();
 		e.getEnchantsToAdd().forEach((enchant, level) -> meta.addEnchant(enchant, level, false));
 		finalItem.setItemMeta(meta);
 
-		event(e.getEnchanter(), finalItem, e.getItem().getAmount());
+		event(p, finalItem, e.getItem().getAmount());
 	}
 
 	@Override
@@ -4,9 +4,7 @@ import java.util.List;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerFishEvent;
 import org.bukkit.event.player.PlayerFishEvent.State;
 import org.bukkit.inventory.ItemStack;
@@ -16,12 +14,13 @@ import fr.skytasul.quests.api.gui.ItemUtils;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.types.AbstractItemStage;
 import fr.skytasul.quests.api.utils.CountableObject;
 import com.cryptomorin.xseries.XMaterial;
 
-public class StageFish extends AbstractItemStage implements Listener {
+public class StageFish extends AbstractItemStage {
 
 	public StageFish(StageController controller, List<CountableObject<ItemStack>> fishes, ItemComparisonMap comparisons) {
 		super(controller, fishes, comparisons);
@@ -31,10 +30,13 @@ public class StageFish extends AbstractItemStage implements Listener {
 		super(controller, section);
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR, ignoreCancelled = true)
-	public void onFish(PlayerFishEvent e){
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(PlayerFishEvent.class, EventPriority.MONITOR, true, this::onFish);
+	}
+
+	private void onFish(PlayerFishEvent e, Player p){
 		if (e.getState() == State.CAUGHT_FISH && e.getCaught() instanceof Item){
-			Player p = e.getPlayer();
 			Item item = (Item) e.getCaught();
 			if (item.isDead())
 				return;
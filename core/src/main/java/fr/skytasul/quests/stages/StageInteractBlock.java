@@ -5,8 +5,6 @@ import java.util.Objects;
 import java.util.Spliterator;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.inventory.EquipmentSlot;
@@ -18,6 +16,7 @@ import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -30,7 +29,7 @@ import fr.skytasul.quests.api.utils.messaging.PlaceholderRegistry;
 import fr.skytasul.quests.gui.blocks.SelectBlockGUI;
 
 @LocatableType(types = LocatedType.BLOCK)
-public class StageInteractBlock extends AbstractStage implements Locatable.MultipleLocatable, Listener {
+public class StageInteractBlock extends AbstractStage implements Locatable.MultipleLocatable {
 
 	private final boolean left;
 	private final @NotNull BQBlock block;
@@ -56,8 +55,12 @@ public class StageInteractBlock extends AbstractStage implements Locatable.Multi
 		return QuestsAPI.getAPI().getBlocksManager().getNearbyBlocks(fetcher, Collections.singleton(block));
 	}
 
-	@EventHandler
-	public void onInteract(PlayerInteractEvent e){
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(PlayerInteractEvent.class, this::onInteract);
+	}
+
+	private void onInteract(PlayerInteractEvent e, Player p){
 		if (e.getClickedBlock() == null) return;
 		if (MinecraftVersion.MAJOR >= 9 && e.getHand() != EquipmentSlot.HAND) return;
 
@@ -68,8 +71,7 @@ public class StageInteractBlock extends AbstractStage implements Locatable.Multi
 		if (!block.applies(e.getClickedBlock()))
 			return;
 
-		Player p = e.getPlayer();
-		if (hasStarted(p) && canUpdate(p)) {
+		if (canUpdate(p)) {
 			e.setCancelled(true);
 			finishStage(p);
 		}
@@ -6,6 +6,7 @@ import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -20,8 +21,6 @@ import org.bukkit.Location;
 import org.bukkit.block.Block;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.inventory.EquipmentSlot;
@@ -29,7 +28,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.Objects;
 
 @LocatableType (types = { LocatedType.BLOCK, LocatedType.OTHER })
-public class StageInteractLocation extends AbstractStage implements Locatable.PreciseLocatable, Listener {
+public class StageInteractLocation extends AbstractStage implements Locatable.PreciseLocatable {
 
 	private final boolean left;
 	private final @NotNull BQLocation lc;
@@ -62,8 +61,12 @@ public class StageInteractLocation extends AbstractStage implements Locatable.Pr
 		return locatedBlock;
 	}
 
-	@EventHandler
-	public void onInteract(PlayerInteractEvent e){
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(PlayerInteractEvent.class, this::onInteract);
+	}
+
+	private void onInteract(PlayerInteractEvent e, Player p){
 		if (e.getClickedBlock() == null) return;
 		if (MinecraftVersion.MAJOR >= 9 && e.getHand() != EquipmentSlot.HAND) return;
 
@@ -74,8 +77,7 @@ public class StageInteractLocation extends AbstractStage implements Locatable.Pr
 		if (!lc.equals(e.getClickedBlock().getLocation()))
 			return;
 
-		Player p = e.getPlayer();
-		if (hasStarted(p) && canUpdate(p)) {
+		if (canUpdate(p)) {
 			e.setCancelled(true);
 			finishStage(p);
 		}
@@ -1,5 +1,6 @@
 package fr.skytasul.quests.stages;
 
+import fr.skytasul.quests.BeautyQuests;
 import fr.skytasul.quests.api.editors.TextEditor;
 import fr.skytasul.quests.api.editors.WaitClick;
 import fr.skytasul.quests.api.editors.parsers.NumberParser;
@@ -23,14 +24,12 @@ import fr.skytasul.quests.utils.types.BQLocation;
 import org.bukkit.Location;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
-import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.util.NumberConversions;
 import org.jetbrains.annotations.NotNull;
 import java.util.regex.Pattern;
 
 @LocatableType (types = LocatedType.OTHER)
-public class StageLocation extends AbstractStage implements Locatable.PreciseLocatable, Listener {
+public class StageLocation extends AbstractStage implements Locatable.PreciseLocatable {
 
 	private final BQLocation lc;
 	private final int radius;
@@ -56,17 +55,28 @@ public class StageLocation extends AbstractStage implements Locatable.PreciseLoc
 		return radius;
 	}
 
-	@EventHandler
-	public void onPlayerMove(PlayerMoveEvent e){
-		if (e.getFrom().getBlockX() == e.getTo().getBlockX() && e.getFrom().getBlockY() == e.getTo().getBlockY()
-				&& e.getFrom().getBlockZ() == e.getTo().getBlockZ())
-			return; // only rotation
-		if (!lc.isWorld(e.getTo().getWorld())) return;
+	@Override
+	public void load() {
+		super.load();
+		BeautyQuests.getInstance().getStageLocationIndex().add(this);
+	}
 
-		Player p = e.getPlayer();
-		if (hasStarted(p) && canUpdate(p)) {
-			if (lc.distanceSquared(e.getTo()) <= radiusSquared) finishStage(p);
-		}
+	@Override
+	public void unload() {
+		super.unload();
+		BeautyQuests.getInstance().getStageLocationIndex().remove(this);
+	}
+
+	/**
+	 * Called by the {@link StageLocationIndex} when a player who has launched this stage moves near the
+	 * target, in a world matching the target.
+	 */
+	void onPlayerMove(Player p, Location to) {
+		// the world has already been checked by the index
+		double distanceSquared = NumberConversions.square(lc.getX() - to.getX())
+				+ NumberConversions.square(lc.getY() - to.getY()) + NumberConversions.square(lc.getZ() - to.getZ());
+		if (distanceSquared <= radiusSquared && canUpdate(p))
+			finishStage(p);
 	}
 
 	@Override
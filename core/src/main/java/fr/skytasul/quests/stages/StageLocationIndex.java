@@ -0,0 +1,169 @@
+package fr.skytasul.quests.stages;
+
+import fr.skytasul.quests.BeautyQuests;
+import fr.skytasul.quests.players.PlayerAccountImplementation;
+import fr.skytasul.quests.structure.StageControllerImplementation;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.jetbrains.annotations.NotNull;
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Spatial index of the targets of the {@link StageLocation} stages.
+ * <p>
+ * Each loaded world has a grid of chunk-sized cells, in which a stage is present in all the cells
+ * overlapped by its target and radius. The world patterns of the stages are only matched when a
+ * stage is loaded and when a world is loaded. A player move then only tests the stages of the cell
+ * of the player, and only if the player has launched them.
+ */
+public class StageLocationIndex implements Listener {
+
+	private static final int CELL_SHIFT = 4;
+
+	/**
+	 * Stages spanning more cells than this are not put in the cells but tested on every move in the
+	 * world, to avoid filling thousands of cells for a huge radius.
+	 */
+	private static final int MAX_CELLS = 64;
+
+	private final List<StageLocation> stages = new ArrayList<>();
+	private final Map<UUID, WorldGrid> worlds = new HashMap<>();
+
+	public void add(@NotNull StageLocation stage) {
+		stages.add(stage);
+		for (World world : Bukkit.getWorlds()) {
+			if (stage.getLocation().isWorld(world))
+				worlds.computeIfAbsent(world.getUID(), __ -> new WorldGrid()).add(stage);
+		}
+	}
+
+	public void remove(@NotNull StageLocation stage) {
+		if (!stages.remove(stage))
+			return;
+		for (Iterator<WorldGrid> iterator = worlds.values().iterator(); iterator.hasNext();) {
+			WorldGrid grid = iterator.next();
+			grid.remove(stage);
+			if (grid.isEmpty())
+				iterator.remove();
+		}
+	}
+
+	@EventHandler
+	public void onWorldLoad(WorldLoadEvent e) {
+		World world = e.getWorld();
+		WorldGrid grid = new WorldGrid();
+		for (StageLocation stage : stages) {
+			if (stage.getLocation().isWorld(world))
+				grid.add(stage);
+		}
+		if (grid.isEmpty())
+			worlds.remove(world.getUID());
+		else
+			worlds.put(world.getUID(), grid);
+	}
+
+	@EventHandler
+	public void onWorldUnload(WorldUnloadEvent e) {
+		worlds.remove(e.getWorld().getUID());
+	}
+
+	@EventHandler
+	public void onPlayerMove(PlayerMoveEvent e) {
+		Location to = e.getTo();
+		if (to == null || worlds.isEmpty())
+			return;
+		if (e.getFrom().getBlockX() == to.getBlockX() && e.getFrom().getBlockY() == to.getBlockY()
+				&& e.getFrom().getBlockZ() == to.getBlockZ())
+			return; // only rotation
+
+		WorldGrid grid = worlds.get(to.getWorld().getUID());
+		if (grid == null)
+			return;
+		List<StageLocation> cell = grid.cells.get(cellKey(to.getBlockX() >> CELL_SHIFT, to.getBlockZ() >> CELL_SHIFT));
+		if (cell == null && grid.wideStages.isEmpty())
+			return;
+
+		Player player = e.getPlayer();
+		PlayerAccountImplementation acc = BeautyQuests.getInstance().getPlayersManager().getAccount(player);
+		if (acc == null)
+			return;
+		List<StageControllerImplementation<?>> activeStages = acc.getActiveStages();
+		if (activeStages.isEmpty())
+			return;
+
+		if (cell != null)
+			test(cell, activeStages, acc, player, to);
+		if (!grid.wideStages.isEmpty())
+			test(grid.wideStages, activeStages, acc, player, to);
+	}
+
+	private void test(List<StageLocation> candidates, List<StageControllerImplementation<?>> activeStages,
+			PlayerAccountImplementation acc, Player player, Location to) {
+		for (StageLocation stage : candidates) {
+			StageControllerImplementation<?> controller = (StageControllerImplementation<?>) stage.getController();
+			if (activeStages.contains(controller) && controller.hasStarted(acc))
+				stage.onPlayerMove(player, to);
+		}
+	}
+
+	private static long cellKey(int cellX, int cellZ) {
+		return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+	}
+
+	private static class WorldGrid {
+
+		private final Map<Long, List<StageLocation>> cells = new HashMap<>();
+		private final List<StageLocation> wideStages = new ArrayList<>();
+
+		private void add(StageLocation stage) {
+			if (!forEachCell(stage, key -> cells.computeIfAbsent(key, __ -> new ArrayList<>(2)).add(stage)))
+				wideStages.add(stage);
+		}
+
+		private void remove(StageLocation stage) {
+			if (!forEachCell(stage, key -> {
+				List<StageLocation> cell = cells.get(key);
+				if (cell != null && cell.remove(stage) && cell.isEmpty())
+					cells.remove(key);
+			}))
+				wideStages.remove(stage);
+		}
+
+		/**
+		 * Visits the keys of the cells overlapped by the target of a stage and its radius.
+		 *
+		 * @return <code>false</code> if the stage spans too many cells, in which case none is visited
+		 */
+		private static boolean forEachCell(StageLocation stage, LongConsumer consumer) {
+			Location target = stage.getLocation();
+			int radius = stage.getRadius();
+			int minX = (target.getBlockX() - radius) >> CELL_SHIFT;
+			int maxX = (target.getBlockX() + radius) >> CELL_SHIFT;
+			int minZ = (target.getBlockZ() - radius) >> CELL_SHIFT;
+			int maxZ = (target.getBlockZ() + radius) >> CELL_SHIFT;
+
+			if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > MAX_CELLS)
+				return false;
+			for (int x = minX; x <= maxX; x++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					consumer.accept(cellKey(x, z));
+				}
+			}
+			return true;
+		}
+
+		private boolean isEmpty() {
+			return cells.isEmpty() && wideStages.isEmpty();
+		}
+
+	}
+
+}
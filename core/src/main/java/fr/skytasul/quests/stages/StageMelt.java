@@ -2,9 +2,7 @@ package fr.skytasul.quests.stages;
 
 import java.util.List;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.FurnaceExtractEvent;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
@@ -13,12 +11,13 @@ import fr.skytasul.quests.api.gui.ItemUtils;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.types.AbstractItemStage;
 import fr.skytasul.quests.api.utils.CountableObject;
 import com.cryptomorin.xseries.XMaterial;
 
-public class StageMelt extends AbstractItemStage implements Listener {
+public class StageMelt extends AbstractItemStage {
 
 	public StageMelt(StageController controller, List<CountableObject<ItemStack>> items, ItemComparisonMap comparisons) {
 		super(controller, items, comparisons);
@@ -28,9 +27,10 @@ public class StageMelt extends AbstractItemStage implements Listener {
 		super(controller, section);
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR, ignoreCancelled = true)
-	public void onMelt(FurnaceExtractEvent event) {
-		event(event.getPlayer(), new ItemStack(event.getItemType()), event.getItemAmount());
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(FurnaceExtractEvent.class, EventPriority.MONITOR, true, FurnaceExtractEvent::getPlayer,
+				(event, p) -> event(p, new ItemStack(event.getItemType()), event.getItemAmount()));
 	}
 
 	@Override
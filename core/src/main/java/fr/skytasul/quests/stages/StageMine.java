@@ -5,9 +5,7 @@ import java.util.stream.Collectors;
 import org.bukkit.block.Block;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.metadata.FixedMetadataValue;
@@ -23,6 +21,7 @@ import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.players.PlayersManager;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
 import fr.skytasul.quests.api.stages.types.AbstractCountableBlockStage;
@@ -33,7 +32,7 @@ import fr.skytasul.quests.api.utils.CountableObject;
 import com.cryptomorin.xseries.XMaterial;
 
 @LocatableType (types = LocatedType.BLOCK)
-public class StageMine extends AbstractCountableBlockStage implements Locatable.MultipleLocatable, Listener {
+public class StageMine extends AbstractCountableBlockStage implements Locatable.MultipleLocatable {
 
 	private boolean placeCancelled;
 
@@ -54,12 +53,14 @@ public class StageMine extends AbstractCountableBlockStage implements Locatable.
 		return Lang.SCOREBOARD_MINE.toString();
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR)
-	public void onMine(BQBlockBreakEvent e) {
-		Player p = e.getPlayer();
-		if (!hasStarted(p))
-			return;
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(BQBlockBreakEvent.class, EventPriority.MONITOR, false, this::onMine);
+		if (placeCancelled)
+			registry.register(BlockPlaceEvent.class, EventPriority.MONITOR, true, BlockPlaceEvent::getPlayer, this::onPlace);
+	}
 
+	private void onMine(BQBlockBreakEvent e, Player p) {
 		for (Block block : e.getBlocks()) {
 			if (placeCancelled) {
 				if (QuestsConfigurationImplementation.getConfiguration().usePlayerBlockTracker()) {
@@ -77,16 +78,9 @@ public class StageMine extends AbstractCountableBlockStage implements Locatable.
 		}
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR)
-	public void onPlace(BlockPlaceEvent e){
+	private void onPlace(BlockPlaceEvent e, Player p){
 		if (QuestsConfigurationImplementation.getConfiguration().usePlayerBlockTracker())
 			return;
-		if (e.isCancelled() || !placeCancelled)
-			return;
-
-		Player p = e.getPlayer();
-		if (!hasStarted(p))
-			return;
 
 		Map<UUID, Integer> playerBlocks = getPlayerRemainings(PlayersManager.getPlayerAccount(p), true);
 		if (playerBlocks == null) return;
@@ -8,8 +8,7 @@ import com.cryptomorin.xseries.XMaterial;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
 import org.jetbrains.annotations.NotNull;
 import fr.skytasul.quests.api.events.internal.BQMobDeathEvent;
@@ -19,6 +18,7 @@ import fr.skytasul.quests.api.options.description.DescriptionSource;
 import fr.skytasul.quests.api.players.PlayerAccount;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -34,7 +34,7 @@ import fr.skytasul.quests.gui.mobs.MobsListGUI;
 import fr.skytasul.quests.mobs.Mob;
 
 @LocatableType (types = LocatedType.ENTITY)
-public class StageMobs extends AbstractCountableStage<Mob<?>> implements Locatable.MultipleLocatable, Listener {
+public class StageMobs extends AbstractCountableStage<Mob<?>> implements Locatable.MultipleLocatable {
 
 	private boolean shoot = false;
 
@@ -50,13 +50,17 @@ public class StageMobs extends AbstractCountableStage<Mob<?>> implements Locatab
 		this.shoot = shoot;
 	}
 
-	@EventHandler
-	public void onMobKilled(BQMobDeathEvent e){
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(BQMobDeathEvent.class, EventPriority.NORMAL, false, BQMobDeathEvent::getKiller,
+				this::onMobKilled);
+	}
+
+	private void onMobKilled(BQMobDeathEvent e, Player p){
 		if (shoot && e.getBukkitEntity() != null && e.getBukkitEntity().getLastDamageCause() != null
 				&& e.getBukkitEntity().getLastDamageCause().getCause() != DamageCause.PROJECTILE)
 			return;
 
-		Player p = e.getKiller();
 		if (p == e.getBukkitEntity()) return; // player suicidal
 		event(p, new KilledMob(e.getPluginMob(), e.getBukkitEntity()), e.getAmount());
 	}
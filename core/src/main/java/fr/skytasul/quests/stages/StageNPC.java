@@ -17,6 +17,7 @@ import fr.skytasul.quests.api.players.PlayerAccount;
 import fr.skytasul.quests.api.stages.AbstractStage;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreation;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.creation.StageGuiLine;
@@ -34,9 +35,7 @@ import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
@@ -45,7 +44,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @LocatableType(types = LocatedType.ENTITY)
-public class StageNPC extends AbstractStage implements Locatable.PreciseLocatable, Dialogable, Listener {
+public class StageNPC extends AbstractStage implements Locatable.PreciseLocatable, Dialogable {
 
 	private BqNpc npc;
 	private String npcID;
@@ -197,15 +196,18 @@ public class StageNPC extends AbstractStage implements Locatable.PreciseLocatabl
 		dialogRunner.addEndAction(this::finishStage);
 	}
 
-	@EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
-	public void onClick(BQNPCClickEvent e) {
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(BQNPCClickEvent.class, EventPriority.HIGH, true, this::onClick);
+	}
+
+	private void onClick(BQNPCClickEvent e, Player p) {
 		if (e.isCancelled())
 			return;
 		if (e.getNPC() != npc)
 			return;
 		if (!QuestsConfiguration.getConfig().getQuestsConfig().getNpcClicks().contains(e.getClick()))
 			return;
-		Player p = e.getPlayer();
 
 		e.setCancelled(dialogRunner.onClick(p).shouldCancel());
 	}
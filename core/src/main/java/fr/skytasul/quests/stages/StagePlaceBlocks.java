@@ -3,9 +3,7 @@ package fr.skytasul.quests.stages;
 import java.util.ArrayList;
 import java.util.List;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
@@ -14,12 +12,13 @@ import fr.skytasul.quests.api.gui.ItemUtils;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.types.AbstractCountableBlockStage;
 import fr.skytasul.quests.api.utils.CountableObject;
 import com.cryptomorin.xseries.XMaterial;
 
-public class StagePlaceBlocks extends AbstractCountableBlockStage implements Listener {
+public class StagePlaceBlocks extends AbstractCountableBlockStage {
 
 	public StagePlaceBlocks(StageController controller, List<CountableObject<BQBlock>> blocks) {
 		super(controller, blocks);
@@ -30,11 +29,10 @@ public class StagePlaceBlocks extends AbstractCountableBlockStage implements Lis
 		return Lang.SCOREBOARD_PLACE.toString();
 	}
 
-	@EventHandler (priority = EventPriority.MONITOR)
-	public void onPlace(BlockPlaceEvent e) {
-		if (e.isCancelled())
-			return;
-		event(e.getPlayer(), e.getBlock(), 1);
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(BlockPlaceEvent.class, EventPriority.MONITOR, true, BlockPlaceEvent::getPlayer,
+				(e, p) -> event(p, e.getBlock(), 1));
 	}
 
 	public static StagePlaceBlocks deserialize(ConfigurationSection section, StageController controller) {
@@ -4,28 +4,27 @@ import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.Tameable;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.entity.EntityTameEvent;
 import org.jetbrains.annotations.NotNull;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.stages.StageController;
 import fr.skytasul.quests.api.stages.StageDescriptionPlaceholdersContext;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
 import fr.skytasul.quests.api.stages.creation.StageCreationContext;
 import fr.skytasul.quests.api.stages.types.AbstractEntityStage;
 
-public class StageTame extends AbstractEntityStage implements Listener {
+public class StageTame extends AbstractEntityStage {
 
 	public StageTame(StageController controller, EntityType entity, int amount) {
 		super(controller, entity, amount);
 	}
 
-	@EventHandler
-	public void onTame(EntityTameEvent e) {
-		if (e.getOwner() instanceof Player) {
-			Player p = (Player) e.getOwner();
-			event(p, e.getEntityType());
-		}
+	@Override
+	public void registerEvents(@NotNull StageEventRegistry registry) {
+		registry.register(EntityTameEvent.class, EventPriority.NORMAL, false,
+				e -> e.getOwner() instanceof Player ? (Player) e.getOwner() : null,
+				(e, p) -> event(p, e.getEntityType()));
 	}
 
 	@Override
@@ -33,11 +33,21 @@ public class BranchesManagerImplementation implements QuestBranchesManager {
 
 	public void addBranch(@NotNull QuestBranchImplementation branch) {
 		Validate.notNull(branch, "Branch cannot be null !");
-		branches.put(branches.size(), branch);
+		putBranch(branches.size(), branch);
+	}
+
+	private void putBranch(int id, @NotNull QuestBranchImplementation branch) {
+		branches.put(id, branch);
+		branch.setId(id);
 	}
 
 	@Override
 	public int getId(@NotNull QuestBranch branch) {
+		if (branch instanceof QuestBranchImplementation && branch.getManager() == this) {
+			int id = ((QuestBranchImplementation) branch).getCachedId();
+			if (id != -1)
+				return id;
+		}
 		for (Entry<Integer, QuestBranchImplementation> en : branches.entrySet()){
 			if (en.getValue() == branch) return en.getKey();
 		}
@@ -150,7 +160,7 @@ public class BranchesManagerImplementation implements QuestBranchesManager {
 			try {
 				int id = Integer.parseInt(key);
 				QuestBranchImplementation branch = new QuestBranchImplementation(bm);
-				bm.branches.put(id, branch);
+				bm.putBranch(id, branch);
 				tmpBranches.put(branch, branchesSection.getConfigurationSection(key));
 			}catch (NumberFormatException ex) {
 				QuestsPlugin.getPlugin().getLoggerExpanded()
@@ -39,6 +39,8 @@ public class QuestBranchImplementation implements QuestBranch {
 
 	private final @NotNull BranchesManagerImplementation manager;
 
+	private int id = -1;
+
 	public QuestBranchImplementation(@NotNull BranchesManagerImplementation manager) {
 		this.manager = manager;
 	}
@@ -59,21 +61,43 @@ public class QuestBranchImplementation implements QuestBranch {
 
 	@Override
 	public int getId() {
-		return manager.getId(this);
+		return id == -1 ? manager.getId(this) : id;
+	}
+
+	/**
+	 * @return the ID set when the branch has been added to its manager, or -1
+	 */
+	int getCachedId() {
+		return id;
+	}
+
+	void setId(int id) {
+		this.id = id;
 	}
 
 	public void addRegularStage(@NotNull StageControllerImplementation<?> stage) {
 		Validate.notNull(stage, "Stage cannot be null !");
+		stage.setRegularPosition(regularStages.size());
 		regularStages.add(stage);
 		stage.load();
 	}
 
 	public void addEndStage(@NotNull StageControllerImplementation<?> stage, @NotNull QuestBranchImplementation linked) {
 		Validate.notNull(stage, "Stage cannot be null !");
+		stage.setEndingPosition(endStages.size(), linked);
 		endStages.add(new EndingStageImplementation(stage, linked));
 		stage.load();
 	}
 
+	/**
+	 * @return the stage as an implementation if it belongs to this branch, otherwise <code>null</code>
+	 */
+	private @Nullable StageControllerImplementation<?> getOwnStage(@Nullable StageController stage) {
+		if (stage instanceof StageControllerImplementation && stage.getBranch() == this)
+			return (StageControllerImplementation<?>) stage;
+		return null;
+	}
+
 	@Override
 	public @NotNull @UnmodifiableView List<@NotNull StageController> getRegularStages() {
 		return (List) regularStages;
@@ -95,24 +119,24 @@ public class QuestBranchImplementation implements QuestBranch {
 	}
 
 	public @Nullable QuestBranchImplementation getLinkedBranch(@NotNull StageController endingStage) {
-		return endStages.stream().filter(end -> end.getStage().equals(endingStage)).findAny().get().getBranch();
+		StageControllerImplementation<?> stage = getOwnStage(endingStage);
+		if (stage == null || !stage.isEndingStage())
+			throw new NoSuchElementException("Stage " + endingStage + " is not an ending stage of this branch");
+		return stage.getLinkedBranch();
 	}
 
 	public int getRegularStageId(StageController stage) {
-		return regularStages.indexOf(stage);
+		StageControllerImplementation<?> ownStage = getOwnStage(stage);
+		return ownStage == null ? -1 : ownStage.getRegularId();
 	}
 
 	public int getEndingStageId(StageController stage) {
-		for (int i = 0; i < endStages.size(); i++) {
-			EndingStage endingStage = endStages.get(i);
-			if (endingStage.getStage().equals(stage))
-				return i;
-		}
-		return -1;
+		StageControllerImplementation<?> ownStage = getOwnStage(stage);
+		return ownStage == null ? -1 : ownStage.getEndingId();
 	}
 
 	public boolean isEndingStage(StageController stage) {
-		return endStages.stream().anyMatch(end -> end.getStage().equals(stage));
+		return getEndingStageId(stage) != -1;
 	}
 
 	@Override
@@ -203,7 +227,7 @@ public class QuestBranchImplementation implements QuestBranch {
 		datas.setStage(-1);
 		endStage(acc, (StageControllerImplementation<?>) stage, () -> {
 			if (!manager.getQuest().hasStarted(acc)) return;
-			if (regularStages.contains(stage)){ // not ending stage - continue the branch or finish the quest
+			if (getRegularStageId(stage) != -1) { // not ending stage - continue the branch or finish the quest
 				int newId = getRegularStageId(stage) + 1;
 				if (newId == regularStages.size()){
 					if (endStages.isEmpty()){
@@ -0,0 +1,59 @@
+package fr.skytasul.quests.structure;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Quests indexed by ID, as IDs are small and mostly contiguous. The array is replaced on each change
+ * so that lookups can be done from any thread without locking. Quests with a negative or very high
+ * ID are stored in a map.
+ *
+ * @param <T> type of the indexed quests
+ */
+class QuestIDIndex<T> {
+
+	static final int MAX_DENSE_ID = 1 << 16;
+
+	private volatile Object[] dense = new Object[0];
+	private final Map<Integer, T> sparse = new ConcurrentHashMap<>();
+
+	@SuppressWarnings("unchecked")
+	public @Nullable T get(int id) {
+		Object[] index = dense;
+		if (id >= 0 && id < index.length)
+			return (T) index[id];
+		return id < 0 || id >= MAX_DENSE_ID ? sparse.get(id) : null;
+	}
+
+	public synchronized void put(int id, @NotNull T quest) {
+		if (id < 0 || id >= MAX_DENSE_ID) {
+			sparse.put(id, quest);
+			return;
+		}
+		Object[] index = dense;
+		int length = id < index.length ? index.length : Math.min(MAX_DENSE_ID, Math.max(id + 1, index.length * 2));
+		index = Arrays.copyOf(index, length);
+		index[id] = quest;
+		dense = index;
+	}
+
+	/**
+	 * Removes a quest from the index, if it is still the one indexed with this ID.
+	 */
+	public synchronized void remove(int id, @NotNull T quest) {
+		if (id < 0 || id >= MAX_DENSE_ID) {
+			sparse.remove(id, quest);
+			return;
+		}
+		Object[] index = dense;
+		if (id < index.length && index[id] == quest) {
+			index = index.clone();
+			index[id] = null;
+			dense = index;
+		}
+	}
+
+}
@@ -40,6 +40,7 @@ import fr.skytasul.quests.api.utils.messaging.*;
 import fr.skytasul.quests.npcs.BqNpcImplementation;
 import fr.skytasul.quests.options.*;
 import fr.skytasul.quests.players.AdminMode;
+import fr.skytasul.quests.players.PlayerAccountImplementation;
 import fr.skytasul.quests.rewards.MessageReward;
 import fr.skytasul.quests.structure.pools.QuestPoolImplementation;
 import fr.skytasul.quests.utils.QuestUtils;
@@ -53,6 +54,15 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 	private BranchesManagerImplementation manager;
 
 	private List<QuestOption<?>> options = new ArrayList<>();
+	private Map<Class<?>, QuestOption<?>> optionsByClass = new IdentityHashMap<>();
+
+	// values of the options read on every start test, computed again when an option changes
+	private boolean optionFlagsOutdated = true;
+	private boolean repeatable;
+	private boolean scoreboardEnabled;
+	private boolean bypassLimit;
+	private boolean hiddenWhenRequirementsNotMet;
+	private int visibleLocations; // bitmask of the QuestVisibilityLocation ordinals
 	private List<QuestDescriptionProvider> descriptions = new ArrayList<>();
 
 	private boolean removed = false;
@@ -93,31 +103,52 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 
 	@Override
 	public @NotNull <T extends QuestOption<?>> T getOption(@NotNull Class<T> clazz) {
-		for (QuestOption<?> option : options) {
-			if (clazz.isInstance(option)) return (T) option;
-		}
-		throw new NullPointerException("Quest " + id + " do not have option " + clazz.getName());
+		QuestOption<?> option = findOption(clazz);
+		if (option == null)
+			throw new NullPointerException("Quest " + id + " do not have option " + clazz.getName());
+		return (T) option;
 	}
 
 	@Override
 	public boolean hasOption(@NotNull Class<? extends QuestOption<?>> clazz) {
-		for (QuestOption<?> option : options) {
-			if (clazz.isInstance(option)) return true;
+		return findOption(clazz) != null;
+	}
+
+	@Override
+	public @Nullable <D> D getOptionValueOrDef(@NotNull Class<? extends QuestOption<D>> clazz) {
+		QuestOption<?> option = findOption(clazz);
+		if (option != null)
+			return (D) option.getValue();
+		return (D) QuestOptionCreator.creators.get(clazz).defaultValue;
+	}
+
+	private @Nullable QuestOption<?> findOption(@NotNull Class<?> clazz) {
+		QuestOption<?> option = optionsByClass.get(clazz);
+		if (option == null && !optionsByClass.isEmpty() && !QuestOptionCreator.creators.containsKey(clazz)) {
+			// not the class of an option: it can be a superclass of one
+			for (QuestOption<?> other : options) {
+				if (clazz.isInstance(other))
+					return other;
+			}
 		}
-		return false;
+		return option;
 	}
 
 	@Override
 	public void addOption(@NotNull QuestOption<?> option) {
 		if (!option.hasCustomValue()) return;
 		options.add(option);
+		indexOption(option);
 		option.attach(this);
 		option.setValueUpdaterListener(() -> {
 			if (!option.hasCustomValue()) {
 				option.detach();
 				options.remove(option);
+				unindexOption(option);
 			}
+			optionFlagsOutdated = true;
 		});
+		optionFlagsOutdated = true;
 	}
 
 	@Override
@@ -127,11 +158,39 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 			if (clazz.isInstance(option)) {
 				option.detach();
 				iterator.remove();
+				unindexOption(option);
+				optionFlagsOutdated = true;
 				break;
 			}
 		}
 	}
 
+	private void indexOption(@NotNull QuestOption<?> option) {
+		optionsByClass.put(option.getClass(), option);
+		optionsByClass.put(option.getOptionCreator().optionClass, option);
+	}
+
+	private void unindexOption(@NotNull QuestOption<?> option) {
+		optionsByClass.remove(option.getClass(), option);
+		optionsByClass.remove(option.getOptionCreator().optionClass, option);
+	}
+
+	private void updateOptionFlags() {
+		if (!optionFlagsOutdated)
+			return;
+		repeatable = Boolean.TRUE.equals(getOptionValueOrDef(OptionRepeatable.class));
+		scoreboardEnabled = Boolean.TRUE.equals(getOptionValueOrDef(OptionScoreboardEnabled.class));
+		bypassLimit = Boolean.TRUE.equals(getOptionValueOrDef(OptionBypassLimit.class));
+		hiddenWhenRequirementsNotMet = Boolean.TRUE.equals(getOptionValueOrDef(OptionHideNoRequirements.class));
+		visibleLocations = 0;
+		List<QuestVisibilityLocation> visibility = getOptionValueOrDef(OptionVisibility.class);
+		if (visibility != null) {
+			for (QuestVisibilityLocation location : visibility)
+				visibleLocations |= 1 << location.ordinal();
+		}
+		optionFlagsOutdated = false;
+	}
+
 	public boolean isRemoved(){
 		return removed;
 	}
@@ -166,7 +225,8 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 
 	@Override
 	public boolean isScoreboardEnabled() {
-		return getOptionValueOrDef(OptionScoreboardEnabled.class);
+		updateOptionFlags();
+		return scoreboardEnabled;
 	}
 
 	@Override
@@ -176,22 +236,26 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 
 	@Override
 	public boolean isRepeatable() {
-		return getOptionValueOrDef(OptionRepeatable.class);
+		updateOptionFlags();
+		return repeatable;
 	}
 
 	@Override
 	public boolean isHidden(QuestVisibilityLocation location) {
-		return !getOptionValueOrDef(OptionVisibility.class).contains(location);
+		updateOptionFlags();
+		return (visibleLocations & (1 << location.ordinal())) == 0;
 	}
 
 	@Override
 	public boolean isHiddenWhenRequirementsNotMet() {
-		return getOptionValueOrDef(OptionHideNoRequirements.class);
+		updateOptionFlags();
+		return hiddenWhenRequirementsNotMet;
 	}
 
 	@Override
 	public boolean canBypassLimit() {
-		return getOptionValueOrDef(OptionBypassLimit.class);
+		updateOptionFlags();
+		return bypassLimit;
 	}
 
 	@Override
@@ -238,6 +302,7 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 
 		QuestsPlugin.getPlugin().getLoggerExpanded().debug("Cancelling quest " + id + " for player " + acc.getNameAndID());
 		cancelInternal(acc);
+		BeautyQuests.getInstance().getPlayersManager().questDatasChanged(acc);
 		return true;
 	}
 
@@ -266,6 +331,7 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 			QuestsPlugin.getPlugin().getLoggerExpanded().debug("Resetting quest " + id + " for player " + acc.getNameAndID());
 			cancelInternal(acc);
 			future = acc.removeQuestEntry(this);
+			BeautyQuests.getInstance().getPlayersManager().questDatasChanged(acc);
 		}
 
 		if (acc.isCurrent() && hasOption(OptionStartDialog.class)
@@ -282,7 +348,7 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 			if (sendMessage) Lang.ALREADY_STARTED.send(p);
 			return false;
 		}
-		if (!getOptionValueOrDef(OptionRepeatable.class) && hasFinished(acc)) return false;
+		if (!isRepeatable() && hasFinished(acc)) return false;
 		if (!testTimer(acc, sendMessage)) return false;
 		if (!testRequirements(p, acc, sendMessage)) return false;
 		return true;
@@ -298,7 +364,7 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 	}
 
 	public boolean testQuestLimit(@NotNull Player p, @NotNull PlayerAccount acc, boolean sendMessage) {
-		if (Boolean.TRUE.equals(getOptionValueOrDef(OptionBypassLimit.class)))
+		if (canBypassLimit())
 			return true;
 		int playerMaxLaunchedQuest;
 		OptionalInt playerMaxLaunchedQuestOpt = p.getEffectivePermissions().stream()
@@ -455,13 +521,16 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 			inAsyncStart.remove(p);
 
 			QuestUtils.runOrSync(() -> {
+				((PlayerAccountImplementation) acc).setQuestStarting(id, false);
 				manager.startPlayer(acc);
+				BeautyQuests.getInstance().getPlayersManager().questDatasChanged(acc);
 				QuestsAPI.getAPI().propagateQuestsHandlers(handler -> handler.questStart(acc, this));
 				Bukkit.getPluginManager().callEvent(new QuestLaunchEvent(p, QuestImplementation.this));
 			});
 		};
 		if (hasAsyncStart()) {
 			inAsyncStart.add(p);
+			((PlayerAccountImplementation) acc).setQuestStarting(id, true);
 			QuestUtils.runAsync(run);
 		}else run.run();
 	}
@@ -504,6 +573,7 @@ public class QuestImplementation implements Quest, QuestDescriptionProvider {
 				}
 				QuestUtils.spawnFirework(p.getLocation(), getOptionValueOrDef(OptionFirework.class));
 				QuestUtils.playPluginSound(p, getOptionValueOrDef(OptionEndSound.class), 1);
+				BeautyQuests.getInstance().getPlayersManager().questDatasChanged(acc);
 
 				QuestsAPI.getAPI().propagateQuestsHandlers(handler -> handler.questFinish(acc, this));
 				Bukkit.getPluginManager().callEvent(new QuestFinishEvent(p, this));
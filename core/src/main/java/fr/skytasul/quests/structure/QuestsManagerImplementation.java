@@ -6,11 +6,11 @@ import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -18,7 +18,6 @@ import org.jetbrains.annotations.Unmodifiable;
 import fr.skytasul.quests.BeautyQuests;
 import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.players.PlayerAccount;
-import fr.skytasul.quests.api.players.PlayerQuestEntryData;
 import fr.skytasul.quests.api.quests.Quest;
 import fr.skytasul.quests.api.quests.QuestsManager;
 import fr.skytasul.quests.api.utils.QuestVisibilityLocation;
@@ -26,11 +25,19 @@ import fr.skytasul.quests.api.utils.Utils;
 import fr.skytasul.quests.npcs.BqNpcImplementation;
 import fr.skytasul.quests.options.OptionStartable;
 import fr.skytasul.quests.options.OptionStarterNPC;
+import fr.skytasul.quests.players.PlayerAccountImplementation;
 
 public class QuestsManagerImplementation implements QuestsManager {
 	
 	private final List<QuestImplementation> quests = new ArrayList<>();
 	private final AtomicInteger lastID = new AtomicInteger();
+
+	private final QuestIDIndex<QuestImplementation> questsByID = new QuestIDIndex<>();
+	/**
+	 * Quests which cannot be part of the quest state bitsets of accounts: their state is read from the
+	 * quest entries instead.
+	 */
+	private final List<QuestImplementation> negativeIDQuests = new CopyOnWriteArrayList<>();
 	
 	private final BeautyQuests plugin;
 	private final File saveFolder;
@@ -61,7 +68,7 @@ public class QuestsManagerImplementation implements QuestsManager {
 	public int getFreeQuestID() {
 		int id = getLastID();
 		
-		if (quests.stream().noneMatch(quest -> quest.getId() == id)) return id;
+		if (getQuest(id) == null) return id;
 		
 		QuestsPlugin.getPlugin().getLoggerExpanded().warning("Quest id " + id + " already taken, this should not happen.");
 		incrementLastID();
@@ -109,7 +116,7 @@ public class QuestsManagerImplementation implements QuestsManager {
 	
 	@Override
 	public @Nullable QuestImplementation getQuest(int id) {
-		return quests.stream().filter(x -> x.getId() == id).findAny().orElse(null);
+		return questsByID.get(id);
 	}
 	
 	public void unloadQuests() {
@@ -123,7 +130,10 @@ public class QuestsManagerImplementation implements QuestsManager {
 	}
 	
 	public void removeQuest(@NotNull Quest quest) {
-		quests.remove(quest);
+		if (quests.remove(quest)) {
+			questsByID.remove(quest.getId(), (QuestImplementation) quest);
+			negativeIDQuests.remove(quest);
+		}
 	}
 	
 	@Override
@@ -131,6 +141,9 @@ public class QuestsManagerImplementation implements QuestsManager {
 		QuestImplementation qu = (QuestImplementation) quest;
 		lastID.set(Math.max(lastID.get(), quest.getId()));
 		quests.add(qu);
+		questsByID.put(qu.getId(), qu);
+		if (qu.getId() < 0)
+			negativeIDQuests.add(qu);
 		if (quest.hasOption(OptionStarterNPC.class)) {
 			BqNpcImplementation npc = (BqNpcImplementation) quest.getOptionValueOrDef(OptionStarterNPC.class);
 			if (npc != null) npc.addQuest(quest);
@@ -146,15 +159,24 @@ public class QuestsManagerImplementation implements QuestsManager {
 	@Override
 	public @NotNull @Unmodifiable List<Quest> getQuestsStarted(@NotNull PlayerAccount acc, boolean hide,
 			boolean withoutScoreboard) {
-		return acc.getQuestEntries()
-				.stream()
-				.filter(PlayerQuestEntryData::hasStarted)
-				.map(PlayerQuestEntryData::getQuest)
-				.filter(Objects::nonNull)
-				.filter(Quest::isValid)
-				.filter(quest -> !hide || !quest.isHidden(QuestVisibilityLocation.TAB_IN_PROGRESS))
-				.filter(quest -> !withoutScoreboard || quest.isScoreboardEnabled())
-				.collect(Collectors.toList());
+		BitSet started = ((PlayerAccountImplementation) acc).getStartedQuests();
+		List<Quest> list = new ArrayList<>(started.cardinality());
+		for (QuestImplementation quest : negativeIDQuests) {
+			if (quest.hasStarted(acc) && isListedStarted(quest, hide, withoutScoreboard))
+				list.add(quest);
+		}
+		for (int id = started.nextSetBit(0); id >= 0; id = started.nextSetBit(id + 1)) {
+			QuestImplementation quest = getQuest(id);
+			if (quest != null && isListedStarted(quest, hide, withoutScoreboard))
+				list.add(quest);
+		}
+		return list;
+	}
+
+	private boolean isListedStarted(@NotNull QuestImplementation quest, boolean hide, boolean withoutScoreboard) {
+		if (!quest.isValid()) return false;
+		if (hide && quest.isHidden(QuestVisibilityLocation.TAB_IN_PROGRESS)) return false;
+		return !withoutScoreboard || quest.isScoreboardEnabled();
 	}
 	
 	@Override
@@ -164,40 +186,74 @@ public class QuestsManagerImplementation implements QuestsManager {
 			if (!existing.hasStarted(acc) || (withoutScoreboard && !existing.isScoreboardEnabled())) iterator.remove();
 		}
 		
-		for (QuestImplementation qu : quests) {
+		PlayerAccountImplementation account = (PlayerAccountImplementation) acc;
+		BitSet started = startedOrStarting(account);
+		for (QuestImplementation qu : negativeIDQuests) {
 			if (withoutScoreboard && !qu.isScoreboardEnabled()) continue;
 			if (!list.contains(qu) && qu.hasStarted(acc)) list.add(qu);
 		}
+		for (int id = started.nextSetBit(0); id >= 0; id = started.nextSetBit(id + 1)) {
+			QuestImplementation qu = getQuest(id);
+			if (qu == null || (withoutScoreboard && !qu.isScoreboardEnabled())) continue;
+			if (!list.contains(qu) && qu.hasStarted(acc)) list.add(qu);
+		}
 	}
 	
 	@Override
 	public int getStartedSize(@NotNull PlayerAccount acc) {
-		return (int) quests
-				.stream()
-				.filter(quest -> !quest.canBypassLimit() && quest.hasStarted(acc))
-				.count();
+		BitSet started = startedOrStarting((PlayerAccountImplementation) acc);
+		int size = 0;
+		for (QuestImplementation quest : negativeIDQuests) {
+			if (!quest.canBypassLimit() && quest.hasStarted(acc)) size++;
+		}
+		for (int id = started.nextSetBit(0); id >= 0; id = started.nextSetBit(id + 1)) {
+			QuestImplementation quest = getQuest(id);
+			if (quest != null && !quest.canBypassLimit()) size++;
+		}
+		return size;
 	}
 	
 	@Override
 	public @NotNull @Unmodifiable List<Quest> getQuestsFinished(@NotNull PlayerAccount acc, boolean hide) {
-		return quests
-				.stream()
-				.filter(quest -> !(hide && quest.isHidden(QuestVisibilityLocation.TAB_FINISHED)) && quest.hasFinished(acc))
-				.collect(Collectors.toList());
+		BitSet finished = ((PlayerAccountImplementation) acc).getFinishedQuests();
+		List<Quest> list = new ArrayList<>(finished.cardinality());
+		for (QuestImplementation quest : negativeIDQuests) {
+			if (quest.hasFinished(acc) && !(hide && quest.isHidden(QuestVisibilityLocation.TAB_FINISHED))) list.add(quest);
+		}
+		for (int id = finished.nextSetBit(0); id >= 0; id = finished.nextSetBit(id + 1)) {
+			QuestImplementation quest = getQuest(id);
+			if (quest != null && !(hide && quest.isHidden(QuestVisibilityLocation.TAB_FINISHED))) list.add(quest);
+		}
+		return list;
 	}
 	
 	@Override
 	public @NotNull @Unmodifiable List<Quest> getQuestsNotStarted(@NotNull PlayerAccount acc, boolean hide,
 			boolean clickableAndRedoable) {
-		return quests
-				.stream()
-				.filter(quest -> {
-					if (hide && quest.isHidden(QuestVisibilityLocation.TAB_NOT_STARTED)) return false;
-					if (quest.hasStarted(acc)) return false;
-					if (!quest.hasFinished(acc)) return true;
-					return clickableAndRedoable && quest.isRepeatable() && quest.getOptionValueOrDef(OptionStartable.class) && quest.testTimer(acc, false);
-				})
-				.collect(Collectors.toList());
+		PlayerAccountImplementation account = (PlayerAccountImplementation) acc;
+		BitSet started = startedOrStarting(account);
+		BitSet finished = account.getFinishedQuests();
+		List<Quest> list = new ArrayList<>();
+		for (QuestImplementation quest : quests) {
+			int id = quest.getId();
+			if (hide && quest.isHidden(QuestVisibilityLocation.TAB_NOT_STARTED)) continue;
+			if (id >= 0 ? started.get(id) : quest.hasStarted(acc)) continue;
+			if (id >= 0 ? !finished.get(id) : !quest.hasFinished(acc)) {
+				list.add(quest);
+			}else if (clickableAndRedoable && quest.isRepeatable() && quest.getOptionValueOrDef(OptionStartable.class)
+					&& quest.testTimer(acc, false)) {
+				list.add(quest);
+			}
+		}
+		return list;
+	}
+	
+	private @NotNull BitSet startedOrStarting(@NotNull PlayerAccountImplementation acc) {
+		if (acc.getStartingQuests().isEmpty())
+			return acc.getStartedQuests();
+		BitSet started = (BitSet) acc.getStartedQuests().clone();
+		started.or(acc.getStartingQuests());
+		return started;
 	}
 	
 }
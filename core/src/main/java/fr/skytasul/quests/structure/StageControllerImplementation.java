@@ -4,8 +4,6 @@ import com.google.gson.JsonSyntaxException;
 import fr.skytasul.quests.BeautyQuests;
 import fr.skytasul.quests.api.QuestsAPI;
 import fr.skytasul.quests.api.QuestsPlugin;
-import fr.skytasul.quests.api.events.accounts.PlayerAccountJoinEvent;
-import fr.skytasul.quests.api.events.accounts.PlayerAccountLeaveEvent;
 import fr.skytasul.quests.api.options.description.DescriptionSource;
 import fr.skytasul.quests.api.players.PlayerAccount;
 import fr.skytasul.quests.api.players.PlayerQuestEntryData;
@@ -16,12 +14,8 @@ import fr.skytasul.quests.api.utils.messaging.MessageType;
 import fr.skytasul.quests.api.utils.messaging.MessageUtils;
 import fr.skytasul.quests.utils.QuestUtils;
 import fr.skytasul.quests.utils.compatibility.BQBackwardCompat;
-import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.HandlerList;
-import org.bukkit.event.Listener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.util.HashMap;
@@ -30,13 +24,19 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Consumer;
 
-public class StageControllerImplementation<T extends AbstractStage> implements StageController, Listener {
+public class StageControllerImplementation<T extends AbstractStage> implements StageController {
 
 	private final @NotNull QuestBranchImplementation branch;
 	private final @NotNull StageType<T> type;
 
 	private @Nullable T stage;
 
+	// position in the branch, set by the branch when the stage is added to it
+	private int regularId = -1;
+	private int endingId = -1;
+	private @Nullable QuestBranchImplementation linkedBranch;
+	private @NotNull String flowId = "-1";
+
 	public StageControllerImplementation(@NotNull QuestBranchImplementation branch, @NotNull StageType<T> type) {
 		this.branch = Objects.requireNonNull(branch);
 		this.type = Objects.requireNonNull(type);
@@ -56,6 +56,48 @@ public class StageControllerImplementation<T extends AbstractStage> implements S
 		return branch;
 	}
 
+	void setRegularPosition(int regularId) {
+		this.regularId = regularId;
+		this.endingId = -1;
+		this.linkedBranch = null;
+		this.flowId = Integer.toString(regularId);
+	}
+
+	void setEndingPosition(int endingId, @Nullable QuestBranchImplementation linkedBranch) {
+		this.regularId = -1;
+		this.endingId = endingId;
+		this.linkedBranch = linkedBranch;
+		this.flowId = "E" + endingId;
+	}
+
+	/**
+	 * @return the index of this stage in the regular stages of its branch, or -1 if it is an ending
+	 *         stage
+	 */
+	public int getRegularId() {
+		return regularId;
+	}
+
+	/**
+	 * @return the index of this stage in the ending stages of its branch, or -1 if it is a regular
+	 *         stage
+	 */
+	public int getEndingId() {
+		return endingId;
+	}
+
+	public boolean isEndingStage() {
+		return endingId != -1;
+	}
+
+	/**
+	 * @return the branch started when this ending stage is finished, or <code>null</code> if the quest
+	 *         is finished instead
+	 */
+	public @Nullable QuestBranchImplementation getLinkedBranch() {
+		return linkedBranch;
+	}
+
 	@Override
 	public @NotNull AbstractStage getStage() {
 		if (stage == null)
@@ -197,42 +239,25 @@ public class StageControllerImplementation<T extends AbstractStage> implements S
 
 	public void load() {
 		QuestUtils.autoRegister(stage);
-		Bukkit.getPluginManager().registerEvents(this, BeautyQuests.getInstance());
+		BeautyQuests.getInstance().getStageEventDispatcher().register(this);
 		propagateStageHandlers(handler -> handler.stageLoad(this));
 		stage.load();
 	}
 
 	public void unload() {
 		QuestUtils.autoUnregister(stage);
-		HandlerList.unregisterAll(this);
+		BeautyQuests.getInstance().getStageEventDispatcher().unregister(this);
 		propagateStageHandlers(handler -> handler.stageUnload(this));
 		stage.unload();
 	}
 
-	@EventHandler
-	public void onJoin(PlayerAccountJoinEvent e) {
-		if (e.isFirstJoin())
-			return;
-
-		if (hasStarted(e.getPlayerAccount()))
-			joins(e.getPlayer());
-	}
-
-	@EventHandler
-	public void onLeave(PlayerAccountLeaveEvent e) {
-		if (hasStarted(e.getPlayerAccount()))
-			leaves(e.getPlayer());
-	}
-
 	@Override
 	public @NotNull String getFlowId() {
-		if (branch.isEndingStage(this))
-			return "E" + branch.getEndingStageId(this);
-		return Integer.toString(branch.getRegularStageId(this));
+		return flowId;
 	}
 
 	public int getStorageId() {
-		return branch.isEndingStage(this) ? branch.getEndingStageId(this) : branch.getRegularStageId(this);
+		return endingId != -1 ? endingId : regularId;
 	}
 
 	@Override
@@ -0,0 +1,202 @@
+package fr.skytasul.quests.structure;
+
+import fr.skytasul.quests.BeautyQuests;
+import fr.skytasul.quests.api.QuestsPlugin;
+import fr.skytasul.quests.api.stages.StageEventRegistry;
+import fr.skytasul.quests.players.PlayerAccountImplementation;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Calls the event handlers declared by the stages through
+ * {@link fr.skytasul.quests.api.stages.AbstractStage#registerEvents(StageEventRegistry)}.
+ * <p>
+ * There is one Bukkit listener per event type, priority and cancellation policy, whatever the amount
+ * of stages. When an event is fired, the listener gets the player of the event, then only goes
+ * through the stages launched by this player (see {@link PlayerAccountImplementation#getActiveStages()}).
+ * <p>
+ * Stages are registered and unregistered on the main thread, but events such as the chat may be
+ * fired asynchronously.
+ */
+public class StageEventDispatcher {
+
+	private final Map<ListenerKey, StageEventListener<?>> listeners = new HashMap<>();
+	private final Map<StageControllerImplementation<?>, List<StageEventListener<?>>> controllers = new HashMap<>();
+
+	private final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	 * @return a number which changes every time stages are registered or unregistered
+	 */
+	public int getGeneration() {
+		return generation.get();
+	}
+
+	public void register(@NotNull StageControllerImplementation<?> controller) {
+		Map<StageEventListener<?>, List<Registration<?>>> registrations = new LinkedHashMap<>();
+		controller.getStage().registerEvents(new StageEventRegistry() {
+			@Override
+			public <E extends Event> void register(@NotNull Class<E> eventClass, @NotNull EventPriority priority,
+					boolean ignoreCancelled, @NotNull Function<? super E, @Nullable Player> playerFunction,
+					@NotNull Handler<? super E> handler) {
+				StageEventListener<?> listener = getListener(eventClass, priority, ignoreCancelled);
+				registrations.computeIfAbsent(listener, __ -> new ArrayList<>(2))
+						.add(new Registration<>(playerFunction, handler));
+			}
+		});
+
+		if (!registrations.isEmpty()) {
+			registrations.forEach((listener, list) -> listener.add(controller, list));
+			controllers.put(controller, new ArrayList<>(registrations.keySet()));
+		}
+		generation.incrementAndGet();
+	}
+
+	public void unregister(@NotNull StageControllerImplementation<?> controller) {
+		List<StageEventListener<?>> registered = controllers.remove(controller);
+		if (registered != null)
+			registered.forEach(listener -> listener.remove(controller));
+		generation.incrementAndGet();
+	}
+
+	private <E extends Event> StageEventListener<?> getListener(Class<E> eventClass, EventPriority priority,
+			boolean ignoreCancelled) {
+		return listeners.computeIfAbsent(new ListenerKey(eventClass, priority, ignoreCancelled), key -> {
+			StageEventListener<E> listener = new StageEventListener<>(eventClass, ignoreCancelled);
+			Bukkit.getPluginManager().registerEvent(eventClass, listener, priority, listener, BeautyQuests.getInstance(),
+					ignoreCancelled);
+			return listener;
+		});
+	}
+
+	private static class StageEventListener<E extends Event> implements Listener, EventExecutor {
+
+		private final Class<E> eventClass;
+		private final boolean ignoreCancelled;
+		private final Map<StageControllerImplementation<?>, List<Registration<E>>> handlers = new ConcurrentHashMap<>();
+
+		/*
+		 * Distinct player functions of the registered handlers, compared by identity: all stages of the
+		 * same type share the same function instance.
+		 */
+		private volatile List<Function<? super E, Player>> playerFunctions = Collections.emptyList();
+
+		public StageEventListener(Class<E> eventClass, boolean ignoreCancelled) {
+			this.eventClass = eventClass;
+			this.ignoreCancelled = ignoreCancelled;
+		}
+
+		public void add(StageControllerImplementation<?> controller, List<Registration<?>> registrations) {
+			handlers.put(controller, (List) Collections.unmodifiableList(registrations));
+			updatePlayerFunctions();
+		}
+
+		public void remove(StageControllerImplementation<?> controller) {
+			handlers.remove(controller);
+			updatePlayerFunctions();
+		}
+
+		private void updatePlayerFunctions() {
+			Set<Function<? super E, Player>> functions = Collections.newSetFromMap(new IdentityHashMap<>());
+			handlers.values().forEach(list -> list.forEach(registration -> functions.add(registration.playerFunction)));
+			playerFunctions = new ArrayList<>(functions);
+		}
+
+		@Override
+		public void execute(@NotNull Listener listener, @NotNull Event event) {
+			if (!eventClass.isInstance(event))
+				return;
+			E castedEvent = eventClass.cast(event);
+
+			for (Function<? super E, Player> playerFunction : playerFunctions) {
+				Player player = playerFunction.apply(castedEvent);
+				if (player == null)
+					continue;
+
+				PlayerAccountImplementation acc = BeautyQuests.getInstance().getPlayersManager().getAccount(player);
+				if (acc == null)
+					continue;
+
+				for (StageControllerImplementation<?> controller : acc.getActiveStages()) {
+					List<Registration<E>> registrations = handlers.get(controller);
+					if (registrations == null)
+						continue;
+
+					for (Registration<E> registration : registrations) {
+						if (registration.playerFunction != playerFunction)
+							continue;
+						// the index may include a stage whose rewards are being given asynchronously
+						if (!controller.hasStarted(acc))
+							break;
+						// Bukkit only checks the cancellation once for the whole listener
+						if (ignoreCancelled && isCancelled(castedEvent))
+							return;
+
+						try {
+							registration.handler.handle(castedEvent, player);
+						} catch (Exception ex) {
+							QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while handling "
+									+ eventClass.getSimpleName() + " in " + controller.toString(), ex);
+						}
+					}
+				}
+			}
+		}
+
+		private static boolean isCancelled(Event event) {
+			return event instanceof Cancellable && ((Cancellable) event).isCancelled();
+		}
+
+	}
+
+	private static class Registration<E extends Event> {
+
+		private final Function<? super E, Player> playerFunction;
+		private final StageEventRegistry.Handler<? super E> handler;
+
+		private Registration(Function<? super E, Player> playerFunction, StageEventRegistry.Handler<? super E> handler) {
+			this.playerFunction = playerFunction;
+			this.handler = handler;
+		}
+
+	}
+
+	private static class ListenerKey {
+
+		private final Class<? extends Event> eventClass;
+		private final EventPriority priority;
+		private final boolean ignoreCancelled;
+
+		private ListenerKey(Class<? extends Event> eventClass, EventPriority priority, boolean ignoreCancelled) {
+			this.eventClass = eventClass;
+			this.priority = priority;
+			this.ignoreCancelled = ignoreCancelled;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ListenerKey))
+				return false;
+			ListenerKey other = (ListenerKey) obj;
+			return eventClass == other.eventClass && priority == other.priority && ignoreCancelled == other.ignoreCancelled;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(eventClass, priority, ignoreCancelled);
+		}
+
+	}
+
+}
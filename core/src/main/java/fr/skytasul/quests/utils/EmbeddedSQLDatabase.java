@@ -0,0 +1,110 @@
+package fr.skytasul.quests.utils;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import fr.skytasul.quests.api.QuestsPlugin;
+import org.jetbrains.annotations.NotNull;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database stored in a local file by an embedded engine (H2 or SQLite), for servers without a
+ * database server.
+ * <p>
+ * A single connection is used, and asynchronous actions are run one after the other on a dedicated
+ * thread: embedded engines only allow one writer at a time anyway.
+ */
+public class EmbeddedSQLDatabase implements SQLDatabase {
+
+	private static final long CLOSE_TIMEOUT = 10;
+
+	private final @NotNull SQLDialect dialect;
+	private final @NotNull HikariDataSource source;
+	private final @NotNull ExecutorService executor;
+
+	/**
+	 * @param dialect {@link SQLDialect#H2} or {@link SQLDialect#SQLite}
+	 * @param file database file, without extension
+	 */
+	public EmbeddedSQLDatabase(@NotNull SQLDialect dialect, @NotNull File file) {
+		this.dialect = dialect;
+
+		HikariConfig hikariConfig = new HikariConfig();
+		switch (dialect) {
+			case H2:
+				// MySQL mode for the backquoted column names of account datas
+				hikariConfig.setJdbcUrl("jdbc:h2:file:" + file.getAbsolutePath() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+				hikariConfig.setDriverClassName("org.h2.Driver");
+				break;
+			case SQLite:
+				hikariConfig.setJdbcUrl("jdbc:sqlite:" + file.getAbsolutePath() + ".db");
+				hikariConfig.setDriverClassName("org.sqlite.JDBC");
+				hikariConfig.setConnectionInitSql("PRAGMA journal_mode=WAL");
+				break;
+			default:
+				throw new IllegalArgumentException("Not an embedded database dialect: " + dialect);
+		}
+		hikariConfig.setPoolName("BeautyQuests-" + dialect.name() + "-pool");
+		hikariConfig.setMaximumPoolSize(1);
+		source = new HikariDataSource(hikariConfig);
+
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "BeautyQuests " + dialect.name() + " database");
+			thread.setDaemon(true);
+			return thread;
+		});
+		QuestsPlugin.getPlugin().getLoggerExpanded()
+				.debug("Initialized embedded " + dialect.name() + " database in " + file.getName());
+	}
+
+	@Override
+	public @NotNull SQLDialect getDialect() {
+		return dialect;
+	}
+
+	@Override
+	public void run(@NotNull ThrowingConsumer<Connection, SQLException> action) {
+		execute(connection -> {
+			action.accept(connection);
+			return null;
+		});
+	}
+
+	@Override
+	public @NotNull CompletableFuture<Void> runAsync(@NotNull ThrowingConsumer<Connection, SQLException> action) {
+		return CompletableFuture.runAsync(() -> run(action), executor);
+	}
+
+	@Override
+	public <T> @NotNull CompletableFuture<T> executeAsync(@NotNull SQLFunction<T> action) {
+		return CompletableFuture.supplyAsync(() -> execute(action), executor);
+	}
+
+	private <T> T execute(SQLFunction<T> action) {
+		try (Connection connection = source.getConnection()) {
+			return action.apply(connection);
+		} catch (SQLException ex) {
+			throw new CompletionException(ex);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS))
+				QuestsPlugin.getPlugin().getLoggerExpanded()
+						.warning("Some actions on the embedded database have not completed in time.");
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		source.close();
+	}
+
+}
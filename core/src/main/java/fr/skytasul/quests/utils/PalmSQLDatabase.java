@@ -0,0 +1,40 @@
+package fr.skytasul.quests.utils;
+
+import com.minepalm.library.database.JavaDatabase;
+import org.jetbrains.annotations.NotNull;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MySQL database shared between servers, whose connections are managed by PalmLibrary.
+ */
+public class PalmSQLDatabase implements SQLDatabase {
+
+	private final @NotNull JavaDatabase<Connection> database;
+
+	public PalmSQLDatabase(@NotNull JavaDatabase<Connection> database) {
+		this.database = database;
+	}
+
+	@Override
+	public @NotNull SQLDialect getDialect() {
+		return SQLDialect.MySQL;
+	}
+
+	@Override
+	public void run(@NotNull ThrowingConsumer<Connection, SQLException> action) {
+		database.run(action::accept);
+	}
+
+	@Override
+	public @NotNull CompletableFuture<Void> runAsync(@NotNull ThrowingConsumer<Connection, SQLException> action) {
+		return database.runAsync(action::accept);
+	}
+
+	@Override
+	public <T> @NotNull CompletableFuture<T> executeAsync(@NotNull SQLFunction<T> action) {
+		return database.executeAsync(action::apply);
+	}
+
+}
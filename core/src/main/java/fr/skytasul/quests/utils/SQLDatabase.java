@@ -0,0 +1,42 @@
+package fr.skytasul.quests.utils;
+
+import org.jetbrains.annotations.NotNull;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Connections to the SQL database holding player accounts, along with the dialect to talk to it.
+ * <p>
+ * The actions are given a connection which must not be used once they return. Exceptions thrown by
+ * the actions are rethrown wrapped in an unchecked exception by {@link #run(ThrowingConsumer)}, and
+ * complete the futures of the asynchronous methods exceptionally.
+ */
+public interface SQLDatabase {
+
+	@NotNull
+	SQLDialect getDialect();
+
+	/**
+	 * Runs an action on the calling thread.
+	 */
+	void run(@NotNull ThrowingConsumer<Connection, SQLException> action);
+
+	@NotNull
+	CompletableFuture<Void> runAsync(@NotNull ThrowingConsumer<Connection, SQLException> action);
+
+	<T> @NotNull CompletableFuture<T> executeAsync(@NotNull SQLFunction<T> action);
+
+	/**
+	 * Releases the resources held by this database, if it owns them.
+	 */
+	default void close() {}
+
+	@FunctionalInterface
+	interface SQLFunction<T> {
+
+		T apply(@NotNull Connection connection) throws SQLException;
+
+	}
+
+}
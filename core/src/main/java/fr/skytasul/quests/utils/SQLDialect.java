@@ -0,0 +1,214 @@
+package fr.skytasul.quests.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQL syntax which differs between the database engines supported by
+ * {@link fr.skytasul.quests.players.PlayersManagerDB}: column types, upserts, duplicate removal and
+ * named locks.
+ */
+public enum SQLDialect {
+
+	MySQL("INT NOT NULL AUTO_INCREMENT", "BIGINT NOT NULL AUTO_INCREMENT", "LONGTEXT", "BLOB", "MEDIUMBLOB", true, true) {
+		@Override
+		public @NotNull String upsert(@NotNull String table, @NotNull List<String> keyColumns,
+				@NotNull List<String> valueColumns, @NotNull String rowValues, int rows) {
+			StringBuilder builder = insert(table, keyColumns, valueColumns, rowValues, rows);
+			builder.append(" ON DUPLICATE KEY UPDATE ");
+			for (int i = 0; i < valueColumns.size(); i++) {
+				if (i != 0)
+					builder.append(", ");
+				builder.append(valueColumns.get(i)).append(" = VALUES(").append(valueColumns.get(i)).append(')');
+			}
+			return builder.toString();
+		}
+
+		@Override
+		public @NotNull String deleteDuplicates(@NotNull String table, @NotNull String keyColumns) {
+			// MySQL cannot select from the table it deletes from in a subquery
+			StringBuilder builder = new StringBuilder("DELETE t1 FROM ").append(table).append(" t1 INNER JOIN ")
+					.append(table).append(" t2 ON ");
+			for (String column : keyColumns.split(",")) {
+				column = column.trim();
+				builder.append("t1.").append(column).append(" = t2.").append(column).append(" AND ");
+			}
+			return builder.append("t1.id < t2.id").toString();
+		}
+
+		@Override
+		public @Nullable String getLockStatement() {
+			return "SELECT GET_LOCK(?, ?)";
+		}
+
+		@Override
+		public @Nullable String getUnlockStatement() {
+			return "SELECT RELEASE_LOCK(?)";
+		}
+	},
+	H2("INT GENERATED BY DEFAULT AS IDENTITY", "BIGINT GENERATED BY DEFAULT AS IDENTITY", "CLOB", "BLOB", "BLOB", false, false) {
+		@Override
+		public @NotNull String upsert(@NotNull String table, @NotNull List<String> keyColumns,
+				@NotNull List<String> valueColumns, @NotNull String rowValues, int rows) {
+			StringBuilder builder = new StringBuilder("MERGE INTO ").append(table).append(" (")
+					.append(String.join(", ", columns(keyColumns, valueColumns))).append(") KEY (")
+					.append(String.join(", ", keyColumns)).append(") VALUES ");
+			appendRows(builder, rowValues, rows);
+			return builder.toString();
+		}
+	},
+	SQLite("INTEGER NOT NULL", "INTEGER NOT NULL", "TEXT", "BLOB", "BLOB", false, false) {
+		@Override
+		public @NotNull String upsert(@NotNull String table, @NotNull List<String> keyColumns,
+				@NotNull List<String> valueColumns, @NotNull String rowValues, int rows) {
+			StringBuilder builder = insert(table, keyColumns, valueColumns, rowValues, rows);
+			builder.append(" ON CONFLICT (").append(String.join(", ", keyColumns)).append(") DO UPDATE SET ");
+			for (int i = 0; i < valueColumns.size(); i++) {
+				if (i != 0)
+					builder.append(", ");
+				builder.append(valueColumns.get(i)).append(" = excluded.").append(valueColumns.get(i));
+			}
+			return builder.toString();
+		}
+	};
+
+	private final String serialType;
+	private final String bigSerialType;
+	private final String longTextType;
+	private final String blobType;
+	private final String mediumBlobType;
+	private final boolean multiStatements;
+	private final boolean sequentialAssignments;
+
+	private SQLDialect(String serialType, String bigSerialType, String longTextType, String blobType,
+			String mediumBlobType, boolean multiStatements, boolean sequentialAssignments) {
+		this.serialType = serialType;
+		this.bigSerialType = bigSerialType;
+		this.longTextType = longTextType;
+		this.blobType = blobType;
+		this.mediumBlobType = mediumBlobType;
+		this.multiStatements = multiStatements;
+		this.sequentialAssignments = sequentialAssignments;
+	}
+
+	/**
+	 * @return type of an auto-generated integer <code>id</code> column, to be declared as the primary
+	 *         key of the table
+	 */
+	public @NotNull String getSerialType() {
+		return serialType;
+	}
+
+	/**
+	 * @return same as {@link #getSerialType()}, for 64 bits ids
+	 */
+	public @NotNull String getBigSerialType() {
+		return bigSerialType;
+	}
+
+	public @NotNull String getLongTextType() {
+		return longTextType;
+	}
+
+	/**
+	 * @return type of binary columns of up to 64 KiB
+	 */
+	public @NotNull String getBlobType() {
+		return blobType;
+	}
+
+	/**
+	 * @return type of binary columns of up to 16 MiB
+	 */
+	public @NotNull String getMediumBlobType() {
+		return mediumBlobType;
+	}
+
+	/**
+	 * @return <code>true</code> if several statements separated by <code>;</code> may be sent in a
+	 *         single prepared statement, depending on the connection settings
+	 */
+	public boolean supportsMultiStatements() {
+		return multiStatements;
+	}
+
+	/**
+	 * @return <code>true</code> if the assignments of an <code>UPDATE</code> see the values set by the
+	 *         previous assignments of the same statement, instead of the values of the row before the
+	 *         update as in standard SQL
+	 */
+	public boolean hasSequentialAssignments() {
+		return sequentialAssignments;
+	}
+
+	/**
+	 * Creates an insert statement which updates the existing row when the unique key is already
+	 * present.
+	 *
+	 * @param table name of the table
+	 * @param keyColumns columns of the unique key
+	 * @param valueColumns other inserted columns, which are updated on existing rows
+	 * @param rowValues values of one row, in the order of the key columns then the value columns, such
+	 *        as <code>(?, ?, ?)</code>
+	 * @param rows amount of rows inserted by the statement
+	 * @return the SQL statement
+	 */
+	public abstract @NotNull String upsert(@NotNull String table, @NotNull List<String> keyColumns,
+			@NotNull List<String> valueColumns, @NotNull String rowValues, int rows);
+
+	/**
+	 * Creates a statement deleting the rows sharing the same key columns, except the one with the
+	 * highest <code>id</code>.
+	 *
+	 * @param table name of the table
+	 * @param keyColumns comma-separated columns which should be unique
+	 * @return the SQL statement
+	 */
+	public @NotNull String deleteDuplicates(@NotNull String table, @NotNull String keyColumns) {
+		return "DELETE FROM " + table + " WHERE id NOT IN (SELECT MAX(id) FROM " + table + " GROUP BY " + keyColumns
+				+ ")";
+	}
+
+	/**
+	 * @return a query taking the lock name and the timeout in seconds, returning <code>1</code> if the
+	 *         lock has been acquired, or <code>null</code> if the database is not shared between
+	 *         several processes and needs no lock
+	 */
+	public @Nullable String getLockStatement() {
+		return null;
+	}
+
+	/**
+	 * @return a statement taking the lock name and releasing it, or <code>null</code> if
+	 *         {@link #getLockStatement()} is <code>null</code>
+	 */
+	public @Nullable String getUnlockStatement() {
+		return null;
+	}
+
+	private static List<String> columns(List<String> keyColumns, List<String> valueColumns) {
+		List<String> columns = new ArrayList<>(keyColumns.size() + valueColumns.size());
+		columns.addAll(keyColumns);
+		columns.addAll(valueColumns);
+		return columns;
+	}
+
+	private static StringBuilder insert(String table, List<String> keyColumns, List<String> valueColumns,
+			String rowValues, int rows) {
+		StringBuilder builder = new StringBuilder("INSERT INTO ").append(table).append(" (")
+				.append(String.join(", ", columns(keyColumns, valueColumns))).append(") VALUES ");
+		appendRows(builder, rowValues, rows);
+		return builder;
+	}
+
+	private static void appendRows(StringBuilder builder, String rowValues, int rows) {
+		for (int i = 0; i < rows; i++) {
+			if (i != 0)
+				builder.append(", ");
+			builder.append(rowValues);
+		}
+	}
+
+}
@@ -0,0 +1,199 @@
+package fr.skytasul.quests.utils;
+
+import fr.skytasul.quests.api.QuestsPlugin;
+import org.jetbrains.annotations.NotNull;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies ordered schema migration steps on a database and remembers the applied versions in a
+ * dedicated table.
+ * <p>
+ * Several subsystems can share the same version table as long as they use different scopes. The
+ * migration process holds a named lock so that multiple servers started at the same time against
+ * the same database do not run the steps concurrently, if the dialect supports named locks.
+ */
+public class SchemaMigrator {
+
+	private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+	private final @NotNull String versionTable;
+	private final @NotNull String scope;
+	private final @NotNull SQLDialect dialect;
+	private final @NotNull List<Step> steps = new ArrayList<>();
+
+	public SchemaMigrator(@NotNull String versionTable, @NotNull String scope) {
+		this(versionTable, scope, SQLDialect.MySQL);
+	}
+
+	public SchemaMigrator(@NotNull String versionTable, @NotNull String scope, @NotNull SQLDialect dialect) {
+		this.versionTable = versionTable;
+		this.scope = scope;
+		this.dialect = dialect;
+	}
+
+	/**
+	 * Registers a migration step. Steps must be registered in strictly ascending version order.
+	 *
+	 * @param version version of the schema once the step has been applied
+	 * @param description short description, saved in the version table
+	 * @param migration the actual migration, which should be idempotent as much as possible
+	 * @return this migrator, for chaining
+	 */
+	public @NotNull SchemaMigrator step(int version, @NotNull String description,
+			@NotNull ThrowingConsumer<Connection, SQLException> migration) {
+		if (!steps.isEmpty() && steps.get(steps.size() - 1).version >= version)
+			throw new IllegalArgumentException("Migration steps must be registered in ascending order (" + version + ")");
+		steps.add(new Step(version, description, migration));
+		return this;
+	}
+
+	/**
+	 * Applies all steps which have not already been applied on this database.
+	 *
+	 * @param connection connection to the database
+	 * @return the amount of applied steps
+	 * @throws SQLException if a step failed. Subsequent steps are not applied.
+	 */
+	public int migrate(@NotNull Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE IF NOT EXISTS " + versionTable + " ("
+					+ " scope VARCHAR(64) NOT NULL,"
+					+ " version INT NOT NULL,"
+					+ " description VARCHAR(255) DEFAULT NULL,"
+					+ " applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,"
+					+ " PRIMARY KEY (scope, version)"
+					+ " )");
+		}
+
+		String lockName = versionTable + "." + scope;
+		acquireLock(connection, lockName);
+		try {
+			int current = getCurrentVersion(connection);
+			int applied = 0;
+			for (Step step : steps) {
+				if (step.version <= current)
+					continue;
+
+				QuestsPlugin.getPlugin().getLoggerExpanded()
+						.info("Applying " + scope + " database migration " + step.version + ": " + step.description);
+				long time = System.currentTimeMillis();
+				try {
+					step.migration.accept(connection);
+				} catch (SQLException ex) {
+					throw new SQLException("Failed to apply " + scope + " database migration " + step.version, ex);
+				}
+
+				try (PreparedStatement statement = connection
+						.prepareStatement("INSERT INTO " + versionTable + " (scope, version, description) VALUES (?, ?, ?)")) {
+					statement.setString(1, scope);
+					statement.setInt(2, step.version);
+					statement.setString(3, step.description);
+					statement.executeUpdate();
+				}
+				QuestsPlugin.getPlugin().getLoggerExpanded().debug("Applied " + scope + " database migration "
+						+ step.version + " within " + (System.currentTimeMillis() - time) + " ms");
+				applied++;
+			}
+			return applied;
+		} finally {
+			releaseLock(connection, lockName);
+		}
+	}
+
+	public int getCurrentVersion(@NotNull Connection connection) throws SQLException {
+		try (PreparedStatement statement =
+				connection.prepareStatement("SELECT MAX(version) FROM " + versionTable + " WHERE scope = ?")) {
+			statement.setString(1, scope);
+			try (ResultSet result = statement.executeQuery()) {
+				return result.next() ? result.getInt(1) : 0; // MAX of no rows is NULL, read as 0
+			}
+		}
+	}
+
+	private void acquireLock(Connection connection, String lockName) throws SQLException {
+		if (dialect.getLockStatement() == null)
+			return;
+		try (PreparedStatement statement = connection.prepareStatement(dialect.getLockStatement())) {
+			statement.setString(1, lockName);
+			statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+			try (ResultSet result = statement.executeQuery()) {
+				if (!result.next() || result.getInt(1) != 1)
+					throw new SQLException("Cannot acquire the schema migration lock " + lockName);
+			}
+		}
+	}
+
+	private void releaseLock(Connection connection, String lockName) {
+		if (dialect.getUnlockStatement() == null)
+			return;
+		try (PreparedStatement statement = connection.prepareStatement(dialect.getUnlockStatement())) {
+			statement.setString(1, lockName);
+			statement.executeQuery().close();
+		} catch (SQLException ex) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().warning("Cannot release the schema migration lock " + lockName, ex);
+		}
+	}
+
+	public static boolean hasIndex(@NotNull Connection connection, @NotNull String table, @NotNull String index)
+			throws SQLException {
+		try (ResultSet set = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+			while (set.next()) {
+				if (index.equalsIgnoreCase(set.getString("INDEX_NAME")))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	public static void createIndex(@NotNull Connection connection, @NotNull String table, @NotNull String index,
+			boolean unique, @NotNull String columns) throws SQLException {
+		if (hasIndex(connection, table, index)) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().debug("Index " + index + " already exists on " + table);
+			return;
+		}
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + index + " ON " + table + " (" + columns + ")");
+		}
+	}
+
+	public static boolean hasColumn(@NotNull Connection connection, @NotNull String table, @NotNull String column)
+			throws SQLException {
+		try (ResultSet set = connection.getMetaData().getColumns(connection.getCatalog(), null, table, null)) {
+			while (set.next()) {
+				if (column.equalsIgnoreCase(set.getString("COLUMN_NAME")))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	public static void addColumn(@NotNull Connection connection, @NotNull String table, @NotNull String column,
+			@NotNull String definition) throws SQLException {
+		if (hasColumn(connection, table, column)) {
+			QuestsPlugin.getPlugin().getLoggerExpanded().debug("Column " + column + " already exists on " + table);
+			return;
+		}
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+		}
+	}
+
+	private static class Step {
+		private final int version;
+		private final String description;
+		private final ThrowingConsumer<Connection, SQLException> migration;
+
+		private Step(int version, String description, ThrowingConsumer<Connection, SQLException> migration) {
+			this.version = version;
+			this.description = description;
+			this.migration = migration;
+		}
+	}
+
+}
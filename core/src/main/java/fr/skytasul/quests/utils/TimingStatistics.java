@@ -0,0 +1,74 @@
+package fr.skytasul.quests.utils;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe accumulator of durations, used to expose simple latency metrics (amount of samples,
+ * average, maximum and last value).
+ */
+public class TimingStatistics {
+
+	private final @NotNull String name;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private volatile long lastNanos;
+
+	public TimingStatistics(@NotNull String name) {
+		this.name = name;
+	}
+
+	public @NotNull String getName() {
+		return name;
+	}
+
+	/**
+	 * Records a duration measured from a {@link System#nanoTime()} timestamp to now.
+	 *
+	 * @param startNanos value of {@link System#nanoTime()} at the start of the measured operation
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public void record(long nanos) {
+		count.increment();
+		totalNanos.add(nanos);
+		lastNanos = nanos;
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getAverageMillis() {
+		long samples = count.sum();
+		return samples == 0 ? 0 : totalNanos.sum() / (double) samples / 1_000_000D;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos.get() / 1_000_000D;
+	}
+
+	public double getLastMillis() {
+		return lastNanos / 1_000_000D;
+	}
+
+	public void reset() {
+		count.reset();
+		totalNanos.reset();
+		maxNanos.set(0);
+		lastNanos = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d samples, avg %.2f ms, max %.2f ms, last %.2f ms", name, getCount(),
+				getAverageMillis(), getMaxMillis(), getLastMillis());
+	}
+
+}
@@ -1,6 +1,7 @@
 package fr.skytasul.quests.utils.types;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +26,12 @@ import fr.skytasul.quests.utils.DebugUtils;
 
 public class DialogRunnerImplementation implements DialogRunner {
 
+	/*
+	 * Runners in which each player is currently in dialog, so that leaving players are only removed from
+	 * their own dialogs. Only accessed from the main thread.
+	 */
+	private static final Map<Player, List<DialogRunnerImplementation>> PLAYER_RUNNERS = new HashMap<>();
+
 	private final @Nullable Dialog dialog;
 	private final @Nullable BqNpc npc;
 
@@ -204,6 +211,7 @@ public class DialogRunnerImplementation implements DialogRunner {
 
 		status = new PlayerStatus();
 		players.put(player, status);
+		PLAYER_RUNNERS.computeIfAbsent(player, __ -> new ArrayList<>(2)).add(this);
 
 		if (npc != null && navigationInitiallyPaused == null) {
 			// pause NPC walking as there is a player in dialog
@@ -217,6 +225,7 @@ public class DialogRunnerImplementation implements DialogRunner {
 		PlayerStatus status = players.remove(player);
 		if (status == null) return false;
 		status.cancel();
+		unindexPlayer(player);
 
 		handlePlayerChanges();
 
@@ -239,10 +248,25 @@ public class DialogRunnerImplementation implements DialogRunner {
 
 	public void unload() {
 		if (!players.isEmpty()) players.values().forEach(PlayerStatus::cancel);
+		players.keySet().forEach(this::unindexPlayer);
 		players.clear();
 		handlePlayerChanges();
 	}
 
+	private void unindexPlayer(Player player) {
+		List<DialogRunnerImplementation> runners = PLAYER_RUNNERS.get(player);
+		if (runners != null && runners.remove(this) && runners.isEmpty())
+			PLAYER_RUNNERS.remove(player);
+	}
+
+	/**
+	 * @return the runners in which the player is currently in dialog
+	 */
+	public static @NotNull List<DialogRunnerImplementation> getPlayerRunners(@NotNull Player player) {
+		List<DialogRunnerImplementation> runners = PLAYER_RUNNERS.get(player);
+		return runners == null ? Collections.emptyList() : new ArrayList<>(runners);
+	}
+
 	class PlayerStatus {
 		int lastId = -1;
 		BukkitTask task = null;
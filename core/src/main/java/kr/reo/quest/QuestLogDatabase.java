@@ -1,83 +1,348 @@
 package kr.reo.quest;
 
-import com.minepalm.library.PalmLibrary;
-import com.minepalm.library.database.JavaDatabase;
-import com.minepalm.library.database.impl.internal.MySQLDB;
 import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.players.PlayerAccount;
 import fr.skytasul.quests.api.players.PlayerQuestEntryData;
 import fr.skytasul.quests.api.utils.CustomizedObjectTypeAdapter;
-import fr.skytasul.quests.players.PlayersManagerDB;
+import fr.skytasul.quests.utils.SQLDatabase;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Audit log of the quest entries of players.
+ * <p>
+ * Only the entries which changed since the last logged snapshot of the player are written: the
+ * snapshot keeps a hash of every entry, and removed entries are logged as a row without datas. The
+ * first snapshot of a session (usually on join) is not logged, as it is the state saved at the end
+ * of the previous session, whose changes have already been logged.
+ * <p>
+ * Rows go through a bounded queue drained by a writer thread, which groups rows of all players in
+ * multi-row inserts. Logging never blocks the caller: when the queue is full, rows are dropped and
+ * counted.
+ * <p>
+ * Rows are stored in monthly tables (see {@link QuestLogTables}), months older than the retention
+ * period being dropped by {@link #applyRetention()}.
+ */
 public class QuestLogDatabase {
 
+    private static final int QUEUE_CAPACITY = 20_000;
+    private static final int MAX_BATCH_ROWS = 500;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY = 1000;
+    private static final long CLOSE_TIMEOUT = 10_000;
+    private static final LogRow CLOSE_MARKER = new LogRow(null, null, null, 0, null, null, 0);
+
     private final String table;
-    private final JavaDatabase<Connection> database;
+    private final SQLDatabase database;
+    private final String server;
+    private final QuestLogTables tables;
+    private final int retentionMonths;
+
+    private final BlockingQueue<LogRow> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<UUID, Map<Integer, Long>> loggedSnapshots = new ConcurrentHashMap<>();
+
+    private final LongAdder queuedRows = new LongAdder();
+    private final LongAdder writtenRows = new LongAdder();
+    private final LongAdder writtenBatches = new LongAdder();
+    private final LongAdder droppedRows = new LongAdder();
+    private final AtomicInteger queueHighWater = new AtomicInteger();
 
-    public QuestLogDatabase(MySQLDB db) {
+    private @Nullable Thread writerThread;
+    private volatile boolean closing = false;
+
+    /**
+     * @param database log database
+     * @param server name of this server, written in every row
+     * @param retentionMonths amount of months of logs kept, 0 to keep everything
+     */
+    public QuestLogDatabase(SQLDatabase database, String server, int retentionMonths) {
         this.table = "reo_beautyquest_log";
-        this.database = db.java();
+        this.database = database;
+        this.server = server;
+        this.tables = new QuestLogTables(table, database.getDialect());
+        this.retentionMonths = retentionMonths;
     }
 
     // 퀘스트 로그 (기존 테이블에서 가져온거)
     // id - 서버이름 - 로그 타입 - 플레이어 UUID - 퀘스트 데이터 ...
+    // the former single reo_beautyquest_log table is left untouched, rows now go to monthly tables
     public void createTable() {
-        database.run( connection -> {
-            connection.prepareStatement("CREATE TABLE IF NOT EXISTS " + table + " (" +
-                    " id INT NOT NULL AUTO_INCREMENT," +
-                    " server VARCHAR(32) NOT NULL," +
-                    " log_type VARCHAR(32) NOT NULL," +
-                    " user_id VARCHAR(36) NOT NULL," +
-                    " quest_id INT NOT NULL," +
-                    " finished INT DEFAULT NULL," +
-                    " timer BIGINT DEFAULT NULL," +
-                    " current_branch SMALLINT DEFAULT NULL," +
-                    " current_stage SMALLINT DEFAULT NULL," +
-                    " additional_data LONGTEXT DEFAULT NULL," +
-                    " quest_flow VARCHAR(8000) DEFAULT NULL," +
-                    " time TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    " PRIMARY KEY (id)" +
-                    ")").execute();
+        database.run(connection -> {
+            tables.ensureTable(connection, YearMonth.now());
         });
     }
 
-    public CompletableFuture<Void> insertLog(String type, UUID uuid, PlayerAccount account) {
-        String insertQuestData = "INSERT INTO " + table
+    /**
+     * Drops the log tables of the months older than the retention period. Blocks until done.
+     *
+     * @return the amount of dropped tables
+     */
+    public int applyRetention() {
+        if (retentionMonths <= 0)
+            return 0;
+        List<String> dropped = database
+                .executeAsync(connection -> tables.dropExpired(connection, retentionMonths, YearMonth.now()))
+                .join();
+        if (!dropped.isEmpty())
+            QuestsPlugin.getPlugin().getLoggerExpanded().info("Dropped expired quest log tables: " + String.join(", ", dropped));
+        return dropped.size();
+    }
+
+    public void start() {
+        if (writerThread != null)
+            throw new IllegalStateException("Quest log writer already started");
+        writerThread = new Thread(this::writerLoop, "BeautyQuests quest log writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stops accepting rows and waits for the queued ones to be written.
+     */
+    public void close() {
+        if (writerThread == null || closing)
+            return;
+        closing = true;
+        try {
+            if (!queue.offer(CLOSE_MARKER, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS) || !join(writerThread))
+                QuestsPlugin.getPlugin().getLoggerExpanded().warning("The quest log writer did not finish in time, "
+                        + queue.size() + " log rows are lost.");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+    }
+
+    private static boolean join(Thread thread) throws InterruptedException {
+        thread.join(CLOSE_TIMEOUT);
+        return !thread.isAlive();
+    }
+
+    /**
+     * Logs the quest entries of the account which changed since the last logged snapshot of the player.
+     * This method never blocks.
+     *
+     * @param type type of the log (join, quit...)
+     * @param uuid UUID of the player
+     * @param account account of the player
+     */
+    public void insertLog(String type, UUID uuid, PlayerAccount account) {
+        if (closing)
+            return;
+        long time = System.currentTimeMillis();
+        Map<Integer, Long> previous = loggedSnapshots.get(uuid);
+        Map<Integer, Long> snapshot = new HashMap<>();
+        List<LogRow> rows = new ArrayList<>();
+        for (@NotNull PlayerQuestEntryData questEntry : account.getQuestEntries()) {
+            QuestEntryRecord record = questEntry.toRecord();
+            long hash = hash(record);
+            snapshot.put(record.questID, hash);
+            if (previous != null) {
+                Long previousHash = previous.get(record.questID);
+                // only the logged entries are serialized
+                if (previousHash == null || previousHash != hash)
+                    rows.add(new LogRow(type, uuid, record, record.questID,
+                            CustomizedObjectTypeAdapter.serializeNullable(record.additionalDatas), record.questFlow, time));
+            }
+        }
+        if (previous != null) {
+            for (Integer questID : previous.keySet()) {
+                if (!snapshot.containsKey(questID))
+                    rows.add(new LogRow(type, uuid, null, questID, null, null, time));
+            }
+        }
+        loggedSnapshots.put(uuid, snapshot);
+
+        for (LogRow row : rows) {
+            if (queue.offer(row)) {
+                queuedRows.increment();
+            } else {
+                droppedRows.increment();
+                QuestsPlugin.getPlugin().getLoggerExpanded().warning("The quest log queue is full (" + QUEUE_CAPACITY
+                        + " rows), log rows are being dropped.", "questLogFull", 60);
+            }
+        }
+        queueHighWater.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * Forgets the last logged snapshot of a player, once they have left the server.
+     */
+    public void forget(UUID uuid) {
+        loggedSnapshots.remove(uuid);
+    }
+
+    /**
+     * Hashes the record without serializing it. The datas of a record are immutable copies made of
+     * maps, collections and values which all hash their content.
+     */
+    private static long hash(QuestEntryRecord record) {
+        long hash = record.finished;
+        hash = hash * 31 + record.timer;
+        hash = hash * 31 + record.branch;
+        hash = hash * 31 + record.stage;
+        hash = hash * 31 + Objects.hashCode(record.additionalDatas);
+        hash = hash * 31 + Objects.hashCode(record.questFlow);
+        return hash;
+    }
+
+    private void writerLoop() {
+        List<LogRow> batch = new ArrayList<>(MAX_BATCH_ROWS);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH_ROWS - 1);
+            stop = batch.remove(CLOSE_MARKER);
+            if (!batch.isEmpty())
+                writeBatch(batch);
+            batch.clear();
+        }
+        // rows queued concurrently with the close marker
+        while (queue.drainTo(batch, MAX_BATCH_ROWS) != 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<LogRow> batch) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                database.run(connection -> {
+                    // a batch only spans several months around midnight of the first day
+                    Map<YearMonth, List<LogRow>> months = new LinkedHashMap<>();
+                    for (LogRow row : batch) {
+                        months.computeIfAbsent(YearMonth.from(Instant.ofEpochMilli(row.time).atZone(ZoneId.systemDefault())),
+                                __ -> new ArrayList<>()).add(row);
+                    }
+                    for (Map.Entry<YearMonth, List<LogRow>> month : months.entrySet()) {
+                        insertRows(connection, tables.ensureTable(connection, month.getKey()), month.getValue());
+                    }
+                });
+                writtenRows.add(batch.size());
+                writtenBatches.increment();
+                return;
+            } catch (Exception ex) {
+                if (attempt == MAX_ATTEMPTS) {
+                    droppedRows.add(batch.size());
+                    QuestsPlugin.getPlugin().getLoggerExpanded().severe("Cannot write " + batch.size() + " quest log rows", ex);
+                    return;
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY * attempt);
+                } catch (InterruptedException ex2) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void insertRows(Connection connection, String monthTable, List<LogRow> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO " + monthTable
                 + " (server, log_type, user_id, quest_id, " +
                 "finished, timer, current_branch, " +
-                "current_stage, additional_data, quest_flow) " +
-                "VALUES (?, ?, ?, ?, " +
-                "?, ?, ?, " +
-                "?, ?, ?) ";
-        return database.runAsync(connection -> {
-            PreparedStatement ps = connection.prepareStatement(insertQuestData);
-            for (@NotNull PlayerQuestEntryData questEntry : account.getQuestEntries()) {
-                ps.setString(1, PalmLibrary.getName());
-                ps.setString(2, type);
-                ps.setString(3, uuid.toString());
-                setColumns(ps, questEntry.toRecord());
-                ps.addBatch();
+                "current_stage, additional_data, quest_flow, time) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            if (i != 0)
+                sql.append(", ");
+            sql.append("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            int index = 0;
+            for (LogRow row : rows) {
+                ps.setString(index + 1, server);
+                ps.setString(index + 2, row.type);
+                ps.setString(index + 3, row.uuid.toString());
+                setColumns(ps, index, row);
+                ps.setTimestamp(index + 11, new Timestamp(row.time));
+                index += 11;
             }
-            ps.executeBatch();
+            ps.executeUpdate();
+        }
+    }
 
-        });
+    private void setColumns(PreparedStatement ps, int offset, LogRow row) throws SQLException {
+        ps.setInt(offset + 4, row.questID);
+        QuestEntryRecord entry = row.record;
+        if (entry == null) {
+            // the entry has been removed
+            ps.setNull(offset + 5, Types.INTEGER);
+            ps.setNull(offset + 6, Types.BIGINT);
+            ps.setNull(offset + 7, Types.SMALLINT);
+            ps.setNull(offset + 8, Types.SMALLINT);
+        } else {
+            ps.setInt(offset + 5, entry.finished);
+            ps.setLong(offset + 6, entry.timer);
+            ps.setInt(offset + 7, entry.branch);
+            ps.setInt(offset + 8, entry.stage);
+        }
+        ps.setString(offset + 9, row.additionalDatas);
+        ps.setString(offset + 10, row.questFlow);
     }
 
-    private void setColumns(PreparedStatement ps, QuestEntryRecord entry) throws SQLException {
-        ps.setInt(4, entry.questID);
-        ps.setInt(5, entry.finished);
-        ps.setLong(6, entry.timer);
-        ps.setInt(7, entry.branch);
-        ps.setInt(8, entry.stage);
-        ps.setString(9, CustomizedObjectTypeAdapter.serializeNullable(entry.additionalDatas));
-        ps.setString(10, entry.questFlow.toString());
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getQueueHighWater() {
+        return queueHighWater.get();
+    }
+
+    public long getQueuedRows() {
+        return queuedRows.sum();
+    }
+
+    public long getWrittenRows() {
+        return writtenRows.sum();
+    }
+
+    public long getWrittenBatches() {
+        return writtenBatches.sum();
+    }
+
+    public long getDroppedRows() {
+        return droppedRows.sum();
+    }
+
+    private static class LogRow {
+        private final String type;
+        private final UUID uuid;
+        private final @Nullable QuestEntryRecord record;
+        private final int questID;
+        private final @Nullable String additionalDatas;
+        private final @Nullable String questFlow;
+        private final long time;
+
+        private LogRow(String type, UUID uuid, @Nullable QuestEntryRecord record, int questID,
+                @Nullable String additionalDatas, @Nullable String questFlow, long time) {
+            this.type = type;
+            this.uuid = uuid;
+            this.record = record;
+            this.questID = questID;
+            this.additionalDatas = additionalDatas;
+            this.questFlow = questFlow;
+            this.time = time;
+        }
     }
 
     //"CREATE TABLE IF NOT EXISTS " + QUESTS_ENTRIES_TABLE + " (" +
@@ -0,0 +1,143 @@
+package kr.reo.quest;
+
+import fr.skytasul.quests.utils.SQLDialect;
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Monthly rolling tables of the quest log.
+ * <p>
+ * Rows are written in one table per month (<code>base_yyyyMM</code>), created on demand with indexes
+ * on <code>(user_id, time)</code> and <code>(quest_id, time)</code>, so that investigations on a
+ * time range only read the tables of these months. Expiring old logs is a <code>DROP TABLE</code>
+ * of whole months instead of a <code>DELETE</code> scan.
+ * <p>
+ * The column types which differ between engines are taken from the {@link SQLDialect}, so the
+ * tables can be created in MySQL as well as in an embedded database.
+ */
+public class QuestLogTables {
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM", Locale.ROOT);
+    // H2 reports regular tables as "BASE TABLE"
+    private static final String[] TABLE_TYPES = {"TABLE", "BASE TABLE"};
+
+    private final @NotNull String baseName;
+    private final @NotNull SQLDialect dialect;
+    private final Set<String> knownTables = ConcurrentHashMap.newKeySet();
+
+    public QuestLogTables(@NotNull String baseName, @NotNull SQLDialect dialect) {
+        this.baseName = baseName;
+        this.dialect = dialect;
+    }
+
+    public @NotNull String getTableName(@NotNull YearMonth month) {
+        return baseName + "_" + MONTH_FORMAT.format(month);
+    }
+
+    /**
+     * Creates the table of a month and its indexes if it does not exist yet.
+     *
+     * @return the name of the table
+     */
+    public @NotNull String ensureTable(@NotNull Connection connection, @NotNull YearMonth month) throws SQLException {
+        String table = getTableName(month);
+        if (knownTables.contains(table))
+            return table;
+        if (!tableExists(connection, table)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + table + " (" +
+                        " id " + dialect.getBigSerialType() + "," +
+                        " server VARCHAR(32) NOT NULL," +
+                        " log_type VARCHAR(32) NOT NULL," +
+                        " user_id VARCHAR(36) NOT NULL," +
+                        " quest_id INT NOT NULL," +
+                        " finished INT DEFAULT NULL," +
+                        " timer BIGINT DEFAULT NULL," +
+                        " current_branch SMALLINT DEFAULT NULL," +
+                        " current_stage SMALLINT DEFAULT NULL," +
+                        " additional_data " + dialect.getLongTextType() + " DEFAULT NULL," +
+                        " quest_flow VARCHAR(8000) DEFAULT NULL," +
+                        " time TIMESTAMP NOT NULL," +
+                        " PRIMARY KEY (id)" +
+                        ")");
+                statement.execute("CREATE INDEX " + table + "_user_time ON " + table + " (user_id, time)");
+                statement.execute("CREATE INDEX " + table + "_quest_time ON " + table + " (quest_id, time)");
+            }
+        }
+        knownTables.add(table);
+        return table;
+    }
+
+    /**
+     * Lists the months which have a log table, in no particular order.
+     */
+    public @NotNull List<YearMonth> listMonths(@NotNull Connection connection) throws SQLException {
+        List<YearMonth> months = new ArrayList<>();
+        String prefix = baseName + "_";
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet tables = metaData.getTables(connection.getCatalog(), null, null, TABLE_TYPES)) {
+            while (tables.next()) {
+                String name = tables.getString("TABLE_NAME");
+                if (name.length() != prefix.length() + 6 || !name.regionMatches(true, 0, prefix, 0, prefix.length()))
+                    continue;
+                try {
+                    months.add(YearMonth.parse(name.substring(prefix.length()), MONTH_FORMAT));
+                } catch (DateTimeParseException ignored) {
+                    // not a monthly log table
+                }
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Drops the tables of the months older than the retention period.
+     *
+     * @param retentionMonths amount of months kept, including the current one
+     * @param now current month
+     * @return the names of the dropped tables
+     */
+    public @NotNull List<String> dropExpired(@NotNull Connection connection, int retentionMonths, @NotNull YearMonth now)
+            throws SQLException {
+        if (retentionMonths <= 0)
+            throw new IllegalArgumentException("Retention must be at least one month");
+        YearMonth oldestKept = now.minusMonths(retentionMonths - 1L);
+        List<String> dropped = new ArrayList<>();
+        for (YearMonth month : listMonths(connection)) {
+            if (!month.isBefore(oldestKept))
+                continue;
+            String table = getTableName(month);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + table);
+            }
+            knownTables.remove(table);
+            dropped.add(table);
+        }
+        return dropped;
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String name : new String[] {table, table.toUpperCase(Locale.ROOT), table.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet result = metaData.getTables(connection.getCatalog(), null, name, TABLE_TYPES)) {
+                if (result.next())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -2,8 +2,12 @@ package kr.reo.quest;
 
 import com.minepalm.library.PalmLibrary;
 import com.minepalm.library.database.impl.internal.MySQLDB;
+import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.players.PlayerAccount;
+import fr.skytasul.quests.utils.PalmSQLDatabase;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.util.UUID;
 
@@ -15,23 +19,40 @@ public class ReoQuestModule {
         return inst;
     }
 
+    private static final long RETENTION_PERIOD_TICKS = 20L * 60 * 60 * 6;
+
     private final MySQLDB questDatabase;
     private final QuestLogDatabase logDatabase;
+    private BukkitTask retentionTask;
 
-    public ReoQuestModule(MySQLDB questDatabase, MySQLDB logDatabase) {
+    public ReoQuestModule(MySQLDB questDatabase, MySQLDB logDatabase, int logRetentionMonths) {
         this.questDatabase = questDatabase;
-        this.logDatabase = new QuestLogDatabase(logDatabase);
+        this.logDatabase = new QuestLogDatabase(new PalmSQLDatabase(logDatabase.java()), PalmLibrary.getName(),
+                logRetentionMonths);
     }
 
     public static void onEnable(JavaPlugin plugin) {
+        onDisable();
         MySQLDB questDatabase = PalmLibrary.getDataSource().mysql("quest");
         MySQLDB logDatabase = PalmLibrary.getDataSource().mysql("log");
-        inst = new ReoQuestModule(questDatabase, logDatabase);
+        inst = new ReoQuestModule(questDatabase, logDatabase, plugin.getConfig().getInt("database.logRetentionMonths", 0));
         inst.logDatabase.createTable();
+        inst.logDatabase.start();
+        inst.retentionTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            try {
+                inst.logDatabase.applyRetention();
+            } catch (Exception ex) {
+                QuestsPlugin.getPlugin().getLoggerExpanded().severe("An error occurred while dropping expired quest logs", ex);
+            }
+        }, 20L * 60, RETENTION_PERIOD_TICKS);
     }
 
     public static void onDisable() {
-
+        if (inst != null) {
+            if (inst.retentionTask != null)
+                inst.retentionTask.cancel();
+            inst.logDatabase.close();
+        }
     }
 
     public void logQuest(UUID uuid, String loggingType, PlayerAccount account) {
@@ -48,5 +69,10 @@ public class ReoQuestModule {
 
     public void logQuit(UUID uuid, PlayerAccount account) {
         logQuest(uuid, "QUIT", account);
+        logDatabase.forget(uuid);
+    }
+
+    public QuestLogDatabase getLogDatabase() {
+        return logDatabase;
     }
 }
@@ -0,0 +1,50 @@
+package fr.skytasul.quests.api;
+
+import java.lang.reflect.Proxy;
+import java.util.logging.Logger;
+import fr.skytasul.quests.api.utils.logger.LoggerExpanded;
+
+/**
+ * Minimal plugin for the tests of classes which only need the logger of BeautyQuests. Every other
+ * method of the plugin and of the API throws an {@link UnsupportedOperationException}.
+ */
+public final class TestQuestsPlugin {
+
+	private static final LoggerExpanded LOGGER = new LoggerExpanded(Logger.getLogger("BeautyQuests"), null);
+
+	private TestQuestsPlugin() {}
+
+	/**
+	 * Installs the test plugin as the BeautyQuests API, if it has not already been done.
+	 */
+	public static synchronized void install() {
+		try {
+			QuestsAPIProvider.getAPI();
+			return;
+		} catch (IllegalStateException ex) {
+			// not yet installed
+		}
+
+		QuestsPlugin plugin = proxy(QuestsPlugin.class, "getLoggerExpanded", LOGGER);
+		QuestsAPIProvider.setAPI(proxy(QuestsAPI.class, "getPlugin", plugin));
+	}
+
+	private static <T> T proxy(Class<T> type, String method, Object result) {
+		return type.cast(Proxy.newProxyInstance(TestQuestsPlugin.class.getClassLoader(), new Class<?>[] {type},
+				(proxy, called, args) -> {
+					switch (called.getName()) {
+						case "toString":
+							return "Test " + type.getSimpleName();
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							if (called.getName().equals(method) && called.getParameterCount() == 0)
+								return result;
+							throw new UnsupportedOperationException(called.getName() + " is not available in tests");
+					}
+				}));
+	}
+
+}
@@ -0,0 +1,161 @@
+package fr.skytasul.quests.players;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import fr.skytasul.quests.api.TestQuestsPlugin;
+
+class AccountLogStoreTest {
+
+	private static final long SEGMENT_MAX_SIZE = 1000;
+
+	@TempDir
+	File directory;
+
+	private AccountLogStore store;
+
+	@BeforeEach
+	void open() throws IOException {
+		TestQuestsPlugin.install();
+		store = new AccountLogStore(directory.toPath(), SEGMENT_MAX_SIZE);
+		store.open();
+	}
+
+	@AfterEach
+	void close() {
+		store.close();
+	}
+
+	@Test
+	void latestRecordIsRead() throws IOException {
+		store.write(1, "first", datas(10, 1));
+		store.write(2, "second", datas(20, 2));
+		store.write(1, "first", datas(30, 3));
+		assertArrayEquals(datas(30, 3), store.read(1));
+		assertArrayEquals(datas(20, 2), store.read(2));
+		assertNull(store.read(3));
+
+		Map<Integer, String> identifiers = reopen();
+		assertEquals(identifiers(1, "first", 2, "second"), identifiers);
+		assertArrayEquals(datas(30, 3), store.read(1));
+		assertArrayEquals(datas(20, 2), store.read(2));
+	}
+
+	@Test
+	void tornLastRecordIsTruncated() throws IOException {
+		store.write(1, "first", datas(10, 1));
+		store.write(2, "second", datas(20, 2));
+		store.close();
+		Path segment = directory.toPath().resolve("accounts-0.log");
+		long size = Files.size(segment);
+
+		// header of a record whose payload has not been fully written
+		ByteBuffer torn = ByteBuffer.allocate(12).putInt(100).putInt(0).putInt(1);
+		Files.write(segment, torn.array(), StandardOpenOption.APPEND);
+
+		store = new AccountLogStore(directory.toPath(), SEGMENT_MAX_SIZE);
+		assertEquals(identifiers(1, "first", 2, "second"), store.open());
+		assertEquals(size, Files.size(segment));
+		assertArrayEquals(datas(20, 2), store.read(2));
+
+		store.write(3, "third", datas(10, 3));
+		reopen();
+		assertArrayEquals(datas(10, 3), store.read(3));
+	}
+
+	@Test
+	void neededTombstoneIsKept() throws IOException {
+		// accounts-0: a record of account 1, hidden by the tombstone of accounts-1
+		store.write(1, "deleted", datas(100, 1));
+		store.write(2, "live", datas(1000, 2));
+		// accounts-1: the tombstone and mostly outdated records
+		store.delete(1);
+		for (int i = 0; i < 3; i++)
+			store.write(3, "rewritten", datas(400, i));
+		store.write(4, "active", datas(10, 4));
+
+		assertEquals(1, store.compact());
+		assertEquals(Arrays.asList("accounts-0.log", "accounts-1.log", "accounts-2.log"), listSegments());
+		// the tombstone is not garbage while the record it hides exists
+		assertEquals(0, store.compact());
+
+		assertEquals(identifiers(2, "live", 3, "rewritten", 4, "active"), reopen());
+		assertNull(store.read(1));
+		assertArrayEquals(datas(400, 2), store.read(3));
+	}
+
+	@Test
+	void tombstoneIsDroppedWithHiddenRecord() throws IOException {
+		// accounts-0: only outdated records
+		store.write(1, "deleted", datas(100, 1));
+		store.write(2, "moved", datas(1000, 2));
+		// accounts-1: the tombstone of account 1 and an outdated record
+		store.delete(1);
+		store.write(3, "moved", datas(1000, 3));
+		// accounts-2
+		store.write(2, "moved", datas(10, 4));
+		store.write(3, "moved", datas(10, 5));
+
+		// once accounts-0 is compacted, the tombstone hides nothing and accounts-1 is empty
+		assertEquals(2, store.compact());
+		assertEquals(Arrays.asList("accounts-2.log"), listSegments());
+		assertEquals(0, store.compact());
+
+		assertEquals(identifiers(2, "moved", 3, "moved"), reopen());
+		assertNull(store.read(1));
+		assertArrayEquals(datas(10, 4), store.read(2));
+		assertArrayEquals(datas(10, 5), store.read(3));
+	}
+
+	@Test
+	void deletedAccountIsNotReloaded() throws IOException {
+		store.write(1, "deleted", datas(10, 1));
+		store.delete(1);
+		assertFalse(store.contains(1));
+		assertEquals(identifiers(), reopen());
+		assertNull(store.read(1));
+	}
+
+	private Map<Integer, String> reopen() throws IOException {
+		store.close();
+		store = new AccountLogStore(directory.toPath(), SEGMENT_MAX_SIZE);
+		return store.open();
+	}
+
+	private List<String> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(directory.toPath())) {
+			return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static byte[] datas(int length, int value) {
+		byte[] datas = new byte[length];
+		Arrays.fill(datas, (byte) value);
+		return datas;
+	}
+
+	private static Map<Integer, String> identifiers(Object... indexesAndIdentifiers) {
+		Map<Integer, String> identifiers = new HashMap<>();
+		for (int i = 0; i < indexesAndIdentifiers.length; i += 2)
+			identifiers.put((Integer) indexesAndIdentifiers[i], (String) indexesAndIdentifiers[i + 1]);
+		return identifiers;
+	}
+
+}
@@ -0,0 +1,234 @@
+package fr.skytasul.quests.players;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import fr.skytasul.quests.api.TestQuestsPlugin;
+import fr.skytasul.quests.utils.EmbeddedSQLDatabase;
+import fr.skytasul.quests.utils.SQLDatabase;
+import fr.skytasul.quests.utils.SQLDialect;
+
+class AccountOwnershipTest {
+
+	private static final String TABLE = "player_accounts";
+	private static final UUID PLAYER = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+	private static final long HANDOFF_TIMEOUT = 5000;
+
+	@TempDir
+	File directory;
+
+	private SQLDatabase database;
+	private int accountID;
+
+	@BeforeEach
+	void open() throws SQLException {
+		TestQuestsPlugin.install();
+		database = new EmbeddedSQLDatabase(SQLDialect.H2, new File(directory, "accounts"));
+		database.run(connection -> {
+			// accounts table as created before the ownership columns, which are added by the migration
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE " + TABLE + " ("
+						+ " id " + SQLDialect.H2.getSerialType() + " ,"
+						+ " identifier TEXT NOT NULL ,"
+						+ " player_uuid CHAR(36) NOT NULL ,"
+						+ " PRIMARY KEY (id)"
+						+ " )");
+			}
+		});
+		YamlConfiguration config = new YamlConfiguration();
+		config.set("nodeName", "test");
+		config.set("tables.playerAccounts", TABLE);
+		config.set("tables.playerQuests", "player_quests");
+		config.set("tables.playerPools", "player_pools");
+		new PlayersManagerDB(config, database).createTables();
+
+		database.run(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(
+					"INSERT INTO " + TABLE + " (identifier, player_uuid) VALUES (?, ?)",
+					Statement.RETURN_GENERATED_KEYS)) {
+				statement.setString(1, PLAYER.toString());
+				statement.setString(2, PLAYER.toString());
+				statement.executeUpdate();
+				try (ResultSet keys = statement.getGeneratedKeys()) {
+					keys.next();
+					accountID = keys.getInt(1);
+				}
+			}
+		});
+	}
+
+	@AfterEach
+	void close() {
+		database.close();
+	}
+
+	@Test
+	void claimUnownedAccount() throws SQLException {
+		AccountOwnership node = ownership("node-a", HANDOFF_TIMEOUT);
+
+		assertTrue(claim(node));
+		assertEquals("node-a", getOwner());
+		long token = getOwnerVersion();
+		assertEquals(getVersion(), token);
+
+		// saves are accepted with the token, and each of them bumps the version
+		assertTrue(fence(node, token));
+		assertEquals(token + 1, getVersion());
+		assertFalse(fence(node, token - 1));
+	}
+
+	@Test
+	void claimAlreadyOwnedAccount() throws SQLException {
+		AccountOwnership node = ownership("node-a", HANDOFF_TIMEOUT);
+
+		assertTrue(claim(node));
+		long firstToken = getOwnerVersion();
+		long start = System.currentTimeMillis();
+		assertTrue(claim(node));
+		assertTrue(System.currentTimeMillis() - start < HANDOFF_TIMEOUT, "the node waited for itself");
+
+		assertFalse(fence(node, firstToken));
+		assertTrue(fence(node, getOwnerVersion()));
+	}
+
+	@Test
+	void handoffWaitsForRelease() throws Exception {
+		AccountOwnership previous = ownership("node-a", HANDOFF_TIMEOUT);
+		AccountOwnership next = ownership("node-b", HANDOFF_TIMEOUT);
+		assertTrue(claim(previous));
+		long previousToken = getOwnerVersion();
+
+		long start = System.currentTimeMillis();
+		CompletableFuture<Boolean> claim = database.executeAsync(connection -> next.claim(connection, PLAYER));
+		Thread.sleep(300);
+		assertFalse(claim.isDone(), "the account has been claimed before its release");
+
+		// the previous owner saves its last datas and releases the account from its own connection
+		try (Connection connection = openConnection()) {
+			assertTrue(previous.fence(connection, accountID, previousToken));
+			previous.release(connection, accountID, previousToken);
+		}
+
+		assertTrue(claim.get());
+		assertTrue(System.currentTimeMillis() - start < HANDOFF_TIMEOUT);
+		assertEquals("node-b", getOwner());
+		assertTrue(getOwnerVersion() > previousToken + 1);
+	}
+
+	@Test
+	void claimTakesAccountAfterTimeout() throws SQLException {
+		AccountOwnership previous = ownership("node-a", HANDOFF_TIMEOUT);
+		AccountOwnership next = ownership("node-b", 300);
+		assertTrue(claim(previous));
+
+		long start = System.currentTimeMillis();
+		assertFalse(claim(next));
+		assertTrue(System.currentTimeMillis() - start >= 300);
+		assertEquals("node-b", getOwner());
+	}
+
+	@Test
+	void staleOwnerIsFenced() throws SQLException {
+		AccountOwnership stale = ownership("node-a", HANDOFF_TIMEOUT);
+		AccountOwnership next = ownership("node-b", 100);
+		assertTrue(claim(stale));
+		long staleToken = getOwnerVersion();
+		assertFalse(claim(next));
+		long token = getOwnerVersion();
+
+		// the pending saves of the previous owner are rejected, and it cannot release the account anymore
+		assertFalse(fence(stale, staleToken));
+		database.run(connection -> stale.release(connection, accountID, staleToken));
+		assertEquals("node-b", getOwner());
+		assertEquals(0, (int) database.executeAsync(stale::releaseAll).join());
+
+		assertTrue(fence(next, token));
+		database.run(connection -> next.release(connection, accountID, token));
+		assertNull(getOwner());
+	}
+
+	@Test
+	void releaseAllOnStartup() throws SQLException {
+		AccountOwnership node = ownership("node-a", HANDOFF_TIMEOUT);
+		assertTrue(claim(node));
+
+		assertEquals(1, (int) database.executeAsync(node::releaseAll).join());
+		assertNull(getOwner());
+		assertTrue(claim(ownership("node-b", 100)));
+	}
+
+	@Test
+	void nodeIDIsKept() throws IOException {
+		File file = new File(directory, "node-id");
+		String node = AccountOwnership.loadNodeID(file);
+		assertFalse(node.isEmpty());
+		assertEquals(node, AccountOwnership.loadNodeID(file));
+
+		file.delete();
+		assertNotEquals(node, AccountOwnership.loadNodeID(file));
+	}
+
+	private AccountOwnership ownership(String node, long handoffTimeout) {
+		return new AccountOwnership(TABLE, node, handoffTimeout, SQLDialect.H2);
+	}
+
+	private boolean claim(AccountOwnership ownership) {
+		return database.executeAsync(connection -> ownership.claim(connection, PLAYER)).join();
+	}
+
+	private boolean fence(AccountOwnership ownership, long token) {
+		return database.executeAsync(connection -> ownership.fence(connection, accountID, token)).join();
+	}
+
+	private Connection openConnection() throws SQLException {
+		// same URL as the embedded database: connections of the same process share the database
+		return DriverManager.getConnection("jdbc:h2:file:" + new File(directory, "accounts").getAbsolutePath()
+				+ ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+	}
+
+	private String getOwner() {
+		return database.executeAsync(connection -> {
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT owner_node FROM " + TABLE)) {
+				result.next();
+				return result.getString(1);
+			}
+		}).join();
+	}
+
+	private long getOwnerVersion() {
+		return getLong("owner_version");
+	}
+
+	private long getVersion() {
+		return getLong("version");
+	}
+
+	private long getLong(String column) {
+		return database.executeAsync(connection -> {
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT " + column + " FROM " + TABLE)) {
+				result.next();
+				return result.getLong(1);
+			}
+		}).join();
+	}
+
+}
@@ -0,0 +1,78 @@
+package fr.skytasul.quests.players;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import fr.skytasul.quests.api.TestQuestsPlugin;
+
+class PlayersManagerLogTest {
+
+	@TempDir
+	File directory;
+
+	private File yamlDirectory;
+	private File storeDirectory;
+	private File importMarker;
+	private AccountLogStore store;
+
+	@BeforeEach
+	void open() throws IOException {
+		TestQuestsPlugin.install();
+		yamlDirectory = new File(directory, "players");
+		storeDirectory = new File(directory, "players-log");
+		importMarker = new File(storeDirectory, "import.pending");
+		Files.createDirectories(yamlDirectory.toPath());
+		store = new AccountLogStore(storeDirectory.toPath());
+		store.open();
+	}
+
+	@AfterEach
+	void close() {
+		store.close();
+	}
+
+	@Test
+	void interruptedImportIsResumed() throws IOException {
+		writeAccountFile("1.yml", "first");
+		writeAccountFile("2.yml", "second");
+		writeAccountFile("unreadable.yml", "third");
+
+		PlayersManagerLog.importYamlAccounts(store, yamlDirectory, importMarker);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2)), store.getIndexes());
+		assertTrue(importMarker.exists(), "the import marker has been removed");
+		assertTrue(yamlDirectory.exists());
+
+		// saved after the first import attempt, it must not be overwritten by the file
+		byte[] saved = "identifier: first\nsaved: true\n".getBytes(StandardCharsets.UTF_8);
+		store.write(1, "first", saved);
+		Files.delete(new File(yamlDirectory, "unreadable.yml").toPath());
+		writeAccountFile("3.yml", "third");
+
+		store.close();
+		store = new AccountLogStore(storeDirectory.toPath());
+		store.open();
+		PlayersManagerLog.importYamlAccounts(store, yamlDirectory, importMarker);
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), store.getIndexes());
+		assertArrayEquals(saved, store.read(1));
+		assertFalse(importMarker.exists());
+		assertFalse(yamlDirectory.exists());
+		assertTrue(new File(directory, "players-imported").isDirectory());
+	}
+
+	private void writeAccountFile(String name, String identifier) throws IOException {
+		Files.write(new File(yamlDirectory, name).toPath(),
+				("identifier: " + identifier + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,179 @@
+package fr.skytasul.quests.players;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import fr.skytasul.quests.api.TestQuestsPlugin;
+import fr.skytasul.quests.players.accounts.GhostAccount;
+import fr.skytasul.quests.utils.EmbeddedSQLDatabase;
+import fr.skytasul.quests.utils.SQLDatabase;
+import fr.skytasul.quests.utils.SQLDialect;
+
+class PoolDatasWriteQueueTest {
+
+	private static final String TABLE = "player_pools";
+
+	@TempDir
+	File directory;
+
+	private SQLDatabase database;
+	private PoolDatasWriteQueue queue;
+
+	@BeforeEach
+	void open() {
+		TestQuestsPlugin.install();
+		database = new EmbeddedSQLDatabase(SQLDialect.H2, new File(directory, "pools"));
+		database.run(connection -> {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE " + TABLE + " ("
+						+ " account_id INT NOT NULL,"
+						+ " pool_id INT NOT NULL,"
+						+ " last_give BIGINT DEFAULT NULL,"
+						+ " completed_quests VARCHAR(1000) DEFAULT NULL,"
+						+ " PRIMARY KEY (account_id, pool_id))");
+			}
+		});
+		queue = new PoolDatasWriteQueue(database, TABLE);
+	}
+
+	@AfterEach
+	void close() {
+		database.close();
+	}
+
+	@Test
+	void changesAreCoalesced() {
+		PlayerPoolDatasImplementation datas = datas(1, 10);
+		datas.setLastGive(5);
+		queue.enqueue(datas);
+		datas.setLastGive(8);
+		queue.enqueue(datas);
+		assertEquals(1, queue.getPendingAmount());
+
+		queue.flush().join();
+		assertEquals(8L, readRows().get("1:10"));
+	}
+
+	@Test
+	void removalIsWrittenAfterFlushInFlight() {
+		PlayerPoolDatasImplementation datas = datas(1, 10);
+		datas.setLastGive(5);
+		queue.enqueue(datas);
+		CompletableFuture<Void> inFlight = queue.flush();
+
+		// the removal must not overtake the upsert already sent
+		CompletableFuture<Void> removal = queue.remove(datas);
+		queue.flush();
+		inFlight.join();
+		queue.flush().join();
+		removal.join();
+		assertNull(readRows().get("1:10"));
+	}
+
+	@Test
+	void changeAfterRemovalIsKept() {
+		PlayerPoolDatasImplementation removed = datas(1, 10);
+		removed.setLastGive(5);
+		queue.enqueue(removed);
+		queue.flush().join();
+
+		queue.remove(removed);
+		PlayerPoolDatasImplementation created = datas(1, 10);
+		created.setLastGive(9);
+		queue.enqueue(created);
+		queue.flush().join();
+		assertEquals(9L, readRows().get("1:10"));
+	}
+
+	@Test
+	void poolRemoval() {
+		for (int account = 1; account <= 3; account++) {
+			queue.enqueue(datas(account, 10));
+			queue.enqueue(datas(account, 11));
+		}
+		queue.flush().join();
+
+		PlayerPoolDatasImplementation pendingChange = datas(4, 10);
+		queue.enqueue(pendingChange);
+		CompletableFuture<Integer> removal = queue.removePool(10);
+		assertEquals(0, queue.getPendingAmount());
+		queue.flush().join();
+
+		assertEquals(3, removal.join());
+		assertEquals(new HashSet<>(Arrays.asList("1:11", "2:11", "3:11")), readRows().keySet());
+	}
+
+	@Test
+	void pendingDatasAreBounded() {
+		for (int account = 0; account < PoolDatasWriteQueue.MAX_PENDING; account++)
+			assertTrue(queue.enqueue(datas(account, 10)));
+
+		// a change of a pending pool data is coalesced, a new one is rejected
+		assertTrue(queue.enqueue(datas(0, 10)));
+		assertFalse(queue.enqueue(datas(PoolDatasWriteQueue.MAX_PENDING, 10)));
+		assertEquals(PoolDatasWriteQueue.MAX_PENDING, queue.getPendingAmount());
+		assertEquals(1, queue.getRejectedAmount());
+
+		// removals are never rejected
+		queue.remove(datas(PoolDatasWriteQueue.MAX_PENDING + 1, 10));
+
+		queue.flush().join();
+		assertEquals(0, queue.getPendingAmount());
+		assertTrue(queue.enqueue(datas(PoolDatasWriteQueue.MAX_PENDING, 10)));
+	}
+
+	@Test
+	void failedFlushIsRetried() {
+		PlayerPoolDatasImplementation datas = datas(1, 10);
+		queue.enqueue(datas);
+		database.run(connection -> {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("ALTER TABLE " + TABLE + " RENAME TO renamed");
+			}
+		});
+		queue.flush().handle((__, ___) -> null).join();
+		assertEquals(1, queue.getPendingAmount());
+
+		database.run(connection -> {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("ALTER TABLE renamed RENAME TO " + TABLE);
+			}
+		});
+		queue.close();
+		assertEquals(0L, readRows().get("1:10"));
+	}
+
+	private static PlayerPoolDatasImplementation datas(int account, int pool) {
+		return new PlayerPoolDatasImplementation(new PlayerAccountImplementation(new GhostAccount("test-" + account), account),
+				pool, 0, new HashSet<>());
+	}
+
+	/**
+	 * @return <code>last_give</code> of each row, by <code>account_id:pool_id</code>
+	 */
+	private Map<String, Long> readRows() {
+		return database.executeAsync(connection -> {
+			Map<String, Long> rows = new HashMap<>();
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT account_id, pool_id, last_give FROM " + TABLE)) {
+				while (result.next())
+					rows.put(result.getInt(1) + ":" + result.getInt(2), result.getLong(3));
+			}
+			return rows;
+		}).join();
+	}
+
+}
@@ -0,0 +1,290 @@
+package fr.skytasul.quests.players;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import fr.skytasul.quests.api.TestQuestsPlugin;
+import fr.skytasul.quests.players.QuestEntriesJournal.Row;
+import fr.skytasul.quests.utils.EmbeddedSQLDatabase;
+import fr.skytasul.quests.utils.SQLDatabase;
+import fr.skytasul.quests.utils.SQLDialect;
+import fr.skytasul.quests.utils.ThrowingConsumer;
+
+class QuestEntriesJournalTest {
+
+	private static final String NODE = "test";
+	private static final UUID PLAYER = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+	private static final long TIMEOUT = 10;
+
+	@TempDir
+	File directory;
+
+	private SQLDatabase database;
+	private PlayersManagerDB manager;
+	private File journalDirectory;
+	private QuestEntriesJournal journal;
+	private int accountID;
+	private long ownerVersion;
+
+	@BeforeEach
+	void open() throws SQLException {
+		TestQuestsPlugin.install();
+		database = new EmbeddedSQLDatabase(SQLDialect.H2, new File(directory, "players"));
+		manager = new PlayersManagerDB(config(), database);
+		manager.createTables();
+		journalDirectory = new File(directory, "journal");
+
+		AccountOwnership ownership = new AccountOwnership("player_accounts", NODE, 0, SQLDialect.H2);
+		database.run(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(
+					"INSERT INTO player_accounts (identifier, player_uuid) VALUES (?, ?)",
+					Statement.RETURN_GENERATED_KEYS)) {
+				statement.setString(1, PLAYER.toString());
+				statement.setString(2, PLAYER.toString());
+				statement.executeUpdate();
+				try (ResultSet keys = statement.getGeneratedKeys()) {
+					keys.next();
+					accountID = keys.getInt(1);
+				}
+			}
+			ownership.claim(connection, PLAYER);
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT owner_version FROM player_accounts")) {
+				result.next();
+				ownerVersion = result.getLong(1);
+			}
+		});
+	}
+
+	@AfterEach
+	void close() {
+		if (journal != null)
+			journal.close();
+		database.close();
+	}
+
+	@Test
+	void batchesAreAppliedInOrder() throws Exception {
+		journal = openJournal();
+		journal.start();
+		CompletableFuture<Integer> first = journal.submit(Arrays.asList(row(1, 1), row(2, 1)), Collections.emptyList());
+		CompletableFuture<Integer> second = journal.submit(Arrays.asList(row(1, 2)), Collections.emptyList());
+		second.get(TIMEOUT, TimeUnit.SECONDS);
+		assertTrue(first.isDone());
+		assertEquals(entries(1, 2, 2, 1), readEntries());
+
+		journal.close();
+		assertEquals(Collections.emptyList(), listSegments());
+	}
+
+	@Test
+	void gatheredBatchesAreSyncedOnce() throws Exception {
+		journal = openJournal();
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		for (int quest = 0; quest < 20; quest++)
+			futures.add(journal.submit(Arrays.asList(row(quest, 1)), Collections.emptyList()));
+
+		// all batches are waiting when the writer starts: they are appended together and synced once
+		journal.start();
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(TIMEOUT, TimeUnit.SECONDS);
+		assertEquals(1, journal.getSyncAmount());
+		assertEquals(20, readEntries().size());
+	}
+
+	@Test
+	void appliedSegmentIsDeleted() throws Exception {
+		journal = openJournal();
+		journal.start();
+		// a single batch fills the first segment
+		byte[] datas = new byte[(int) QuestEntriesJournal.SEGMENT_MAX_SIZE];
+		journal.submit(Arrays.asList(new Row(accountID, ownerVersion, 1, 1, 0, 0, 0, datas, null)),
+				Collections.emptyList()).get(TIMEOUT, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("segment-0.journal"), listSegments());
+
+		// rolled over, and all its batches have been written
+		journal.submit(Arrays.asList(row(2, 1)), Collections.emptyList()).get(TIMEOUT, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("segment-1.journal"), listSegments());
+
+		journal.close();
+		assertEquals(Collections.emptyList(), listSegments());
+	}
+
+	@Test
+	void tombstonesAreOrderedWithSnapshots() throws Exception {
+		journal = openJournal();
+		journal.start();
+		journal.submit(Arrays.asList(row(1, 1), row(2, 1), row(3, 1)), Collections.emptyList())
+				.get(TIMEOUT, TimeUnit.SECONDS);
+
+		// snapshots submitted before a tombstone are removed with it
+		int removed = journal.submit(Arrays.asList(row(1, 2), Row.entryRemoval(accountID, ownerVersion, 1),
+				row(2, 2), Row.questRemoval(2), row(3, 2)), Collections.emptyList()).get(TIMEOUT, TimeUnit.SECONDS);
+		assertEquals(2, removed);
+		assertEquals(entries(3, 2), readEntries());
+
+		// a snapshot submitted after a tombstone recreates the entry
+		removed = journal.submit(Arrays.asList(Row.entryRemoval(accountID, ownerVersion, 3), row(3, 3)),
+				Collections.emptyList()).get(TIMEOUT, TimeUnit.SECONDS);
+		assertEquals(1, removed);
+		assertEquals(entries(3, 3), readEntries());
+	}
+
+	@Test
+	void unappliedBatchesAreReplayed() throws Exception {
+		journalUnapplied(Arrays.asList(row(1, 1), row(2, 1), Row.entryRemoval(accountID, ownerVersion, 1)));
+
+		journal = manager.createJournal(journalDirectory);
+		assertEquals(3, replay(journal));
+		assertEquals(entries(2, 1), readEntries());
+		assertEquals(Collections.emptyList(), listSegments());
+
+		// segment IDs are not reused
+		journal.start();
+		journal.submit(Arrays.asList(row(3, 1)), Collections.emptyList()).get(TIMEOUT, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("segment-1.journal"), listSegments());
+	}
+
+	@Test
+	void corruptedTailIsIgnored() throws Exception {
+		Path segment = journalUnapplied(Arrays.asList(row(1, 1)));
+		byte[] record = Files.readAllBytes(segment);
+		// the same record with a flipped bit in its payload
+		record[record.length - 1] ^= 1;
+		Files.write(segment, record, StandardOpenOption.APPEND);
+
+		journal = manager.createJournal(journalDirectory);
+		assertEquals(1, replay(journal));
+		assertEquals(entries(1, 1), readEntries());
+		assertEquals(Collections.emptyList(), listSegments());
+	}
+
+	private YamlConfiguration config() {
+		YamlConfiguration config = new YamlConfiguration();
+		config.set("nodeName", NODE);
+		config.set("tables.playerAccounts", "player_accounts");
+		config.set("tables.playerQuests", "player_quests");
+		config.set("tables.playerPools", "player_pools");
+		return config;
+	}
+
+	private QuestEntriesJournal openJournal() {
+		QuestEntriesJournal opened = manager.createJournal(journalDirectory);
+		replay(opened);
+		return opened;
+	}
+
+	private int replay(QuestEntriesJournal replayed) {
+		return database.executeAsync(connection -> {
+			try {
+				return replayed.replay(connection);
+			} catch (IOException ex) {
+				throw new SQLException("Cannot read the journal", ex);
+			}
+		}).join();
+	}
+
+	/**
+	 * Journals rows while the database cannot be reached, then closes the journal: the batch stays in
+	 * its segment, as after a crash.
+	 *
+	 * @return the segment file
+	 */
+	private Path journalUnapplied(List<Row> rows) throws IOException {
+		Files.createDirectories(journalDirectory.toPath());
+		QuestEntriesJournal unreachable =
+				new PlayersManagerDB(config(), new UnreachableDatabase()).createJournal(journalDirectory);
+		unreachable.start();
+		CompletableFuture<Integer> future = unreachable.submit(rows, Collections.emptyList());
+		unreachable.close();
+		assertTrue(future.isCompletedExceptionally());
+
+		List<String> segments = listSegments();
+		assertEquals(1, segments.size());
+		return journalDirectory.toPath().resolve(segments.get(0));
+	}
+
+	private Row row(int questID, int finished) {
+		return new Row(accountID, ownerVersion, questID, finished, 0, 0, 0, null, null);
+	}
+
+	private static Map<Integer, Integer> entries(int... questsAndFinished) {
+		Map<Integer, Integer> entries = new HashMap<>();
+		for (int i = 0; i < questsAndFinished.length; i += 2)
+			entries.put(questsAndFinished[i], questsAndFinished[i + 1]);
+		return entries;
+	}
+
+	/**
+	 * @return <code>finished</code> column of each quest entry, by quest ID
+	 */
+	private Map<Integer, Integer> readEntries() {
+		return database.executeAsync(connection -> {
+			Map<Integer, Integer> entries = new HashMap<>();
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT quest_id, finished FROM player_quests")) {
+				while (result.next())
+					entries.put(result.getInt(1), result.getInt(2));
+			}
+			return entries;
+		}).join();
+	}
+
+	private List<String> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(journalDirectory.toPath())) {
+			return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static class UnreachableDatabase implements SQLDatabase {
+
+		@Override
+		public @NotNull SQLDialect getDialect() {
+			return SQLDialect.H2;
+		}
+
+		@Override
+		public void run(@NotNull ThrowingConsumer<Connection, SQLException> action) {
+			throw new IllegalStateException("Database unreachable");
+		}
+
+		@Override
+		public @NotNull CompletableFuture<Void> runAsync(@NotNull ThrowingConsumer<Connection, SQLException> action) {
+			return executeAsync(connection -> null);
+		}
+
+		@Override
+		public <T> @NotNull CompletableFuture<T> executeAsync(@NotNull SQLFunction<T> action) {
+			CompletableFuture<T> future = new CompletableFuture<>();
+			future.completeExceptionally(new IllegalStateException("Database unreachable"));
+			return future;
+		}
+
+	}
+
+}
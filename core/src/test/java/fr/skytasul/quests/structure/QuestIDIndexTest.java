@@ -0,0 +1,96 @@
+package fr.skytasul.quests.structure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+class QuestIDIndexTest {
+
+	private static final int MIN_SPEEDUP = 20;
+
+	@Test
+	void denseAndSparseIDs() {
+		QuestIDIndex<String> index = new QuestIDIndex<>();
+		int[] ids = {0, 5, 300, QuestIDIndex.MAX_DENSE_ID - 1, QuestIDIndex.MAX_DENSE_ID, Integer.MAX_VALUE, -1,
+				Integer.MIN_VALUE};
+		for (int id : ids)
+			index.put(id, "quest " + id);
+
+		for (int id : ids)
+			assertSame("quest " + id, index.get(id), "quest " + id);
+		assertNull(index.get(1));
+		assertNull(index.get(301));
+		assertNull(index.get(-2));
+		assertNull(index.get(QuestIDIndex.MAX_DENSE_ID + 1));
+	}
+
+	@Test
+	void removeOnlyIndexedQuest() {
+		QuestIDIndex<String> index = new QuestIDIndex<>();
+		String first = new String("first");
+		String replacement = new String("replacement");
+		index.put(3, first);
+		index.put(-3, first);
+		index.put(3, replacement);
+		index.put(-3, replacement);
+
+		// a quest replaced in the index by another one with the same ID must not remove it
+		index.remove(3, first);
+		index.remove(-3, first);
+		assertSame(replacement, index.get(3));
+		assertSame(replacement, index.get(-3));
+
+		index.remove(3, replacement);
+		index.remove(-3, replacement);
+		assertNull(index.get(3));
+		assertNull(index.get(-3));
+	}
+
+	/**
+	 * Compares lookups in the index with the stream scan over every quest previously used by
+	 * {@link QuestsManagerImplementation#getQuest(int)}: once warmed up, the index must be at least
+	 * {@link #MIN_SPEEDUP} times faster. Run with <code>-Dbenchmark=true</code>.
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkLookups() {
+		int questsAmount = 600;
+		int lookups = 1_300_000;
+
+		List<Integer> quests = new ArrayList<>();
+		QuestIDIndex<Integer> index = new QuestIDIndex<>();
+		for (int id = 0; id < questsAmount; id++) {
+			Integer quest = Integer.valueOf(id);
+			quests.add(quest);
+			index.put(id, quest);
+		}
+		int[] ids = new Random(0).ints(lookups, 0, questsAmount).toArray();
+
+		long scan = 0;
+		long indexed = 0;
+		for (int round = 0; round < 5; round++) {
+			long found = 0;
+			long start = System.nanoTime();
+			for (int id : ids)
+				found += quests.stream().filter(quest -> quest.intValue() == id).findAny().orElse(null);
+			scan = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int id : ids)
+				found -= index.get(id);
+			indexed = System.nanoTime() - start;
+
+			assertEquals(0, found);
+		}
+		// measured on the last round only, the previous ones warm up both lookups
+		assertTrue(scan >= indexed * MIN_SPEEDUP, String.format("stream scan %.1f ns, dense index %.2f ns per lookup",
+				(double) scan / lookups, (double) indexed / lookups));
+	}
+
+}
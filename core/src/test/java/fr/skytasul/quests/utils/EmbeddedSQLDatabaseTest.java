@@ -0,0 +1,169 @@
+package fr.skytasul.quests.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import fr.skytasul.quests.api.TestQuestsPlugin;
+
+class EmbeddedSQLDatabaseTest {
+
+	private static final String TABLE = "entries";
+
+	@TempDir
+	File directory;
+
+	private SQLDatabase database;
+
+	@BeforeEach
+	void open() {
+		TestQuestsPlugin.install();
+		database = new EmbeddedSQLDatabase(SQLDialect.H2, new File(directory, "test"));
+		SQLDialect dialect = database.getDialect();
+		database.run(connection -> {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE " + TABLE + " ("
+						+ " id " + dialect.getSerialType() + ","
+						+ " account_id INTEGER NOT NULL,"
+						+ " quest_id INTEGER NOT NULL,"
+						+ " stage INTEGER NOT NULL,"
+						+ " datas " + dialect.getLongTextType() + ","
+						+ " flow " + dialect.getBlobType() + ","
+						+ " PRIMARY KEY (id))");
+			}
+		});
+	}
+
+	@AfterEach
+	void close() {
+		database.close();
+	}
+
+	@Test
+	void upsertInsertsThenUpdates() {
+		upsert(new Object[] {1, 10, 0, "a"});
+		upsert(new Object[] {1, 10, 3, "b"}, new Object[] {2, 10, 1, "c"});
+
+		Map<String, String> rows = readRows();
+		assertEquals(2, rows.size());
+		assertEquals("3:b", rows.get("1:10"));
+		assertEquals("1:c", rows.get("2:10"));
+	}
+
+	@Test
+	void deleteDuplicatesKeepsLatestRow() {
+		database.run(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(
+					"INSERT INTO " + TABLE + " (account_id, quest_id, stage, datas) VALUES (?, ?, ?, ?)")) {
+				for (Object[] row : Arrays.asList(new Object[] {1, 10, 0, "old"}, new Object[] {1, 10, 1, "new"},
+						new Object[] {1, 11, 0, "other"})) {
+					for (int i = 0; i < row.length; i++)
+						statement.setObject(i + 1, row[i]);
+					statement.executeUpdate();
+				}
+			}
+			try (Statement statement = connection.createStatement()) {
+				assertEquals(1, statement.executeUpdate(
+						database.getDialect().deleteDuplicates(TABLE, "account_id, quest_id")));
+			}
+		});
+
+		Map<String, String> rows = readRows();
+		assertEquals("1:new", rows.get("1:10"));
+		assertEquals("0:other", rows.get("1:11"));
+	}
+
+	@Test
+	void blobsAreStoredVerbatim() {
+		byte[] flow = {0, 1, -1, 127, -128};
+		database.run(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(
+					"INSERT INTO " + TABLE + " (account_id, quest_id, stage, flow) VALUES (1, 1, 0, ?)")) {
+				statement.setBytes(1, flow);
+				statement.executeUpdate();
+			}
+		});
+
+		byte[] read = database.executeAsync(connection -> {
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT flow FROM " + TABLE)) {
+				result.next();
+				return result.getBytes(1);
+			}
+		}).join();
+		assertEquals(Arrays.toString(flow), Arrays.toString(read));
+	}
+
+	@Test
+	void asyncActionsRunInSubmissionOrder() {
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int stage = 0; stage < 20; stage++) {
+			Object[] row = {1, 10, stage, "s" + stage};
+			futures.add(database.runAsync(connection -> upsert(connection, Arrays.<Object[]>asList(row))));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+		assertEquals("19:s19", readRows().get("1:10"));
+	}
+
+	@Test
+	void failuresAreWrapped() {
+		CompletionException runFailure = assertThrows(CompletionException.class,
+				() -> database.run(connection -> connection.createStatement().execute("SELECT * FROM missing")));
+		assertInstanceOf(SQLException.class, runFailure.getCause());
+
+		ExecutionException asyncFailure = assertThrows(ExecutionException.class, () -> database
+				.runAsync(connection -> connection.createStatement().execute("SELECT * FROM missing")).get());
+		assertInstanceOf(SQLException.class, asyncFailure.getCause());
+	}
+
+	private void upsert(Object[]... rows) {
+		database.run(connection -> upsert(connection, Arrays.asList(rows)));
+	}
+
+	private void upsert(Connection connection, List<Object[]> rows) throws SQLException {
+		String sql = database.getDialect().upsert(TABLE, Arrays.asList("account_id", "quest_id"),
+				Arrays.asList("stage", "datas"), "(?, ?, ?, ?)", rows.size());
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int index = 1;
+			for (Object[] row : rows) {
+				for (Object value : row)
+					statement.setObject(index++, value);
+			}
+			statement.executeUpdate();
+		}
+	}
+
+	/**
+	 * @return <code>stage:datas</code> of each row, by <code>account_id:quest_id</code>
+	 */
+	private Map<String, String> readRows() {
+		return database.executeAsync(connection -> {
+			Map<String, String> rows = new LinkedHashMap<>();
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery("SELECT account_id, quest_id, stage, datas FROM " + TABLE)) {
+				while (result.next())
+					rows.put(result.getInt(1) + ":" + result.getInt(2), result.getInt(3) + ":" + result.getString(4));
+			}
+			return rows;
+		}).join();
+	}
+
+}
@@ -0,0 +1,128 @@
+package kr.reo.quest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import fr.skytasul.quests.api.TestQuestsPlugin;
+import fr.skytasul.quests.api.players.PlayerAccount;
+import fr.skytasul.quests.api.players.PlayerQuestEntryData;
+import fr.skytasul.quests.utils.EmbeddedSQLDatabase;
+import fr.skytasul.quests.utils.SQLDatabase;
+import fr.skytasul.quests.utils.SQLDialect;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.*;
+
+class QuestLogDatabaseTest {
+
+    private static final UUID PLAYER = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+
+    @TempDir
+    File directory;
+
+    private SQLDatabase database;
+
+    @BeforeEach
+    void open() {
+        TestQuestsPlugin.install();
+        database = new EmbeddedSQLDatabase(SQLDialect.H2, new File(directory, "logs"));
+    }
+
+    @AfterEach
+    void close() {
+        database.close();
+    }
+
+    @Test
+    void monthlyTablesAreCreatedAndExpired() {
+        QuestLogTables tables = new QuestLogTables("quest_log", database.getDialect());
+        YearMonth now = YearMonth.of(2026, 3);
+        database.run(connection -> {
+            for (int i = 0; i < 4; i++)
+                tables.ensureTable(connection, now.minusMonths(i));
+            // already known tables are not created again
+            assertEquals("quest_log_202603", tables.ensureTable(connection, now));
+        });
+
+        List<YearMonth> months = database.executeAsync(tables::listMonths).join();
+        assertEquals(new HashSet<>(Arrays.asList(now, now.minusMonths(1), now.minusMonths(2), now.minusMonths(3))),
+                new HashSet<>(months));
+
+        List<String> dropped = database.executeAsync(connection -> tables.dropExpired(connection, 2, now)).join();
+        assertEquals(new HashSet<>(Arrays.asList("quest_log_202601", "quest_log_202512")), new HashSet<>(dropped));
+        assertEquals(new HashSet<>(Arrays.asList(now, now.minusMonths(1))),
+                new HashSet<>(database.executeAsync(tables::listMonths).join()));
+
+        // a dropped table is created again if needed
+        database.run(connection -> tables.ensureTable(connection, now.minusMonths(2)));
+        assertEquals(3, database.executeAsync(tables::listMonths).join().size());
+    }
+
+    @Test
+    void onlyChangedEntriesAreLogged() {
+        QuestLogDatabase logs = new QuestLogDatabase(database, "test-server", 0);
+        logs.createTable();
+        logs.start();
+
+        QuestEntryRecord started = new QuestEntryRecord(1, 0, 0, 0, 0, Collections.singletonMap("kills", 3), null);
+        QuestEntryRecord unchanged = new QuestEntryRecord(2, 1, 0, -1, -1, null, "0:1");
+        QuestEntryRecord removed = new QuestEntryRecord(3, 0, 0, 0, 1, null, null);
+        QuestEntryRecord counting = new QuestEntryRecord(4, 0, 0, 0, 0, Collections.singletonMap("kills", 1), null);
+        // the snapshot of the join is only kept as a reference
+        logs.insertLog("JOIN", PLAYER, account(started, unchanged, removed, counting));
+
+        QuestEntryRecord progressed = new QuestEntryRecord(1, 0, 0, 0, 1, Collections.singletonMap("kills", 4), null);
+        // only the datas have changed
+        QuestEntryRecord counted = new QuestEntryRecord(4, 0, 0, 0, 0, Collections.singletonMap("kills", 2), null);
+        logs.insertLog("QUIT", PLAYER, account(progressed, unchanged, counted));
+        logs.close();
+
+        assertEquals(3, logs.getWrittenRows());
+        assertEquals(0, logs.getDroppedRows());
+
+        Map<Integer, String> rows = database.executeAsync(connection -> {
+            Map<Integer, String> read = new HashMap<>();
+            try (Statement statement = connection.createStatement();
+                    ResultSet result = statement.executeQuery("SELECT server, log_type, user_id, quest_id, current_stage,"
+                            + " additional_data FROM reo_beautyquest_log_" + String.format("%tY%<tm", new Date()))) {
+                while (result.next()) {
+                    assertEquals("test-server", result.getString(1));
+                    assertEquals("QUIT", result.getString(2));
+                    assertEquals(PLAYER.toString(), result.getString(3));
+                    read.put(result.getInt(4), result.getString(5) + " " + result.getString(6));
+                }
+            }
+            return read;
+        }).join();
+        assertEquals(3, rows.size());
+        assertTrue(rows.get(1).startsWith("1 "), rows.get(1));
+        assertEquals("null null", rows.get(3));
+        assertTrue(rows.get(4).startsWith("0 "), rows.get(4));
+        assertNull(rows.get(2));
+    }
+
+    private static PlayerAccount account(QuestEntryRecord... records) {
+        List<PlayerQuestEntryData> entries = new ArrayList<>();
+        for (QuestEntryRecord record : records)
+            entries.add(proxy(PlayerQuestEntryData.class, "toRecord", record));
+        return proxy(PlayerAccount.class, "getQuestEntries", Collections.unmodifiableList(entries));
+    }
+
+    private static <T> T proxy(Class<T> type, String method, Object result) {
+        return type.cast(Proxy.newProxyInstance(QuestLogDatabaseTest.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, called, args) -> {
+                    if (called.getName().equals(method))
+                        return result;
+                    throw new UnsupportedOperationException(called.getName());
+                }));
+    }
+
+}
@@ -4,9 +4,11 @@ import fr.skytasul.quests.api.QuestsAPI;
 import fr.skytasul.quests.api.QuestsPlugin;
 import fr.skytasul.quests.api.localization.Lang;
 import fr.skytasul.quests.api.options.description.DescriptionSource;
+import fr.skytasul.quests.api.players.LeaderboardEntry;
 import fr.skytasul.quests.api.players.PlayerAccount;
 import fr.skytasul.quests.api.players.PlayerQuestEntryData;
 import fr.skytasul.quests.api.players.PlayersManager;
+import fr.skytasul.quests.api.players.QuestStatistics;
 import fr.skytasul.quests.api.quests.Quest;
 import fr.skytasul.quests.api.utils.ChatColorUtils;
 import me.clip.placeholderapi.events.ExpansionRegisterEvent;
@@ -26,6 +28,8 @@ import java.util.stream.Collectors;
 
 public class QuestsPlaceholders extends PlaceholderExpansion implements Listener {
 
+	private static final int LEADERBOARD_SIZE = 10;
+
 	private static QuestsPlaceholders placeholders;
 
 	private final int lineLength;
@@ -86,7 +90,8 @@ public class QuestsPlaceholders extends PlaceholderExpansion implements Listener
 	public List<String> getPlaceholders() {
 		return Arrays.asList("total_amount", "quest_restartable_ID", "player_inprogress_amount", "player_finished_amount",
 				"player_finished_total_amount", "started", "started_ordered", "started_ordered_X", "advancement_ID",
-				"advancement_ID_raw", "player_quest_finished_ID", "started_id_list");
+				"advancement_ID_raw", "player_quest_finished_ID", "started_id_list", "top_finishers_X_name",
+				"top_finishers_X_amount", "quest_finished_players_ID");
 	}
 
 	@Override
@@ -106,6 +111,44 @@ public class QuestsPlaceholders extends PlaceholderExpansion implements Listener
 			}
 		}
 
+		if (identifier.startsWith("top_finishers_")) {
+			// served by the statistics cache: offline accounts are never loaded
+			String[] parts = identifier.substring(14).split("_", 2);
+			try {
+				int rank = Integer.parseInt(parts[0]);
+				if (rank < 1 || rank > LEADERBOARD_SIZE || parts.length != 2)
+					return "§c§lError: §o" + identifier;
+				List<LeaderboardEntry> top = QuestsPlugin.getPlugin().getPlayersManager().getStatistics()
+						.getTopFinishers(0, LEADERBOARD_SIZE).getNow(null);
+				if (top == null)
+					return "...";
+				if (rank > top.size())
+					return "";
+				LeaderboardEntry entry = top.get(rank - 1);
+				if (parts[1].equals("name"))
+					return entry.getPlayerName() == null ? entry.getIdentifier() : entry.getPlayerName();
+				if (parts[1].equals("amount"))
+					return Long.toString(entry.getValue());
+				return "§c§lError: §o" + identifier;
+			} catch (NumberFormatException ex) {
+				return "§c§lError: §o" + identifier;
+			}
+		}
+
+		if (identifier.startsWith("quest_finished_players_")) {
+			String sid = identifier.substring(23);
+			try {
+				Quest qu = QuestsAPI.getAPI().getQuestsManager().getQuest(Integer.parseInt(sid));
+				if (qu == null)
+					return "§c§lError: unknown quest §o" + sid;
+				QuestStatistics statistics =
+						QuestsPlugin.getPlugin().getPlayersManager().getStatistics().getQuestStatistics(qu).getNow(null);
+				return statistics == null ? "..." : Integer.toString(statistics.getFinishedPlayers());
+			} catch (NumberFormatException ex) {
+				return "§c§lError: §o" + sid;
+			}
+		}
+
 		if (!off.isOnline()) return "§cerror: offline";
 		Player p = off.getPlayer();
 		PlayerAccount acc = PlayersManager.getPlayerAccount(p);